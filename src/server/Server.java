@@ -1,31 +1,30 @@
 package server;
 
-import java.io.FileNotFoundException;
 import java.net.InetSocketAddress;
-import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.util.Calendar;
 
-import server.logic.GameLogic;
 import server.net.HostGateway;
+import server.net.cluster.ClusterNode;
+import server.net.event.SelectorThread;
+import server.net.packet.PacketLimits;
 import server.net.packet.PacketRegistry;
 import server.util.Misc;
 import server.util.ServerGUI;
 import server.util.Misc.Stopwatch;
-import server.world.LogicCycle;
+import server.util.StartupOrchestrator;
+import server.util.StartupOrchestrator.Loader;
+import server.world.World;
 import server.world.entity.mob.Mob;
 import server.world.entity.mob.MobDefinition;
 import server.world.entity.mob.MobDialogue;
+import server.world.entity.player.PlayerFileEvent;
 import server.world.entity.player.skill.TrainableSkill;
 import server.world.item.ItemDefinition;
 import server.world.item.WorldItem;
 import server.world.object.WorldObject;
 import server.world.shop.Shop;
 
-import com.google.gson.JsonIOException;
-import com.google.gson.JsonSyntaxException;
-
 /**
  * The main class which puts the server online and contains a series of network
  * operations.
@@ -41,19 +40,11 @@ public final class Server {
     private static Server singleton;
 
     /**
-     * The host address for the server to listen on.
-     */
-    private static final String HOST = "127.0.0.1";
-
-    /**
-     * The port for the server to listen on.
-     */
-    private static final int PORT = 43594;
-
-    /**
-     * The selector.
+     * The amount of worlds hosted by this server. Every world is processed on
+     * its own thread, and new connections are placed in the world with the
+     * least amount of players.
      */
-    private static Selector selector;
+    private static final int WORLDS = 1;
 
     /**
      * The address the server will listen on.
@@ -65,11 +56,6 @@ public final class Server {
      */
     private static ServerSocketChannel serverChannel;
 
-    /**
-     * The last cycle time calculated.
-     */
-    private static long cycleTimeOverhead;
-
     /**
      * If the statistics should update or not.
      */
@@ -91,11 +77,6 @@ public final class Server {
      */
     private static boolean inBetaMode;
 
-    /**
-     * A timer that will determine how much stress the server is under.
-     */
-    private static Stopwatch overhead = new Stopwatch();
-
     /**
      * A timer that determines how long it will take for the server to start.
      */
@@ -110,7 +91,8 @@ public final class Server {
      * The first method called when the server is ran.
      * 
      * @param args
-     *            any runtime arguments.
+     *            any runtime arguments. The first argument is the id of the
+     *            cluster node to run as, which is 1 if it isn't given.
      */
     public static void main(String[] args) {
         startup.reset();
@@ -122,53 +104,175 @@ public final class Server {
         // XXX: Comment this out to stop the gui from loading!
         ServerGUI.start();
 
+        /** Find out which node of the cluster this server is. */
+        try {
+            ClusterNode.getSingleton().load(args.length > 0 ? Integer.parseInt(args[0]) : 1);
+        } catch (Exception e) {
+            e.printStackTrace();
+            Server.print("Unable to load the cluster nodes, shutting down!");
+            System.exit(1);
+        }
+
         /** Configure the socket address. */
-        Server.getSingleton().setAddress(new InetSocketAddress(Server.HOST, Server.PORT));
+        Server.getSingleton().setAddress(ClusterNode.getSingleton().getAddress());
 
-        /** Load miscellaneous things. */
+        /** Create the worlds, so the loaders can place things in them. */
         try {
-            Misc.loadPlatebody();
-            Misc.loadFullHelm();
-            WorldObject.load();
-            ItemDefinition.load();
-            MobDefinition.load();
-            PacketRegistry.load();
-            HostGateway.retrieveHosts();
-            Shop.load();
-            WorldItem.load();
-            Mob.load();
-            Misc.loadTwoHanded();
-            TrainableSkill.load();
-            MobDialogue.load();
-
-            // XXX: Uncomment to load minigames.
-            // MinigameManager.load();
-        } catch (JsonSyntaxException e) {
-            e.printStackTrace();
-        } catch (FileNotFoundException e) {
+            for (int i = 0; i < WORLDS; i++) {
+                World.create("" + (i + 1), true);
+            }
+        } catch (Exception e) {
             e.printStackTrace();
-        } catch (JsonIOException e) {
+            Server.print("Unable to create the worlds, shutting down!");
+            System.exit(1);
+        }
+
+        /**
+         * Load miscellaneous things. Loaders that don't depend on each other
+         * are run at the same time. Mobs and world items are both placed in
+         * the worlds, which isn't thread safe, so they are run one after the
+         * other. Everything placed in the worlds is placed in every world.
+         */
+        StartupOrchestrator loaders = new StartupOrchestrator();
+        loaders.add(new Loader("equipment types") {
+            @Override
+            public void load() throws Exception {
+                Misc.loadPlatebody();
+                Misc.loadFullHelm();
+                Misc.loadTwoHanded();
+            }
+        }).add(new Loader("objects") {
+            @Override
+            public void load() throws Exception {
+                for (World world : World.getWorlds()) {
+                    world.enter();
+
+                    try {
+                        WorldObject.load();
+                    } finally {
+                        World.leave();
+                    }
+                }
+            }
+        }).add(new Loader("item definitions") {
+            @Override
+            public void load() throws Exception {
+                ItemDefinition.load();
+            }
+        }).add(new Loader("mob definitions") {
+            @Override
+            public void load() throws Exception {
+                MobDefinition.load();
+            }
+        }).add(new Loader("packets") {
+            @Override
+            public void load() throws Exception {
+                PacketRegistry.load();
+            }
+        }).add(new Loader("packet limits") {
+            @Override
+            public void load() throws Exception {
+                PacketLimits.load();
+            }
+        }).add(new Loader("hosts") {
+            @Override
+            public void load() throws Exception {
+                HostGateway.retrieveHosts();
+            }
+        }).add(new Loader("shops", "item definitions") {
+            @Override
+            public void load() throws Exception {
+                for (World world : World.getWorlds()) {
+                    world.enter();
+
+                    try {
+                        Shop.load();
+                    } finally {
+                        World.leave();
+                    }
+                }
+            }
+        }).add(new Loader("world items", "item definitions") {
+            @Override
+            public void load() throws Exception {
+                for (World world : World.getWorlds()) {
+                    world.enter();
+
+                    try {
+                        WorldItem.load();
+                    } finally {
+                        World.leave();
+                    }
+                }
+            }
+        }).add(new Loader("mobs", "mob definitions", "world items") {
+            @Override
+            public void load() throws Exception {
+                for (World world : World.getWorlds()) {
+                    world.enter();
+
+                    try {
+                        Mob.load();
+                    } finally {
+                        World.leave();
+                    }
+                }
+            }
+        }).add(new Loader("skills") {
+            @Override
+            public void load() throws Exception {
+                TrainableSkill.load();
+            }
+        }).add(new Loader("dialogues") {
+            @Override
+            public void load() throws Exception {
+                MobDialogue.load();
+            }
+        }).add(new Loader("character files") {
+            @Override
+            public void load() throws Exception {
+                PlayerFileEvent.openRepository();
+                Server.print("Found " + PlayerFileEvent.getRepository().size() + " character files in the " + PlayerFileEvent.getRepository() + ".");
+            }
+        });
+
+        // XXX: Add a loader for MinigameManager.load() to load minigames.
+
+        /** Don't start a server that is missing anything. */
+        try {
+            loaders.run();
+        } catch (Exception e) {
             e.printStackTrace();
+            Server.print("Startup failed, shutting down!");
+            System.exit(1);
         }
 
+        Server.print("Startup loaders: " + loaders.getReport());
+
         /** Initialize the networking objects. */
         try {
-            Server.getSingleton().setSelector(Selector.open());
             Server.getSingleton().setServerChannel(ServerSocketChannel.open());
 
             /** ... and configure them! */
             Server.getSingleton().getServerChannel().configureBlocking(false);
             Server.getSingleton().getServerChannel().socket().bind(Server.getSingleton().getAddress());
-            Server.getSingleton().getServerChannel().register(Server.getSingleton().getSelector(), SelectionKey.OP_ACCEPT);
+
+            /** Start reading from clients as soon as they connect. */
+            SelectorThread.start(Server.getSingleton().getServerChannel());
+
+            /** Connect to the other nodes of the cluster. */
+            ClusterNode.getSingleton().start();
         } catch (Exception e) {
             e.printStackTrace();
         }
 
-        /** Start the engine! */
-        GameLogic.getSingleton().submit(new LogicCycle());
+        /** Start the engines! */
+        for (World world : World.getWorlds()) {
+            world.start();
+        }
 
         Server.print(Server.getSingleton() + " took " + startup.elapsed() + "ms to load!");
-        Server.print(Server.getSingleton() + " is online on " + Server.getSingleton().getAddress());
+        Server.print(Server.getSingleton() + " world " + ClusterNode.getSingleton().getId() + " is online on " + Server.getSingleton().getAddress());
     }
 
     @Override
@@ -242,23 +346,6 @@ public final class Server {
         Server.singleton = singleton;
     }
 
-    /**
-     * Gets the selector.
-     * 
-     * @return The selector.
-     */
-    public Selector getSelector() {
-        return selector;
-    }
-
-    /**
-     * @param address
-     *            the address to set.
-     */
-    private void setSelector(Selector selector) {
-        Server.selector = selector;
-    }
-
     /**
      * Gets the server singleton object.
      * 
@@ -298,21 +385,6 @@ public final class Server {
         Server.serverChannel = serverChannel;
     }
 
-    /**
-     * @return the cycleTimeOverhead.
-     */
-    public static long getCycleTimeOverhead() {
-        return cycleTimeOverhead;
-    }
-
-    /**
-     * @param cycleTimeOverhead
-     *            the cycleTimeOverhead to set.
-     */
-    public static void setCycleTimeOverhead(long cycleTimeOverhead) {
-        Server.cycleTimeOverhead = cycleTimeOverhead;
-    }
-
     /**
      * @return the inDeveloperMode.
      */
@@ -364,11 +436,4 @@ public final class Server {
     public static Stopwatch getTotalOnlineTime() {
         return totalOnlineTime;
     }
-
-    /**
-     * @return the overhead.
-     */
-    public static Stopwatch getOverhead() {
-        return overhead;
-    }
 }
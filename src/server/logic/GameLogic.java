@@ -1,34 +1,73 @@
 package server.logic;
 
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 import server.Server;
 import server.logic.task.Task;
+import server.logic.task.Task.Time;
+import server.logic.task.TimingWheel;
 
 /**
- * Contains an executor that uses worker threads to carry out various tasks
- * throughout the server.
- * 
+ * A deterministic tick engine that carries out every task on a single game
+ * thread. Tasks are held in a {@link TimingWheel} keyed on the tick they are
+ * due on and all of the tasks due on a tick are executed together, once every
+ * 600ms. Every world has its own engine running on its own thread.
+ *
  * @author lare96
  */
 public final class GameLogic {
 
     /**
-     * The singleton instance.
+     * The single thread that drives the game cycle.
      */
-    private static GameLogic singleton;
+    private final ScheduledExecutorService gameThread;
 
     /**
-     * A ScheduledExecutorService that schedules and carries out delayed logic.
+     * The timing wheel holding every task waiting to be executed.
      */
-    private static final ScheduledExecutorService taskExecutor = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors());
+    private final TimingWheel wheel = new TimingWheel();
 
     /**
-     * Creates and submits a new task to be scheduled and later executed by an
-     * idle worker thread.
+     * Tasks that have been submitted since the last tick and have not yet been
+     * placed in the <code>wheel</code>.
+     */
+    private final Queue<Task> pending = new ConcurrentLinkedQueue<Task>();
+
+    /**
+     * The amount of ticks that have passed since the engine was started.
+     */
+    private volatile long tick;
+
+    /**
+     * Creates the engine and starts the game cycle.
      * 
+     * @param threadFactory
+     *            the factory used to create the game thread.
+     */
+    public GameLogic(ThreadFactory threadFactory) {
+        gameThread = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        gameThread.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    pulse();
+                } catch (Throwable t) {
+                    Server.print("Error during game cycle!");
+                    t.printStackTrace();
+                }
+            }
+        }, Time.TICK.getTime(), Time.TICK.getTime(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates and submits a new task to be scheduled and later executed on the
+     * game thread.
+     *
      * @param task
      *            the task being submitted.
      */
@@ -39,58 +78,103 @@ public final class GameLogic {
             throw new IllegalArgumentException("Task must have a positive delay!");
         }
 
+        /** Flag the task as running. */
+        task.setRunning(true);
+        task.setScheduled(true);
+
         /** Execute the logic within the task before scheduling if we need too. */
         if (task.isExecuteFirst()) {
-            synchronized (this) {
-                try {
-                    task.logic();
-                } catch (Exception e) {
-                    Server.print("Error during task execution!");
-                    e.printStackTrace();
-                }
+            try {
+                task.logic();
+            } catch (Exception e) {
+                Server.print("Error during task execution!");
+                e.printStackTrace();
             }
         }
 
         /** Do not schedule the task if it was stopped. */
-        if (!task.isStoppedOnFirstExecution()) {
-
-            /**
-             * Begin scheduling and wrap the ScheduledFuture within the task.
-             */
-            task.setFuture(taskExecutor.scheduleAtFixedRate(new Runnable() {
-                @Override
-                public void run() {
-                    synchronized (this) {
-                        try {
-                            task.logic();
-                        } catch (Exception e) {
-                            Server.print("Error during task execution!");
-                            e.printStackTrace();
-                        }
-                    }
-                }
-            }, task.getDelay() * task.getTimeUnit().getTime(), task.getDelay() * task.getTimeUnit().getTime(), TimeUnit.MILLISECONDS));
+        if (task.isRunning()) {
+            pending.add(task);
         }
         return task;
     }
 
     /**
-     * Attempts to stop all tasks that are currently running. The
-     * <code>taskExecutor</code> will no longer accept tasks after this method
-     * is invoked.
+     * Moves a task so that it is next executed after its delay from now. If
+     * the task has been canceled it is scheduled again. Unlike
+     * <code>submit</code>, the logic is never executed beforehand.
+     *
+     * @param task
+     *            the task being rescheduled.
      */
-    public void shutdown() {
-        taskExecutor.shutdownNow();
+    public Task reschedule(final Task task) {
+
+        /** Tasks must have a positive delay. */
+        if (task.getDelay() < 1) {
+            throw new IllegalArgumentException("Task must have a positive delay!");
+        }
+
+        task.setRunning(true);
+        task.setScheduled(true);
+        pending.add(task);
+        return task;
     }
 
     /**
-     * @return the singleton.
+     * Advances the engine by one tick and executes every task that is due on
+     * this tick.
      */
-    public static GameLogic getSingleton() {
-        if (singleton == null) {
-            singleton = new GameLogic();
+    private void pulse() {
+        wheel.advance();
+        tick = wheel.getTick();
+
+        /**
+         * Place newly submitted tasks in the wheel. They were submitted during
+         * the last tick so their delay is counted from there.
+         */
+        Task task;
+
+        while ((task = pending.poll()) != null) {
+            if (task.isRunning()) {
+                wheel.schedule(task, tick + task.getTicks() - 1);
+            }
         }
 
-        return singleton;
+        /** Execute all of the tasks that are due. */
+        while ((task = wheel.poll()) != null) {
+            try {
+                task.logic();
+            } catch (Exception e) {
+                Server.print("Error during task execution!");
+                e.printStackTrace();
+            }
+
+            /** Schedule the task for its next execution. */
+            if (task.isRunning() && !task.isQueued()) {
+                wheel.schedule(task, tick + task.getTicks());
+            }
+        }
+    }
+
+    /**
+     * Attempts to stop all tasks that are currently running. The engine will no
+     * longer execute tasks after this method is invoked.
+     */
+    public void shutdown() {
+        gameThread.shutdownNow();
+    }
+
+    /**
+     * @return the tick.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * @return the amount of tasks waiting to be executed.
+     */
+    public int getTaskAmount() {
+        return wheel.getSize() + pending.size();
     }
-}
\ No newline at end of file
+}
@@ -4,9 +4,9 @@ import java.util.Collection;
 import java.util.LinkedList;
 import java.util.Queue;
 
-import server.logic.GameLogic;
 import server.logic.task.Task;
 import server.logic.task.Task.Time;
+import server.world.World;
 
 /**
  * Chain executors are a queue of runnable tasks that can be ran in first in
@@ -161,7 +161,7 @@ public class ChainTaskExecutor {
         this.getTasks().addAll(this.getInternalTasks());
 
         /** Schedules all of the temporary tasks in chronological order. */
-        GameLogic.getSingleton().submit(new Task(1, false, this.getTime()) {
+        World.current().getEngine().submit(new Task(1, false, this.getTime()) {
             @Override
             public void logic() {
 
@@ -4,7 +4,8 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
-import server.logic.GameLogic;
+import server.world.World;
+
 
 /**
  * Carries out delayed tasks in a controlled environment where tasks that have
@@ -55,7 +56,7 @@ public class ControlledTaskExecutor<T extends Task> {
         tasks.add(task);
 
         /** Schedules this task. */
-        GameLogic.getSingleton().submit(task);
+        World.current().getEngine().submit(task);
 
         /** Returns an instance of the task submitted. */
         return task;
@@ -1,14 +1,14 @@
 package server.logic.task;
 
-import java.util.concurrent.ScheduledFuture;
-
 import server.logic.Logic;
+import server.world.World;
 
 /**
  * These are delayed tasks in their most primitive form. They are created to
  * carry out and execute very basic logic based on a set of conditions. Each
- * task is wrapped with its own individual future which can be accessed through
- * this container. These type of tasks are very flexible and can be used in just
+ * task is queued on the game thread and executed on the tick it becomes due,
+ * so no two tasks ever run at the same time. These type of tasks are very
+ * flexible and can be used in just
  * about any general situation. It is recommended to create new implementations
  * of this task when more specific logic needs to be carried out.
  * 
@@ -22,9 +22,39 @@ public abstract class Task implements Logic {
     private int delay;
 
     /**
-     * The <code>ScheduledFuture</code> object assigned to this task.
+     * The delay converted into game ticks.
+     */
+    private int ticks;
+
+    /**
+     * If this task is currently scheduled.
      */
-    private ScheduledFuture<?> future;
+    private boolean running;
+
+    /**
+     * If this task has ever been scheduled.
+     */
+    private boolean scheduled;
+
+    /**
+     * The tick this task is next due on.
+     */
+    long deadline;
+
+    /**
+     * The slot of the timing wheel this task is waiting in.
+     */
+    TimingWheel.Slot slot;
+
+    /**
+     * The previous task in the slot this task is waiting in.
+     */
+    Task previous;
+
+    /**
+     * The next task in the slot this task is waiting in.
+     */
+    Task next;
 
     /**
      * The task executor for this task.
@@ -36,11 +66,6 @@ public abstract class Task implements Logic {
      */
     private boolean executeFirst;
 
-    /**
-     * If the task was stopped on the first execution.
-     */
-    private boolean stoppedOnFirstExecution;
-
     /**
      * The time unit this task is using.
      */
@@ -83,6 +108,19 @@ public abstract class Task implements Logic {
         public void setTime(int time) {
             this.time = time;
         }
+
+        /**
+         * Converts an amount of this time unit into game ticks, rounded to the
+         * nearest tick. The result is never lower than one tick.
+         * 
+         * @param amount
+         *            the amount of this time unit.
+         * @return the amount of ticks.
+         */
+        public int toTicks(int amount) {
+            long ticks = ((long) amount * time + (TICK.getTime() / 2)) / TICK.getTime();
+            return ticks < 1 ? 1 : (int) Math.min(ticks, Integer.MAX_VALUE);
+        }
     }
 
     /**
@@ -100,6 +138,7 @@ public abstract class Task implements Logic {
         this.setDelay(delay);
         this.setExecuteFirst(executeFirst);
         this.setTimeUnit(timeUnit);
+        this.ticks = timeUnit.toTicks(delay);
     }
 
     /**
@@ -108,15 +147,14 @@ public abstract class Task implements Logic {
     public abstract void logic();
 
     /**
-     * Cancel the task using the <code>ScheduledFuture</code> object. It is
-     * extremely crucial to cancel tasks once they are completed to ensure that
-     * unnecessary stress isn't being put on the <code>taskExecutor</code>.
+     * Cancel the task, removing it from the timing wheel it is waiting in. It
+     * is extremely crucial to cancel tasks once they are completed to ensure
+     * that unnecessary stress isn't being put on the game thread.
      */
     public void cancel() {
 
-        /** Block if this task doesn't have a <code>ScheduledFuture</code>. */
-        if (this.getFuture() == null) {
-            this.setStoppedOnFirstExecution(true);
+        /** Block if this task has never been scheduled. */
+        if (!this.isRunning() && !this.isScheduled()) {
             return;
         }
 
@@ -133,7 +171,28 @@ public abstract class Task implements Logic {
         }
 
         /** Finally cancel the task. */
-        this.getFuture().cancel(true);
+        this.setRunning(false);
+
+        if (slot != null) {
+            slot.unlink(this);
+        }
+    }
+
+    /**
+     * Reschedules this task in place with a new delay. The task is moved to
+     * the slot for its new delay (or scheduled again if it was canceled)
+     * without a new task having to be created.
+     * 
+     * @param delay
+     *            the new delay of this task.
+     * @param timeUnit
+     *            the time unit of the new delay.
+     */
+    public void reschedule(int delay, Time timeUnit) {
+        this.setDelay(delay);
+        this.setTimeUnit(timeUnit);
+        this.ticks = timeUnit.toTicks(delay);
+        World.current().getEngine().reschedule(this);
     }
 
     /**
@@ -151,30 +210,48 @@ public abstract class Task implements Logic {
         this.delay = delay;
     }
 
+    /**
+     * @return the delay in game ticks.
+     */
+    public int getTicks() {
+        return ticks;
+    }
+
     /**
      * @return the running.
      */
     public boolean isRunning() {
-        if (this.getFuture() == null) {
-            return true;
-        }
+        return running;
+    }
 
-        return !this.getFuture().isCancelled();
+    /**
+     * @param running
+     *            the running to set.
+     */
+    public void setRunning(boolean running) {
+        this.running = running;
     }
 
     /**
-     * @return the worker.
+     * @return true if this task is waiting in a timing wheel.
      */
-    private ScheduledFuture<?> getFuture() {
-        return future;
+    public boolean isQueued() {
+        return slot != null;
     }
 
     /**
-     * @param future
-     *            the furue to set.
+     * @return the scheduled.
      */
-    public void setFuture(ScheduledFuture<?> future) {
-        this.future = future;
+    public boolean isScheduled() {
+        return scheduled;
+    }
+
+    /**
+     * @param scheduled
+     *            the scheduled to set.
+     */
+    public void setScheduled(boolean scheduled) {
+        this.scheduled = scheduled;
     }
 
     /**
@@ -206,21 +283,6 @@ public abstract class Task implements Logic {
         this.timeUnit = timeUnit;
     }
 
-    /**
-     * @return the stoppedOnFirstExecution.
-     */
-    public boolean isStoppedOnFirstExecution() {
-        return stoppedOnFirstExecution;
-    }
-
-    /**
-     * @param stoppedOnFirstExecution
-     *            the stoppedOnFirstExecution to set.
-     */
-    private void setStoppedOnFirstExecution(boolean stoppedOnFirstExecution) {
-        this.stoppedOnFirstExecution = stoppedOnFirstExecution;
-    }
-
     /**
      * @return true if this task is controlled by an executor.
      */
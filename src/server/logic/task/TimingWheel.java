@@ -0,0 +1,233 @@
+package server.logic.task;
+
+/**
+ * A hierarchical timing wheel that holds tasks keyed on the game tick they are
+ * due on. Scheduling and canceling a task are both constant time operations
+ * because every task is linked directly into the slot that it is waiting in.
+ * Every tick the lowest wheel advances by one slot and all of the tasks in
+ * that slot expire at once; whenever the lowest wheel wraps around, the next
+ * slot of the wheel above it is cascaded down. <br>
+ * <br>
+ *
+ * With four wheels of 64 slots the structure covers 2^24 ticks (over 100 days)
+ * before tasks have to be cascaded on the top wheel more than once. This
+ * should only ever be accessed from the game thread.
+ *
+ * @author lare96
+ */
+public final class TimingWheel {
+
+    /**
+     * The amount of bits used to index the slots of a single wheel.
+     */
+    private static final int WHEEL_BITS = 6;
+
+    /**
+     * The amount of slots in a single wheel.
+     */
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+
+    /**
+     * The mask used to index the slots of a single wheel.
+     */
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    /**
+     * The amount of wheels in this timing wheel.
+     */
+    private static final int WHEELS = 4;
+
+    /**
+     * The largest amount of ticks a task can be placed into the future without
+     * being cascaded on the top wheel more than once.
+     */
+    private static final long MAXIMUM_DELAY = (1L << (WHEEL_BITS * WHEELS)) - 1;
+
+    /**
+     * The slots of every wheel.
+     */
+    private final Slot[][] wheels = new Slot[WHEELS][WHEEL_SIZE];
+
+    /**
+     * The tick this timing wheel is currently on.
+     */
+    private long tick;
+
+    /**
+     * The amount of tasks currently held in this timing wheel.
+     */
+    private int size;
+
+    /**
+     * Create a new timing wheel.
+     */
+    public TimingWheel() {
+        for (int i = 0; i < WHEELS; i++) {
+            for (int j = 0; j < WHEEL_SIZE; j++) {
+                wheels[i][j] = new Slot();
+            }
+        }
+    }
+
+    /**
+     * Schedules a task to expire on the specified tick. If the task is already
+     * held in this timing wheel it is moved rather than added twice.
+     *
+     * @param task
+     *            the task to schedule.
+     * @param deadline
+     *            the tick the task will expire on.
+     */
+    public void schedule(Task task, long deadline) {
+        if (task.slot != null) {
+            task.slot.unlink(task);
+        }
+
+        /** Tasks that are already due expire on the current tick. */
+        task.deadline = deadline < tick ? tick : deadline;
+        place(task);
+    }
+
+    /**
+     * Places a task in the slot for its deadline.
+     *
+     * @param task
+     *            the task to place.
+     */
+    private void place(Task task) {
+        long delay = task.deadline - tick;
+        long deadline = delay > MAXIMUM_DELAY ? tick + MAXIMUM_DELAY : task.deadline;
+        int wheel = 0;
+
+        while (wheel < WHEELS - 1 && delay >= (1L << (WHEEL_BITS * (wheel + 1)))) {
+            wheel++;
+        }
+
+        wheels[wheel][(int) (deadline >> (WHEEL_BITS * wheel)) & WHEEL_MASK].link(task);
+    }
+
+    /**
+     * Advances this timing wheel onto the next tick, cascading the wheels above
+     * the lowest one if it has wrapped around.
+     */
+    public void advance() {
+        tick++;
+
+        for (int wheel = 1; wheel < WHEELS; wheel++) {
+            if ((tick & ((1L << (WHEEL_BITS * wheel)) - 1)) != 0) {
+                break;
+            }
+
+            Slot slot = wheels[wheel][(int) (tick >> (WHEEL_BITS * wheel)) & WHEEL_MASK];
+            Task task;
+
+            while ((task = slot.poll()) != null) {
+                place(task);
+            }
+        }
+    }
+
+    /**
+     * Removes and returns the next task that expires on the current tick.
+     *
+     * @return the next expired task, or <code>null</code> if there are no more
+     *         tasks due on this tick.
+     */
+    public Task poll() {
+        return wheels[0][(int) tick & WHEEL_MASK].poll();
+    }
+
+    /**
+     * @return the tick.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * @return the amount of tasks held.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * A single slot of a wheel, holding an intrusive doubly linked list of the
+     * tasks waiting in it in the order they were placed.
+     *
+     * @author lare96
+     */
+    final class Slot {
+
+        /**
+         * The first task in this slot.
+         */
+        private Task head;
+
+        /**
+         * The last task in this slot.
+         */
+        private Task tail;
+
+        /**
+         * Appends a task to this slot.
+         *
+         * @param task
+         *            the task to append.
+         */
+        void link(Task task) {
+            task.slot = this;
+            task.previous = tail;
+            task.next = null;
+
+            if (tail == null) {
+                head = task;
+            } else {
+                tail.next = task;
+            }
+
+            tail = task;
+            size++;
+        }
+
+        /**
+         * Removes a task from this slot.
+         *
+         * @param task
+         *            the task to remove.
+         */
+        void unlink(Task task) {
+            if (task.previous == null) {
+                head = task.next;
+            } else {
+                task.previous.next = task.next;
+            }
+
+            if (task.next == null) {
+                tail = task.previous;
+            } else {
+                task.next.previous = task.previous;
+            }
+
+            task.slot = null;
+            task.previous = null;
+            task.next = null;
+            size--;
+        }
+
+        /**
+         * Removes and returns the first task in this slot.
+         *
+         * @return the first task, or <code>null</code> if this slot is empty.
+         */
+        Task poll() {
+            Task task = head;
+
+            if (task != null) {
+                unlink(task);
+            }
+
+            return task;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package server.net;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The hosts that are not allowed to connect. IPv4 bans are held in a binary
+ * trie keyed on the bits of the address, so a single address and a whole range
+ * written as <code>address/prefix</code> (e.g. <code>10.0.0.0/8</code>) are
+ * both checked by walking at most 32 nodes, however many bans there are. Any
+ * other host can only be banned exactly. <br>
+ * <br>
+ *
+ * Checking a host never locks, so it can be done for every connection. Bans
+ * are added one at a time while holding the lock of this list, and a node is
+ * only linked into the trie once it is ready.
+ *
+ * @author lare96
+ */
+public final class HostBanList {
+
+    /**
+     * The root of the trie, matching every IPv4 address.
+     */
+    private final Node root = new Node();
+
+    /**
+     * The hosts that aren't IPv4 addresses that are banned, encoded with
+     * {@link HostGateway#encode(String)}.
+     */
+    private final Set<Long> others = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+
+    /**
+     * The amount of bans added.
+     */
+    private volatile int size;
+
+    /**
+     * Bans a host or a range of hosts.
+     *
+     * @param entry
+     *            the host, or an IPv4 range written as
+     *            <code>address/prefix</code>.
+     * @return true if the entry could be read.
+     */
+    public synchronized boolean add(String entry) {
+        int slash = entry.indexOf('/');
+        long address = HostGateway.encode(slash == -1 ? entry : entry.substring(0, slash));
+
+        if (!HostGateway.isIpv4(address)) {
+            if (slash != -1) {
+                return false;
+            }
+
+            others.add(address);
+            size++;
+            return true;
+        }
+
+        int prefix = 32;
+
+        if (slash != -1) {
+            try {
+                prefix = Integer.parseInt(entry.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                return false;
+            }
+
+            if (prefix < 0 || prefix > 32) {
+                return false;
+            }
+        }
+
+        Node node = root;
+
+        for (int bit = 31; bit >= 32 - prefix; bit--) {
+            boolean one = (address >>> bit & 1) == 1;
+            Node next = one ? node.one : node.zero;
+
+            if (next == null) {
+                next = new Node();
+
+                if (one) {
+                    node.one = next;
+                } else {
+                    node.zero = next;
+                }
+            }
+
+            node = next;
+        }
+
+        node.banned = true;
+        size++;
+        return true;
+    }
+
+    /**
+     * Checks if a host is banned.
+     *
+     * @param host
+     *            the host, encoded with {@link HostGateway#encode(String)}.
+     * @return true if the host is banned.
+     */
+    public boolean contains(long host) {
+        if (!HostGateway.isIpv4(host)) {
+            return others.contains(host);
+        }
+
+        Node node = root;
+
+        for (int bit = 31; node != null; bit--) {
+            if (node.banned) {
+                return true;
+            }
+
+            if (bit < 0) {
+                break;
+            }
+
+            node = (host >>> bit & 1) == 1 ? node.one : node.zero;
+        }
+        return false;
+    }
+
+    /**
+     * @return the amount of bans added.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * A single node of the trie, matching every address that starts with the
+     * bits on the path to it.
+     *
+     * @author lare96
+     */
+    private static final class Node {
+
+        /**
+         * The node for the addresses with a zero as the next bit.
+         */
+        private volatile Node zero;
+
+        /**
+         * The node for the addresses with a one as the next bit.
+         */
+        private volatile Node one;
+
+        /**
+         * If every address matched by this node is banned.
+         */
+        private volatile boolean banned;
+    }
+}
@@ -2,16 +2,28 @@ package server.net;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.util.Iterator;
+import java.util.Map.Entry;
 import java.util.Scanner;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
 
 import server.Server;
 
 /**
  * A static gateway type class that is used to limit the maximum amount of
- * connections per host.
- * 
+ * connections per host. <br>
+ * <br>
+ *
+ * Every connection passes through here, so nothing here locks or keeps
+ * anything around for longer than it needs to: hosts are encoded as numbers,
+ * connection counts are updated with atomic operations, and hosts that have
+ * no connections, are no longer throttled or whose offences have expired are
+ * forgotten. Only the first session request of every kind is printed every
+ * so often, and the rest are counted and printed together.
+ *
  * @author blakeman8192
  * @author lare96
  */
@@ -20,26 +32,107 @@ public final class HostGateway {
     /** The maximum amount of connections per host. */
     public static final int MAX_CONNECTIONS_PER_HOST = 1;
 
-    /** Used to keep track of hosts and their amount of connections. */
-    private static ConcurrentHashMap<String, Integer> hostConnection = new ConcurrentHashMap<String, Integer>();
+    /**
+     * The amount of offences after which a host's clients are disconnected
+     * and new connections from it are rejected.
+     */
+    public static final int MAXIMUM_OFFENCES = 50;
+
+    /**
+     * The time in milliseconds after its last offence that a host's offences
+     * are forgotten.
+     */
+    private static final long OFFENCE_EXPIRY = 600000;
+
+    /**
+     * The time in milliseconds between forgetting hosts that aren't needed
+     * anymore and printing the session requests that were counted.
+     */
+    private static final long MAINTENANCE_INTERVAL = 5000;
+
+    /**
+     * The bit set in encoded hosts that aren't IPv4 addresses.
+     */
+    private static final long OTHER_HOST = 1L << 63;
+
+    /**
+     * Used to keep track of hosts and their amount of connections. A count is
+     * set to -1 just before it is removed, so it is never used again.
+     */
+    private static ConcurrentHashMap<Long, AtomicInteger> hostConnection = new ConcurrentHashMap<Long, AtomicInteger>();
 
-    /** List of the ip banned hosts. */
-    private static CopyOnWriteArrayList<String> banned = new CopyOnWriteArrayList<String>();
+    /** The ip banned hosts. */
+    private static HostBanList banned = new HostBanList();
+
+    /** Used to keep track of hosts and the offences of their clients. */
+    private static ConcurrentHashMap<Long, Offences> hostOffences = new ConcurrentHashMap<Long, Offences>();
+
+    /** The amount of session requests of every kind since they were printed. */
+    private static AtomicIntegerArray requests = new AtomicIntegerArray(Request.values().length);
+
+    /** The time the gateway is next maintained. */
+    private static AtomicLong nextMaintenance = new AtomicLong();
+
+    /**
+     * The kinds of session requests.
+     *
+     * @author lare96
+     */
+    private enum Request {
+        ACCEPTED("accepted"),
+        THROTTLED("denied: connecting too fast"),
+        DEVELOPER_MODE("rejected until server is no longer in developer mode"),
+        BANNED("rejected: host is IP banned"),
+        OFFENDING("rejected: host has offended too many times"),
+        OVER_LIMIT("rejected: over connection limit");
+
+        /**
+         * What is printed for this kind of request.
+         */
+        private final String message;
+
+        /**
+         * Create a new {@link Request}.
+         *
+         * @param message
+         *            what is printed for this kind of request.
+         */
+        private Request(String message) {
+            this.message = message;
+        }
+
+        /**
+         * @return the message.
+         */
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    /**
+     * This class cannot be instantiated.
+     */
+    private HostGateway() {
+
+    }
 
     /**
      * Checks the host into the gateway.
-     * 
+     *
      * @param host
      *            the host that needs to be checked.
-     * 
+     *
      * @return true if the host can connect, false if it has reached the maximum
      *         amount of connections.
      */
     public static boolean enter(String host) {
+        long now = System.currentTimeMillis();
+        long address = encode(host);
+        maintain(now);
 
         /** Makes sure this host is not connecting too fast. */
-        if (!HostThrottler.throttleHost(host)) {
-            return false;
+        if (!HostThrottler.throttleHost(address, now)) {
+            return log(Request.THROTTLED, host);
         }
 
         /**
@@ -47,76 +140,266 @@ public final class HostGateway {
          * localhost.
          */
         if (Server.isInDeveloperMode() && !host.equals("127.0.0.1") && !host.equals("localhost")) {
-            Server.print("Session request from host(" + host + ") rejected until server is no longer in developer mode.");
-            return false;
+            return log(Request.DEVELOPER_MODE, host);
         }
 
         /** Reject if this host is banned. */
-        if (banned.contains(host)) {
-            Server.print("Session request from IP banned host(" + host + ") rejected.");
-            return false;
+        if (banned.contains(address)) {
+            return log(Request.BANNED, host);
         }
 
-        Integer amount = hostConnection.putIfAbsent(host, 1);
+        /** Reject if this host's clients have been sending too much. */
+        Offences offences = hostOffences.get(address);
 
-        /** If the host was not in the map, they're clear to go. */
-        if (amount == null) {
-            Server.print("Session request from " + host + "(1) accepted.");
-            return true;
+        if (offences != null) {
+            if (offences.isExpired(now)) {
+                hostOffences.remove(address, offences);
+            } else if (offences.getAmount() >= MAXIMUM_OFFENCES) {
+                return log(Request.OFFENDING, host);
+            }
         }
 
-        /** If they've reached the connection limit, return false. */
-        if (amount == MAX_CONNECTIONS_PER_HOST) {
-            Server.print("Session request from " + host + "(" + amount + ") over connection limit, rejected.");
-            return false;
-        }
+        while (true) {
+            AtomicInteger amount = hostConnection.get(address);
 
-        /** Otherwise, replace the key with the next value if it was present. */
-        hostConnection.replace(host, amount + 1);
-        Server.print("Session request from " + host + "(" + hostConnection.get(host) + ") accepted.");
-        return true;
+            /** If the host was not in the map, they're clear to go. */
+            if (amount == null) {
+                if (hostConnection.putIfAbsent(address, new AtomicInteger(1)) == null) {
+                    return log(Request.ACCEPTED, host);
+                }
+                continue;
+            }
+
+            int connections = amount.get();
+
+            /** The count is being removed, wait for it to be gone. */
+            if (connections == -1) {
+                hostConnection.remove(address, amount);
+                continue;
+            }
+
+            /** If they've reached the connection limit, return false. */
+            if (connections >= MAX_CONNECTIONS_PER_HOST) {
+                return log(Request.OVER_LIMIT, host);
+            }
+
+            /** Otherwise, count the connection if nobody got there first. */
+            if (amount.compareAndSet(connections, connections + 1)) {
+                return log(Request.ACCEPTED, host);
+            }
+        }
     }
 
     /**
      * Unchecks the host from the gateway.
-     * 
+     *
      * @param host
      *            the host that needs to be unchecked.
      */
     public static void exit(String host) {
-        Integer amount = hostConnection.get(host);
+        long address = encode(host);
+        AtomicInteger amount = hostConnection.get(address);
 
         if (amount == null) {
             return;
         }
 
-        /** Remove the host from the map if it's at 1 connection. */
-        if (amount == 1) {
-            hostConnection.remove(host);
-            HostThrottler.getHostConnectionTime().remove(host);
+        while (true) {
+            int connections = amount.get();
+
+            if (connections < 1) {
+                return;
+            }
+
+            /** Remove the host from the map if it's at 1 connection. */
+            if (connections == 1) {
+                if (amount.compareAndSet(1, -1)) {
+                    hostConnection.remove(address, amount);
+                    return;
+                }
+                continue;
+            }
+
+            /** Otherwise decrement the amount of connections stored. */
+            if (amount.compareAndSet(connections, connections - 1)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Records an offence against the host, such as one of its clients sending
+     * more packets than it is allowed to. This can be called from any thread.
+     *
+     * @param host
+     *            the host that offended.
+     * @return true if the host has offended too many times, and its clients
+     *         should be disconnected.
+     */
+    public static boolean offend(String host) {
+        long address = encode(host);
+        Offences offences = hostOffences.get(address);
+
+        if (offences == null) {
+            Offences created = new Offences();
+            offences = hostOffences.putIfAbsent(address, created);
+
+            if (offences == null) {
+                offences = created;
+            }
+        }
+
+        return offences.offend() >= MAXIMUM_OFFENCES;
+    }
+
+    /**
+     * Bans a host or a range of hosts written as <code>address/prefix</code>.
+     *
+     * @param entry
+     *            the host or range to ban.
+     * @return true if the host or range could be read.
+     */
+    public static boolean ban(String entry) {
+        return banned.add(entry);
+    }
+
+    /**
+     * Counts a session request, printing it if it is the first of its kind
+     * since the session requests were last printed.
+     *
+     * @param request
+     *            the kind of session request.
+     * @param host
+     *            the host that made the request.
+     * @return true if the request was accepted.
+     */
+    private static boolean log(Request request, String host) {
+        if (requests.getAndIncrement(request.ordinal()) == 0) {
+            Server.print("Session request from " + host + " " + request.getMessage() + ".");
+        }
+        return request == Request.ACCEPTED;
+    }
+
+    /**
+     * Forgets the hosts that aren't needed anymore and prints the session
+     * requests that weren't printed, if it is time to do so. Only one thread
+     * does this at a time.
+     *
+     * @param now
+     *            the current time in milliseconds.
+     */
+    private static void maintain(long now) {
+        long next = nextMaintenance.get();
+
+        if (now < next || !nextMaintenance.compareAndSet(next, now + MAINTENANCE_INTERVAL)) {
             return;
         }
 
-        /** Otherwise decrement the amount of connections stored. */
-        if (amount != null) {
-            hostConnection.replace(host, amount - 1);
+        HostThrottler.sweep(now);
+        Iterator<Entry<Long, Offences>> iterator = hostOffences.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            Entry<Long, Offences> entry = iterator.next();
+
+            if (entry.getValue().isExpired(now)) {
+                hostOffences.remove(entry.getKey(), entry.getValue());
+            }
+        }
+
+        /** Only the first request of every kind was printed. */
+        StringBuilder builder = new StringBuilder();
+
+        for (Request request : Request.values()) {
+            int amount = requests.getAndSet(request.ordinal(), 0);
+
+            if (amount > 1) {
+                builder.append(builder.length() == 0 ? "" : ", ").append(amount - 1).append(' ').append(request.name().toLowerCase().replace('_', ' '));
+            }
+        }
+
+        if (builder.length() > 0) {
+            Server.print("Session requests not printed since the last report: " + builder + ".");
         }
     }
 
+    /**
+     * Encodes a host as a number. IPv4 addresses are encoded as their 32 bits,
+     * and any other host is hashed with the highest bit set so it never
+     * matches an IPv4 address.
+     *
+     * @param host
+     *            the host to encode.
+     * @return the encoded host.
+     */
+    public static long encode(String host) {
+        long address = 0;
+        int octet = -1;
+        int octets = 0;
+
+        for (int i = 0; i <= host.length(); i++) {
+            char c = i == host.length() ? '.' : host.charAt(i);
+
+            if (c >= '0' && c <= '9') {
+                octet = (octet == -1 ? 0 : octet * 10) + (c - '0');
+
+                if (octet > 255) {
+                    break;
+                }
+            } else if (c == '.' && octet != -1 && octets < 4) {
+                address = address << 8 | octet;
+                octet = -1;
+                octets++;
+            } else {
+                octets = -1;
+                break;
+            }
+        }
+
+        if (octets == 4 && octet == -1) {
+            return address;
+        }
+
+        /** A 64-bit FNV-1a hash of anything else. */
+        long hash = 0xcbf29ce484222325L;
+
+        for (int i = 0; i < host.length(); i++) {
+            hash = (hash ^ host.charAt(i)) * 0x100000001b3L;
+        }
+        return hash | OTHER_HOST;
+    }
+
+    /**
+     * Checks if an encoded host is an IPv4 address.
+     *
+     * @param host
+     *            the encoded host.
+     * @return true if the host is an IPv4 address.
+     */
+    public static boolean isIpv4(long host) {
+        return (host & OTHER_HOST) == 0;
+    }
+
     /**
      * Retrieves the hosts from the <code>ip_banned.txt</code> file and adds
-     * them to the list of banned hosts.
+     * them to the list of banned hosts. Every line holds a host or a range of
+     * hosts written as <code>address/prefix</code>.
      */
     public static void retrieveHosts() {
         Scanner s;
-        // int retrieved = 0;
 
         try {
             s = new Scanner(new File("./data/ip_banned.txt"));
 
             while (s.hasNextLine()) {
-                banned.add(s.nextLine());
-                // retrieved++;
+                String line = s.nextLine().trim();
+
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                if (!banned.add(line)) {
+                    Server.print("Invalid IP ban: " + line);
+                }
             }
 
             s.close();
@@ -128,14 +411,69 @@ public final class HostGateway {
     /**
      * @return the banned.
      */
-    public static CopyOnWriteArrayList<String> getBanned() {
+    public static HostBanList getBanned() {
         return banned;
     }
 
     /**
      * @return the map.
      */
-    public static ConcurrentHashMap<String, Integer> getHostConnection() {
+    public static ConcurrentHashMap<Long, AtomicInteger> getHostConnection() {
         return hostConnection;
     }
+
+    /**
+     * @return the hostOffences.
+     */
+    public static ConcurrentHashMap<Long, Offences> getHostOffences() {
+        return hostOffences;
+    }
+
+    /**
+     * The offences of a single host.
+     *
+     * @author lare96
+     */
+    public static final class Offences {
+
+        /** The amount of offences since they were last forgotten. */
+        private final AtomicInteger amount = new AtomicInteger();
+
+        /** The time of the last offence. */
+        private volatile long last = System.currentTimeMillis();
+
+        /**
+         * Records an offence, forgetting the old ones first if the host has
+         * behaved for long enough.
+         *
+         * @return the amount of offences.
+         */
+        public int offend() {
+            long now = System.currentTimeMillis();
+
+            if (isExpired(now)) {
+                amount.set(0);
+            }
+
+            last = now;
+            return amount.incrementAndGet();
+        }
+
+        /**
+         * @param now
+         *            the current time in milliseconds.
+         * @return true if the host has behaved for long enough for its
+         *         offences to be forgotten.
+         */
+        public boolean isExpired(long now) {
+            return now - last >= OFFENCE_EXPIRY;
+        }
+
+        /**
+         * @return the amount.
+         */
+        public int getAmount() {
+            return amount.get();
+        }
+    }
 }
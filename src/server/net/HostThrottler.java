@@ -1,86 +1,123 @@
 package server.net;
 
+import java.util.Iterator;
+import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
-import server.Server;
 import server.logic.task.Task.Time;
-import server.util.Misc.Stopwatch;
 
 /**
- * Controls and limits the amount of connections a single host can make per
- * second.
- * 
+ * Controls and limits the amount of connections a single host can make within
+ * a sliding window of time. <br>
+ * <br>
+ *
+ * Rather than a list of connection times, every host only has the time its
+ * window is next free: every connection pushes this back by the window divided
+ * by the amount of connections allowed in it, and a connection is refused if
+ * that would push it further than a whole window ahead. This allows exactly
+ * the same connections as counting the connections made within the last
+ * window, with a single number per host that is updated without locking. Once
+ * the time has passed the host is no different from one that has never
+ * connected, so it is forgotten the next time the hosts are swept.
+ *
  * @author lare96
  */
 public final class HostThrottler {
 
-    // XXX: Wrote this in one sitting and attempted to use the runerebels stress
-    // tester to flood the server, and even at 1ms intervals this throttler
-    // prevented all of the bots but one from connecting! Success! I haven't
-    // tested this for bugs nor have I found any yet, so be on the lookout.
+    /** The maximum amount of connections allowed within the window. */
+    private static final int CONNECTIONS_PER_WINDOW = 1;
 
-    // TODO: extensive testing.
+    /** The length of the window in milliseconds. */
+    private static final long WINDOW = Time.SECOND.getTime();
 
-    /** A map of hosts and their respective timers. */
-    private static ConcurrentHashMap<String, Stopwatch> hostConnectionTime = new ConcurrentHashMap<String, Stopwatch>();
+    /** The time every connection takes up in the window. */
+    private static final long INTERVAL = WINDOW / CONNECTIONS_PER_WINDOW;
 
-    /** The maximum amount of connections allowed per second for a single host. */
-    private static final int AMOUNT_OF_CONNECTIONS_PER_SECOND = 1;
+    /**
+     * The maximum amount of hosts that can be throttled at once. Hosts that
+     * haven't connected within the last window are swept regularly, so this
+     * is only reached when a flood comes from a lot of hosts at once, in which
+     * case new hosts are turned away until there is room again.
+     */
+    private static final int MAXIMUM_HOSTS = 65536;
+
+    /**
+     * A map of hosts, encoded with {@link HostGateway#encode(String)}, and the
+     * time their window is next free.
+     */
+    private static ConcurrentHashMap<Long, AtomicLong> hostWindows = new ConcurrentHashMap<Long, AtomicLong>();
+
+    /**
+     * This class cannot be instantiated.
+     */
+    private HostThrottler() {
+
+    }
 
     /**
      * Makes sure the host isn't connecting too fast.
-     * 
+     *
      * @param host
-     *            the host being checked for connecting too fast.
+     *            the host being checked for connecting too fast, encoded
+     *            with {@link HostGateway#encode(String)}.
+     * @param now
+     *            the current time in milliseconds.
      * @return true if the host is allowed to pass.
      */
-    public static boolean throttleHost(String host) {
-
-        /**
-         * If the host has connected once already we need to check if they are
-         * allowed to connect again.
-         */
-        if (HostThrottler.getHostConnectionTime().containsKey(host)) {
-
-            /** Get the time since the last connection. */
-            long time = HostThrottler.getHostConnectionTime().get(host).elapsed();
-
-            /** Get how many existing connections this host has. */
-            Integer connection = HostGateway.getHostConnection().get(host) == null ? 0 : HostGateway.getHostConnection().get(host);
-
-            /**
-             * If the time since the last connection is less than a second and
-             * the amount of connections is equal to or above the
-             * <code>AMOUNT_OF_CONNECTIONS_PER_SECOND</code> then the host is
-             * connecting too fast.
-             */
-            if (time < Time.SECOND.getTime() && connection >= AMOUNT_OF_CONNECTIONS_PER_SECOND) {
-                Server.print("Session request from " + host + " denied: connecting too fast!");
+    public static boolean throttleHost(long host, long now) {
+        AtomicLong window = hostWindows.get(host);
+
+        /** The host hasn't connected within the last window. */
+        if (window == null) {
+            if (hostWindows.size() >= MAXIMUM_HOSTS) {
+                return false;
+            }
+
+            window = hostWindows.putIfAbsent(host, new AtomicLong(now + INTERVAL));
+
+            if (window == null) {
+                return true;
+            }
+        }
+
+        while (true) {
+            long free = window.get();
+            long start = Math.max(free, now);
+
+            /** The window of this host is full. */
+            if (start + INTERVAL - now > WINDOW) {
                 return false;
             }
 
-            /**
-             * If the host has waited one second before connecting again the
-             * timer is reset and the host is allowed to pass.
-             */
-            HostThrottler.getHostConnectionTime().get(host).reset();
-            return true;
-
-            /**
-             * If the host is connecting for the first time (has no other
-             * clients logged in) then the host is added to the connection list
-             * with its own timer.
-             */
-        } else {
-            HostThrottler.getHostConnectionTime().put(host, new Stopwatch().reset());
-            return true;
+            if (window.compareAndSet(free, start + INTERVAL)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Forgets every host whose window is free again.
+     *
+     * @param now
+     *            the current time in milliseconds.
+     */
+    public static void sweep(long now) {
+        Iterator<Entry<Long, AtomicLong>> iterator = hostWindows.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            Entry<Long, AtomicLong> entry = iterator.next();
+
+            if (entry.getValue().get() <= now) {
+                hostWindows.remove(entry.getKey(), entry.getValue());
+            }
         }
     }
 
     /**
-     * @return the hostConnectionTime.
+     * @return the hostWindows.
      */
-    public static ConcurrentHashMap<String, Stopwatch> getHostConnectionTime() {
-        return hostConnectionTime;
+    public static ConcurrentHashMap<Long, AtomicLong> getHostWindows() {
+        return hostWindows;
     }
 }
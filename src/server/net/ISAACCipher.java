@@ -80,6 +80,22 @@ public class ISAACCipher {
         init(true);
     }
 
+    /**
+     * Creates an ISAAC cipher that is an exact copy of another cipher, and so
+     * will produce the same values from this point on.
+     *
+     * @param cipher
+     *            The cipher to copy.
+     */
+    public ISAACCipher(ISAACCipher cipher) {
+        this.count = cipher.count;
+        this.results = cipher.results.clone();
+        this.memory = cipher.memory.clone();
+        this.a = cipher.a;
+        this.b = cipher.b;
+        this.c = cipher.c;
+    }
+
     /**
      * Gets the next value.
      * 
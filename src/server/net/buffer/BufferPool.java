@@ -0,0 +1,310 @@
+package server.net.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import server.Server;
+
+/**
+ * A pool of direct buffers that outgoing packets are written into, so the
+ * buffers for the hundreds of packets sent every cycle are reused instead of
+ * being allocated and thrown away. Buffers are split into a few size classes,
+ * and a request for a buffer is given a buffer from the smallest class that
+ * fits it. Requests bigger than the largest class are given an ordinary heap
+ * buffer that is never pooled. <br>
+ * <br>
+ *
+ * Every thread keeps a small cache of buffers for each class which it uses
+ * before going to the shared pools, so the threads encoding update packets in
+ * parallel rarely have to touch the same queues. A buffer borrowed with
+ * {@link #acquire(int)} should be given back with {@link #release(ByteBuffer)}
+ * once nothing is using it anymore, which for a packet is once it has been
+ * written to the socket. A buffer that is never given back is simply left for
+ * the garbage collector. <br>
+ * <br>
+ *
+ * While the server is in developer mode, every borrowed buffer is tracked
+ * along with where it was borrowed from, and any buffer that hasn't been given
+ * back after a minute is reported as a leak.
+ *
+ * @author lare96
+ */
+public final class BufferPool {
+
+    /**
+     * The capacity of the buffers in every size class, from smallest to
+     * largest.
+     */
+    private static final int[] SIZES = { 64, 256, 1024, 4096, 8192, 16384 };
+
+    /**
+     * The amount of buffers of every class a single thread keeps for itself.
+     */
+    private static final int THREAD_CACHE_SIZE = 64;
+
+    /**
+     * The largest amount of buffers of a single class kept in the shared
+     * pools.
+     */
+    private static final int MAXIMUM_POOLED = 4096;
+
+    /**
+     * The largest amount of bytes worth of buffers of a single class kept in
+     * the shared pools.
+     */
+    private static final int MAXIMUM_POOLED_BYTES = 33554432;
+
+    /**
+     * The time in milliseconds a buffer can be borrowed for before it is
+     * reported as a leak.
+     */
+    private static final long LEAK_TIME = 60000;
+
+    /**
+     * The singleton instance, created up front because buffers are borrowed
+     * from more than one thread. This must come
+     * after the size classes.
+     */
+    private static final BufferPool singleton = new BufferPool();
+
+    /**
+     * The shared pools of buffers for every class.
+     */
+    private final Queue<ByteBuffer>[] pools;
+
+    /**
+     * The amount of buffers in the shared pools for every class.
+     */
+    private final AtomicInteger[] pooled;
+
+    /**
+     * The caches kept by every thread.
+     */
+    private final ThreadLocal<ArrayDeque<ByteBuffer>[]> caches = new ThreadLocal<ArrayDeque<ByteBuffer>[]>() {
+        @Override
+        protected ArrayDeque<ByteBuffer>[] initialValue() {
+            @SuppressWarnings("unchecked")
+            ArrayDeque<ByteBuffer>[] cache = (ArrayDeque<ByteBuffer>[]) new ArrayDeque<?>[SIZES.length];
+
+            for (int i = 0; i < cache.length; i++) {
+                cache[i] = new ArrayDeque<ByteBuffer>(THREAD_CACHE_SIZE);
+            }
+            return cache;
+        }
+    };
+
+    /**
+     * The buffers borrowed while in developer mode that haven't been given
+     * back yet, along with where they were borrowed from.
+     */
+    private final Map<ByteBuffer, Throwable> borrowed = new IdentityHashMap<ByteBuffer, Throwable>();
+
+    /**
+     * The time every tracked buffer was borrowed at.
+     */
+    private final Map<ByteBuffer, Long> borrowedTimes = new IdentityHashMap<ByteBuffer, Long>();
+
+    /**
+     * The amount of buffers that have been borrowed.
+     */
+    private final AtomicLong acquired = new AtomicLong();
+
+    /**
+     * The amount of buffers that have been given back.
+     */
+    private final AtomicLong released = new AtomicLong();
+
+    /**
+     * The amount of buffers that had to be allocated because none were
+     * pooled.
+     */
+    private final AtomicLong allocated = new AtomicLong();
+
+    /**
+     * The amount of bytes allocated for buffers that were too big to be
+     * pooled.
+     */
+    private final AtomicLong unpooledBytes = new AtomicLong();
+
+    /**
+     * Create a new {@link BufferPool}.
+     */
+    private BufferPool() {
+        @SuppressWarnings("unchecked")
+        Queue<ByteBuffer>[] pools = (Queue<ByteBuffer>[]) new Queue<?>[SIZES.length];
+        this.pools = pools;
+        pooled = new AtomicInteger[SIZES.length];
+
+        for (int i = 0; i < SIZES.length; i++) {
+            pools[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+            pooled[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * Borrows a buffer that can hold at least the argued amount of bytes. The
+     * buffer is cleared, but may still hold the bytes of whatever packet it
+     * was last used for.
+     *
+     * @param size
+     *            the amount of bytes needed.
+     * @return the buffer.
+     */
+    public ByteBuffer acquire(int size) {
+        int index = classOf(size);
+
+        /** Too big to be pooled, just allocate it. */
+        if (index == -1) {
+            unpooledBytes.addAndGet(size);
+            return ByteBuffer.allocate(size);
+        }
+
+        /** Check this thread's cache first, then the shared pool. */
+        ByteBuffer buffer = caches.get()[index].poll();
+
+        if (buffer == null) {
+            buffer = pools[index].poll();
+
+            if (buffer != null) {
+                pooled[index].decrementAndGet();
+            } else {
+                buffer = ByteBuffer.allocateDirect(SIZES[index]);
+                allocated.incrementAndGet();
+            }
+        }
+
+        buffer.clear();
+        acquired.incrementAndGet();
+
+        if (Server.isInDeveloperMode()) {
+            synchronized (borrowed) {
+                borrowed.put(buffer, new Throwable("Buffer of " + buffer.capacity() + " bytes borrowed here"));
+                borrowedTimes.put(buffer, System.currentTimeMillis());
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Gives a buffer back to the pool so it can be borrowed again. Buffers
+     * that weren't borrowed from this pool are ignored. The buffer must not be
+     * used again after it has been given back.
+     *
+     * @param buffer
+     *            the buffer to give back.
+     */
+    public void release(ByteBuffer buffer) {
+        if (!buffer.isDirect()) {
+            return;
+        }
+
+        int index = classOf(buffer.capacity());
+
+        if (index == -1 || SIZES[index] != buffer.capacity()) {
+            return;
+        }
+
+        released.incrementAndGet();
+
+        if (Server.isInDeveloperMode()) {
+            synchronized (borrowed) {
+                borrowed.remove(buffer);
+                borrowedTimes.remove(buffer);
+            }
+        }
+
+        /** Keep it for this thread, or share it if this thread has enough. */
+        ArrayDeque<ByteBuffer> cache = caches.get()[index];
+
+        if (cache.size() < THREAD_CACHE_SIZE) {
+            cache.push(buffer);
+        } else if (pooled[index].get() < Math.min(MAXIMUM_POOLED, MAXIMUM_POOLED_BYTES / SIZES[index])) {
+            pooled[index].incrementAndGet();
+            pools[index].offer(buffer);
+        }
+    }
+
+    /**
+     * Reports every tracked buffer that has been borrowed for too long as a
+     * leak, along with where it was borrowed from. Buffers are only ever
+     * reported once. This does nothing unless the server is in developer
+     * mode.
+     */
+    public void checkLeaks() {
+        if (!Server.isInDeveloperMode()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+
+        synchronized (borrowed) {
+            for (Iterator<Map.Entry<ByteBuffer, Long>> i = borrowedTimes.entrySet().iterator(); i.hasNext();) {
+                Map.Entry<ByteBuffer, Long> entry = i.next();
+
+                if (now - entry.getValue() > LEAK_TIME) {
+                    Server.print("Possible buffer leak, a buffer has not been released for " + ((now - entry.getValue()) / 1000) + " seconds!");
+                    borrowed.remove(entry.getKey()).printStackTrace();
+                    i.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the size class that fits the argued amount of bytes.
+     *
+     * @param size
+     *            the amount of bytes.
+     * @return the index of the class, or -1 if it is too big for every class.
+     */
+    private static int classOf(int size) {
+        for (int i = 0; i < SIZES.length; i++) {
+            if (size <= SIZES[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the amount of buffers that have been borrowed.
+     */
+    public long getAcquired() {
+        return acquired.get();
+    }
+
+    /**
+     * @return the amount of buffers that have been given back.
+     */
+    public long getReleased() {
+        return released.get();
+    }
+
+    /**
+     * @return the amount of buffers that had to be allocated.
+     */
+    public long getAllocated() {
+        return allocated.get();
+    }
+
+    /**
+     * @return the amount of bytes allocated for buffers too big to be pooled.
+     */
+    public long getUnpooledBytes() {
+        return unpooledBytes.get();
+    }
+
+    /**
+     * @return the singleton.
+     */
+    public static BufferPool getSingleton() {
+        return singleton;
+    }
+}
@@ -1,5 +1,6 @@
 package server.net.buffer;
 
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 
 import server.net.ISAACCipher;
@@ -58,14 +59,12 @@ public abstract class PacketBuffer {
     private int bitPosition = 0;
 
     /**
-     * Creates a new InBuffer.
+     * Creates a new InBuffer, which has nothing to read until it is reset.
      * 
-     * @param data
-     *            the data
      * @return a new InBuffer
      */
-    public static final InBuffer newInBuffer(ByteBuffer data) {
-        return new InBuffer(data);
+    public static final InBuffer newInBuffer() {
+        return new InBuffer();
     }
 
     /**
@@ -127,23 +126,85 @@ public abstract class PacketBuffer {
     }
 
     /**
-     * A StreamBuffer used to read incoming data.
+     * A StreamBuffer used to read incoming data. An InBuffer is a view of a
+     * single packet inside of the {@link RingBuffer} it was read into, and is
+     * reset to view the next packet instead of being created again.
      * 
      * @author blakeman8192
      */
     public static final class InBuffer extends PacketBuffer {
 
-        /** The internal buffer. */
-        private ByteBuffer buffer;
+        /** The bytes of the ring being viewed. */
+        private byte[] bytes = new byte[1];
+
+        /** The position of the next byte in the ring. */
+        private long position;
+
+        /** The position after the last byte of the packet in the ring. */
+        private long limit;
 
         /**
          * Creates a new InBuffer.
+         */
+        private InBuffer() {
+
+        }
+
+        /**
+         * Makes this buffer view a packet in a ring.
          * 
-         * @param buffer
-         *            the buffer
+         * @param ring
+         *            the ring the packet was read into
+         * @param position
+         *            the position of the packet in the ring
+         * @param length
+         *            the length of the packet
+         * @return this buffer
          */
-        private InBuffer(ByteBuffer buffer) {
-            this.buffer = buffer;
+        public InBuffer reset(RingBuffer ring, long position, int length) {
+            this.bytes = ring.getBytes();
+            this.position = position;
+            this.limit = position + length;
+            setAccessType(AccessType.BYTE_ACCESS);
+            return this;
+        }
+
+        /**
+         * Skips over bytes without reading them.
+         * 
+         * @param amount
+         *            the amount of bytes to skip
+         */
+        public void skip(int amount) {
+            if (amount > remaining()) {
+                throw new BufferUnderflowException();
+            }
+
+            position += amount;
+        }
+
+        /**
+         * Gets the amount of bytes left in the packet.
+         * 
+         * @return the amount of bytes left
+         */
+        public int remaining() {
+            return (int) (limit - position);
+        }
+
+        /**
+         * Gets a byte of the packet.
+         * 
+         * @param position
+         *            the position of the byte in the ring
+         * @return the byte
+         */
+        private byte get(long position) {
+            if (position >= limit) {
+                throw new BufferUnderflowException();
+            }
+
+            return bytes[(int) position & (bytes.length - 1)];
         }
 
         @Override
@@ -163,7 +224,7 @@ public abstract class PacketBuffer {
          * @return the value
          */
         public int readByte(boolean signed, ValueType type) {
-            int value = buffer.get();
+            int value = get(position++);
             switch (type) {
                 case A:
                     value = value - 128;
@@ -574,8 +635,8 @@ public abstract class PacketBuffer {
         public byte[] readBytesReverse(int amount, ValueType type) {
             byte[] data = new byte[amount];
             int dataPosition = 0;
-            for (int i = buffer.position() + amount - 1; i >= buffer.position(); i--) {
-                int value = buffer.get(i);
+            for (long i = position + amount - 1; i >= position; i--) {
+                int value = get(i);
                 switch (type) {
                     case A:
                         value -= 128;
@@ -594,15 +655,6 @@ public abstract class PacketBuffer {
             return data;
         }
 
-        /**
-         * Gets the internal buffer.
-         * 
-         * @return the buffer
-         */
-        public ByteBuffer getBuffer() {
-            return buffer;
-        }
-
     }
 
     /**
@@ -619,13 +671,38 @@ public abstract class PacketBuffer {
         private int lengthPosition = 0;
 
         /**
-         * Creates a new OutBuffer.
+         * Creates a new OutBuffer, borrowing the internal buffer from the
+         * {@link BufferPool}. The internal buffer is given back once it has
+         * been sent, or by calling {@link #release()} if it is never sent.
          * 
          * @param size
          *            the size
          */
         private OutBuffer(int size) {
-            buffer = ByteBuffer.allocate(size);
+            buffer = BufferPool.getSingleton().acquire(size);
+        }
+
+        /**
+         * Gives the internal buffer back to the {@link BufferPool}. This should
+         * only be used for buffers that are not going to be sent, and the
+         * buffer must not be used afterwards.
+         */
+        public void release() {
+            BufferPool.getSingleton().release(buffer);
+            buffer = null;
+        }
+
+        /**
+         * Copies the bytes written to this buffer into a new array.
+         * 
+         * @return the bytes written.
+         */
+        public byte[] toArray() {
+            ByteBuffer written = buffer.duplicate();
+            written.flip();
+            byte[] bytes = new byte[written.remaining()];
+            written.get(bytes);
+            return bytes;
         }
 
         @Override
@@ -710,9 +787,12 @@ public abstract class PacketBuffer {
          * @param from
          */
         public void writeBytes(ByteBuffer from) {
-            for (int i = 0; i < from.position(); i++) {
-                writeByte(from.get(i));
+            if (getAccessType() != AccessType.BYTE_ACCESS) {
+                throw new IllegalStateException("Illegal access type.");
             }
+            ByteBuffer written = from.duplicate();
+            written.flip();
+            buffer.put(written);
         }
 
         /**
@@ -761,26 +841,34 @@ public abstract class PacketBuffer {
             int requiredSpace = bytePos - buffer.position() + 1;
             requiredSpace += (amount + 7) / 8;
             if (buffer.remaining() < requiredSpace) {
+                // Copy the bits written so far as well, which are past the
+                // byte position.
                 ByteBuffer old = buffer;
-                buffer = ByteBuffer.allocate(old.capacity() + requiredSpace);
-                old.flip();
+                int position = old.position();
+                buffer = BufferPool.getSingleton().acquire(old.capacity() + requiredSpace);
+                old.limit(Math.min(bytePos + 1, old.capacity()));
+                old.position(0);
                 buffer.put(old);
+                buffer.position(position);
+                BufferPool.getSingleton().release(old);
             }
 
+            // Pooled buffers aren't zeroed, so clear each byte as it is first
+            // written to.
             for (; amount > bitOffset; bitOffset = 8) {
-                byte tmp = buffer.get(bytePos);
+                byte tmp = bitOffset == 8 ? 0 : buffer.get(bytePos);
                 tmp &= ~BIT_MASK[bitOffset];
                 tmp |= (value >> (amount - bitOffset)) & BIT_MASK[bitOffset];
                 buffer.put(bytePos++, tmp);
                 amount -= bitOffset;
             }
             if (amount == bitOffset) {
-                byte tmp = buffer.get(bytePos);
+                byte tmp = bitOffset == 8 ? 0 : buffer.get(bytePos);
                 tmp &= ~BIT_MASK[bitOffset];
                 tmp |= value & BIT_MASK[bitOffset];
                 buffer.put(bytePos, tmp);
             } else {
-                byte tmp = buffer.get(bytePos);
+                byte tmp = bitOffset == 8 ? 0 : buffer.get(bytePos);
                 tmp &= ~(BIT_MASK[amount] << (bitOffset - amount));
                 tmp |= (value & BIT_MASK[amount]) << (bitOffset - amount);
                 buffer.put(bytePos, tmp);
@@ -0,0 +1,219 @@
+package server.net.buffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A growable ring of bytes that the data read from a single client is read
+ * into. Data is read straight into the free part of the ring, packets are
+ * found in the data without moving it, and the world of the client reads
+ * every packet straight out of the ring through a
+ * {@link PacketBuffer.InBuffer} before giving the space back. Nothing is ever
+ * copied or compacted, other than when the ring fills up and is grown. <br>
+ * <br>
+ *
+ * Every byte is addressed by its position in the stream of data read from the
+ * client, which only ever goes up. The selector thread reading from the client
+ * is the only thread that writes to the ring or grows it, and the world of the
+ * client is the only thread that gives space back, so the two never wait on
+ * each other. The bytes of a packet are never overwritten before the world
+ * gives them back, and when the ring grows the bytes waiting to be handled are
+ * copied to the new ring before it is used, so the world can read a packet
+ * from either ring.
+ *
+ * @author lare96
+ */
+public final class RingBuffer {
+
+    /**
+     * The largest capacity the ring can grow to.
+     */
+    private final int maximumCapacity;
+
+    /**
+     * The bytes of the ring. The capacity is always a power of two.
+     */
+    private volatile byte[] bytes;
+
+    /**
+     * Views of the whole ring, used to read from the socket into the part
+     * before and the part after the end of the ring.
+     */
+    private ByteBuffer[] views;
+
+    /**
+     * The position the next byte read from the socket is placed at.
+     */
+    private long writeIndex;
+
+    /**
+     * The position of the first byte that hasn't been decoded yet.
+     */
+    private long decodeIndex;
+
+    /**
+     * The position of the first byte that hasn't been handled by the world
+     * yet. Every byte before this can be overwritten.
+     */
+    private volatile long readIndex;
+
+    /**
+     * Create a new {@link RingBuffer}.
+     *
+     * @param capacity
+     *            the capacity to start with, which must be a power of two.
+     * @param maximumCapacity
+     *            the largest capacity the ring can grow to.
+     */
+    public RingBuffer(int capacity, int maximumCapacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+
+        this.maximumCapacity = maximumCapacity;
+        this.bytes = new byte[capacity];
+        this.views = new ByteBuffer[] { ByteBuffer.wrap(bytes), ByteBuffer.wrap(bytes) };
+    }
+
+    /**
+     * Reads as much data from the socket as fits in the free part of the
+     * ring, growing the ring first if it is full. This should only be called
+     * from the selector thread.
+     *
+     * @param socket
+     *            the socket to read from.
+     * @return the amount of bytes read, or -1 if the socket has been closed.
+     * @throws IOException
+     *             if the socket can't be read from.
+     */
+    public int fill(SocketChannel socket) throws IOException {
+        if (free() == 0 && bytes.length < maximumCapacity) {
+            grow();
+        }
+
+        int free = free();
+
+        if (free == 0) {
+            return 0;
+        }
+
+        /** The free part of the ring may wrap around the end. */
+        int capacity = bytes.length;
+        int offset = (int) writeIndex & (capacity - 1);
+        int first = Math.min(free, capacity - offset);
+
+        views[0].limit(offset + first).position(offset);
+        views[1].limit(free - first).position(0);
+
+        long read = first == free ? socket.read(views[0]) : socket.read(views);
+
+        if (read > 0) {
+            writeIndex += read;
+        }
+        return (int) read;
+    }
+
+    /**
+     * Doubles the capacity of the ring, copying the bytes that haven't been
+     * handled yet to the same positions in the new ring.
+     */
+    private void grow() {
+        byte[] old = bytes;
+        byte[] grown = new byte[Math.min(old.length << 1, maximumCapacity)];
+
+        for (long position = readIndex; position < writeIndex; position++) {
+            grown[(int) position & (grown.length - 1)] = old[(int) position & (old.length - 1)];
+        }
+
+        views = new ByteBuffer[] { ByteBuffer.wrap(grown), ByteBuffer.wrap(grown) };
+        bytes = grown;
+    }
+
+    /**
+     * @return the amount of bytes that can be read from the socket before
+     *         the ring is full.
+     */
+    public int free() {
+        return bytes.length - (int) (writeIndex - readIndex);
+    }
+
+    /**
+     * @return true if the ring is full and can't grow any more.
+     */
+    public boolean isExhausted() {
+        return free() == 0 && bytes.length >= maximumCapacity;
+    }
+
+    /**
+     * @return the amount of bytes that have been read but not decoded.
+     */
+    public int available() {
+        return (int) (writeIndex - decodeIndex);
+    }
+
+    /**
+     * Looks at a byte that hasn't been decoded yet without decoding it.
+     *
+     * @param offset
+     *            the offset from the first byte that hasn't been decoded.
+     * @return the byte, as an unsigned value.
+     */
+    public int peek(int offset) {
+        return get(decodeIndex + offset) & 0xff;
+    }
+
+    /**
+     * Marks bytes as decoded.
+     *
+     * @param amount
+     *            the amount of bytes decoded.
+     * @return the position of the first byte decoded.
+     */
+    public long take(int amount) {
+        long position = decodeIndex;
+        decodeIndex += amount;
+        return position;
+    }
+
+    /**
+     * Gets a byte that has been read.
+     *
+     * @param position
+     *            the position of the byte.
+     * @return the byte.
+     */
+    public byte get(long position) {
+        byte[] bytes = this.bytes;
+        return bytes[(int) position & (bytes.length - 1)];
+    }
+
+    /**
+     * Gives back the space of every byte before a position, once the world
+     * has handled them. This should only be called from the world of the
+     * client.
+     *
+     * @param position
+     *            the position of the first byte that is still needed.
+     */
+    public void release(long position) {
+        if (position > readIndex) {
+            readIndex = position;
+        }
+    }
+
+    /**
+     * @return the bytes of the ring, which a packet can be read from until
+     *         it has been given back.
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the capacity of the ring.
+     */
+    public int getCapacity() {
+        return bytes.length;
+    }
+}
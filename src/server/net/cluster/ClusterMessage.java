@@ -0,0 +1,209 @@
+package server.net.cluster;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A single message sent between the nodes of a cluster. Every message is sent
+ * as a frame made up of the length of the rest of the frame as an unsigned
+ * short, the opcode of the message as a byte, and the payload. <br>
+ * <br>
+ *
+ * The payload of every message is written with a {@link DataOutputStream}, so
+ * names are written as longs (see
+ * {@link server.util.Misc#nameToLong(String)}) and text is written as
+ * modified UTF-8.
+ *
+ * @author lare96
+ */
+public final class ClusterMessage {
+
+    /**
+     * Sent once by the node that opened a connection: the id of the node and
+     * the secret of the node.
+     */
+    public static final int HELLO = 1;
+
+    /**
+     * Asks the node that decides who a name belongs to if a player can log
+     * in: the id of the request and the name.
+     */
+    public static final int CLAIM = 2;
+
+    /**
+     * The answer to a {@link #CLAIM}: the id of the request and if the player
+     * can log in.
+     */
+    public static final int CLAIM_RESULT = 3;
+
+    /**
+     * A player has logged in on the node that sent the message: the name.
+     */
+    public static final int ONLINE = 4;
+
+    /**
+     * A player has logged out of the node that sent the message, or has given
+     * up logging in: the name.
+     */
+    public static final int OFFLINE = 5;
+
+    /**
+     * A private message for a player on the node the message is sent to: the
+     * name of the receiver, the name of the sender, the rights of the sender,
+     * the length of the packed message and the packed message.
+     */
+    public static final int PRIVATE_MESSAGE = 6;
+
+    /**
+     * A message for every player on the node the message is sent to: the
+     * message.
+     */
+    public static final int BROADCAST = 7;
+
+    /**
+     * The largest frame that can be sent.
+     */
+    public static final int MAXIMUM_FRAME = 65535;
+
+    /**
+     * The bytes of this frame.
+     */
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+
+    /**
+     * Writes the payload of this frame.
+     */
+    private final DataOutputStream out = new DataOutputStream(bytes);
+
+    /**
+     * Create a new {@link ClusterMessage}.
+     *
+     * @param opcode
+     *            the opcode of this message.
+     */
+    public ClusterMessage(int opcode) {
+        try {
+            out.writeShort(0);
+            out.writeByte(opcode);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes a byte.
+     *
+     * @param value
+     *            the byte to write.
+     * @return this message, for chaining.
+     */
+    public ClusterMessage writeByte(int value) {
+        try {
+            out.writeByte(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return this;
+    }
+
+    /**
+     * Writes a short.
+     *
+     * @param value
+     *            the short to write.
+     * @return this message, for chaining.
+     */
+    public ClusterMessage writeShort(int value) {
+        try {
+            out.writeShort(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return this;
+    }
+
+    /**
+     * Writes an int.
+     *
+     * @param value
+     *            the int to write.
+     * @return this message, for chaining.
+     */
+    public ClusterMessage writeInt(int value) {
+        try {
+            out.writeInt(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return this;
+    }
+
+    /**
+     * Writes a long.
+     *
+     * @param value
+     *            the long to write.
+     * @return this message, for chaining.
+     */
+    public ClusterMessage writeLong(long value) {
+        try {
+            out.writeLong(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return this;
+    }
+
+    /**
+     * Writes a string.
+     *
+     * @param value
+     *            the string to write.
+     * @return this message, for chaining.
+     */
+    public ClusterMessage writeString(String value) {
+        try {
+            out.writeUTF(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return this;
+    }
+
+    /**
+     * Writes part of an array of bytes.
+     *
+     * @param value
+     *            the bytes to write.
+     * @param length
+     *            the amount of bytes to write.
+     * @return this message, for chaining.
+     */
+    public ClusterMessage writeBytes(byte[] value, int length) {
+        try {
+            out.write(value, 0, length);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return this;
+    }
+
+    /**
+     * Finishes this message.
+     *
+     * @return the frame to send.
+     */
+    public byte[] toFrame() {
+        byte[] frame = bytes.toByteArray();
+        int length = frame.length - 2;
+
+        if (length > MAXIMUM_FRAME) {
+            throw new IllegalStateException("Cluster message too large: " + length);
+        }
+
+        frame[0] = (byte) (length >> 8);
+        frame[1] = (byte) length;
+        return frame;
+    }
+}
@@ -0,0 +1,790 @@
+package server.net.cluster;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import server.Server;
+import server.util.Misc;
+import server.world.World;
+import server.world.entity.player.Player;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Connects this server to the other servers in a cluster. Every server is a
+ * node with its own world number, and the nodes are listed in the
+ * <code>cluster_nodes.json</code> file along with the address players connect
+ * to and the address the node listens on for other nodes. The node a server
+ * runs as is picked with the first argument given to the server, so several
+ * nodes can be run on the same machine. A server that is the only node in the
+ * file doesn't open any connections. <br>
+ * <br>
+ *
+ * Every node keeps a directory of which node every online player is on, which
+ * is used for the friends list and for sending private messages to players on
+ * other nodes. Nodes tell each other when players log in and out, and tell a
+ * node everything they know about their own players when it connects. <br>
+ * <br>
+ *
+ * To make sure nobody can log in on two nodes at once, every name belongs to
+ * one of the nodes in the file, picked from the name itself, and a player can
+ * only log in once the node the name belongs to has agreed. The node a name
+ * belongs to never changes while the cluster runs, so every node always asks
+ * the same node whichever nodes are connected. If that node isn't connected
+ * or can't be reached in time the login is refused. <br>
+ * <br>
+ *
+ * Every node in the file has a secret it sends when it connects to another
+ * node. A node that connects in is only accepted if it connects from the
+ * cluster host listed for it, has a lower id than this node (because only
+ * those connect in) and sends the secret listed for it.
+ *
+ * @author lare96
+ */
+public final class ClusterNode {
+
+    /**
+     * The singleton instance. Created eagerly because the node is used from
+     * the threads of every world and from the threads reading messages.
+     */
+    private static final ClusterNode singleton = new ClusterNode();
+
+    /**
+     * How long to wait between attempts to connect to nodes that aren't
+     * connected, in milliseconds.
+     */
+    private static final int RECONNECT_DELAY = 5000;
+
+    /**
+     * How long to wait for a node to agree to a login, in milliseconds.
+     */
+    private static final int CLAIM_TIMEOUT = 5000;
+
+    /**
+     * The largest {@link ClusterMessage#HELLO} frame accepted.
+     */
+    private static final int MAXIMUM_HELLO = 512;
+
+    /**
+     * The charset secrets are compared in.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * The id of this node, which is also its world number.
+     */
+    private int id;
+
+    /**
+     * The address players connect to.
+     */
+    private InetSocketAddress address;
+
+    /**
+     * The address other nodes connect to.
+     */
+    private InetSocketAddress clusterAddress;
+
+    /**
+     * The secret this node sends to prove who it is when it connects.
+     */
+    private String secret;
+
+    /**
+     * The other nodes in the cluster, by id.
+     */
+    private final Map<Integer, ClusterPeer> peers = new ConcurrentHashMap<Integer, ClusterPeer>();
+
+    /**
+     * The ids of every node in the cluster, including this one, in order.
+     */
+    private int[] nodes = new int[0];
+
+    /**
+     * The node every online player is on, by name.
+     */
+    private final ConcurrentMap<Long, Integer> directory = new ConcurrentHashMap<Long, Integer>();
+
+    /**
+     * The node every name that belongs to this node has been given to, by
+     * name.
+     */
+    private final ConcurrentMap<Long, Integer> claims = new ConcurrentHashMap<Long, Integer>();
+
+    /**
+     * The logins waiting for another node to agree, by the id of the request.
+     */
+    private final ConcurrentMap<Long, Claim> requests = new ConcurrentHashMap<Long, Claim>();
+
+    /**
+     * Used to give every request a unique id.
+     */
+    private final AtomicLong nextRequest = new AtomicLong();
+
+    /**
+     * Create a new {@link ClusterNode}.
+     */
+    private ClusterNode() {
+
+    }
+
+    /**
+     * Reads the nodes in the cluster from the <code>cluster_nodes.json</code>
+     * file.
+     *
+     * @param id
+     *            the id of the node this server runs as.
+     * @throws Exception
+     *             if the file can't be read or doesn't contain the node.
+     */
+    public void load(int id) throws Exception {
+        JsonArray array = (JsonArray) new JsonParser().parse(new FileReader(Misc.CLUSTER_NODES));
+        this.id = id;
+
+        for (int i = 0; i < array.size(); i++) {
+            JsonObject reader = (JsonObject) array.get(i);
+            int node = reader.get("id").getAsInt();
+            String host = reader.get("host").getAsString();
+            int port = reader.get("port").getAsInt();
+            String clusterHost = reader.get("cluster-host").getAsString();
+            int clusterPort = reader.get("cluster-port").getAsInt();
+            String nodeSecret = reader.has("secret") ? reader.get("secret").getAsString() : "";
+
+            if (node < 1 || node > 255) {
+                throw new IllegalStateException("Invalid cluster node id: " + node);
+            }
+
+            if (array.size() > 1 && nodeSecret.isEmpty()) {
+                throw new IllegalStateException("Cluster node " + node + " has no secret.");
+            }
+
+            if (node == id) {
+                address = new InetSocketAddress(host, port);
+                clusterAddress = new InetSocketAddress(clusterHost, clusterPort);
+                secret = nodeSecret;
+            } else if (peers.put(node, new ClusterPeer(node, clusterHost, clusterPort, nodeSecret)) != null) {
+                throw new IllegalStateException("Duplicate cluster node id: " + node);
+            }
+        }
+
+        if (address == null) {
+            throw new IllegalStateException("Cluster node " + id + " not found in " + Misc.CLUSTER_NODES);
+        }
+
+        List<Integer> ids = new ArrayList<Integer>(peers.keySet());
+        ids.add(id);
+        Collections.sort(ids);
+        nodes = new int[ids.size()];
+
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = ids.get(i);
+        }
+    }
+
+    /**
+     * Starts listening for the other nodes and connecting to them. Nodes only
+     * connect to the nodes with a higher id, so there is only ever one
+     * connection between two nodes.
+     *
+     * @throws IOException
+     *             if this node can't listen for the other nodes.
+     */
+    public void start() throws IOException {
+        if (peers.isEmpty()) {
+            return;
+        }
+
+        final ServerSocket listener = new ServerSocket();
+        listener.setReuseAddress(true);
+        listener.bind(clusterAddress);
+
+        Thread accept = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    try {
+                        accept(listener.accept());
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }, "ClusterListener");
+        accept.setDaemon(true);
+        accept.start();
+
+        Thread connect = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    for (ClusterPeer peer : peers.values()) {
+                        if (peer.getId() > id && !peer.isConnected()) {
+                            connect(peer);
+                        }
+                    }
+
+                    try {
+                        Thread.sleep(RECONNECT_DELAY);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }, "ClusterConnector");
+        connect.setDaemon(true);
+        connect.start();
+
+        Server.print("Cluster node " + id + " listening on " + clusterAddress + " for " + peers.size() + " other nodes.");
+    }
+
+    /**
+     * Identifies a node that has connected to this node, making sure it is
+     * the node it says it is.
+     *
+     * @param socket
+     *            the socket the node connected with.
+     */
+    private void accept(Socket socket) {
+        try {
+            socket.setSoTimeout(CLAIM_TIMEOUT);
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            int length = in.readUnsignedShort();
+
+            if (length < 1 || length > MAXIMUM_HELLO) {
+                reject(socket, "sent a frame of " + length + " bytes");
+                return;
+            }
+
+            byte[] frame = new byte[length];
+            in.readFully(frame);
+
+            if ((frame[0] & 0xff) != ClusterMessage.HELLO) {
+                reject(socket, "didn't say hello");
+                return;
+            }
+
+            DataInputStream hello = new DataInputStream(new ByteArrayInputStream(frame, 1, length - 1));
+            int node = hello.readInt();
+            String nodeSecret = hello.readUTF();
+            ClusterPeer peer = peers.get(node);
+
+            if (peer == null) {
+                reject(socket, "is unknown node " + node);
+                return;
+            }
+
+            /** Only the nodes with a lower id connect to this node. */
+            if (node >= id) {
+                reject(socket, "is node " + node + ", which this node connects to");
+                return;
+            }
+
+            if (!socket.getInetAddress().equals(InetAddress.getByName(peer.getHost()))) {
+                reject(socket, "isn't the host of node " + node);
+                return;
+            }
+
+            if (!MessageDigest.isEqual(nodeSecret.getBytes(UTF_8), peer.getSecret().getBytes(UTF_8))) {
+                reject(socket, "sent the wrong secret for node " + node);
+                return;
+            }
+
+            socket.setSoTimeout(0);
+            socket.setTcpNoDelay(true);
+            peer.connected(socket);
+        } catch (IOException e) {
+            Server.print("Cluster node connecting from " + socket.getRemoteSocketAddress() + " failed: " + e.getMessage());
+
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Refuses a node that has connected to this node.
+     *
+     * @param socket
+     *            the socket the node connected with.
+     * @param reason
+     *            why the node was refused.
+     * @throws IOException
+     *             if the socket can't be closed.
+     */
+    private void reject(Socket socket, String reason) throws IOException {
+        Server.print("Cluster node connecting from " + socket.getRemoteSocketAddress() + " " + reason + ", rejected.");
+        socket.close();
+    }
+
+    /**
+     * Attempts to connect to another node.
+     *
+     * @param peer
+     *            the node to connect to.
+     */
+    private void connect(ClusterPeer peer) {
+        Socket socket = new Socket();
+
+        try {
+            /** Connect from the cluster host, which the node checks. */
+            socket.bind(new InetSocketAddress(clusterAddress.getAddress(), 0));
+            socket.connect(new InetSocketAddress(peer.getHost(), peer.getPort()), CLAIM_TIMEOUT);
+            socket.setTcpNoDelay(true);
+
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.write(new ClusterMessage(ClusterMessage.HELLO).writeInt(id).writeString(secret).toFrame());
+            out.flush();
+
+            peer.connected(socket);
+        } catch (IOException e) {
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Called when another node has been connected. The node is told about
+     * every player online on this node.
+     *
+     * @param peer
+     *            the node that was connected.
+     */
+    public void joined(ClusterPeer peer) {
+        Server.print("Connected to cluster node " + peer.getId() + ".");
+
+        for (Map.Entry<Long, Integer> entry : directory.entrySet()) {
+            if (entry.getValue() == id) {
+                peer.send(new ClusterMessage(ClusterMessage.ONLINE).writeLong(entry.getKey()));
+            }
+        }
+    }
+
+    /**
+     * Called when the connection to another node has been lost. Every player
+     * on that node is treated as logged out, and the logins waiting for that
+     * node are refused when they time out.
+     *
+     * @param peer
+     *            the node that was lost.
+     */
+    public void lost(ClusterPeer peer) {
+        Server.print("Disconnected from cluster node " + peer.getId() + ".");
+        Integer node = peer.getId();
+
+        for (Long name : new ArrayList<Long>(claims.keySet())) {
+            claims.remove(name, node);
+        }
+
+        for (Long name : new ArrayList<Long>(directory.keySet())) {
+            if (directory.remove(name, node)) {
+                notifyFriends(name, 0);
+            }
+        }
+    }
+
+    /**
+     * Handles a message sent by another node. This is called from the thread
+     * reading messages from that node.
+     *
+     * @param peer
+     *            the node that sent the message.
+     * @param opcode
+     *            the opcode of the message.
+     * @param in
+     *            the payload of the message.
+     * @throws IOException
+     *             if the payload is malformed.
+     */
+    public void handle(ClusterPeer peer, int opcode, DataInputStream in) throws IOException {
+        switch (opcode) {
+            case ClusterMessage.CLAIM:
+                long request = in.readLong();
+                long name = in.readLong();
+                peer.send(new ClusterMessage(ClusterMessage.CLAIM_RESULT).writeLong(request).writeByte(claim(name, peer.getId()) ? 1 : 0));
+                break;
+            case ClusterMessage.CLAIM_RESULT:
+                Claim claim = requests.remove(in.readLong());
+
+                if (claim != null) {
+                    claim.finish(in.readByte() == 1);
+                }
+                break;
+            case ClusterMessage.ONLINE:
+                name = in.readLong();
+                Integer holder = claims.putIfAbsent(name, peer.getId());
+
+                if (holder != null && holder != peer.getId()) {
+                    Server.print(Misc.longToName(name) + " is online on cluster nodes " + holder + " and " + peer.getId() + "!");
+                }
+
+                directory.put(name, peer.getId());
+                notifyFriends(name, peer.getId());
+                break;
+            case ClusterMessage.OFFLINE:
+                name = in.readLong();
+                claims.remove(name, peer.getId());
+
+                if (directory.remove(name, peer.getId())) {
+                    notifyFriends(name, 0);
+                }
+                break;
+            case ClusterMessage.PRIVATE_MESSAGE:
+                long to = in.readLong();
+                long from = in.readLong();
+                int rights = in.readUnsignedByte();
+                byte[] message = new byte[in.readUnsignedShort()];
+                in.readFully(message);
+                deliver(to, from, rights, message, message.length);
+                break;
+            case ClusterMessage.BROADCAST:
+                World.sendLocalMessage(in.readUTF());
+                break;
+            default:
+                throw new IOException("Unknown cluster message: " + opcode);
+        }
+    }
+
+    /**
+     * Gives a name to a node, if it hasn't been given to another node.
+     *
+     * @param name
+     *            the name to give.
+     * @param node
+     *            the node to give the name to.
+     * @return true if the name was given to the node.
+     */
+    private boolean claim(long name, int node) {
+        Integer holder = claims.putIfAbsent(name, node);
+        return holder == null;
+    }
+
+    /**
+     * Gets the node a name belongs to, out of every node in the cluster
+     * whether it is connected or not, so every node picks the same one.
+     *
+     * @param name
+     *            the name.
+     * @return the id of the node the name belongs to.
+     */
+    private int owner(long name) {
+        return nodes[(int) ((name & Long.MAX_VALUE) % nodes.length)];
+    }
+
+    /**
+     * Asks the node a name belongs to if a player can log in with that name.
+     * This blocks until the node has answered, so it should only be called
+     * from the threads loading character files.
+     *
+     * @param username
+     *            the name the player is logging in with.
+     * @return the login response: {@link Misc#LOGIN_RESPONSE_OK} if the player
+     *         can log in.
+     */
+    public int claim(String username) {
+        long name = Misc.nameToLong(username);
+        int owner = owner(name);
+
+        if (owner == id) {
+            return claim(name, id) ? Misc.LOGIN_RESPONSE_OK : Misc.LOGIN_RESPONSE_ACCOUNT_ONLINE;
+        }
+
+        ClusterPeer peer = peers.get(owner);
+
+        /** Nobody else can say if the name is free. */
+        if (!peer.isConnected()) {
+            Server.print("Cluster node " + owner + " isn't connected, refusing the login for " + username + "!");
+            return Misc.LOGIN_RESPONSE_LOGIN_SERVER_OFFLINE;
+        }
+
+        long request = nextRequest.incrementAndGet();
+        Claim claim = new Claim();
+        requests.put(request, claim);
+        peer.send(new ClusterMessage(ClusterMessage.CLAIM).writeLong(request).writeLong(name));
+
+        try {
+            if (!claim.await()) {
+                Server.print("Cluster node " + owner + " didn't answer the login for " + username + "!");
+                return Misc.LOGIN_RESPONSE_LOGIN_SERVER_OFFLINE;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Misc.LOGIN_RESPONSE_COULD_NOT_COMPLETE_LOGIN;
+        } finally {
+            requests.remove(request);
+        }
+
+        return claim.isGranted() ? Misc.LOGIN_RESPONSE_OK : Misc.LOGIN_RESPONSE_ACCOUNT_ONLINE;
+    }
+
+    /**
+     * Tells every node that a player has finished logging in on this node.
+     *
+     * @param player
+     *            the player that logged in.
+     */
+    public void online(Player player) {
+        long name = Misc.nameToLong(player.getUsername());
+        directory.put(name, id);
+        claims.putIfAbsent(name, id);
+        send(new ClusterMessage(ClusterMessage.ONLINE).writeLong(name));
+        notifyFriends(name, id);
+    }
+
+    /**
+     * Tells every node that a player has left this node, whether the player
+     * was online or only logging in.
+     *
+     * @param player
+     *            the player that left.
+     */
+    public void release(Player player) {
+        if (player.getUsername() == null) {
+            return;
+        }
+
+        long name = Misc.nameToLong(player.getUsername());
+
+        /** Another player with the same name might be online here. */
+        if (World.getOnlinePlayer(name) != null) {
+            return;
+        }
+
+        claims.remove(name, id);
+        send(new ClusterMessage(ClusterMessage.OFFLINE).writeLong(name));
+
+        if (directory.remove(name, id)) {
+            notifyFriends(name, 0);
+        }
+    }
+
+    /**
+     * Sends a private message to a player on any node.
+     *
+     * @param from
+     *            the player sending the message.
+     * @param to
+     *            the name of the player the message is for.
+     * @param message
+     *            the packed message.
+     * @param messageSize
+     *            the length of the packed message.
+     */
+    public void sendPrivateMessage(Player from, long to, byte[] message, int messageSize) {
+        Integer node = directory.get(to);
+
+        if (node == null) {
+            return;
+        }
+
+        long name = Misc.nameToLong(from.getUsername());
+
+        if (node == id) {
+            deliver(to, name, from.getStaffRights(), message, messageSize);
+            return;
+        }
+
+        ClusterPeer peer = peers.get(node);
+
+        if (peer != null) {
+            peer.send(new ClusterMessage(ClusterMessage.PRIVATE_MESSAGE).writeLong(to).writeLong(name).writeByte(from.getStaffRights()).writeShort(messageSize).writeBytes(message, messageSize));
+        }
+    }
+
+    /**
+     * Sends a private message to a player on this node, from the thread of
+     * the world the player is in.
+     *
+     * @param to
+     *            the name of the player the message is for.
+     * @param from
+     *            the name of the player sending the message.
+     * @param rights
+     *            the rights of the player sending the message.
+     * @param message
+     *            the packed message.
+     * @param messageSize
+     *            the length of the packed message.
+     */
+    private void deliver(long to, final long from, final int rights, final byte[] message, final int messageSize) {
+        final Player player = World.getOnlinePlayer(to);
+
+        if (player == null) {
+            return;
+        }
+
+        player.getWorld().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!player.isUnregistered() && player.getSlot() != -1) {
+                    player.getServerPacketBuilder().sendPrivateMessage(from, rights, message, messageSize);
+                }
+            }
+        });
+    }
+
+    /**
+     * Sends a message to every player on every other node.
+     *
+     * @param message
+     *            the message to send.
+     */
+    public void broadcast(String message) {
+        send(new ClusterMessage(ClusterMessage.BROADCAST).writeString(message));
+    }
+
+    /**
+     * Sends a message to every connected node.
+     *
+     * @param message
+     *            the message to send.
+     */
+    private void send(ClusterMessage message) {
+        for (ClusterPeer peer : peers.values()) {
+            peer.send(message);
+        }
+    }
+
+    /**
+     * Updates the friends list of every player on this node that has added a
+     * player, from the thread of the world they are in.
+     *
+     * @param name
+     *            the name of the player that was added.
+     * @param node
+     *            the node the player is on, or 0 if the player is offline.
+     */
+    private void notifyFriends(final long name, final int node) {
+        for (final World world : World.getWorlds()) {
+            world.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (Player player : world.getPlayers()) {
+                        if (player == null) {
+                            continue;
+                        }
+
+                        if (player.getFriends().contains(name)) {
+                            player.getServerPacketBuilder().loadPrivateMessage(name, node);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Gets the node a player is on.
+     *
+     * @param name
+     *            the name of the player.
+     * @return the id of the node, or 0 if the player isn't online.
+     */
+    public int getNode(long name) {
+        Integer node = directory.get(name);
+        return node == null ? 0 : node;
+    }
+
+    /**
+     * Gets the amount of players online on every node.
+     *
+     * @return the amount of players.
+     */
+    public int getPlayerAmount() {
+        return directory.size();
+    }
+
+    /**
+     * Gets the singleton instance.
+     *
+     * @return the singleton instance.
+     */
+    public static ClusterNode getSingleton() {
+        return singleton;
+    }
+
+    /**
+     * @return the id.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return the address.
+     */
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * A login waiting for another node to agree.
+     *
+     * @author lare96
+     */
+    private static final class Claim {
+
+        /**
+         * Released once the node has answered.
+         */
+        private final CountDownLatch answered = new CountDownLatch(1);
+
+        /**
+         * If the player can log in.
+         */
+        private volatile boolean granted;
+
+        /**
+         * Records the answer of the node.
+         *
+         * @param granted
+         *            if the player can log in.
+         */
+        public void finish(boolean granted) {
+            this.granted = granted;
+            answered.countDown();
+        }
+
+        /**
+         * Waits for the node to answer.
+         *
+         * @return true if the node answered in time.
+         * @throws InterruptedException
+         *             if the thread was interrupted while waiting.
+         */
+        public boolean await() throws InterruptedException {
+            return answered.await(CLAIM_TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * @return the granted.
+         */
+        public boolean isGranted() {
+            return granted;
+        }
+    }
+}
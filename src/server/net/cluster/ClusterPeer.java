@@ -0,0 +1,305 @@
+package server.net.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import server.Server;
+
+/**
+ * Another node in the cluster. Messages for a node are queued and written by
+ * a thread of their own, so a node that is slow or unreachable never holds up
+ * the thread sending the message. Messages sent while the node isn't
+ * connected are dropped.
+ *
+ * @author lare96
+ */
+public final class ClusterPeer {
+
+    /**
+     * The id of this node, which is also its world number.
+     */
+    private final int id;
+
+    /**
+     * The host this node listens on for other nodes.
+     */
+    private final String host;
+
+    /**
+     * The port this node listens on for other nodes.
+     */
+    private final int port;
+
+    /**
+     * The secret this node sends to prove who it is when it connects.
+     */
+    private final String secret;
+
+    /**
+     * The connection to this node, or <code>null</code> if it isn't
+     * connected.
+     */
+    private volatile Connection connection;
+
+    /**
+     * Create a new {@link ClusterPeer}.
+     *
+     * @param id
+     *            the id of this node.
+     * @param host
+     *            the host this node listens on for other nodes.
+     * @param port
+     *            the port this node listens on for other nodes.
+     * @param secret
+     *            the secret this node sends to prove who it is when it
+     *            connects.
+     */
+    public ClusterPeer(int id, String host, int port, String secret) {
+        this.id = id;
+        this.host = host;
+        this.port = port;
+        this.secret = secret;
+    }
+
+    /**
+     * Queues a message to be sent to this node.
+     *
+     * @param message
+     *            the message to send.
+     */
+    public void send(ClusterMessage message) {
+        Connection connection = this.connection;
+
+        if (connection != null) {
+            connection.outgoing.add(message.toFrame());
+        }
+    }
+
+    /**
+     * Starts using a socket that has just been connected to this node, closing
+     * the old one if there was one.
+     *
+     * @param socket
+     *            the socket connected to this node.
+     */
+    public void connected(Socket socket) {
+        Connection old;
+        Connection connection = new Connection(socket);
+
+        synchronized (this) {
+            old = this.connection;
+            this.connection = connection;
+        }
+
+        if (old != null) {
+            old.close();
+            ClusterNode.getSingleton().lost(this);
+        }
+
+        connection.start();
+        ClusterNode.getSingleton().joined(this);
+    }
+
+    /**
+     * Stops using a socket that has failed.
+     *
+     * @param connection
+     *            the connection that failed.
+     */
+    private void disconnected(Connection connection) {
+        synchronized (this) {
+            if (this.connection != connection) {
+                return;
+            }
+
+            this.connection = null;
+        }
+
+        connection.close();
+        ClusterNode.getSingleton().lost(this);
+    }
+
+    /**
+     * @return true if this node is connected.
+     */
+    public boolean isConnected() {
+        return connection != null;
+    }
+
+    @Override
+    public String toString() {
+        return "ClusterPeer(" + id + " - " + host + ":" + port + ")";
+    }
+
+    /**
+     * @return the id.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return the host.
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * @return the port.
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @return the secret.
+     */
+    public String getSecret() {
+        return secret;
+    }
+
+    /**
+     * A single socket connected to the node, with a thread reading messages
+     * from it and a thread writing messages to it.
+     *
+     * @author lare96
+     */
+    private final class Connection {
+
+        /**
+         * The socket connected to the node.
+         */
+        private final Socket socket;
+
+        /**
+         * The frames waiting to be written.
+         */
+        private final BlockingQueue<byte[]> outgoing = new LinkedBlockingQueue<byte[]>();
+
+        /**
+         * If this connection has been closed.
+         */
+        private volatile boolean closed;
+
+        /**
+         * Create a new {@link Connection}.
+         *
+         * @param socket
+         *            the socket connected to the node.
+         */
+        public Connection(Socket socket) {
+            this.socket = socket;
+        }
+
+        /**
+         * Starts reading and writing messages.
+         */
+        public void start() {
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    read();
+                }
+            }, "ClusterReader-" + id);
+            reader.setDaemon(true);
+            reader.start();
+
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    write();
+                }
+            }, "ClusterWriter-" + id);
+            writer.setDaemon(true);
+            writer.start();
+        }
+
+        /**
+         * Reads messages until the socket fails.
+         */
+        private void read() {
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+                while (!closed) {
+                    int length = in.readUnsignedShort();
+
+                    if (length < 1) {
+                        throw new IOException("Empty cluster message!");
+                    }
+
+                    byte[] frame = new byte[length];
+                    in.readFully(frame);
+
+                    try {
+                        ClusterNode.getSingleton().handle(ClusterPeer.this, frame[0] & 0xff, new DataInputStream(new ByteArrayInputStream(frame, 1, length - 1)));
+                    } catch (Exception e) {
+                        Server.print("Error while handling cluster message " + (frame[0] & 0xff) + " from " + ClusterPeer.this + "!");
+                        e.printStackTrace();
+                    }
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    Server.print("Lost connection to " + ClusterPeer.this + ": " + e.getMessage());
+                }
+            }
+
+            disconnected(this);
+        }
+
+        /**
+         * Writes messages until the socket fails.
+         */
+        private void write() {
+            try {
+                OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+
+                while (!closed) {
+                    byte[] frame = outgoing.poll(1, TimeUnit.SECONDS);
+
+                    if (frame == null) {
+                        continue;
+                    }
+
+                    /** Write every frame waiting before flushing. */
+                    do {
+                        out.write(frame);
+                    } while ((frame = outgoing.poll()) != null);
+
+                    out.flush();
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    Server.print("Lost connection to " + ClusterPeer.this + ": " + e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            disconnected(this);
+        }
+
+        /**
+         * Closes the socket and drops the frames waiting to be written.
+         */
+        public void close() {
+            closed = true;
+            outgoing.clear();
+
+            try {
+                socket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -1,115 +1,325 @@
 package server.net.event;
 
-import java.nio.channels.SelectionKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import server.Server;
-import server.net.event.impl.ConnectionServiceNetworkEvent;
-import server.net.event.impl.FlushBufferNetworkEvent;
-import server.net.event.impl.IncomingPacketNetworkEvent;
+import server.net.HostGateway;
+import server.net.buffer.PacketBuffer;
+import server.net.packet.IncomingPacket;
+import server.net.packet.PacketLimits;
+import server.net.packet.PacketLimits.Excess;
+import server.net.packet.PacketLimits.Limit;
+import server.net.packet.PacketRegistry;
+import server.world.CycleProfiler;
+import server.world.CycleProfiler.Phase;
 import server.world.entity.player.PlayerNetwork;
+import server.world.entity.player.PlayerNetwork.Stage;
 
 /**
- * Asynchronously dispatches network events to multiple clients at the beginning
- * of every tick.
- * 
+ * Handles the packets read for the clients of a world at the beginning of
+ * every tick, and writes the packets sent to them at the end of it. The
+ * packets are read as soon as they arrive by the {@link SelectorThread}s,
+ * which queue them on the network of the client and queue the network here.
+ * Every world has its own dispatcher, so the packets of a client are always
+ * handled on the thread of the world it was placed in, in the order they were
+ * sent.
+ *
  * @author lare96
  */
 public class NetworkEventDispatcher {
 
     /**
-     * The singleton instance.
+     * The clients that have packets waiting to be handled.
      */
-    private static NetworkEventDispatcher singleton;
+    private final Queue<PlayerNetwork> ready = new ConcurrentLinkedQueue<PlayerNetwork>();
 
     /**
-     * Creates a network for the client.
+     * The amount of clients connected to this world, including the ones
+     * waiting to be registered.
      */
-    private static ConnectionServiceNetworkEvent connectionServiceNetworkEvent = new ConnectionServiceNetworkEvent();
+    private final AtomicInteger connections = new AtomicInteger();
 
     /**
-     * Reads and handles packets for this client.
+     * The clients that have had packets sent to them this cycle.
      */
-    private static IncomingPacketNetworkEvent incomingPacketNetworkEvent = new IncomingPacketNetworkEvent();
+    private final List<PlayerNetwork> flushQueue = new ArrayList<PlayerNetwork>();
 
     /**
-     * Flushes the buffer for this client.
+     * The view every packet is read through, reset for every packet.
      */
-    private static FlushBufferNetworkEvent flushBufferNetworkEvent = new FlushBufferNetworkEvent();
+    private final PacketBuffer.InBuffer in = PacketBuffer.newInBuffer();
 
     /**
-     * Dispatches all of the networking events.
+     * The amount of cycles packets have been handled for.
      */
-    public void dispatch() {
-        try {
+    private long cycle;
 
-            /** Selects the clients ready for network events. */
-            Server.getSingleton().getSelector().selectNow();
+    /**
+     * Disconnects the clients that have stopped talking to this world.
+     */
+    private final SessionReaper reaper = new SessionReaper();
 
-            /** Iterates over the clients selected. */
-            for (SelectionKey key : Server.getSingleton().getSelector().selectedKeys()) {
-                if (key.isValid() && key.isAcceptable()) {
+    /**
+     * Handles the packets that have been read since the last cycle, as far as
+     * the {@link PacketLimits} allow. Packets over a limit are either left for
+     * the next cycle or dropped, and only count as an offence against the
+     * host of the client if the client is well past its limits. The time every packet waited between being read
+     * and being handled is recorded by the profiler of the world.
+     *
+     * @param profiler
+     *            the profiler of the world.
+     * @return the amount of packets handled.
+     */
+    public int dispatch(CycleProfiler profiler) {
+        PlayerNetwork client;
+        int handled = 0;
+        cycle++;
 
-                    /**
-                     * Dispatch an absent network event implementation that
-                     * creates a network for the client.
-                     */
-                    NetworkEventDispatcher.getSingleton().getConnectionServiceNetworkEvent().event();
-                } else {
-                    PlayerNetwork client = (PlayerNetwork) key.attachment();
+        /**
+         * Clients that send more packets while this runs are queued again, but
+         * only handled on the next cycle.
+         */
+        for (int i = ready.size(); i > 0 && (client = ready.poll()) != null; i--) {
+            IncomingPacket packet;
 
-                    if (key.isValid() && key.isReadable()) {
+            client.setScheduled(false);
 
-                        /**
-                         * Dispatch a network event implementation that reads
-                         * and handles packets for this client.
-                         */
-                        NetworkEventDispatcher.getSingleton().getIncomingPacketNetworkEvent().event(client);
-                    }
-                    if (key.isValid() && key.isWritable()) {
+            while ((packet = client.getInbound().peek()) != null) {
+                Excess excess = limit(client, packet);
 
-                        /**
-                         * Dispatch a network event implementation that flushes
-                         * the buffer for this client.
-                         */
-                        NetworkEventDispatcher.getSingleton().getFlushBufferNetworkEvent().event(client);
+                /** Leave this packet and the ones after it for the next cycle. */
+                if (excess == Excess.DEFER) {
+                    break;
+                }
+
+                client.poll();
+
+                try {
+                    if (excess == null && handle(client, packet)) {
+                        handled++;
+                        profiler.record(Phase.PACKET_LATENCY, System.nanoTime() - packet.getReceived(), 1);
                     }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    client.setPacketDisconnect(true);
+                    client.disconnect();
+                } finally {
+
+                    /**
+                     * Give the space back to the ring, skipping anything the
+                     * packet didn't read.
+                     */
+                    client.getInData().release(packet.getPosition() + packet.getLength());
                 }
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+
+            /** Come back for the packets that were left. */
+            if (!client.getInbound().isEmpty() && !client.isDisconnected()) {
+                client.schedule();
+            }
         }
+        return handled;
     }
 
     /**
-     * @return the connectionServiceNetworkEvent.
+     * Checks a packet against the limits of its client, disconnecting the
+     * client if its host has offended too many times.
+     *
+     * @param client
+     *            the client the packet was read for.
+     * @param packet
+     *            the packet.
+     * @return what should be done with the packet, or <code>null</code> if it
+     *         can be handled.
      */
-    public ConnectionServiceNetworkEvent getConnectionServiceNetworkEvent() {
-        return connectionServiceNetworkEvent;
+    private Excess limit(PlayerNetwork client, IncomingPacket packet) {
+
+        /** Only packets sent by clients that have logged in are limited. */
+        if (packet.getOpcode() < 0 || client.isDisconnected() || client.getStage() != Stage.LOGGED_IN) {
+            return null;
+        }
+
+        /** A newer packet is waiting to be handled instead of this one. */
+        Limit limit = PacketLimits.getLimit(packet.getOpcode());
+
+        if (limit != null && limit.getExcess() == Excess.REPLACE && isReplaced(client, packet, limit)) {
+            return Excess.DROP;
+        }
+
+        Excess excess = client.getBudget().check(packet.getOpcode(), cycle);
+
+        if (excess == null) {
+            return null;
+        }
+
+        /** Only count every packet once, however long it is deferred for. */
+        if (!packet.isOverrun()) {
+            packet.setOverrun(true);
+
+            if (client.getBudget().overrun(client.getBacklog()) && HostGateway.offend(client.getHost())) {
+                Server.print(client.getPlayer() + " disconnected for sending too many packets!");
+                client.setPacketDisconnect(true);
+                client.disconnect();
+                return Excess.DROP;
+            }
+        }
+        return excess == Excess.REPLACE ? Excess.DEFER : excess;
     }
 
     /**
-     * @return the incomingPacketNetworkEvent.
+     * Checks if a packet waiting to be handled has been replaced by a newer
+     * packet of the same limit.
+     *
+     * @param client
+     *            the client the packet was read for.
+     * @param packet
+     *            the packet, which is the first one waiting.
+     * @param limit
+     *            the limit of the packet.
+     * @return true if a newer packet of the same limit is waiting.
      */
-    public IncomingPacketNetworkEvent getIncomingPacketNetworkEvent() {
-        return incomingPacketNetworkEvent;
+    private boolean isReplaced(PlayerNetwork client, IncomingPacket packet, Limit limit) {
+        for (IncomingPacket waiting : client.getInbound()) {
+            if (waiting != packet && waiting.getOpcode() >= 0 && PacketLimits.getLimit(waiting.getOpcode()) == limit) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
-     * @return the flushBufferNetworkEvent.
+     * Handles a single packet read for a client.
+     *
+     * @param client
+     *            the client the packet was read for.
+     * @param packet
+     *            the packet.
+     * @return true if the packet was sent by the client and was handled.
+     * @throws Exception
+     *             if any errors occur while logging in.
      */
-    public FlushBufferNetworkEvent getFlushBufferNetworkEvent() {
-        return flushBufferNetworkEvent;
+    private boolean handle(PlayerNetwork client, IncomingPacket packet) throws Exception {
+
+        /** Nothing more is handled for a client that has disconnected. */
+        if (client.isDisconnected()) {
+            return false;
+        }
+
+        switch (packet.getOpcode()) {
+            case IncomingPacket.LOGIN:
+                client.handleLogin(in.reset(client.getInData(), packet.getPosition(), packet.getLength()));
+                return false;
+            case IncomingPacket.CLOSED:
+                client.disconnect();
+                return false;
+            case IncomingPacket.ERROR:
+                client.setPacketDisconnect(true);
+                client.disconnect();
+                return false;
+            case IncomingPacket.WRITABLE:
+                client.flush(true);
+                return false;
+            case IncomingPacket.CONNECTED:
+                reaper.watch(client);
+                return false;
+        }
+
+        /** Packets sent before the login was finished are ignored. */
+        if (client.getStage() != Stage.LOGGED_IN) {
+            return false;
+        }
+
+        /** Reset the timeout counter. */
+        client.getTimeoutStopwatch().reset();
+        client.setPacketOpcode(packet.getOpcode());
+        client.setPacketLength(packet.getLength());
+
+        /** Execute the packet. */
+        try {
+            if (PacketRegistry.getPackets()[packet.getOpcode()] != null) {
+                PacketRegistry.getPackets()[packet.getOpcode()].execute(client.getPlayer(), in.reset(client.getInData(), packet.getPosition(), packet.getLength()));
+            } else {
+                Server.print(client.getPlayer() + " unhandled packet " + packet.getOpcode());
+            }
+
+            /**
+             * Handles any errors we may have came across during the execution
+             * of this packet.
+             */
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        } finally {
+            client.setPacketOpcode(-1);
+            client.setPacketLength(-1);
+        }
+        return true;
     }
 
     /**
-     * 
-     * @return the singleton.
+     * Queues a client that has had packets read for it, so they are handled
+     * on the next cycle. This can be called from any thread.
+     *
+     * @param client
+     *            the client.
      */
-    public static NetworkEventDispatcher getSingleton() {
-        if (singleton == null) {
-            singleton = new NetworkEventDispatcher();
+    public void ready(PlayerNetwork client) {
+        ready.add(client);
+    }
+
+    /**
+     * Marks that a client has been placed in this world. This can be called
+     * from any thread.
+     */
+    public void connected() {
+        connections.incrementAndGet();
+    }
+
+    /**
+     * Marks that a client of this world has disconnected.
+     */
+    public void disconnected() {
+        connections.decrementAndGet();
+    }
+
+    /**
+     * Queues a client to be flushed at the end of the cycle.
+     *
+     * @param client
+     *            the client to flush.
+     */
+    public void queueFlush(PlayerNetwork client) {
+        flushQueue.add(client);
+    }
+
+    /**
+     * Writes every packet sent during this cycle, flushing each client that
+     * had packets sent to it once.
+     */
+    public void flush() {
+
+        /** Clients may be queued again while flushing, e.g. on disconnect. */
+        for (int i = 0; i < flushQueue.size(); i++) {
+            flushQueue.get(i).flush(false);
         }
 
-        return singleton;
+        flushQueue.clear();
+    }
+
+    /**
+     * @return the reaper.
+     */
+    public SessionReaper getReaper() {
+        return reaper;
+    }
+
+    /**
+     * @return the amount of clients connected to this world.
+     */
+    public int getConnections() {
+        return connections.get();
     }
 }
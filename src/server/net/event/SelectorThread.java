@@ -0,0 +1,297 @@
+package server.net.event;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import server.Server;
+import server.net.HostGateway;
+import server.net.event.impl.ConnectionServiceNetworkEvent;
+import server.net.event.impl.FlushBufferNetworkEvent;
+import server.net.event.impl.IncomingPacketNetworkEvent;
+import server.net.packet.IncomingPacket;
+import server.world.World;
+import server.world.entity.player.PlayerNetwork;
+
+/**
+ * A thread that waits on a selector of its own and reads from the clients
+ * registered with it as soon as data arrives, instead of once every tick.
+ * Packets are read, framed and decrypted on this thread and then queued on
+ * the network of the client they came from, where they wait to be handled by
+ * the world of the client on its next cycle. New connections are accepted by
+ * the first selector thread and spread over all of them. <br>
+ * <br>
+ *
+ * Everything else a client does (logging in, handling packets and writing to
+ * the socket) still happens on the thread of its world, so a selector thread
+ * never touches anything but the socket and the buffer it reads into.
+ *
+ * @author lare96
+ */
+public final class SelectorThread implements Runnable {
+
+    /**
+     * The amount of selector threads.
+     */
+    public static final int THREADS = 2;
+
+    /**
+     * The selector threads.
+     */
+    private static final SelectorThread[] threads = new SelectorThread[THREADS];
+
+    /**
+     * The selector thread the next connection is registered with.
+     */
+    private static final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * Accepts new connections.
+     */
+    private static final ConnectionServiceNetworkEvent connectionServiceNetworkEvent = new ConnectionServiceNetworkEvent();
+
+    /**
+     * Reads and decodes packets for a client.
+     */
+    private static final IncomingPacketNetworkEvent incomingPacketNetworkEvent = new IncomingPacketNetworkEvent();
+
+    /**
+     * Tells the world of a client that its socket is writable.
+     */
+    private static final FlushBufferNetworkEvent flushBufferNetworkEvent = new FlushBufferNetworkEvent();
+
+    /**
+     * The id of this selector thread.
+     */
+    private final int id;
+
+    /**
+     * The selector of this thread.
+     */
+    private final Selector selector;
+
+    /**
+     * Connections waiting to be registered with this thread's selector.
+     */
+    private final Queue<Registration> registering = new ConcurrentLinkedQueue<Registration>();
+
+    /**
+     * Tasks waiting to be carried out on this thread.
+     */
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+    /**
+     * Create a new {@link SelectorThread}.
+     *
+     * @param id
+     *            the id of this selector thread.
+     * @throws IOException
+     *             if the selector can't be opened.
+     */
+    private SelectorThread(int id) throws IOException {
+        this.id = id;
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Starts every selector thread, with the first one accepting connections
+     * from the server channel.
+     *
+     * @param serverChannel
+     *            the channel new connections are accepted from.
+     * @throws IOException
+     *             if a selector can't be opened.
+     */
+    public static void start(ServerSocketChannel serverChannel) throws IOException {
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new SelectorThread(i);
+        }
+
+        serverChannel.register(threads[0].selector, SelectionKey.OP_ACCEPT);
+
+        for (SelectorThread selectorThread : threads) {
+            Thread thread = new Thread(selectorThread, "Selector-" + selectorThread.id);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Registers a connection that has just been accepted with one of the
+     * selector threads, in turn. This can be called from any thread.
+     *
+     * @param socket
+     *            the connection to register.
+     * @param world
+     *            the world the connection has been placed in.
+     */
+    public static void register(SocketChannel socket, World world) {
+        SelectorThread thread = threads[(next.getAndIncrement() & Integer.MAX_VALUE) % threads.length];
+        thread.registering.add(new Registration(socket, world));
+        thread.selector.wakeup();
+    }
+
+    /**
+     * Carries out a task on this thread, the next time the selector wakes up.
+     * This is used for anything that has to change the selection keys of
+     * this thread. This can be called from any thread.
+     *
+     * @param task
+     *            the task to carry out.
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+
+                /** Wait until a client is ready or there is work to do. */
+                selector.select();
+
+                /** Register the connections handed to this thread. */
+                register();
+
+                /** Carry out the tasks handed to this thread. */
+                Runnable task;
+
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+
+                /** Iterates over the clients selected. */
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+
+                    if (key.isValid() && key.isAcceptable()) {
+
+                        /** Accept every client waiting to connect. */
+                        connectionServiceNetworkEvent.event();
+                        continue;
+                    }
+
+                    PlayerNetwork client = (PlayerNetwork) key.attachment();
+
+                    /** The client has disconnected since it was selected. */
+                    if (client == null) {
+                        continue;
+                    }
+
+                    try {
+                        if (key.isValid() && key.isReadable()) {
+
+                            /** Read and decode packets for this client. */
+                            incomingPacketNetworkEvent.event(client);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+
+                            /** Tell the world of this client it can write again. */
+                            flushBufferNetworkEvent.event(client);
+                        }
+                    } catch (CancelledKeyException e) {
+
+                        /** The world disconnected this client in the meantime. */
+                    }
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+                Server.print("Error on selector thread " + id + "!");
+            }
+        }
+    }
+
+    /**
+     * Creates a network for every connection handed to this thread.
+     */
+    private void register() {
+        Registration registration;
+
+        while ((registration = registering.poll()) != null) {
+            SocketChannel socket = registration.getSocket();
+            World world = registration.getWorld();
+
+            /** The player is created in the world the connection was placed in. */
+            world.enter();
+
+            try {
+                socket.configureBlocking(false);
+                SelectionKey key = socket.register(selector, SelectionKey.OP_READ);
+                PlayerNetwork network = new PlayerNetwork(key, this);
+                key.attach(network);
+
+                /** Let the world start timing the login. */
+                network.receive(new IncomingPacket(IncomingPacket.CONNECTED));
+            } catch (Exception e) {
+                e.printStackTrace();
+                world.getDispatcher().disconnected();
+
+                try {
+                    HostGateway.exit(socket.socket().getInetAddress().getHostAddress());
+                    socket.close();
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+            } finally {
+                World.leave();
+            }
+        }
+    }
+
+    /**
+     * A connection waiting to be registered with a selector thread.
+     *
+     * @author lare96
+     */
+    private static final class Registration {
+
+        /**
+         * The connection.
+         */
+        private final SocketChannel socket;
+
+        /**
+         * The world the connection has been placed in.
+         */
+        private final World world;
+
+        /**
+         * Create a new {@link Registration}.
+         *
+         * @param socket
+         *            the connection.
+         * @param world
+         *            the world the connection has been placed in.
+         */
+        public Registration(SocketChannel socket, World world) {
+            this.socket = socket;
+            this.world = world;
+        }
+
+        /**
+         * @return the socket.
+         */
+        public SocketChannel getSocket() {
+            return socket;
+        }
+
+        /**
+         * @return the world.
+         */
+        public World getWorld() {
+            return world;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package server.net.event;
+
+import server.Server;
+import server.logic.task.Task;
+import server.world.World;
+import server.world.entity.player.PlayerNetwork;
+
+/**
+ * Disconnects the clients of a world that have stopped talking to it: clients
+ * that haven't finished logging in within a few seconds of connecting, and
+ * players that haven't sent a packet in a long time. <br>
+ * <br>
+ *
+ * Rather than checking every client every cycle, every client is given a
+ * {@link Task} in the timing wheel of its world that is due when the client
+ * would time out. Packets only reset the timeout stopwatch of the client, so
+ * when the task comes due it checks how long the client has actually been
+ * quiet and moves itself to the new deadline if the client has sent something
+ * since. A client that keeps talking is only looked at once every timeout. This
+ * is only used by the thread of the world.
+ *
+ * @author lare96
+ */
+public final class SessionReaper {
+
+    /**
+     * The time in seconds a client has to finish logging in.
+     */
+    public static final int HANDSHAKE_TIMEOUT = 5;
+
+    /**
+     * The time in seconds a player can go without sending a packet.
+     */
+    public static final int IDLE_TIMEOUT = 60;
+
+    /**
+     * The amount of clients disconnected for not finishing the login in time.
+     */
+    private volatile int handshakesReaped;
+
+    /**
+     * The amount of players disconnected for not sending anything.
+     */
+    private volatile int idleReaped;
+
+    /**
+     * Starts watching a client that has just connected. The timeout stopwatch
+     * of the client was started when it connected.
+     *
+     * @param client
+     *            the client to watch.
+     */
+    public void watch(PlayerNetwork client) {
+        client.setTimeout(World.current().getEngine().submit(new SessionTimeout(client)));
+    }
+
+    /**
+     * @return the amount of clients disconnected for not finishing the login
+     *         in time.
+     */
+    public int getHandshakesReaped() {
+        return handshakesReaped;
+    }
+
+    /**
+     * @return the amount of players disconnected for not sending anything.
+     */
+    public int getIdleReaped() {
+        return idleReaped;
+    }
+
+    /**
+     * @return the amount of sessions disconnected for any reason.
+     */
+    public int getReaped() {
+        return handshakesReaped + idleReaped;
+    }
+
+    /**
+     * The task of a single client, which is due when the client would time
+     * out.
+     *
+     * @author lare96
+     */
+    private final class SessionTimeout extends Task {
+
+        /**
+         * The client being watched.
+         */
+        private final PlayerNetwork client;
+
+        /**
+         * Create a new {@link SessionTimeout}.
+         *
+         * @param client
+         *            the client being watched.
+         */
+        public SessionTimeout(PlayerNetwork client) {
+            super(HANDSHAKE_TIMEOUT, false, Time.SECOND);
+            this.client = client;
+        }
+
+        @Override
+        public void logic() {
+            if (client.isDisconnected()) {
+                cancel();
+                return;
+            }
+
+            switch (client.getStage()) {
+                case CONNECTED:
+                case LOGGING_IN:
+                    Server.print("Session from " + client.getHost() + " timed out while logging in.");
+                    handshakesReaped++;
+                    disconnect();
+                    break;
+                case LOADING:
+
+                    /** Wait for the character file to be loaded. */
+                    reschedule(HANDSHAKE_TIMEOUT, Time.SECOND);
+                    break;
+                case LOGGED_IN:
+                    long remaining = IDLE_TIMEOUT * 1000L - client.getTimeoutStopwatch().elapsed();
+
+                    /** The player has sent something since the last check. */
+                    if (remaining > 0) {
+                        reschedule((int) ((remaining + Time.TICK.getTime() - 1) / Time.TICK.getTime()), Time.TICK);
+                        break;
+                    }
+
+                    Server.print(client.getPlayer() + " timed out after " + IDLE_TIMEOUT + " seconds without a packet.");
+                    idleReaped++;
+                    disconnect();
+                    break;
+                case LOGGED_OUT:
+                    cancel();
+                    break;
+            }
+        }
+
+        /**
+         * Stops watching the client and disconnects it.
+         */
+        private void disconnect() {
+            cancel();
+            client.disconnect();
+        }
+    }
+}
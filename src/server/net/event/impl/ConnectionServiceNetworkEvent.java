@@ -1,17 +1,17 @@
 package server.net.event.impl;
 
-import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 
 import server.Server;
 import server.net.HostGateway;
 import server.net.event.AbsentNetworkEvent;
-import server.world.entity.player.Player;
-import server.world.entity.player.PlayerNetwork;
+import server.net.event.SelectorThread;
+import server.world.World;
 
 /**
- * An implementation of the {@link AbsentNetworkEvent} that creates a network
- * for any newly connected clients.
+ * An implementation of the {@link AbsentNetworkEvent} that accepts any newly
+ * connected clients, places them in the world they are routed to and hands
+ * them over to a {@link SelectorThread}, which creates a network for them.
  * 
  * @author lare96
  */
@@ -22,18 +22,12 @@ public final class ConnectionServiceNetworkEvent implements AbsentNetworkEvent {
         SocketChannel socket;
 
         /**
-         * Here we use a for loop so that we can accept multiple clients per
-         * cycle for lower latency. We limit the amount of clients that we
-         * accept per cycle to better combat potential denial of service type
-         * attacks.
+         * Accept every client waiting to connect. This runs on its own thread
+         * as soon as clients connect, so there is no reason to leave clients
+         * waiting for a later tick. Hosts connecting too often are turned away
+         * by the gateway instead.
          */
-        for (int i = 0; i < 10; i++) {
-            socket = Server.getSingleton().getServerChannel().accept();
-
-            if (socket == null) {
-                /** No more connections to accept (as this one was invalid). */
-                break;
-            }
+        while ((socket = Server.getSingleton().getServerChannel().accept()) != null) {
 
             /** Make sure we can allow this connection. */
             if (!HostGateway.enter(socket.socket().getInetAddress().getHostAddress())) {
@@ -41,12 +35,10 @@ public final class ConnectionServiceNetworkEvent implements AbsentNetworkEvent {
                 continue;
             }
 
-            /** Set up the new connection. */
-            socket.configureBlocking(false);
-            SelectionKey newKey = socket.register(Server.getSingleton().getSelector(), SelectionKey.OP_READ);
-            PlayerNetwork client = new PlayerNetwork(newKey);
-            new Player(client);
-            newKey.attach(client);
+            /** Place the connection in the world it is routed to. */
+            World world = World.route();
+            world.getDispatcher().connected();
+            SelectorThread.register(socket, world);
         }
     }
 }
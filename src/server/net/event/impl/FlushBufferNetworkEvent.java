@@ -1,38 +1,27 @@
 package server.net.event.impl;
 
-import java.io.IOException;
+import java.nio.channels.SelectionKey;
 
 import server.net.event.NetworkEvent;
+import server.net.packet.IncomingPacket;
 import server.world.entity.player.PlayerNetwork;
 
 /**
- * An implementation of the {@link NetworkEvent} that flushes the buffer.
- * 
+ * An implementation of the {@link NetworkEvent} that tells the world of a
+ * client that the packets that could not be written because the socket was
+ * backlogged can be written now. The packets are written by the world, which
+ * waits for the socket to become writable again if it still can't take all of
+ * them.
+ *
  * @author lare96
  */
 public final class FlushBufferNetworkEvent implements NetworkEvent {
 
     @Override
     public void event(PlayerNetwork network) {
-        try {
-            synchronized (network.getOutData()) {
-                network.getOutData().flip();
-                network.getSocketChannel().write(network.getOutData());
 
-                /** Check if all the data was sent. */
-                if (!network.getOutData().hasRemaining()) {
-
-                    /** And clear the buffer. */
-                    network.getOutData().clear();
-                } else {
-                    /** Not all data was sent - compact it! */
-                    network.getOutData().compact();
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-            network.setPacketDisconnect(true);
-            network.disconnect();
-        }
+        /** Stop selecting the socket until the world has written to it. */
+        network.getKey().interestOps(SelectionKey.OP_READ);
+        network.receive(new IncomingPacket(IncomingPacket.WRITABLE));
     }
 }
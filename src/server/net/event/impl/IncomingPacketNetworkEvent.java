@@ -1,121 +1,159 @@
 package server.net.event.impl;
 
-import server.Server;
-import server.net.buffer.PacketBuffer;
+import java.nio.channels.SelectionKey;
+
+import server.net.buffer.RingBuffer;
 import server.net.event.NetworkEvent;
-import server.net.packet.PacketRegistry;
+import server.net.packet.IncomingPacket;
 import server.util.Misc;
 import server.world.entity.player.PlayerNetwork;
-import server.world.entity.player.PlayerNetwork.Stage;
+import server.world.entity.player.PlayerNetwork.Framing;
 
 /**
- * An implementation of the {@link NetworkEvent} that reads and handles incoming
- * packets.
- * 
+ * An implementation of the {@link NetworkEvent} that reads incoming data into
+ * the ring of the client, and finds every whole packet in it in a single pass.
+ * This is carried out on a selector thread, so the packets are only queued
+ * here and handled later by the world of the client, straight from the ring.
+ *
  * @author lare96
  */
 public final class IncomingPacketNetworkEvent implements NetworkEvent {
 
     @Override
     public void event(PlayerNetwork network) {
+        RingBuffer ring = network.getInData();
+
         try {
+            int read;
+
+            /**
+             * Keep reading while the data fills the ring, so a burst of
+             * packets is read at once instead of over several selects.
+             */
+            do {
+                if ((read = ring.fill(network.getSocketChannel())) == -1) {
+                    close(network, IncomingPacket.CLOSED);
+                    return;
+                }
+
+                /** Every packet in this read arrived at the same time. */
+                long received = System.nanoTime();
 
-            /** Read the incoming data. */
-            if (network.getSocketChannel().read(network.getInData()) == -1) {
-                network.disconnect();
-                return;
+                while (decode(network, ring, received)) {
+                    /** Keep going until there isn't a whole packet left. */
+                }
+            } while (read > 0 && ring.free() == 0 && !ring.isExhausted());
+
+            /**
+             * The client sent more than its world has been able to handle. The
+             * ring doesn't grow forever, so it's disconnected.
+             */
+            if (ring.isExhausted()) {
+                close(network, IncomingPacket.ERROR);
             }
+        } catch (Exception e) {
+            e.printStackTrace();
+            close(network, IncomingPacket.ERROR);
+        }
+    }
+
+    /**
+     * Decodes the next packet in the data that has been read, if all of it
+     * has been read.
+     *
+     * @param network
+     *            the client that sent the data.
+     * @param ring
+     *            the ring the data has been read into.
+     * @param received
+     *            the time the data was read at.
+     * @return true if a packet was decoded.
+     */
+    private boolean decode(PlayerNetwork network, RingBuffer ring, long received) {
+        switch (network.getFraming()) {
+            case HANDSHAKE:
+
+                /** The login request and the name hash. */
+                if (ring.available() < 2) {
+                    return false;
+                }
 
-            /** Handle the received data. */
-            network.getInData().flip();
+                network.receive(new IncomingPacket(IncomingPacket.LOGIN, ring.take(2), 2, received));
+                network.setFraming(Framing.LOGIN_BLOCK);
+                return true;
+            case LOGIN_BLOCK:
 
-            while (network.getInData().hasRemaining()) {
+                /** The login type, the block length and the block. */
+                if (ring.available() < 2 || ring.available() < 2 + ring.peek(1)) {
+                    return false;
+                }
 
-                /** Handle login if we need to. */
-                if (network.getStage() != Stage.LOGGED_IN) {
-                    network.handleLogin();
-                    break;
+                int length = 2 + ring.peek(1);
+                network.receive(new IncomingPacket(IncomingPacket.LOGIN, ring.take(length), length, received));
+                network.setFraming(Framing.GAME);
+                return true;
+            case GAME:
+
+                /**
+                 * Nothing can be decrypted until the world has read the login
+                 * block, which the client waits for before sending anything.
+                 */
+                if (network.getDecryptor() == null || ring.available() == 0) {
+                    return false;
                 }
 
                 /** Decode the packet opcode. */
-                if (network.getPacketOpcode() == -1) {
-                    network.setPacketOpcode(network.getInData().get() & 0xff);
-                    network.setPacketOpcode(network.getPacketOpcode() - network.getDecryptor().getNextValue() & 0xff);
+                if (network.getFrameOpcode() == -1) {
+                    network.setFrameOpcode(ring.peek(0) - network.getDecryptor().getNextValue() & 0xff);
+                    ring.take(1);
                 }
 
                 /** Decode the packet length. */
-                if (network.getPacketLength() == -1) {
-                    network.setPacketLength(Misc.packetLengths[network.getPacketOpcode()]);
-
-                    if (network.getPacketLength() == -1) {
-                        if (!network.getInData().hasRemaining()) {
-                            network.getInData().flip();
-                            network.getInData().compact();
-                            break;
+                if (network.getFrameLength() == -1) {
+                    int frameLength = Misc.packetLengths[network.getFrameOpcode()];
+
+                    if (frameLength == -1) {
+                        if (ring.available() == 0) {
+                            return false;
                         }
 
-                        network.setPacketLength(network.getInData().get() & 0xff);
+                        frameLength = ring.peek(0);
+                        ring.take(1);
                     }
+
+                    network.setFrameLength(frameLength);
                 }
 
                 /** Decode the packet payload. */
-                if (network.getInData().remaining() >= network.getPacketLength()) {
-
-                    /** Reset the timeout counter. */
-                    network.getTimeoutStopwatch().reset();
-
-                    /** Gets the buffer's position before this packet is read. */
-                    int positionBefore = network.getInData().position();
-
-                    /**
-                     * Creates a new buffer for writing to packets backed by the
-                     * set data.
-                     */
-                    PacketBuffer.InBuffer in = PacketBuffer.newInBuffer(network.getInData());
-
-                    /** Execute the packet. */
-                    try {
-                        if (PacketRegistry.getPackets()[network.getPacketOpcode()] != null) {
-                            PacketRegistry.getPackets()[network.getPacketOpcode()].execute(network.getPlayer(), in);
-                        } else {
-                            Server.print(network.getPlayer() + " unhandled packet " + network.getPacketOpcode());
-                        }
+                if (ring.available() < network.getFrameLength()) {
+                    return false;
+                }
 
-                        /**
-                         * Handles any errors we may have came across during the
-                         * execution of this packet.
-                         */
-                    } catch (Exception ex) {
-                        ex.printStackTrace();
-
-                        /**
-                         * Regardless of if there was an error or not, make sure
-                         * we have finished reading all of this packet.
-                         */
-                    } finally {
-                        int read = network.getInData().position() - positionBefore;
-
-                        for (int i = read; i < network.getPacketLength(); i++) {
-                            network.getInData().get();
-                        }
-                    }
+                network.receive(new IncomingPacket(network.getFrameOpcode(), ring.take(network.getFrameLength()), network.getFrameLength(), received));
 
-                    /** Reset for the next packet. */
-                    network.setPacketOpcode(-1);
-                    network.setPacketLength(-1);
-                } else {
-                    network.getInData().flip();
-                    network.getInData().compact();
-                    break;
-                }
-            }
+                /** Reset for the next packet. */
+                network.setFrameOpcode(-1);
+                network.setFrameLength(-1);
+                return true;
+        }
+        return false;
+    }
 
-            /** Clear everything for the next read. */
-            network.getInData().clear();
-        } catch (Exception e) {
-            e.printStackTrace();
-            network.setPacketDisconnect(true);
-            network.disconnect();
+    /**
+     * Stops reading from a client and tells its world to disconnect it.
+     *
+     * @param network
+     *            the client to stop reading from.
+     * @param opcode
+     *            the reason the client is disconnected.
+     */
+    private void close(PlayerNetwork network, int opcode) {
+        SelectionKey key = network.getKey();
+
+        if (key.isValid()) {
+            key.interestOps(0);
         }
+
+        network.receive(new IncomingPacket(opcode));
     }
 }
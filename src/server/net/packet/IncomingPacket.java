@@ -0,0 +1,144 @@
+package server.net.packet;
+
+/**
+ * A packet that has been read and decoded by a selector thread and is waiting
+ * to be handled by the world of the client that sent it. The payload isn't
+ * copied out of the {@link server.net.buffer.RingBuffer} it was read into,
+ * this only says where in the ring it is. Other than packets sent by the
+ * client, this is also used to tell the world about things that happened to
+ * the connection, such as the login blocks being received or the connection
+ * being closed, so that the world hears about everything in the order it
+ * happened.
+ *
+ * @author lare96
+ */
+public final class IncomingPacket {
+
+    /**
+     * The opcode of a part of the login, which is handled by
+     * {@link server.world.entity.player.PlayerNetwork#handleLogin(server.net.buffer.PacketBuffer.InBuffer)}.
+     */
+    public static final int LOGIN = -1;
+
+    /**
+     * The opcode used when the client has closed the connection.
+     */
+    public static final int CLOSED = -2;
+
+    /**
+     * The opcode used when the connection has failed or the client has sent
+     * something it shouldn't have.
+     */
+    public static final int ERROR = -3;
+
+    /**
+     * The opcode used when the socket can take the packets that couldn't be
+     * written to it before.
+     */
+    public static final int WRITABLE = -4;
+
+    /**
+     * The opcode used when the connection has been registered with a selector
+     * thread and is ready to be read from.
+     */
+    public static final int CONNECTED = -5;
+
+    /**
+     * The opcode of this packet.
+     */
+    private final int opcode;
+
+    /**
+     * The position of the payload of this packet in the ring.
+     */
+    private final long position;
+
+    /**
+     * The length of the payload of this packet.
+     */
+    private final int length;
+
+    /**
+     * The time this packet was read from the socket at, in nanoseconds.
+     */
+    private final long received;
+
+    /**
+     * If this packet has already gone over a limit, so it is only counted
+     * once however long it is deferred for.
+     */
+    private boolean overrun;
+
+    /**
+     * Create a new {@link IncomingPacket}.
+     *
+     * @param opcode
+     *            the opcode of this packet.
+     * @param position
+     *            the position of the payload of this packet in the ring.
+     * @param length
+     *            the length of the payload of this packet.
+     * @param received
+     *            the time this packet was read from the socket at, in
+     *            nanoseconds.
+     */
+    public IncomingPacket(int opcode, long position, int length, long received) {
+        this.opcode = opcode;
+        this.position = position;
+        this.length = length;
+        this.received = received;
+    }
+
+    /**
+     * Create a new {@link IncomingPacket} without a payload.
+     *
+     * @param opcode
+     *            the opcode of this packet.
+     */
+    public IncomingPacket(int opcode) {
+        this(opcode, -1, 0, System.nanoTime());
+    }
+
+    /**
+     * @return the opcode.
+     */
+    public int getOpcode() {
+        return opcode;
+    }
+
+    /**
+     * @return the position.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return the length.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return the received.
+     */
+    public long getReceived() {
+        return received;
+    }
+
+    /**
+     * @return the overrun.
+     */
+    public boolean isOverrun() {
+        return overrun;
+    }
+
+    /**
+     * @param overrun
+     *            the overrun to set.
+     */
+    public void setOverrun(boolean overrun) {
+        this.overrun = overrun;
+    }
+}
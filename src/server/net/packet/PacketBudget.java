@@ -0,0 +1,106 @@
+package server.net.packet;
+
+import server.net.packet.PacketLimits.Excess;
+import server.net.packet.PacketLimits.Limit;
+
+/**
+ * Keeps track of how many packets a single client has had handled this cycle
+ * and how many tokens are left in each of its token buckets, as described in
+ * {@link PacketLimits}. This is only used by the world of the client.
+ *
+ * @author lare96
+ */
+public final class PacketBudget {
+
+    /**
+     * The tokens left in every bucket.
+     */
+    private final int[] tokens = new int[PacketLimits.getBuckets()];
+
+    /**
+     * The cycle every bucket was last filled on, or 0 if it has never been
+     * used.
+     */
+    private final long[] filled = new long[PacketLimits.getBuckets()];
+
+    /**
+     * The cycle the packets are being counted for.
+     */
+    private long cycle;
+
+    /**
+     * The amount of packets handled this cycle.
+     */
+    private int handled;
+
+    /**
+     * The amount of packets that went over a limit this cycle.
+     */
+    private int overruns;
+
+    /**
+     * Checks if a packet can be handled, taking a token for it if it can.
+     *
+     * @param opcode
+     *            the opcode of the packet.
+     * @param cycle
+     *            the current cycle, which starts at 1.
+     * @return what should be done with the packet, or <code>null</code> if it
+     *         can be handled.
+     */
+    public Excess check(int opcode, long cycle) {
+
+        /** Start counting again every cycle. */
+        if (this.cycle != cycle) {
+            this.cycle = cycle;
+            handled = 0;
+            overruns = 0;
+        }
+
+        if (handled >= PacketLimits.getPacketsPerCycle()) {
+            return Excess.DEFER;
+        }
+
+        Limit limit = PacketLimits.getLimit(opcode);
+
+        if (limit != null) {
+            int bucket = limit.getBucket();
+
+            /** Fill the bucket back up once enough cycles have passed. */
+            if (filled[bucket] == 0 || cycle - filled[bucket] >= limit.getCycles()) {
+                tokens[bucket] = limit.getTokens();
+                filled[bucket] = cycle;
+            }
+
+            if (tokens[bucket] == 0) {
+                return limit.getExcess();
+            }
+
+            tokens[bucket]--;
+        }
+
+        handled++;
+        return null;
+    }
+
+    /**
+     * Counts a packet that went over a limit. This should only be called once
+     * for every packet, right after it was checked.
+     *
+     * @param backlog
+     *            the amount of packets waiting to be handled for the client.
+     * @return true if the client is so far over its limits that it should be
+     *         held against its host.
+     */
+    public boolean overrun(int backlog) {
+        overruns++;
+        return overruns + backlog > PacketLimits.getAbuseThreshold();
+    }
+
+    /**
+     * @return true if the packets handled this cycle have used up the budget.
+     */
+    public boolean isSpent() {
+        return handled >= PacketLimits.getPacketsPerCycle();
+    }
+}
@@ -0,0 +1,229 @@
+package server.net.packet;
+
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+
+import server.util.Misc;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+
+/**
+ * Class that contains static utility methods for loading how many packets a
+ * client is allowed to send. Every client can have a certain amount of its
+ * packets handled every cycle, and packets with certain opcodes are further
+ * limited by a token bucket for every client: a packet takes a token, and the
+ * bucket is filled back up every so many cycles. A packet over a limit is
+ * either deferred to the next cycle, dropped, or deferred until a newer packet
+ * of the same limit replaces it. Going over a limit now and then is normal, so
+ * it is only held against the host of the client once the client is well past
+ * its limits. The limits are read from the <code>packet_limits.json</code>
+ * file.
+ *
+ * @author lare96
+ */
+public final class PacketLimits {
+
+    /**
+     * The limit of every opcode, or <code>null</code> for opcodes that are
+     * only limited by the amount of packets per cycle.
+     */
+    private static Limit[] limits = new Limit[256];
+
+    /**
+     * The amount of token buckets every client needs.
+     */
+    private static int buckets;
+
+    /**
+     * The amount of packets that are handled for a client every cycle.
+     */
+    private static int packetsPerCycle = 15;
+
+    /**
+     * The amount of packets a client can be over its limits by, counting the
+     * packets waiting to be handled, before it is considered abusive.
+     */
+    private static int abuseThreshold = 45;
+
+    /**
+     * What is done with a packet over a limit. Packets of a limit that
+     * replaces are deferred, but only the newest one waiting is ever handled,
+     * which is used for packets such as walking where only the last one
+     * matters.
+     *
+     * @author lare96
+     */
+    public enum Excess {
+        DEFER, DROP, REPLACE
+    }
+
+    /**
+     * This class cannot be instantiated.
+     */
+    private PacketLimits() {
+
+    }
+
+    /**
+     * Parse the limits for every packet.
+     *
+     * @throws JsonIOException
+     *             if any i/o exceptions are thrown.
+     * @throws JsonSyntaxException
+     *             if the syntax is wrong.
+     * @throws FileNotFoundException
+     *             if the file isn't found.
+     */
+    public static void load() throws JsonIOException, JsonSyntaxException, FileNotFoundException {
+        JsonObject object = (JsonObject) new JsonParser().parse(new FileReader(Misc.PACKET_LIMITS));
+        JsonArray array = object.get("limits").getAsJsonArray();
+        Limit[] loaded = new Limit[256];
+
+        for (int i = 0; i < array.size(); i++) {
+            JsonObject reader = (JsonObject) array.get(i);
+            Limit limit = new Limit(i, reader.get("name").getAsString(), reader.get("tokens").getAsInt(), reader.get("cycles").getAsInt(), Excess.valueOf(reader.get("excess").getAsString()));
+            JsonArray opcodes = reader.get("opcodes").getAsJsonArray();
+
+            if (limit.getTokens() < 1 || limit.getCycles() < 1) {
+                throw new IllegalStateException("Invalid packet limit: " + limit.getName());
+            }
+
+            for (int j = 0; j < opcodes.size(); j++) {
+                loaded[opcodes.get(j).getAsInt()] = limit;
+            }
+        }
+
+        packetsPerCycle = object.get("packets-per-cycle").getAsInt();
+        abuseThreshold = object.get("abuse-threshold").getAsInt();
+        buckets = array.size();
+        limits = loaded;
+    }
+
+    /**
+     * Gets the limit of an opcode.
+     *
+     * @param opcode
+     *            the opcode.
+     * @return the limit, or <code>null</code> if the opcode is only limited by
+     *         the amount of packets per cycle.
+     */
+    public static Limit getLimit(int opcode) {
+        return limits[opcode];
+    }
+
+    /**
+     * @return the buckets.
+     */
+    public static int getBuckets() {
+        return buckets;
+    }
+
+    /**
+     * @return the packetsPerCycle.
+     */
+    public static int getPacketsPerCycle() {
+        return packetsPerCycle;
+    }
+
+    /**
+     * @return the abuseThreshold.
+     */
+    public static int getAbuseThreshold() {
+        return abuseThreshold;
+    }
+
+    /**
+     * The limit of one or more opcodes, which share a single token bucket.
+     *
+     * @author lare96
+     */
+    public static final class Limit {
+
+        /**
+         * The index of the token bucket of this limit.
+         */
+        private final int bucket;
+
+        /**
+         * The name of this limit.
+         */
+        private final String name;
+
+        /**
+         * The amount of tokens in a full bucket.
+         */
+        private final int tokens;
+
+        /**
+         * The amount of cycles it takes for the bucket to be filled back up.
+         */
+        private final int cycles;
+
+        /**
+         * What is done with a packet when the bucket is empty.
+         */
+        private final Excess excess;
+
+        /**
+         * Create a new {@link Limit}.
+         *
+         * @param bucket
+         *            the index of the token bucket of this limit.
+         * @param name
+         *            the name of this limit.
+         * @param tokens
+         *            the amount of tokens in a full bucket.
+         * @param cycles
+         *            the amount of cycles it takes for the bucket to be
+         *            filled back up.
+         * @param excess
+         *            what is done with a packet when the bucket is empty.
+         */
+        public Limit(int bucket, String name, int tokens, int cycles, Excess excess) {
+            this.bucket = bucket;
+            this.name = name;
+            this.tokens = tokens;
+            this.cycles = cycles;
+            this.excess = excess;
+        }
+
+        /**
+         * @return the bucket.
+         */
+        public int getBucket() {
+            return bucket;
+        }
+
+        /**
+         * @return the name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the tokens.
+         */
+        public int getTokens() {
+            return tokens;
+        }
+
+        /**
+         * @return the cycles.
+         */
+        public int getCycles() {
+            return cycles;
+        }
+
+        /**
+         * @return the excess.
+         */
+        public Excess getExcess() {
+            return excess;
+        }
+    }
+}
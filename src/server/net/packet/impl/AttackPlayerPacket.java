@@ -17,7 +17,7 @@ public class AttackPlayerPacket implements ClientPacketBuilder {
     public void execute(Player player, InBuffer in) {
         int index = in.readShort(true, ByteOrder.LITTLE);
 
-        Player attacked = World.getPlayers()[index];
+        Player attacked = World.current().getPlayers()[index];
 
         if (attacked == null) {
             return;
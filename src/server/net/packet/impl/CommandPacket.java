@@ -10,7 +10,6 @@ import java.io.File;
 
 import javax.imageio.ImageIO;
 
-import server.logic.GameLogic;
 import server.logic.task.Task;
 import server.logic.task.Task.Time;
 import server.net.buffer.PacketBuffer;
@@ -92,7 +91,7 @@ public class CommandPacket implements ClientPacketBuilder {
                 e.printStackTrace();
             }
 
-            GameLogic.getSingleton().submit(new Task(time, false, Time.SECOND) {
+            World.current().getEngine().submit(new Task(time, false, Time.SECOND) {
                 @Override
                 public void logic() {
                     try {
@@ -118,7 +117,7 @@ public class CommandPacket implements ClientPacketBuilder {
             mob.setRespawn(true);
             mob.register();
 
-            GameLogic.getSingleton().submit(new Task(5, false, Time.TICK) {
+            World.current().getEngine().submit(new Task(5, false, Time.TICK) {
                 @Override
                 public void logic() {
                     mob.primaryHit(new Hit(15));
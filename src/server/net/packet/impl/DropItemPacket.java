@@ -27,7 +27,7 @@ public class DropItemPacket implements ClientPacketBuilder {
 
         TrainableSkill.check(player);
 
-        int amount = ItemDefinition.getDefinitions()[item].isStackable() ? amount = player.getInventory().getItemContainer().getCount(item) : 1;
+        int amount = ItemDefinition.isStackable(item) ? amount = player.getInventory().getItemContainer().getCount(item) : 1;
 
         if (!World.isCanDrop()) {
             player.getInventory().removeItemSlot(new Item(item, amount), slot);
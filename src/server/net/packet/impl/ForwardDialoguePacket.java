@@ -15,7 +15,7 @@ public class ForwardDialoguePacket implements ClientPacketBuilder {
     @Override
     public void execute(Player player, InBuffer in) {
         if (player.getMobDialogue() != 0) {
-            MobDialogue.getDialogues().get(player.getMobDialogue()).dialogue(player);
+            MobDialogue.getDialogue(player.getMobDialogue()).dialogue(player);
         } else {
             player.getServerPacketBuilder().closeWindows();
         }
@@ -134,7 +134,7 @@ public class ItemInterfacePackets implements ClientPacketBuilder {
                             withdrawAmount = player.getBank().getContainer().getCount(itemId);
                         } else {
                             Item itemWithdrew = new Item(itemId, 1);
-                            withdrawAmount = ItemDefinition.getDefinitions()[itemWithdrew.getId()].isStackable() ? player.getBank().getContainer().getCount(itemId) : 28;
+                            withdrawAmount = ItemDefinition.isStackable(itemWithdrew.getId()) ? player.getBank().getContainer().getCount(itemId) : 28;
                         }
                         player.getBank().withdrawItem(slot, itemId, withdrawAmount);
                         break;
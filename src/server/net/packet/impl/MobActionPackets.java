@@ -33,7 +33,7 @@ public class MobActionPackets implements ClientPacketBuilder {
         switch (player.getNetwork().getPacketOpcode()) {
             case ATTACK_NPC:
                 int index = in.readShort(false, ValueType.A);
-                final Mob attackMelee = World.getNpcs()[index];
+                final Mob attackMelee = World.current().getNpcs()[index];
 
                 if (attackMelee == null) {
                     return;
@@ -50,7 +50,7 @@ public class MobActionPackets implements ClientPacketBuilder {
                 break;
             case MAGE_NPC:
                 index = in.readShort(true, ValueType.A, ByteOrder.LITTLE);
-                final Mob attackMagic = World.getNpcs()[index];
+                final Mob attackMagic = World.current().getNpcs()[index];
 
                 if (attackMagic == null) {
                     return;
@@ -60,7 +60,7 @@ public class MobActionPackets implements ClientPacketBuilder {
                 break;
             case FIRST_CLICK:
                 index = in.readShort(true, ByteOrder.LITTLE);
-                final Mob firstClickMob = World.getNpcs()[index];
+                final Mob firstClickMob = World.current().getNpcs()[index];
 
                 if (firstClickMob == null) {
                     return;
@@ -110,7 +110,7 @@ public class MobActionPackets implements ClientPacketBuilder {
 
             case SECOND_CLICK:
                 index = in.readShort(false, ValueType.A, ByteOrder.LITTLE);
-                final Mob secondClickMob = World.getNpcs()[index];
+                final Mob secondClickMob = World.current().getNpcs()[index];
 
                 if (secondClickMob == null) {
                     return;
@@ -37,7 +37,7 @@ public class MovementPacket implements ClientPacketBuilder {
         }
 
         if (player.getMobDialogue() != 0) {
-            MobDialogue.getDialogues().get(player.getMobDialogue()).stop(player);
+            MobDialogue.getDialogue(player.getMobDialogue()).stop(player);
         }
 
         if (player.getTrading().inTrade()) {
@@ -17,7 +17,7 @@ public class RequestPacket implements ClientPacketBuilder {
     @Override
     public void execute(Player player, InBuffer in) {
         int tradeId = in.readShort(true, ByteOrder.LITTLE);
-        Player trade = World.getPlayers()[tradeId];
+        Player trade = World.current().getPlayers()[tradeId];
 
         if (!World.isCanTrade()) {
             player.getServerPacketBuilder().sendMessage("Trading has been disabled!");
@@ -0,0 +1,353 @@
+package server.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A precompiled binary copy of a definition file, so definitions don't have to
+ * be parsed from JSON every time the server starts. <br>
+ * <br>
+ *
+ * Definitions are stored a column at a time: every field of every definition
+ * is written one after the other, so a whole column can be copied into an
+ * array in one go. Strings are stored once in a string table at the start of
+ * the cache and columns of strings only hold their index in the table, since
+ * a lot of definitions share the same name or examine text. <br>
+ * <br>
+ *
+ * Every cache records when the file it was compiled from was last modified,
+ * and the cache is only used while the file hasn't been modified since.
+ *
+ * @author lare96
+ */
+public final class DefinitionCache {
+
+    /**
+     * The number every cache starts with.
+     */
+    private static final int MAGIC = 0x41534443;
+
+    /**
+     * The version of the cache format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The charset strings are stored in.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * This class cannot be instantiated.
+     */
+    private DefinitionCache() {
+
+    }
+
+    /**
+     * Checks if a cache can be used instead of the file it was compiled from.
+     *
+     * @param cache
+     *            the cache.
+     * @param source
+     *            the file the cache was compiled from.
+     * @return true if the cache exists and the file hasn't been modified
+     *         since the cache was compiled.
+     */
+    public static boolean isFresh(File cache, File source) {
+        if (!cache.exists()) {
+            return false;
+        }
+
+        try {
+            RandomAccessFile file = new RandomAccessFile(cache, "r");
+
+            try {
+                return file.readInt() == MAGIC && file.readInt() == VERSION && file.readLong() >= source.lastModified();
+            } finally {
+                file.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes a cache one column at a time.
+     *
+     * @author lare96
+     */
+    public static final class Writer {
+
+        /**
+         * The columns written so far.
+         */
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+
+        /**
+         * The stream used to write the columns.
+         */
+        private final DataOutputStream columns = new DataOutputStream(bytes);
+
+        /**
+         * The strings in the string table.
+         */
+        private final List<String> strings = new ArrayList<String>();
+
+        /**
+         * The index of every string in the string table.
+         */
+        private final Map<String, Integer> table = new HashMap<String, Integer>();
+
+        /**
+         * Writes a column of integers.
+         *
+         * @param values
+         *            the column.
+         * @throws IOException
+         *             if the column can't be written.
+         */
+        public void writeInts(int[] values) throws IOException {
+            for (int value : values) {
+                columns.writeInt(value);
+            }
+        }
+
+        /**
+         * Writes a column of booleans.
+         *
+         * @param values
+         *            the column.
+         * @throws IOException
+         *             if the column can't be written.
+         */
+        public void writeBooleans(boolean[] values) throws IOException {
+            for (boolean value : values) {
+                columns.writeBoolean(value);
+            }
+        }
+
+        /**
+         * Writes a column of doubles.
+         *
+         * @param values
+         *            the column.
+         * @throws IOException
+         *             if the column can't be written.
+         */
+        public void writeDoubles(double[] values) throws IOException {
+            for (double value : values) {
+                columns.writeDouble(value);
+            }
+        }
+
+        /**
+         * Writes a column of strings.
+         *
+         * @param values
+         *            the column.
+         * @throws IOException
+         *             if the column can't be written.
+         */
+        public void writeStrings(String[] values) throws IOException {
+            for (String value : values) {
+                if (value == null) {
+                    columns.writeInt(-1);
+                    continue;
+                }
+
+                Integer index = table.get(value);
+
+                if (index == null) {
+                    index = strings.size();
+                    strings.add(value);
+                    table.put(value, index);
+                }
+
+                columns.writeInt(index);
+            }
+        }
+
+        /**
+         * Writes the cache. It is written to a temporary file first, which is
+         * then moved over the old cache.
+         *
+         * @param cache
+         *            the file to write the cache to.
+         * @param source
+         *            the file the cache was compiled from.
+         * @throws IOException
+         *             if the cache can't be written.
+         */
+        public void write(File cache, File source) throws IOException {
+            File temp = new File(cache.getPath() + ".tmp");
+
+            if (cache.getParentFile() != null) {
+                cache.getParentFile().mkdirs();
+            }
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+
+            try {
+                ByteArrayOutputStream table = new ByteArrayOutputStream();
+                int[] offsets = new int[strings.size() + 1];
+
+                for (int i = 0; i < strings.size(); i++) {
+                    table.write(strings.get(i).getBytes(UTF_8));
+                    offsets[i + 1] = table.size();
+                }
+
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(source.lastModified());
+                out.writeInt(strings.size());
+
+                for (int offset : offsets) {
+                    out.writeInt(offset);
+                }
+
+                table.writeTo(out);
+                columns.flush();
+                bytes.writeTo(out);
+            } finally {
+                out.close();
+            }
+
+            try {
+                Files.move(temp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    /**
+     * Reads a cache one column at a time, in the same order the columns were
+     * written in. The cache is mapped into memory and columns are copied
+     * straight into arrays.
+     *
+     * @author lare96
+     */
+    public static final class Reader {
+
+        /**
+         * The cache mapped into memory.
+         */
+        private final ByteBuffer buffer;
+
+        /**
+         * The string table.
+         */
+        private final String[] strings;
+
+        /**
+         * Opens a cache.
+         *
+         * @param cache
+         *            the cache to open.
+         * @throws IOException
+         *             if the cache can't be read.
+         */
+        public Reader(File cache) throws IOException {
+            RandomAccessFile file = new RandomAccessFile(cache, "r");
+
+            try {
+                MappedByteBuffer map = file.getChannel().map(MapMode.READ_ONLY, 0, file.length());
+                this.buffer = map;
+            } finally {
+                file.close();
+            }
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException(cache + " is not a definition cache");
+            }
+
+            buffer.getLong();
+            strings = new String[buffer.getInt()];
+            int[] offsets = readInts(strings.length + 1);
+            byte[] table = new byte[offsets[strings.length]];
+            buffer.get(table);
+
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = new String(table, offsets[i], offsets[i + 1] - offsets[i], UTF_8);
+            }
+        }
+
+        /**
+         * Reads a column of integers.
+         *
+         * @param length
+         *            the length of the column.
+         * @return the column.
+         */
+        public int[] readInts(int length) {
+            int[] values = new int[length];
+            buffer.asIntBuffer().get(values);
+            buffer.position(buffer.position() + (length * 4));
+            return values;
+        }
+
+        /**
+         * Reads a column of booleans.
+         *
+         * @param length
+         *            the length of the column.
+         * @return the column.
+         */
+        public boolean[] readBooleans(int length) {
+            boolean[] values = new boolean[length];
+
+            for (int i = 0; i < length; i++) {
+                values[i] = buffer.get() != 0;
+            }
+            return values;
+        }
+
+        /**
+         * Reads a column of doubles.
+         *
+         * @param length
+         *            the length of the column.
+         * @return the column.
+         */
+        public double[] readDoubles(int length) {
+            double[] values = new double[length];
+            buffer.asDoubleBuffer().get(values);
+            buffer.position(buffer.position() + (length * 8));
+            return values;
+        }
+
+        /**
+         * Reads a column of strings.
+         *
+         * @param length
+         *            the length of the column.
+         * @return the column.
+         */
+        public String[] readStrings(int length) {
+            int[] indexes = readInts(length);
+            String[] values = new String[length];
+
+            for (int i = 0; i < length; i++) {
+                values[i] = indexes[i] == -1 ? null : strings[indexes[i]];
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package server.util;
+
+import server.world.entity.mob.MobDefinition;
+import server.world.item.ItemDefinition;
+
+/**
+ * A build step that parses the definition files and compiles them into the
+ * definition caches, so the server doesn't have to compile them the first
+ * time it starts. This should be run from the same directory as the server.
+ *
+ * @author lare96
+ */
+public final class DefinitionCompiler {
+
+    /**
+     * This class cannot be instantiated.
+     */
+    private DefinitionCompiler() {
+
+    }
+
+    /**
+     * Compiles the definition caches.
+     *
+     * @param args
+     *            the arguments, not used.
+     * @throws Exception
+     *             if a definition file can't be parsed or a cache can't be
+     *             written.
+     */
+    public static void main(String[] args) throws Exception {
+        long start = System.currentTimeMillis();
+        ItemDefinition.parse();
+        ItemDefinition.compile();
+        System.out.println("Compiled " + Misc.ITEM_DEFINITION_CACHE + " (" + Misc.ITEM_DEFINITION_CACHE.length() + " bytes) in " + (System.currentTimeMillis() - start) + "ms.");
+
+        start = System.currentTimeMillis();
+        MobDefinition.parse();
+        MobDefinition.compile();
+        System.out.println("Compiled " + Misc.MOB_DEFINITION_CACHE + " (" + Misc.MOB_DEFINITION_CACHE.length() + " bytes) in " + (System.currentTimeMillis() - start) + "ms.");
+    }
+}
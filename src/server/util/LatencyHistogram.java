@@ -0,0 +1,164 @@
+package server.util;
+
+/**
+ * A histogram of latencies in the style of an HDR histogram. Values are placed
+ * into buckets that grow exponentially in size, with every power of two split
+ * into 32 linear sub-buckets, so recorded values keep roughly 3% precision
+ * whether they are a few nanoseconds or several seconds. Recording a value is
+ * nothing more than an array increment, which makes this cheap enough to use
+ * on every tick.
+ *
+ * @author lare96
+ */
+public class LatencyHistogram {
+
+    /**
+     * The amount of bits used to index the linear sub-buckets.
+     */
+    private static final int SUB_BUCKET_BITS = 5;
+
+    /**
+     * The amount of linear sub-buckets in every power of two.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The amount of recorded values in each bucket.
+     */
+    private final long[] counts = new long[(64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS];
+
+    /**
+     * The total amount of values recorded.
+     */
+    private long totalCount;
+
+    /**
+     * The sum of all values recorded.
+     */
+    private long totalValue;
+
+    /**
+     * The largest value recorded.
+     */
+    private long max;
+
+    /**
+     * Records a value in this histogram.
+     *
+     * @param value
+     *            the value to record.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+
+        counts[indexOf(value)]++;
+        totalCount++;
+        totalValue += value;
+
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * Gets the value at the specified percentile. The value returned is the
+     * highest value that shares a bucket with the real value, but will never
+     * exceed the largest value recorded.
+     *
+     * @param percentile
+     *            the percentile between 0 and 100.
+     * @return the value at that percentile, or 0 if nothing has been recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+
+        long target = (long) Math.ceil((percentile / 100.0) * totalCount);
+
+        if (target < 1) {
+            target = 1;
+        }
+
+        long seen = 0;
+
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+
+            if (seen >= target) {
+                return Math.min(highestValueOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Removes every value recorded in this histogram.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = 0;
+        }
+
+        totalCount = 0;
+        totalValue = 0;
+        max = 0;
+    }
+
+    /**
+     * Gets the bucket a value is placed into.
+     *
+     * @param value
+     *            the value to get the bucket of.
+     * @return the index of the bucket.
+     */
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    /**
+     * Gets the highest value that can be placed into a bucket.
+     *
+     * @param index
+     *            the index of the bucket.
+     * @return the highest value.
+     */
+    private static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+
+        int shift = (index >> SUB_BUCKET_BITS) - 1;
+        long lowest = ((long) (SUB_BUCKETS + (index & (SUB_BUCKETS - 1)))) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * @return the totalCount.
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return the mean of all values recorded.
+     */
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) totalValue / totalCount;
+    }
+
+    /**
+     * @return the max.
+     */
+    public long getMax() {
+        return max;
+    }
+}
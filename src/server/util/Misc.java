@@ -104,7 +104,13 @@ public final class Misc {
             ITEM_DEFINITIONS = new File("./data/json/items/item_definitions.json"),
             MOB_DEFINITIONS = new File("./data/json/mobs/mob_definitions.json"),
             COMBAT_SPELLS = new File("./data/json/magic/world_combat_spells.json"),
-            NORMAL_SPELLS = new File("./data/json/magic/world_standard_spells.json");
+            NORMAL_SPELLS = new File("./data/json/magic/world_standard_spells.json"),
+            CLUSTER_NODES = new File("./data/json/cluster/cluster_nodes.json"),
+            PACKET_LIMITS = new File("./data/json/packets/packet_limits.json");
+
+    /** The precompiled definition caches. */
+    public static final File ITEM_DEFINITION_CACHE = new File("./data/cache/item_definitions.dat"),
+            MOB_DEFINITION_CACHE = new File("./data/cache/mob_definitions.dat");
 
     /** The bonus names. */
     public static final String[] BONUS_NAMES = { "Stab", "Slash", "Crush", "Magic", "Range", "Stab", "Slash", "Crush", "Magic", "Range", "Strength", "Prayer" };
@@ -112,9 +118,6 @@ public final class Misc {
     /** The character table. */
     private static char xlateTable[] = { ' ', 'e', 't', 'a', 'o', 'i', 'h', 'n', 's', 'r', 'd', 'l', 'u', 'm', 'w', 'c', 'y', 'f', 'g', 'p', 'b', 'v', 'k', 'x', 'j', 'q', 'z', '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', ' ', '!', '?', '.', ',', ':', ';', '(', ')', '-', '&', '*', '\\', '\'', '@', '#', '+', '=', '\243', '$', '%', '"', '[', ']' };
 
-    /** The decode buffer. */
-    private static char decodeBuf[] = new char[4096];
-
     /** A table of valid characters. */
     public static final char VALID_CHARS[] = { '_', 'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'i', 'j', 'k', 'l', 'm', 'n', 'o', 'p', 'q', 'r', 's', 't', 'u', 'v', 'w', 'x', 'y', 'z', '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', '!', '@', '#', '$', '%', '^', '&', '*', '(', ')', '-', '+', '=', ':', ';', '.', '>', '<', ',', '"', '[', ']', '|', '?', '/', '`' };
 
@@ -347,6 +350,7 @@ public final class Misc {
      * @return the unpacked string.
      */
     public static String textUnpack(byte packedData[], int size) {
+        char decodeBuf[] = new char[size * 2];
         int idx = 0, highNibble = -1;
         for (int i = 0; i < size * 2; i++) {
             int val = packedData[i / 2] >> (4 - 4 * (i % 2)) & 0xf;
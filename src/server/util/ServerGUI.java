@@ -41,7 +41,10 @@ import javax.swing.border.BevelBorder;
 import javax.swing.table.DefaultTableModel;
 
 import server.Server;
+import server.logic.task.Task;
+import server.logic.task.Task.Time;
 import server.net.HostGateway;
+import server.world.UpdateEncoder;
 import server.world.World;
 import server.world.entity.player.Player;
 
@@ -148,11 +151,11 @@ public final class ServerGUI {
                 if (World.isCanDrop()) {
                     World.setCanDrop(false);
                     Server.print("Dropping items is disabled!");
-                    World.sendMessage("Dropping items has been disabled for all players!");
+                    World.sendLocalMessage("Dropping items has been disabled for all players!");
                 } else {
                     World.setCanDrop(true);
                     Server.print("Dropping items is enabled!");
-                    World.sendMessage("Dropping items has been enabled for all players!");
+                    World.sendLocalMessage("Dropping items has been enabled for all players!");
                 }
             }
         });
@@ -170,11 +173,11 @@ public final class ServerGUI {
                 if (World.isCanTrade()) {
                     World.setCanTrade(false);
                     Server.print("Trading is disabled!");
-                    World.sendMessage("Trading items has been disabled for all players!");
+                    World.sendLocalMessage("Trading items has been disabled for all players!");
                 } else {
                     World.setCanTrade(true);
                     Server.print("Trading is enabled!");
-                    World.sendMessage("Trading items has been enabled for all players!");
+                    World.sendLocalMessage("Trading items has been enabled for all players!");
                 }
             }
         });
@@ -192,11 +195,11 @@ public final class ServerGUI {
                 if (World.isCanPickup()) {
                     World.setCanPickup(false);
                     Server.print("Picking up items is disabled!");
-                    World.sendMessage("Picking up items has been disabled for all players!");
+                    World.sendLocalMessage("Picking up items has been disabled for all players!");
                 } else {
                     World.setCanPickup(true);
                     Server.print("Picking up items is enabled!");
-                    World.sendMessage("Picking up items has been enabled for all players!");
+                    World.sendLocalMessage("Picking up items has been enabled for all players!");
                 }
             }
         });
@@ -214,11 +217,11 @@ public final class ServerGUI {
                 if (World.isCanShop()) {
                     World.setCanShop(false);
                     Server.print("Shopping is disabled!");
-                    World.sendMessage("Shopping has been disabled for all players!");
+                    World.sendLocalMessage("Shopping has been disabled for all players!");
                 } else {
                     World.setCanShop(true);
                     Server.print("Shopping is enabled!");
-                    World.sendMessage("Shopping has been enabled for all players!");
+                    World.sendLocalMessage("Shopping has been enabled for all players!");
                 }
             }
         });
@@ -232,9 +235,19 @@ public final class ServerGUI {
         mntmSaveAllPlayers.addMouseListener(new MouseAdapter() {
             @Override
             public void mouseReleased(MouseEvent e) {
-                World.savePlayers();
-                World.sendMessage("All players have been forcibly saved!");
-                Server.print("All players have been saved!");
+
+                /** Players can only be saved from the thread of their world. */
+                for (final World world : World.getWorlds()) {
+                    world.getEngine().submit(new Task(1, false, Time.TICK) {
+                        @Override
+                        public void logic() {
+                            world.save();
+                            world.broadcast("All players have been forcibly saved!");
+                            Server.print("All players in " + world + " have been saved!");
+                            this.cancel();
+                        }
+                    });
+                }
             }
         });
 
@@ -461,7 +474,7 @@ public final class ServerGUI {
         statisticsTable = new JTable();
         statisticsTable.setRowSelectionAllowed(false);
         statisticsTable.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
-        statisticsTable.setModel(new DefaultTableModel(new String[][] { { "Running Threads: ", "" }, { "Tickrate:", "" }, { "Players Online: ", "" }, { "Total Time Online:", "" }, { "Memory Usage: ", "" }, }, new String[] { "Engine", "Value" }) {
+        statisticsTable.setModel(new DefaultTableModel(new String[][] { { "Running Threads: ", "" }, { "Tickrate:", "" }, { "Players Online: ", "" }, { "Total Time Online:", "" }, { "Memory Usage: ", "" }, { "Slowest Phase: ", "" }, }, new String[] { "Engine", "Value" }) {
             @SuppressWarnings("unchecked")
             Class[] columnTypes = new Class[] { String.class, String.class };
 
@@ -477,7 +490,7 @@ public final class ServerGUI {
         statisticsTable.setSurrendersFocusOnKeystroke(true);
         statisticsTable.setFillsViewportHeight(true);
         statisticsTable.setBackground(Color.WHITE);
-        statisticsTable.setBounds(10, 53, 409, 80);
+        statisticsTable.setBounds(10, 53, 409, 96);
         desktopPane.add(statisticsTable);
 
         /**
@@ -489,7 +502,7 @@ public final class ServerGUI {
         statisticsGraphFooter.setHorizontalAlignment(SwingConstants.CENTER);
         statisticsGraphFooter.setColumns(10);
         statisticsGraphFooter.setBackground(SystemColor.menu);
-        statisticsGraphFooter.setBounds(0, 144, 86, 17);
+        statisticsGraphFooter.setBounds(0, 160, 86, 17);
         desktopPane.add(statisticsGraphFooter);
 
         /**
@@ -545,15 +558,30 @@ public final class ServerGUI {
                     return;
                 }
 
-                Player player = World.getPlayer(getPlayerList().getModel().getElementAt(getPlayerList().getSelectedIndex()));
+                final String name = getPlayerList().getModel().getElementAt(getPlayerList().getSelectedIndex());
 
-                if (player != null) {
-                    try {
-                        player.logout();
-                    } catch (Exception ex) {
-                        ex.printStackTrace();
-                    }
+                final World world = World.getWorld(name);
+
+                if (world == null) {
+                    return;
                 }
+
+                /** Players can only be logged out from the thread of their world. */
+                world.getEngine().submit(new Task(1, false, Time.TICK) {
+                    @Override
+                    public void logic() {
+                        Player player = world.getPlayer(name);
+
+                        if (player != null) {
+                            try {
+                                player.logout();
+                            } catch (Exception ex) {
+                                ex.printStackTrace();
+                            }
+                        }
+                        this.cancel();
+                    }
+                });
             }
         });
         btnNewButton_1.setBounds(125, 45, 89, 23);
@@ -570,16 +598,31 @@ public final class ServerGUI {
                     return;
                 }
 
-                Player player = World.getPlayer(getPlayerList().getModel().getElementAt(getPlayerList().getSelectedIndex()));
+                final String name = getPlayerList().getModel().getElementAt(getPlayerList().getSelectedIndex());
 
-                if (player != null) {
-                    try {
-                        player.setBanned(true);
-                        player.logout();
-                    } catch (Exception ex) {
-                        ex.printStackTrace();
-                    }
+                final World world = World.getWorld(name);
+
+                if (world == null) {
+                    return;
                 }
+
+                /** Players can only be logged out from the thread of their world. */
+                world.getEngine().submit(new Task(1, false, Time.TICK) {
+                    @Override
+                    public void logic() {
+                        Player player = world.getPlayer(name);
+
+                        if (player != null) {
+                            try {
+                                player.setBanned(true);
+                                player.logout();
+                            } catch (Exception ex) {
+                                ex.printStackTrace();
+                            }
+                        }
+                        this.cancel();
+                    }
+                });
             }
         });
         btnNewButton_3.setBounds(125, 79, 89, 23);
@@ -596,21 +639,36 @@ public final class ServerGUI {
                     return;
                 }
 
-                Player player = World.getPlayer(getPlayerList().getModel().getElementAt(getPlayerList().getSelectedIndex()));
+                final String name = getPlayerList().getModel().getElementAt(getPlayerList().getSelectedIndex());
 
-                if (player != null) {
-                    try {
-                        HostGateway.getBanned().add(player.getNetwork().getHost());
+                final World world = World.getWorld(name);
 
-                        FileWriter writer = new FileWriter(new File("./data/ip_banned.txt"), true);
-                        writer.write(player.getNetwork().getHost());
-                        writer.close();
+                if (world == null) {
+                    return;
+                }
+
+                /** Players can only be logged out from the thread of their world. */
+                world.getEngine().submit(new Task(1, false, Time.TICK) {
+                    @Override
+                    public void logic() {
+                        Player player = world.getPlayer(name);
+
+                        if (player != null) {
+                            try {
+                                HostGateway.ban(player.getNetwork().getHost());
+
+                                FileWriter writer = new FileWriter(new File("./data/ip_banned.txt"), true);
+                                writer.write(player.getNetwork().getHost() + System.getProperty("line.separator"));
+                                writer.close();
 
-                        player.logout();
-                    } catch (Exception ex) {
-                        ex.printStackTrace();
+                                player.logout();
+                            } catch (Exception ex) {
+                                ex.printStackTrace();
+                            }
+                        }
+                        this.cancel();
                     }
-                }
+                });
             }
         });
         btnNewButton_4.setBounds(125, 113, 89, 23);
@@ -627,16 +685,28 @@ public final class ServerGUI {
                     return;
                 }
 
-                Player player = World.getPlayer(getPlayerList().getModel().getElementAt(getPlayerList().getSelectedIndex()));
+                final String name = getPlayerList().getModel().getElementAt(getPlayerList().getSelectedIndex());
+                final String message = sendMessageTextArea.getText();
+                sendMessageTextArea.setText("");
 
-                if (player != null) {
-                    try {
-                        player.getServerPacketBuilder().sendMessage(sendMessageTextArea.getText());
-                        sendMessageTextArea.setText("");
-                    } catch (Exception ex) {
-                        ex.printStackTrace();
-                    }
+                final World world = World.getWorld(name);
+
+                if (world == null) {
+                    return;
                 }
+
+                /** Packets can only be sent from the thread of their world. */
+                world.getEngine().submit(new Task(1, false, Time.TICK) {
+                    @Override
+                    public void logic() {
+                        Player player = world.getPlayer(name);
+
+                        if (player != null) {
+                            player.getServerPacketBuilder().sendMessage(message);
+                        }
+                        this.cancel();
+                    }
+                });
             }
         });
         btnNewButton_6.setBounds(233, 114, 186, 57);
@@ -684,6 +754,8 @@ public final class ServerGUI {
                             Server.setInDeveloperMode(s.nextBoolean());
                         } else if (next.equals("[betamode]")) {
                             Server.setInBetaMode(s.nextBoolean());
+                        } else if (next.equals("[updatemode]")) {
+                            UpdateEncoder.setMode(UpdateEncoder.Mode.valueOf(s.next().toUpperCase()));
                         } else if (next.equals("[livestats]")) {
                             Server.setLiveStatistics(s.nextBoolean());
                             firstTextIndex = true;
@@ -725,6 +797,8 @@ public final class ServerGUI {
                 writer.newLine();
                 writer.write("[betamode] false");
                 writer.newLine();
+                writer.write("[updatemode] serial");
+                writer.newLine();
                 writer.write("[livestats] false");
                 writer.newLine();
                 writer.write("The settings file was deleted, and therefore all saved settings have been reset to their default states. If you did not delete the file, please use the 'contact' button in the upper right corner to report this bug. Thanks!");
@@ -770,6 +844,8 @@ public final class ServerGUI {
             writer.newLine();
             writer.write("[betamode] " + Boolean.toString(Server.isInBetaMode()));
             writer.newLine();
+            writer.write("[updatemode] " + UpdateEncoder.getMode().name().toLowerCase());
+            writer.newLine();
             writer.write("[livestats] " + Boolean.toString(Server.isLiveStatistics()));
             writer.newLine();
             writer.write(notepadTextArea.getText());
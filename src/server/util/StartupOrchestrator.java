@@ -0,0 +1,292 @@
+package server.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import server.Server;
+
+/**
+ * Runs the loaders that have to finish before the server can start. Every
+ * loader declares the loaders it depends on, and loaders that don't depend on
+ * each other are run at the same time on a pool of threads. A loader is
+ * started as soon as all of the loaders it depends on have finished. <br>
+ * <br>
+ *
+ * If any loader fails the loaders still running are interrupted, no more
+ * loaders are started and the failure is thrown from {@link #run()}.
+ *
+ * @author lare96
+ */
+public class StartupOrchestrator {
+
+    /**
+     * The loaders to run, by name, in the order they were added.
+     */
+    private final Map<String, Loader> loaders = new LinkedHashMap<String, Loader>();
+
+    /**
+     * How long every loader took to run in milliseconds, by name, in the
+     * order the loaders finished.
+     */
+    private final Map<String, Long> timings = new LinkedHashMap<String, Long>();
+
+    /**
+     * How long it took for every loader to finish in milliseconds.
+     */
+    private long elapsed;
+
+    /**
+     * Adds a loader to be run.
+     *
+     * @param loader
+     *            the loader to add.
+     * @return this orchestrator, for chaining.
+     */
+    public StartupOrchestrator add(Loader loader) {
+        if (loaders.containsKey(loader.getName())) {
+            throw new IllegalArgumentException("Duplicate loader: " + loader.getName());
+        }
+
+        loaders.put(loader.getName(), loader);
+        return this;
+    }
+
+    /**
+     * Runs every loader and waits for all of them to finish.
+     *
+     * @throws Exception
+     *             the failure of the first loader that failed, or if the
+     *             dependencies of the loaders can't be satisfied.
+     */
+    public void run() throws Exception {
+        Map<String, Integer> waiting = new HashMap<String, Integer>();
+        Map<String, List<Loader>> dependents = new HashMap<String, List<Loader>>();
+        List<Loader> ready = new ArrayList<Loader>();
+
+        for (Loader loader : loaders.values()) {
+            for (String dependency : loader.getDependencies()) {
+                if (!loaders.containsKey(dependency)) {
+                    throw new IllegalStateException(loader.getName() + " depends on unknown loader " + dependency);
+                }
+
+                if (!dependents.containsKey(dependency)) {
+                    dependents.put(dependency, new ArrayList<Loader>());
+                }
+
+                dependents.get(dependency).add(loader);
+            }
+
+            waiting.put(loader.getName(), loader.getDependencies().length);
+
+            if (loader.getDependencies().length == 0) {
+                ready.add(loader);
+            }
+        }
+
+        checkCycles(waiting, dependents, ready);
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(loaders.size(), Runtime.getRuntime().availableProcessors())), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "StartupLoader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        CompletionService<Loader> completion = new ExecutorCompletionService<Loader>(pool);
+        long start = System.currentTimeMillis();
+        int running = 0;
+
+        try {
+            while (!ready.isEmpty() || running > 0) {
+                for (Loader loader : ready) {
+                    completion.submit(loader);
+                    running++;
+                }
+
+                ready.clear();
+
+                Loader finished;
+
+                try {
+                    finished = completion.take().get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
+                }
+
+                running--;
+                timings.put(finished.getName(), finished.getElapsed());
+
+                if (dependents.containsKey(finished.getName())) {
+                    for (Loader dependent : dependents.get(finished.getName())) {
+                        int left = waiting.get(dependent.getName()) - 1;
+                        waiting.put(dependent.getName(), left);
+
+                        if (left == 0) {
+                            ready.add(dependent);
+                        }
+                    }
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        elapsed = System.currentTimeMillis() - start;
+    }
+
+    /**
+     * Makes sure every loader will eventually be run, by walking the
+     * dependencies the same way they will be walked when the loaders are run.
+     *
+     * @param waiting
+     *            the amount of loaders every loader depends on.
+     * @param dependents
+     *            the loaders that depend on every loader.
+     * @param ready
+     *            the loaders that don't depend on any others.
+     */
+    private void checkCycles(Map<String, Integer> waiting, Map<String, List<Loader>> dependents, List<Loader> ready) {
+        Map<String, Integer> left = new HashMap<String, Integer>(waiting);
+        List<Loader> walk = new ArrayList<Loader>(ready);
+        int reached = 0;
+
+        while (!walk.isEmpty()) {
+            Loader loader = walk.remove(walk.size() - 1);
+            reached++;
+
+            if (dependents.containsKey(loader.getName())) {
+                for (Loader dependent : dependents.get(loader.getName())) {
+                    int amount = left.get(dependent.getName()) - 1;
+                    left.put(dependent.getName(), amount);
+
+                    if (amount == 0) {
+                        walk.add(dependent);
+                    }
+                }
+            }
+        }
+
+        if (reached != loaders.size()) {
+            List<String> stuck = new ArrayList<String>();
+
+            for (Map.Entry<String, Integer> entry : left.entrySet()) {
+                if (entry.getValue() > 0) {
+                    stuck.add(entry.getKey());
+                }
+            }
+            throw new IllegalStateException("Circular dependency between loaders " + stuck);
+        }
+    }
+
+    /**
+     * Gets a report of how long every loader took, in the order they
+     * finished.
+     *
+     * @return the report.
+     */
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        long total = 0;
+
+        for (Map.Entry<String, Long> entry : timings.entrySet()) {
+            report.append(report.length() == 0 ? "" : ", ").append(entry.getKey()).append(" ").append(entry.getValue()).append("ms");
+            total += entry.getValue();
+        }
+        return report.append(" (").append(total).append("ms of loading done in ").append(elapsed).append("ms)").toString();
+    }
+
+    /**
+     * A single loader run on startup.
+     *
+     * @author lare96
+     */
+    public static abstract class Loader implements Callable<Loader> {
+
+        /**
+         * The name of this loader.
+         */
+        private final String name;
+
+        /**
+         * The names of the loaders that have to finish before this one.
+         */
+        private final String[] dependencies;
+
+        /**
+         * How long this loader took to run in milliseconds.
+         */
+        private long elapsed;
+
+        /**
+         * Create a new {@link Loader}.
+         *
+         * @param name
+         *            the name of this loader.
+         * @param dependencies
+         *            the names of the loaders that have to finish before this
+         *            one.
+         */
+        public Loader(String name, String... dependencies) {
+            this.name = name;
+            this.dependencies = dependencies;
+        }
+
+        /**
+         * Loads whatever this loader is responsible for.
+         *
+         * @throws Exception
+         *             if anything can't be loaded.
+         */
+        public abstract void load() throws Exception;
+
+        @Override
+        public Loader call() throws Exception {
+            long start = System.currentTimeMillis();
+
+            try {
+                load();
+            } catch (Exception e) {
+                Server.print("Startup loader " + name + " failed!");
+                throw e;
+            }
+
+            elapsed = System.currentTimeMillis() - start;
+            return this;
+        }
+
+        /**
+         * @return the name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the dependencies.
+         */
+        public String[] getDependencies() {
+            return dependencies;
+        }
+
+        /**
+         * @return the elapsed.
+         */
+        public long getElapsed() {
+            return elapsed;
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package server.world;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import server.net.buffer.BufferPool;
+import server.util.LatencyHistogram;
+
+/**
+ * Times every phase of the logic cycle separately on every tick. Each phase
+ * has its own {@link LatencyHistogram} along with a count of the entities it
+ * processed. Once every minute a snapshot of the percentiles for every phase is
+ * appended to a rolling CSV file and the histograms are started over, so each
+ * snapshot describes the last minute of cycles only. The amount of memory
+ * allocated, the garbage collections and the use of the {@link BufferPool}
+ * over the same minute are appended to a second file at the same time. Every
+ * world has its own profiler, and every world other than the main world
+ * appends its snapshots to a file of its own.
+ *
+ * @author lare96
+ */
+public final class CycleProfiler {
+
+    /**
+     * The amount of cycles between every snapshot.
+     */
+    private static final int SNAPSHOT_INTERVAL = 100;
+
+    /**
+     * The directory snapshots are appended to files in.
+     */
+    private static final String SNAPSHOT_DIRECTORY = "./data/logs/";
+
+    /**
+     * The size in bytes the snapshot file is allowed to grow to before it is
+     * rolled over.
+     */
+    private static final long SNAPSHOT_FILE_LIMIT = 1048576;
+
+    /**
+     * The header written at the top of every snapshot file.
+     */
+    private static final String SNAPSHOT_HEADER = "time,phase,cycles,entities,mean_us,p50_us,p99_us,p999_us,max_us";
+
+    /**
+     * The file memory snapshots are appended to.
+     */
+    private static final File MEMORY_FILE = new File(SNAPSHOT_DIRECTORY + "memory_profile.csv");
+
+    /**
+     * The header written at the top of every memory snapshot file.
+     */
+    private static final String MEMORY_HEADER = "time,cycles,allocated_kb,allocated_kb_per_cycle,gc_count,gc_ms,buffers_borrowed,buffers_allocated,buffers_outstanding,unpooled_kb";
+
+    /**
+     * The date format used for snapshots. Date formats can't be shared between
+     * threads, and every profiler takes snapshots on the thread of its world.
+     */
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+
+    /**
+     * The file snapshots of this profiler are appended to.
+     */
+    private final File snapshotFile;
+
+    /**
+     * If this profiler also appends memory snapshots. Memory is shared by
+     * every world, so only the profiler of the main world does this.
+     */
+    private final boolean memory;
+
+    /**
+     * The latencies recorded for every phase.
+     */
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Phase.values().length];
+
+    /**
+     * The amount of entities processed by every phase since the last snapshot.
+     */
+    private final long[] entities = new long[Phase.values().length];
+
+    /**
+     * The amount of cycles recorded since the last snapshot.
+     */
+    private int cycles;
+
+    /**
+     * The time the current cycle was started at.
+     */
+    private long cycleStart;
+
+    /**
+     * The amount of bytes allocated by every thread at the last snapshot.
+     */
+    private long lastAllocated = allocatedBytes();
+
+    /**
+     * The amount of garbage collections at the last snapshot.
+     */
+    private long lastCollections;
+
+    /**
+     * The time spent collecting garbage at the last snapshot.
+     */
+    private long lastCollectionTime;
+
+    /**
+     * The amount of buffers borrowed from the pool at the last snapshot.
+     */
+    private long lastBorrowed;
+
+    /**
+     * The amount of buffers allocated by the pool at the last snapshot.
+     */
+    private long lastBuffersAllocated;
+
+    /**
+     * The amount of bytes allocated for unpooled buffers at the last
+     * snapshot.
+     */
+    private long lastUnpooledBytes;
+
+    /**
+     * A summary of the slowest phase in the last snapshot.
+     */
+    private String summary = "No snapshot yet";
+
+    /**
+     * The phases of the logic cycle, along with the time packets wait between
+     * being read from the socket and being handled, which isn't a phase but is
+     * recorded and written out the same way.
+     *
+     * @author lare96
+     */
+    public enum Phase {
+        CYCLE("cycle"),
+
+        NETWORK("network"),
+
+        LOGIN("login"),
+
+        PLAYER_LOGIC("player-logic"),
+
+        MOB_LOGIC("mob-logic"),
+
+        PLAYER_UPDATE("player-update"),
+
+        MOB_UPDATE("mob-update"),
+
+        PLAYER_RESET("player-reset"),
+
+        MOB_RESET("mob-reset"),
+
+        FLUSH("flush"),
+
+        PACKET_LATENCY("packet-latency");
+
+        /**
+         * The name of this phase.
+         */
+        private String name;
+
+        /**
+         * Create a new phase.
+         *
+         * @param name
+         *            the name of this phase.
+         */
+        Phase(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return the name.
+         */
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * Create a new profiler.
+     *
+     * @param world
+     *            the id of the world being profiled.
+     */
+    public CycleProfiler(int world) {
+        this.snapshotFile = new File(SNAPSHOT_DIRECTORY + (world == 0 ? "cycle_profile.csv" : "cycle_profile_" + world + ".csv"));
+        this.memory = world == 0;
+
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Marks the start of a new cycle.
+     *
+     * @return the time the cycle started at.
+     */
+    public long startCycle() {
+        cycleStart = System.nanoTime();
+        return cycleStart;
+    }
+
+    /**
+     * Marks the end of the current cycle, taking a snapshot if enough cycles
+     * have passed.
+     */
+    public void endCycle() {
+        record(Phase.CYCLE, System.nanoTime() - cycleStart, 0);
+
+        if (++cycles >= SNAPSHOT_INTERVAL) {
+            snapshot();
+        }
+    }
+
+    /**
+     * Records the time a phase took from the specified start time until now.
+     *
+     * @param phase
+     *            the phase to record.
+     * @param start
+     *            the time the phase was started at.
+     * @param processed
+     *            the amount of entities that were processed.
+     * @return the current time, so it can be used as the start of the next
+     *         phase.
+     */
+    public long time(Phase phase, long start, int processed) {
+        long now = System.nanoTime();
+        record(phase, now - start, processed);
+        return now;
+    }
+
+    /**
+     * Records the time a phase took.
+     *
+     * @param phase
+     *            the phase to record.
+     * @param nanos
+     *            the time the phase took in nanoseconds.
+     * @param processed
+     *            the amount of entities that were processed.
+     */
+    public void record(Phase phase, long nanos, int processed) {
+        histograms[phase.ordinal()].record(nanos);
+        entities[phase.ordinal()] += processed;
+    }
+
+    /**
+     * Appends a snapshot of every phase to the snapshot file and starts the
+     * histograms over.
+     */
+    public void snapshot() {
+        String time = dateFormat.format(new Date());
+        StringBuilder builder = new StringBuilder();
+        Phase slowest = null;
+        long slowestTime = -1;
+
+        for (Phase phase : Phase.values()) {
+            LatencyHistogram histogram = histograms[phase.ordinal()];
+
+            if (histogram.getTotalCount() == 0) {
+                continue;
+            }
+
+            builder.append(time).append(',').append(phase.getName()).append(',').append(histogram.getTotalCount()).append(',').append(entities[phase.ordinal()]).append(',').append((long) (histogram.getMean() / 1000)).append(',').append(histogram.getValueAtPercentile(50) / 1000).append(',').append(histogram.getValueAtPercentile(99) / 1000).append(',').append(histogram.getValueAtPercentile(99.9) / 1000).append(',').append(histogram.getMax() / 1000).append(System.getProperty("line.separator"));
+
+            if (phase != Phase.CYCLE && phase != Phase.PACKET_LATENCY && histogram.getValueAtPercentile(99) > slowestTime) {
+                slowest = phase;
+                slowestTime = histogram.getValueAtPercentile(99);
+            }
+        }
+
+        if (slowest != null) {
+            LatencyHistogram latency = histograms[Phase.PACKET_LATENCY.ordinal()];
+            summary = slowest.getName() + " (p99 " + (slowestTime / 1000) / 1000.0 + "ms, max " + (histograms[slowest.ordinal()].getMax() / 1000) / 1000.0 + "ms)";
+
+            if (latency.getTotalCount() > 0) {
+                summary += ", packets p99 " + (latency.getValueAtPercentile(99) / 1000) / 1000.0 + "ms";
+            }
+        }
+
+        write(snapshotFile, SNAPSHOT_HEADER, builder.toString());
+
+        if (memory) {
+            write(MEMORY_FILE, MEMORY_HEADER, memorySnapshot(time));
+        }
+
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i].reset();
+            entities[i] = 0;
+        }
+
+        cycles = 0;
+    }
+
+    /**
+     * Creates a line describing the memory allocated and collected since the
+     * last snapshot.
+     *
+     * @param time
+     *            the time of the snapshot.
+     * @return the line.
+     */
+    private String memorySnapshot(String time) {
+        long allocated = allocatedBytes();
+        long collections = 0;
+        long collectionTime = 0;
+
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            collections += Math.max(collector.getCollectionCount(), 0);
+            collectionTime += Math.max(collector.getCollectionTime(), 0);
+        }
+
+        BufferPool pool = BufferPool.getSingleton();
+        long allocatedKb = allocated == -1 ? -1 : Math.max(allocated - lastAllocated, 0) / 1024;
+        String line = time + ',' + cycles + ',' + allocatedKb + ',' + (allocatedKb == -1 || cycles == 0 ? -1 : allocatedKb / cycles) + ',' + (collections - lastCollections) + ',' + (collectionTime - lastCollectionTime) + ',' + (pool.getAcquired() - lastBorrowed) + ',' + (pool.getAllocated() - lastBuffersAllocated) + ',' + (pool.getAcquired() - pool.getReleased()) + ',' + ((pool.getUnpooledBytes() - lastUnpooledBytes) / 1024) + System.getProperty("line.separator");
+
+        lastAllocated = allocated;
+        lastCollections = collections;
+        lastCollectionTime = collectionTime;
+        lastBorrowed = pool.getAcquired();
+        lastBuffersAllocated = pool.getAllocated();
+        lastUnpooledBytes = pool.getUnpooledBytes();
+        return line;
+    }
+
+    /**
+     * Gets the amount of bytes allocated by every live thread, if the virtual
+     * machine is able to measure it.
+     *
+     * @return the amount of bytes allocated, or -1 if it can't be measured.
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threads;
+
+        if (!bean.isThreadAllocatedMemorySupported() || !bean.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+
+        long total = 0;
+
+        for (long allocated : bean.getThreadAllocatedBytes(bean.getAllThreadIds())) {
+            total += Math.max(allocated, 0);
+        }
+        return total;
+    }
+
+    /**
+     * Appends text to a snapshot file, rolling the file over first if it has
+     * grown too large.
+     *
+     * @param file
+     *            the file to append to.
+     * @param headerText
+     *            the header written at the top of a new file.
+     * @param text
+     *            the text to append.
+     */
+    private void write(File file, String headerText, String text) {
+        try {
+            if (!file.getParentFile().exists()) {
+                file.getParentFile().mkdirs();
+            }
+
+            if (file.length() > SNAPSHOT_FILE_LIMIT) {
+                File old = new File(file.getPath() + ".old");
+
+                if (old.exists()) {
+                    old.delete();
+                }
+
+                file.renameTo(old);
+            }
+
+            boolean header = !file.exists();
+            BufferedWriter writer = new BufferedWriter(new FileWriter(file, true));
+
+            if (header) {
+                writer.write(headerText);
+                writer.newLine();
+            }
+
+            writer.write(text);
+            writer.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Gets the histogram for a phase.
+     *
+     * @param phase
+     *            the phase to get the histogram for.
+     * @return the histogram.
+     */
+    public LatencyHistogram getHistogram(Phase phase) {
+        return histograms[phase.ordinal()];
+    }
+
+    /**
+     * @return the summary.
+     */
+    public String getSummary() {
+        return summary;
+    }
+}
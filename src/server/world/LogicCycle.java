@@ -2,8 +2,9 @@ package server.world;
 
 import server.Server;
 import server.logic.task.Task;
-import server.net.event.NetworkEventDispatcher;
+import server.net.buffer.BufferPool;
 import server.util.ServerGUI;
+import server.world.CycleProfiler.Phase;
 
 /**
  * The core of the server where all tickable logic is executed.
@@ -13,49 +14,65 @@ import server.util.ServerGUI;
 public final class LogicCycle extends Task {
 
     /**
-     * Creates a new task to carry out tickable logic.
+     * Creates a new task to carry out tickable logic. The first cycle is
+     * carried out on the thread of the world it was submitted to, like every
+     * other cycle.
      */
     public LogicCycle() {
-        super(1, true, Time.TICK);
+        super(1, false, Time.TICK);
     }
 
     @Override
     public void logic() {
+        World world = World.current();
+        CycleProfiler profiler = world.getProfiler();
 
         /** Reset the overhead timer at the beginning of the cycle. */
-        Server.getOverhead().reset();
+        world.getOverhead().reset();
+        long start = profiler.startCycle();
 
-        /** First dispatch network events. */
-        NetworkEventDispatcher.getSingleton().dispatch();
+        /** First handle the packets read since the last cycle. */
+        start = profiler.time(Phase.NETWORK, start, world.getDispatcher().dispatch(profiler));
+
+        /** Next finish the logins that have been loaded. */
+        profiler.time(Phase.LOGIN, start, world.getLoginService().process());
 
         /** Next execute game logic. */
         try {
-            World.process();
+            world.process();
         } catch (Exception ex) {
             ex.printStackTrace();
         }
 
+        /** Next write everything sent this cycle. */
+        start = System.nanoTime();
+        world.getDispatcher().flush();
+        profiler.time(Phase.FLUSH, start, 0);
+        BufferPool.getSingleton().checkLeaks();
+
         /** Next execute the updating of the GUI if needed. */
-        if (Server.isLiveStatistics()) {
+        if (Server.isLiveStatistics() && world.getId() == 0) {
             try {
-                ServerGUI.getProgressBar().setValue((Server.getCycleTimeOverhead() / 10) > 100 ? 100 : (int) (Server.getCycleTimeOverhead() / 10));
-                ServerGUI.getProgressBar().setString("Server Load: " + (Server.getCycleTimeOverhead() / 10.0) + "%");
+                ServerGUI.getProgressBar().setValue((world.getCycleTimeOverhead() / 10) > 100 ? 100 : (int) (world.getCycleTimeOverhead() / 10));
+                ServerGUI.getProgressBar().setString("Server Load: " + (world.getCycleTimeOverhead() / 10.0) + "%");
                 ServerGUI.getStatisticsTable().setValueAt(Thread.activeCount() + " threads currently active", 0, 1);
-                ServerGUI.getStatisticsTable().setValueAt(Server.getCycleTimeOverhead() + " milliseconds", 1, 1);
-                ServerGUI.getStatisticsTable().setValueAt(World.playerAmount() + " players currently online", 2, 1);
+                ServerGUI.getStatisticsTable().setValueAt(world.getCycleTimeOverhead() + " milliseconds", 1, 1);
+                ServerGUI.getStatisticsTable().setValueAt(World.playerAmount() + " players currently online in " + World.getWorlds().size() + " worlds (" + world.getLoginService().getQueueDepth() + " logging in, " + World.reapedAmount() + " timed out)", 2, 1);
                 ServerGUI.getStatisticsTable().setValueAt((Server.getTotalOnlineTime().elapsed() / 1000) + " seconds", 3, 1);
                 ServerGUI.getStatisticsTable().setValueAt(((Runtime.getRuntime().maxMemory() - Runtime.getRuntime().freeMemory()) / 1048576) + " megabytes of memory", 4, 1);
+                ServerGUI.getStatisticsTable().setValueAt(profiler.getSummary(), 5, 1);
             } catch (Exception e) {
                 e.printStackTrace();
             }
         }
 
         /** ... Set the elapsed time. */
-        Server.setCycleTimeOverhead(Server.getOverhead().elapsed());
+        world.setCycleTimeOverhead(world.getOverhead().elapsed());
+        profiler.endCycle();
 
         /** And finally, print a warning message if needed. */
-        if (Server.getCycleTimeOverhead() > 600) {
-            Server.print("Server under stress! [tick: " + Server.getCycleTimeOverhead() + "]");
+        if (world.getCycleTimeOverhead() > 600) {
+            Server.print(world + " under stress! [tick: " + world.getCycleTimeOverhead() + "]");
         }
     }
 }
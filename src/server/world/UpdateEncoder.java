@@ -0,0 +1,462 @@
+package server.world;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+import server.Server;
+import server.net.ISAACCipher;
+import server.net.buffer.PacketBuffer;
+import server.world.CycleProfiler.Phase;
+import server.world.entity.mob.Mob;
+import server.world.entity.mob.MobUpdate;
+import server.world.entity.player.Player;
+import server.world.entity.player.PlayerUpdate;
+
+/**
+ * Encodes and sends the player and NPC update packets for every player once
+ * per cycle. Encoding a player's packets only reads the state of the other
+ * entities and only modifies the player's own local lists and encryptor, so in
+ * parallel mode the players are split into ranges and encoded across all cores
+ * on a {@link ForkJoinPool}. Both packets for a single player are always
+ * encoded in order by the same worker, so the encryptor is used in the same
+ * order as it is serially. The packets are then sent from the game thread in
+ * slot order, which means the bytes sent are exactly the same in every mode.
+ * <br>
+ * <br>
+ *
+ * Verify mode encodes every packet in parallel, rewinds the players, encodes
+ * every packet again serially, and reports any packets that differ. This is
+ * far too slow for a live server and should only be used to check that
+ * changes made to the update code have not broken the parallel mode.
+ *
+ * @author lare96
+ */
+public final class UpdateEncoder {
+
+    /**
+     * The amount of players encoded by a worker before the range is not split
+     * any further.
+     */
+    private static final int THRESHOLD = 64;
+
+    /**
+     * The mode used to encode the update packets in every world.
+     */
+    private static volatile Mode mode = Mode.SERIAL;
+
+    /**
+     * The world the update packets are encoded for.
+     */
+    private final World world;
+
+    /**
+     * The pool used to encode the update packets in parallel, created the
+     * first time it is needed.
+     */
+    private ForkJoinPool pool;
+
+    /**
+     * The encoded player update packets, indexed by player slot.
+     */
+    private final PacketBuffer.OutBuffer[] playerUpdates = new PacketBuffer.OutBuffer[World.MAXIMUM_PLAYERS];
+
+    /**
+     * The encoded NPC update packets, indexed by player slot.
+     */
+    private final PacketBuffer.OutBuffer[] mobUpdates = new PacketBuffer.OutBuffer[World.MAXIMUM_PLAYERS];
+
+    /**
+     * The time taken to encode each player update packet.
+     */
+    private final long[] playerUpdateTimes = new long[World.MAXIMUM_PLAYERS];
+
+    /**
+     * The time taken to encode each NPC update packet.
+     */
+    private final long[] mobUpdateTimes = new long[World.MAXIMUM_PLAYERS];
+
+    /**
+     * Any errors thrown while encoding, indexed by player slot.
+     */
+    private final Throwable[] errors = new Throwable[World.MAXIMUM_PLAYERS];
+
+    /**
+     * The amount of cycles that were found to differ while verifying.
+     */
+    private int mismatches;
+
+    /**
+     * The modes used to encode the update packets.
+     *
+     * @author lare96
+     */
+    public enum Mode {
+
+        /** Every packet is encoded on the game thread. */
+        SERIAL,
+
+        /** The packets are encoded across all cores. */
+        PARALLEL,
+
+        /** Packets are encoded both ways and compared. */
+        VERIFY
+    }
+
+    /**
+     * Create a new {@link UpdateEncoder}.
+     *
+     * @param world
+     *            the world the update packets are encoded for.
+     */
+    public UpdateEncoder(World world) {
+        this.world = world;
+    }
+
+    /**
+     * Applies the hits dealt this cycle, then encodes and sends the update
+     * packets for every player.
+     *
+     * @param profiler
+     *            the profiler to record the encoding times with.
+     * @return the amount of players updated.
+     */
+    public int update(CycleProfiler profiler) {
+        Player[] players = world.getPlayers();
+        Mob[] npcs = world.getNpcs();
+
+        /**
+         * Apply hits and encode changed appearances once, so encoding never
+         * modifies the entities.
+         */
+        for (int i = 0; i < players.length; i++) {
+            if (players[i] != null) {
+                PlayerUpdate.applyHits(players[i]);
+                PlayerUpdate.updateAppearance(players[i]);
+            }
+        }
+
+        for (int i = 0; i < npcs.length; i++) {
+            if (npcs[i] != null) {
+                MobUpdate.applyHits(npcs[i]);
+            }
+        }
+
+        /** Encode the packets using the current mode. */
+        Mode mode = UpdateEncoder.mode;
+
+        if (mode == Mode.SERIAL) {
+            encode(0, players.length);
+        } else if (mode == Mode.PARALLEL) {
+            getPool().invoke(new EncodeAction(0, players.length));
+        } else if (mode == Mode.VERIFY) {
+            verify();
+        }
+
+        /** Send the packets in slot order and clear them for the next cycle. */
+        long playerUpdateTime = 0;
+        long mobUpdateTime = 0;
+        int processed = 0;
+
+        for (int i = 0; i < players.length; i++) {
+            Player player = players[i];
+
+            if (player == null) {
+                continue;
+            }
+
+            if (errors[i] != null) {
+                errors[i].printStackTrace();
+                release(i);
+                player.getNetwork().disconnect();
+            } else if (playerUpdates[i] != null && mobUpdates[i] != null) {
+                player.getNetwork().send(playerUpdates[i].getBuffer());
+                player.getNetwork().send(mobUpdates[i].getBuffer());
+            }
+
+            playerUpdateTime += playerUpdateTimes[i];
+            mobUpdateTime += mobUpdateTimes[i];
+            processed++;
+        }
+
+        clear();
+        profiler.record(Phase.PLAYER_UPDATE, playerUpdateTime, processed);
+        profiler.record(Phase.MOB_UPDATE, mobUpdateTime, processed);
+        return processed;
+    }
+
+    /**
+     * Encodes the update packets for a range of players.
+     *
+     * @param from
+     *            the first slot to encode, inclusive.
+     * @param to
+     *            the last slot to encode, exclusive.
+     */
+    private void encode(int from, int to) {
+        Player[] players = world.getPlayers();
+
+        for (int i = from; i < to; i++) {
+            Player player = players[i];
+
+            if (player == null) {
+                continue;
+            }
+
+            try {
+                long before = System.nanoTime();
+                playerUpdates[i] = PlayerUpdate.encode(player);
+                long after = System.nanoTime();
+                mobUpdates[i] = MobUpdate.encode(player);
+                playerUpdateTimes[i] = after - before;
+                mobUpdateTimes[i] = System.nanoTime() - after;
+            } catch (Throwable t) {
+                errors[i] = t;
+            }
+        }
+    }
+
+    /**
+     * Encodes every packet in parallel and then again serially from the same
+     * starting state, printing any packets that differ. The serially encoded
+     * packets are the ones that end up being sent.
+     */
+    private void verify() {
+        Player[] players = world.getPlayers();
+        ISAACCipher[] encryptors = new ISAACCipher[players.length];
+        List<List<Player>> localPlayers = new ArrayList<List<Player>>(players.length);
+        List<List<Mob>> localNpcs = new ArrayList<List<Mob>>(players.length);
+
+        /** Save the state encoding will modify. */
+        for (int i = 0; i < players.length; i++) {
+            Player player = players[i];
+
+            if (player == null) {
+                localPlayers.add(null);
+                localNpcs.add(null);
+                continue;
+            }
+
+            encryptors[i] = new ISAACCipher(player.getNetwork().getEncryptor());
+            localPlayers.add(new ArrayList<Player>(player.getPlayers()));
+            localNpcs.add(new ArrayList<Mob>(player.getNpcs()));
+        }
+
+        /** Encode in parallel and keep the results. */
+        getPool().invoke(new EncodeAction(0, players.length));
+        byte[][] parallelPlayerUpdates = toBytes(playerUpdates);
+        byte[][] parallelMobUpdates = toBytes(mobUpdates);
+        boolean[] parallelErrors = new boolean[players.length];
+
+        for (int i = 0; i < players.length; i++) {
+            parallelErrors[i] = errors[i] != null;
+        }
+
+        /** Rewind every player, drop the cached blocks and encode again serially. */
+        for (int i = 0; i < players.length; i++) {
+            release(i);
+        }
+
+        clear();
+
+        for (int i = 0; i < players.length; i++) {
+            Player player = players[i];
+
+            if (player == null) {
+                continue;
+            }
+
+            player.getNetwork().setEncryptor(encryptors[i]);
+            player.getPlayers().clear();
+            player.getPlayers().addAll(localPlayers.get(i));
+            player.getNpcs().clear();
+            player.getNpcs().addAll(localNpcs.get(i));
+            player.getUpdateBlocks().clear();
+        }
+
+        for (Mob npc : world.getNpcs()) {
+            if (npc != null) {
+                npc.getUpdateBlocks().clear();
+            }
+        }
+
+        encode(0, players.length);
+
+        /** Compare the results of both modes. */
+        byte[][] serialPlayerUpdates = toBytes(playerUpdates);
+        byte[][] serialMobUpdates = toBytes(mobUpdates);
+        boolean matched = true;
+
+        for (int i = 0; i < players.length; i++) {
+            if (players[i] == null) {
+                continue;
+            }
+
+            if (parallelErrors[i] != (errors[i] != null)) {
+                Server.print("Parallel update for " + players[i].getUsername() + " failed in only one mode!");
+                matched = false;
+            } else if (!Arrays.equals(parallelPlayerUpdates[i], serialPlayerUpdates[i])) {
+                Server.print("Parallel player update for " + players[i].getUsername() + " differs from the serial update!");
+                matched = false;
+            } else if (!Arrays.equals(parallelMobUpdates[i], serialMobUpdates[i])) {
+                Server.print("Parallel npc update for " + players[i].getUsername() + " differs from the serial update!");
+                matched = false;
+            }
+        }
+
+        if (!matched) {
+            mismatches++;
+        }
+    }
+
+    /**
+     * Copies the contents of encoded packets into arrays.
+     *
+     * @param updates
+     *            the encoded packets.
+     * @return the contents of the packets, <code>null</code> where there was
+     *         no packet.
+     */
+    private static byte[][] toBytes(PacketBuffer.OutBuffer[] updates) {
+        byte[][] bytes = new byte[updates.length][];
+
+        for (int i = 0; i < updates.length; i++) {
+            if (updates[i] == null) {
+                continue;
+            }
+
+            bytes[i] = updates[i].toArray();
+        }
+        return bytes;
+    }
+
+    /**
+     * Gives the encoded packets for a player that are not going to be sent
+     * back to the pool.
+     *
+     * @param slot
+     *            the slot of the player.
+     */
+    private void release(int slot) {
+        if (playerUpdates[slot] != null) {
+            playerUpdates[slot].release();
+            playerUpdates[slot] = null;
+        }
+
+        if (mobUpdates[slot] != null) {
+            mobUpdates[slot].release();
+            mobUpdates[slot] = null;
+        }
+    }
+
+    /**
+     * Clears the results of the last encoding.
+     */
+    private void clear() {
+        Arrays.fill(playerUpdates, null);
+        Arrays.fill(mobUpdates, null);
+        Arrays.fill(playerUpdateTimes, 0);
+        Arrays.fill(mobUpdateTimes, 0);
+        Arrays.fill(errors, null);
+    }
+
+    /**
+     * Gets the pool used to encode in parallel, creating it if needed. The
+     * workers belong to the world being encoded, so the encoding code finds
+     * the same world the game thread does.
+     *
+     * @return the pool.
+     */
+    private ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), new ForkJoinWorkerThreadFactory() {
+                @Override
+                public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                    return new ForkJoinWorkerThread(pool) {
+                        @Override
+                        protected void onStart() {
+                            super.onStart();
+                            world.enter();
+                        }
+                    };
+                }
+            }, null, false);
+        }
+
+        return pool;
+    }
+
+    /**
+     * Encodes a range of players, splitting the range in half until it is
+     * small enough to encode directly.
+     *
+     * @author lare96
+     */
+    private final class EncodeAction extends RecursiveAction {
+
+        /**
+         * The serial version UID.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The first slot to encode, inclusive.
+         */
+        private final int from;
+
+        /**
+         * The last slot to encode, exclusive.
+         */
+        private final int to;
+
+        /**
+         * Create a new {@link EncodeAction}.
+         *
+         * @param from
+         *            the first slot to encode, inclusive.
+         * @param to
+         *            the last slot to encode, exclusive.
+         */
+        public EncodeAction(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                encode(from, to);
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new EncodeAction(from, middle), new EncodeAction(middle, to));
+        }
+    }
+
+    /**
+     * @return the mode.
+     */
+    public static Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @param mode
+     *            the mode to set.
+     */
+    public static void setMode(Mode mode) {
+        UpdateEncoder.mode = mode;
+    }
+
+    /**
+     * @return the amount of cycles that differed while verifying.
+     */
+    public int getMismatches() {
+        return mismatches;
+    }
+}
@@ -1,64 +1,412 @@
 package server.world;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import server.Server;
 import server.logic.GameLogic;
+import server.logic.task.Task;
+import server.logic.task.Task.Time;
+import server.net.cluster.ClusterNode;
+import server.net.event.NetworkEventDispatcher;
+import server.util.Misc;
+import server.util.Misc.Stopwatch;
 import server.util.ServerGUI;
+import server.world.CycleProfiler.Phase;
 import server.world.entity.Entity;
 import server.world.entity.mob.Mob;
-import server.world.entity.mob.MobUpdate;
+import server.world.entity.player.LoginService;
 import server.world.entity.player.Player;
-import server.world.entity.player.PlayerUpdate;
-import server.world.entity.player.file.WritePlayerFileEvent;
+import server.world.entity.player.file.PlayerSaveService;
+import server.world.item.WorldItem;
+import server.world.map.Position;
+import server.world.map.RegionIndex;
+import server.world.object.WorldObject;
+import server.world.shop.Shop;
 
 /**
- * Handles all logged in entities.
- * 
+ * Handles all logged in entities. <br>
+ * <br>
+ *
+ * A single server can host several independent worlds at once. Every world
+ * has its own entities, its own {@link GameLogic} engine and its own thread,
+ * so worlds are processed at the same time on different cores and never touch
+ * each other's entities. Definitions and everything else loaded on startup
+ * that is never modified are shared by all of the worlds. <br>
+ * <br>
+ *
+ * Code running on the thread of a world finds that world with
+ * {@link #current()}, so the code handling entities never has to pass the
+ * world around. Threads that don't belong to any world, such as the interface
+ * thread, are given the main world instead.
+ *
  * @author lare96
  * @author blakeman8192
  */
 public final class World {
 
-    /** All registered players. */
-    private static final Player[] players = new Player[2048];
+    /**
+     * The amount of players a single world can hold.
+     */
+    public static final int MAXIMUM_PLAYERS = 2048;
 
-    /** All registered NPCs. */
-    private static final Mob[] npcs = new Mob[8192];
+    /**
+     * The amount of NPCs a single world can hold.
+     */
+    public static final int MAXIMUM_NPCS = 8192;
 
-    /** The names of registered players. */
-    private static final String[] names = new String[2048];
+    /**
+     * The time in seconds to wait for the worlds to save their players when
+     * the server is shut down.
+     */
+    private static final int SHUTDOWN_TIMEOUT = 10;
+
+    /**
+     * Every world hosted by this server, the main world first.
+     */
+    private static final List<World> worlds = new CopyOnWriteArrayList<World>();
+
+    /**
+     * The world every thread belongs to.
+     */
+    private static final ThreadLocal<World> current = new ThreadLocal<World>();
+
+    /**
+     * The players that are online or logging in, in any world, by their name
+     * (see {@link Misc#nameToLong(String)}).
+     */
+    private static final ConcurrentMap<Long, Player> online = new ConcurrentHashMap<Long, Player>();
 
     /**
      * Flag that determines whether items can be dropped.
      */
-    private static boolean canDrop = true;
+    private static volatile boolean canDrop = true;
 
     /**
      * Flag that determines whether items can be traded.
      */
-    private static boolean canTrade = true;
+    private static volatile boolean canTrade = true;
 
     /**
      * Flag that determines whether players can shop for items.
      */
-    private static boolean canShop = true;
+    private static volatile boolean canShop = true;
 
     /**
      * Flag that determines whether items can be picked up.
      */
-    private static boolean canPickup = true;
+    private static volatile boolean canPickup = true;
 
     /**
      * Flag that determines if a shutdown is still in progress.
      */
-    private static boolean shutdownInProgress = false;
+    private static volatile boolean shutdownInProgress = false;
+
+    /**
+     * The id of this world.
+     */
+    private final int id;
+
+    /**
+     * The name of this world.
+     */
+    private final String name;
+
+    /**
+     * If new connections can be routed to this world. Worlds that are closed
+     * are only used for things like minigames.
+     */
+    private final boolean open;
+
+    /** All registered players. */
+    private final Player[] players = new Player[MAXIMUM_PLAYERS];
+
+    /** All registered NPCs. */
+    private final Mob[] npcs = new Mob[MAXIMUM_NPCS];
+
+    /** Registered players by their name. */
+    private final Map<String, Player> playersByName = new HashMap<String, Player>();
+
+    /**
+     * The items on the ground in this world.
+     */
+    private final List<WorldItem> items = new ArrayList<WorldItem>();
+
+    /**
+     * The objects placed in this world.
+     */
+    private final Set<WorldObject> objects = new HashSet<WorldObject>();
+
+    /**
+     * The shops in this world.
+     */
+    private final Shop[] shops = new Shop[10];
+
+    /**
+     * The positions of the tree stumps in this world.
+     */
+    private final List<Position> stumps = new ArrayList<Position>();
+
+    /**
+     * The positions of the empty rocks in this world.
+     */
+    private final List<Position> rocks = new ArrayList<Position>();
+
+    /**
+     * The positions of the fires lit in this world. These are kept so fires
+     * can't be lit on top of each other and can be replaced with ashes.
+     */
+    private final List<Position> fires = new ArrayList<Position>();
+
+    /**
+     * The spatial index of the entities in this world.
+     */
+    private final RegionIndex regions = new RegionIndex();
+
+    /**
+     * Encodes the update packets for the players in this world.
+     */
+    private final UpdateEncoder encoder = new UpdateEncoder(this);
+
+    /**
+     * Times the logic cycle of this world.
+     */
+    private final CycleProfiler profiler;
+
+    /**
+     * Finishes the logins of the players placed in this world.
+     */
+    private final LoginService loginService = new LoginService();
+
+    /**
+     * Reads and writes the packets of the players in this world.
+     */
+    private final NetworkEventDispatcher dispatcher;
+
+    /**
+     * The engine carrying out every task in this world.
+     */
+    private final GameLogic engine;
+
+    /**
+     * A timer that will determine how much stress this world is under.
+     */
+    private final Stopwatch overhead = new Stopwatch();
+
+    /**
+     * The last cycle time calculated.
+     */
+    private volatile long cycleTimeOverhead;
+
+    /**
+     * Create a new {@link World}.
+     *
+     * @param id
+     *            the id of this world.
+     * @param name
+     *            the name of this world.
+     * @param open
+     *            if new connections can be routed to this world.
+     */
+    private World(int id, String name, boolean open) {
+        this.id = id;
+        this.name = name;
+        this.open = open;
+        this.profiler = new CycleProfiler(id);
+        this.dispatcher = new NetworkEventDispatcher();
+        this.engine = new GameLogic(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        enter();
+                        r.run();
+                    }
+                }, "World-" + World.this.name);
+            }
+        });
+    }
+
+    /**
+     * Creates a new world. The world does nothing until it is started, so
+     * anything that has to be placed in the world can be placed first.
+     *
+     * @param name
+     *            the name of the world.
+     * @param open
+     *            if new connections can be routed to the world.
+     * @return the world.
+     */
+    public static synchronized World create(String name, boolean open) {
+        World world = new World(worlds.size(), name, open);
+        worlds.add(world);
+        return world;
+    }
+
+    /**
+     * Starts processing this world.
+     */
+    public void start() {
+        engine.submit(new LogicCycle());
+
+        /** Save the players that have changed every few minutes. */
+        engine.submit(new Task(PlayerSaveService.AUTOSAVE_MINUTES, false, Time.MINUTE) {
+            @Override
+            public void logic() {
+                PlayerSaveService.getSingleton().autosave();
+            }
+        });
+    }
+
+    /**
+     * Makes this the world of the calling thread.
+     */
+    public void enter() {
+        current.set(this);
+    }
+
+    /**
+     * Makes the calling thread leave the world it is in.
+     */
+    public static void leave() {
+        current.remove();
+    }
+
+    /**
+     * Gets the world of the calling thread.
+     *
+     * @return the world of the calling thread, or the main world if the
+     *         calling thread doesn't belong to any world.
+     */
+    public static World current() {
+        World world = current.get();
+
+        if (world == null && !worlds.isEmpty()) {
+            return worlds.get(0);
+        }
+        return world;
+    }
+
+    /**
+     * Picks the world a new connection is placed in, which is the open world
+     * with the least amount of clients connected.
+     *
+     * @return the world to place the connection in.
+     */
+    public static World route() {
+        World route = null;
+
+        for (World world : worlds) {
+            if (!world.isOpen()) {
+                continue;
+            }
+
+            if (route == null || world.getDispatcher().getConnections() < route.getDispatcher().getConnections()) {
+                route = world;
+            }
+        }
+
+        if (route == null) {
+            throw new IllegalStateException("No open worlds!");
+        }
+        return route;
+    }
+
+    /**
+     * Reserves the name of a player logging in, so nobody else can log in
+     * with the same name in any world until the player has logged out.
+     *
+     * @param player
+     *            the player logging in.
+     * @return true if the name was reserved, false if somebody is already
+     *         online or logging in with the same name.
+     */
+    public static boolean reserve(Player player) {
+        return online.putIfAbsent(Misc.nameToLong(player.getUsername()), player) == null;
+    }
+
+    /**
+     * Gives back the name reserved by a player, if the name is still reserved
+     * by that player.
+     *
+     * @param player
+     *            the player to give back the name of.
+     */
+    public static void release(Player player) {
+        if (player.getUsername() != null) {
+            online.remove(Misc.nameToLong(player.getUsername()), player);
+        }
+    }
+
+    /**
+     * Gets the world a player is in.
+     *
+     * @param name
+     *            the name of the player.
+     * @return the world the player is in, or <code>null</code> if the player
+     *         isn't online or logging in.
+     */
+    public static World getWorld(String name) {
+        Player player = online.get(Misc.nameToLong(name));
+        return player == null ? null : player.getWorld();
+    }
+
+    /**
+     * Gets a player that is online or logging in, in any world.
+     *
+     * @param name
+     *            the name of the player (see {@link Misc#nameToLong(String)}).
+     * @return the player, or <code>null</code> if the player isn't online or
+     *         logging in.
+     */
+    public static Player getOnlinePlayer(long name) {
+        return online.get(name);
+    }
+
+    /**
+     * Carries out an action on the thread of this world. The action is carried
+     * out right away if this is called from the thread of this world, and on
+     * the next cycle of this world otherwise.
+     *
+     * @param action
+     *            the action to carry out.
+     */
+    public void execute(final Runnable action) {
+        if (current.get() == this) {
+            action.run();
+            return;
+        }
+
+        engine.submit(new Task(1, false, Time.TICK) {
+            @Override
+            public void logic() {
+                action.run();
+                this.cancel();
+            }
+        });
+    }
 
     /**
      * Performs the processing of all entities.
-     * 
+     *
      * @throws Exception
      *             if any general errors occur during processing.
      */
-    public static void process() throws Exception {
+    public void process() throws Exception {
         // TODO: Maybe we could implement loop fusion to speed this up.
+        long start = System.nanoTime();
+        int processed = 0;
 
         /** Perform any logic processing for players. */
         for (int i = 0; i < players.length; i++) {
@@ -72,8 +420,12 @@ public final class World {
                 ex.printStackTrace();
                 player.getNetwork().disconnect();
             }
+            processed++;
         }
 
+        start = profiler.time(Phase.PLAYER_LOGIC, start, processed);
+        processed = 0;
+
         /** Perform any logic processing for NPCs. */
         for (int i = 0; i < npcs.length; i++) {
             Mob npc = npcs[i];
@@ -86,22 +438,15 @@ public final class World {
                 ex.printStackTrace();
                 unregister(npc);
             }
+            processed++;
         }
 
+        start = profiler.time(Phase.MOB_LOGIC, start, processed);
+
         /** Update all players. */
-        for (int i = 0; i < players.length; i++) {
-            Player player = players[i];
-            if (player == null) {
-                continue;
-            }
-            try {
-                PlayerUpdate.update(player);
-                MobUpdate.update(player);
-            } catch (Exception ex) {
-                ex.printStackTrace();
-                player.getNetwork().disconnect();
-            }
-        }
+        encoder.update(profiler);
+        start = System.nanoTime();
+        processed = 0;
 
         /** Reset all players after cycle. */
         for (int i = 0; i < players.length; i++) {
@@ -115,8 +460,12 @@ public final class World {
                 ex.printStackTrace();
                 player.getNetwork().disconnect();
             }
+            processed++;
         }
 
+        start = profiler.time(Phase.PLAYER_RESET, start, processed);
+        processed = 0;
+
         /** Reset all NPCs after cycle. */
         for (int i = 0; i < npcs.length; i++) {
             Mob npc = npcs[i];
@@ -129,12 +478,15 @@ public final class World {
                 ex.printStackTrace();
                 unregister(npc);
             }
+            processed++;
         }
+
+        profiler.time(Phase.MOB_RESET, start, processed);
     }
 
     /**
      * Registers an entity for processing.
-     * 
+     *
      * @param entity
      *            the entity to register.
      */
@@ -144,7 +496,7 @@ public final class World {
 
     /**
      * Unregisters an entity from processing.
-     * 
+     *
      * @param entity
      *            the entity to unregister.
      */
@@ -153,12 +505,13 @@ public final class World {
     }
 
     /**
-     * Sends a message to all online players.
-     * 
+     * Sends a message to every player in this world. This should only be
+     * called from the thread of this world.
+     *
      * @param message
      *            the message to send.
      */
-    public static void sendMessage(String message) {
+    public void broadcast(String message) {
         for (Player p : players) {
             if (p == null) {
                 continue;
@@ -168,6 +521,37 @@ public final class World {
         }
     }
 
+    /**
+     * Sends a message to all online players, in every world on every node of
+     * the cluster. This can be called from any thread.
+     *
+     * @param message
+     *            the message to send.
+     */
+    public static void sendMessage(String message) {
+        ClusterNode.getSingleton().broadcast(message);
+        sendLocalMessage(message);
+    }
+
+    /**
+     * Sends a message to all online players in every world on this node. The
+     * message is sent from the thread of every world, so this can be called
+     * from any thread.
+     *
+     * @param message
+     *            the message to send.
+     */
+    public static void sendLocalMessage(final String message) {
+        for (final World world : worlds) {
+            world.execute(new Runnable() {
+                @Override
+                public void run() {
+                    world.broadcast(message);
+                }
+            });
+        }
+    }
+
     /**
      * Initiates the shutdown sequence for this server that will shutdown the
      * server in a <b>safe</b>, orderly fashion. If the server is not shutdown
@@ -180,80 +564,156 @@ public final class World {
 
         setShutdownInProgress(true);
 
-        for (Player player : getPlayers()) {
-            if (player == null) {
-                continue;
-            }
+        /**
+         * Players can only be saved from the thread of their world, so every
+         * world takes the snapshots of its own players and we wait for them.
+         */
+        final CountDownLatch snapshots = new CountDownLatch(worlds.size());
+
+        for (final World world : worlds) {
+            world.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (Player player : world.getPlayers()) {
+                            if (player == null) {
+                                continue;
+                            }
+
+                            player.getTrading().resetTrade(false);
+                        }
+
+                        world.save();
+                    } finally {
+                        snapshots.countDown();
+                    }
+                }
+            });
+        }
 
-            player.getTrading().resetTrade(false);
+        if (!snapshots.await(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+            Server.print("Timed out while waiting for the worlds to save their players!");
         }
 
-        World.savePlayers();
+        PlayerSaveService.getSingleton().shutdown();
         ServerGUI.save();
-        GameLogic.getSingleton().shutdown();
+
+        for (World world : worlds) {
+            world.getEngine().shutdown();
+        }
         System.exit(0);
     }
 
     /**
-     * Saves all registered players.
+     * Saves all registered players in this world in the background. This
+     * should only be called from the thread of this world.
      */
-    public static void savePlayers() {
-        for (Player player : getPlayers()) {
+    public void save() {
+        for (Player player : players) {
             if (player == null) {
                 continue;
             }
 
-            WritePlayerFileEvent write = new WritePlayerFileEvent(player);
-            write.run();
+            PlayerSaveService.getSingleton().save(player);
         }
     }
 
     /**
-     * Gets an instance of a player by their name.
-     * 
+     * Saves all registered players in every world in the background. The
+     * players are saved from the thread of every world, so this can be called
+     * from any thread.
+     */
+    public static void savePlayers() {
+        for (final World world : worlds) {
+            world.execute(new Runnable() {
+                @Override
+                public void run() {
+                    world.save();
+                }
+            });
+        }
+    }
+
+    /**
+     * Gets an instance of a player in this world by their name.
+     *
      * @param player
      *            the name of the player you are trying to get the instance of.
      * @return the instance of the player, null if no player with that name was
      *         found.
      */
-    public static Player getPlayer(String player) {
-        for (Player p : World.getPlayers()) {
-            if (p == null) {
-                continue;
-            }
+    public Player getPlayer(String player) {
+        return playersByName.get(player);
+    }
 
-            if (p.getUsername().equals(player)) {
-                return p;
-            }
+    /**
+     * Adds a registered player to the players that can be found by name.
+     *
+     * @param player
+     *            the player to add.
+     */
+    public void addPlayerName(Player player) {
+        playersByName.put(player.getUsername(), player);
+    }
+
+    /**
+     * Removes an unregistered player from the players that can be found by
+     * name.
+     *
+     * @param player
+     *            the player to remove.
+     */
+    public void removePlayerName(Player player) {
+        if (playersByName.get(player.getUsername()) == player) {
+            playersByName.remove(player.getUsername());
         }
-        return null;
     }
 
     /**
-     * Gets the amount of players that are online.
-     * 
+     * Gets the amount of players that are online in every world.
+     *
      * @return the amount of online players.
      */
     public static int playerAmount() {
         int amount = 0;
-        for (int i = 1; i < players.length; i++) {
-            if (players[i] != null) {
-                amount++;
+
+        for (World world : worlds) {
+            for (int i = 1; i < world.players.length; i++) {
+                if (world.players[i] != null) {
+                    amount++;
+                }
             }
         }
         return amount;
     }
 
     /**
-     * Gets the amount of NPCs that are online.
-     * 
+     * Gets the amount of sessions that have timed out in every world.
+     *
+     * @return the amount of sessions disconnected by the reapers.
+     */
+    public static int reapedAmount() {
+        int amount = 0;
+
+        for (World world : worlds) {
+            amount += world.getDispatcher().getReaper().getReaped();
+        }
+        return amount;
+    }
+
+    /**
+     * Gets the amount of NPCs that are online in every world.
+     *
      * @return the amount of online NPCs.
      */
     public static int npcAmount() {
         int amount = 0;
-        for (int i = 1; i < npcs.length; i++) {
-            if (npcs[i] != null) {
-                amount++;
+
+        for (World world : worlds) {
+            for (int i = 1; i < world.npcs.length; i++) {
+                if (world.npcs[i] != null) {
+                    amount++;
+                }
             }
         }
         return amount;
@@ -261,41 +721,181 @@ public final class World {
 
     /**
      * Gets all registered players.
-     * 
+     *
      * @return the players.
      */
-    public static Player[] getPlayers() {
+    public Player[] getPlayers() {
         return players;
     }
 
     /**
      * Gets all registered NPCs.
-     * 
+     *
      * @return the npcs.
      */
-    public static Mob[] getNpcs() {
+    public Mob[] getNpcs() {
         return npcs;
     }
 
     /**
-     * Gets the name of every player online.
-     * 
+     * Gets the name of every player online in every world.
+     *
      * @return the names.
      */
     public static String[] getPlayerNames() {
-        for (int i = 0; i < names.length; i++) {
-            names[i] = null;
-        }
+        List<String> names = new ArrayList<String>();
 
-        for (Player player : players) {
-            if (player == null) {
-                continue;
-            }
+        for (World world : worlds) {
+            for (Player player : world.players) {
+                if (player == null) {
+                    continue;
+                }
 
-            names[player.getSlot()] = player.getUsername();
+                names.add(player.getUsername());
+            }
         }
+        return names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * Gets every world hosted by this server.
+     *
+     * @return the worlds.
+     */
+    public static List<World> getWorlds() {
+        return worlds;
+    }
 
-        return names;
+    @Override
+    public String toString() {
+        return "World(" + id + ": " + name + ")";
+    }
+
+    /**
+     * @return the id.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return the name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the open.
+     */
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * @return the items.
+     */
+    public List<WorldItem> getItems() {
+        return items;
+    }
+
+    /**
+     * @return the objects.
+     */
+    public Set<WorldObject> getObjects() {
+        return objects;
+    }
+
+    /**
+     * @return the shops.
+     */
+    public Shop[] getShops() {
+        return shops;
+    }
+
+    /**
+     * @return the stumps.
+     */
+    public List<Position> getStumps() {
+        return stumps;
+    }
+
+    /**
+     * @return the rocks.
+     */
+    public List<Position> getRocks() {
+        return rocks;
+    }
+
+    /**
+     * @return the fires.
+     */
+    public List<Position> getFires() {
+        return fires;
+    }
+
+    /**
+     * @return the regions.
+     */
+    public RegionIndex getRegions() {
+        return regions;
+    }
+
+    /**
+     * @return the encoder.
+     */
+    public UpdateEncoder getEncoder() {
+        return encoder;
+    }
+
+    /**
+     * @return the profiler.
+     */
+    public CycleProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * @return the loginService.
+     */
+    public LoginService getLoginService() {
+        return loginService;
+    }
+
+    /**
+     * @return the dispatcher.
+     */
+    public NetworkEventDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * @return the engine.
+     */
+    public GameLogic getEngine() {
+        return engine;
+    }
+
+    /**
+     * @return the overhead.
+     */
+    public Stopwatch getOverhead() {
+        return overhead;
+    }
+
+    /**
+     * @return the cycleTimeOverhead.
+     */
+    public long getCycleTimeOverhead() {
+        return cycleTimeOverhead;
+    }
+
+    /**
+     * @param cycleTimeOverhead
+     *            the cycleTimeOverhead to set.
+     */
+    public void setCycleTimeOverhead(long cycleTimeOverhead) {
+        this.cycleTimeOverhead = cycleTimeOverhead;
     }
 
     /**
@@ -8,6 +8,7 @@ import server.world.entity.player.Player;
 import server.world.entity.player.skill.SkillManager;
 import server.world.entity.player.skill.SkillManager.Skill;
 import server.world.map.Position;
+import server.world.map.RegionIndex;
 
 /**
  * Represents either a player or mob.
@@ -56,6 +57,17 @@ public abstract class Entity {
      */
     private UpdateFlags flags = new UpdateFlags();
 
+    /**
+     * The update blocks encoded for this entity this cycle.
+     */
+    private UpdateBlockCache updateBlocks = new UpdateBlockCache();
+
+    /**
+     * The index of the region this entity was last placed in by the
+     * {@link RegionIndex}, or -1 if it isn't indexed.
+     */
+    private int indexedRegion = -1;
+
     /**
      * The primary direction of the entity.
      */
@@ -175,6 +187,7 @@ public abstract class Entity {
         setPrimaryDirection(-1);
         setSecondaryDirection(-1);
         flags.reset();
+        updateBlocks.clear();
         setResetMovementQueue(false);
         setNeedsPlacement(false);
     }
@@ -378,6 +391,28 @@ public abstract class Entity {
         return flags;
     }
 
+    /**
+     * @return the indexedRegion.
+     */
+    public int getIndexedRegion() {
+        return indexedRegion;
+    }
+
+    /**
+     * @param indexedRegion
+     *            the indexedRegion to set.
+     */
+    public void setIndexedRegion(int indexedRegion) {
+        this.indexedRegion = indexedRegion;
+    }
+
+    /**
+     * @return the updateBlocks.
+     */
+    public UpdateBlockCache getUpdateBlocks() {
+        return updateBlocks;
+    }
+
     /**
      * @return the forcedText.
      */
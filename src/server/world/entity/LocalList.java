@@ -0,0 +1,207 @@
+package server.world.entity;
+
+import java.util.AbstractCollection;
+import java.util.BitSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A list of the entities local to a player. The protocol needs the entities to
+ * be kept in the order they were added, and the updating needs to check if an
+ * entity is in the list for every candidate it looks at. Entities are kept in
+ * an array in insertion order along with a set of the slots of every entity in
+ * the list, so adding, removing through an iterator and checking membership
+ * are all constant time operations. <br>
+ * <br>
+ *
+ * Removed entities leave a gap behind which iteration skips over; the gaps
+ * are closed up the next time the array needs to grow. Membership is decided
+ * by slot, so an entity must be removed from this list before its slot is
+ * given to another entity.
+ *
+ * @author lare96
+ * @param <E>
+ *            the type of entity held in this list.
+ */
+public class LocalList<E extends Entity> extends AbstractCollection<E> {
+
+    /**
+     * The entities in this list in the order they were added, with
+     * <code>null</code> left where an entity was removed.
+     */
+    private Entity[] entities;
+
+    /**
+     * The amount of places used in the array, including gaps.
+     */
+    private int length;
+
+    /**
+     * The amount of entities in this list.
+     */
+    private int size;
+
+    /**
+     * The slots of every entity in this list.
+     */
+    private final BitSet slots;
+
+    /**
+     * The amount of times this list has been modified, used to fail fast when
+     * the list is modified during iteration.
+     */
+    private int modifications;
+
+    /**
+     * Create a new {@link LocalList}.
+     *
+     * @param slots
+     *            the amount of slots the entities can be registered in.
+     * @param capacity
+     *            the amount of entities this list can hold before growing.
+     */
+    public LocalList(int slots, int capacity) {
+        this.slots = new BitSet(slots);
+        this.entities = new Entity[capacity];
+    }
+
+    @Override
+    public boolean add(E entity) {
+        if (slots.get(entity.getSlot())) {
+            return false;
+        }
+
+        if (length == entities.length) {
+            grow();
+        }
+
+        entities[length++] = entity;
+        slots.set(entity.getSlot());
+        size++;
+        modifications++;
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Entity)) {
+            return false;
+        }
+
+        Entity entity = (Entity) o;
+        return entity.getSlot() >= 0 && slots.get(entity.getSlot());
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < length; i++) {
+            entities[i] = null;
+        }
+
+        slots.clear();
+        length = 0;
+        size = 0;
+        modifications++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new LocalListIterator();
+    }
+
+    /**
+     * Closes up the gaps left by removed entities, and doubles the size of the
+     * array if it is still full afterwards.
+     */
+    private void grow() {
+        int position = 0;
+
+        for (int i = 0; i < length; i++) {
+            if (entities[i] != null) {
+                entities[position++] = entities[i];
+            }
+        }
+
+        for (int i = position; i < length; i++) {
+            entities[i] = null;
+        }
+
+        length = position;
+
+        if (length == entities.length) {
+            Entity[] grown = new Entity[entities.length * 2];
+            System.arraycopy(entities, 0, grown, 0, length);
+            entities = grown;
+        }
+    }
+
+    /**
+     * Iterates over the entities in a {@link LocalList} in the order they were
+     * added.
+     *
+     * @author lare96
+     */
+    private final class LocalListIterator implements Iterator<E> {
+
+        /**
+         * The position of the next entity to return.
+         */
+        private int next;
+
+        /**
+         * The position of the last entity returned, or -1 if it has been
+         * removed.
+         */
+        private int last = -1;
+
+        /**
+         * The amount of modifications expected.
+         */
+        private int expectedModifications = modifications;
+
+        @Override
+        public boolean hasNext() {
+            while (next < length && entities[next] == null) {
+                next++;
+            }
+            return next < length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E next() {
+            if (modifications != expectedModifications) {
+                throw new ConcurrentModificationException();
+            }
+
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            last = next++;
+            return (E) entities[last];
+        }
+
+        @Override
+        public void remove() {
+            if (last == -1) {
+                throw new IllegalStateException();
+            }
+
+            if (modifications != expectedModifications) {
+                throw new ConcurrentModificationException();
+            }
+
+            slots.clear(entities[last].getSlot());
+            entities[last] = null;
+            last = -1;
+            size--;
+        }
+    }
+}
@@ -3,10 +3,10 @@ package server.world.entity;
 import java.util.Deque;
 import java.util.LinkedList;
 
-import server.logic.GameLogic;
 import server.logic.task.Task;
 import server.logic.task.Task.Time;
 import server.util.Misc;
+import server.world.World;
 import server.world.entity.UpdateFlags.Flag;
 import server.world.entity.mob.Mob;
 import server.world.entity.player.Player;
@@ -45,6 +45,18 @@ public class MovementQueue {
      */
     private boolean lockMovement;
 
+    /**
+     * The task that unlocks this entity's movement, rescheduled in place every
+     * time the movement is locked.
+     */
+    private final Task unlockTask = new Task(1, false, Time.TICK) {
+        @Override
+        public void logic() {
+            setLockMovement(false);
+            this.cancel();
+        }
+    };
+
     /**
      * Creates a new movement queue.
      * 
@@ -95,6 +107,9 @@ public class MovementQueue {
             entity.setSecondaryDirection(runPoint.getDirection());
         }
 
+        /** Keep the region index up to date. */
+        World.current().getRegions().update(entity);
+
         /** Check for region changes. */
         int deltaX = entity.getPosition().getX() - entity.getCurrentRegion().getRegionX() * 8;
         int deltaY = entity.getPosition().getY() - entity.getCurrentRegion().getRegionY() * 8;
@@ -227,14 +242,7 @@ public class MovementQueue {
      */
     public void lockMovementFor(int delay, Time time) {
         this.setLockMovement(true);
-
-        GameLogic.getSingleton().submit(new Task(delay, false, time) {
-            @Override
-            public void logic() {
-                setLockMovement(false);
-                this.cancel();
-            }
-        });
+        unlockTask.reschedule(delay, time);
     }
 
     /**
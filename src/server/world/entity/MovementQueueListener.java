@@ -1,7 +1,7 @@
 package server.world.entity;
 
-import server.logic.GameLogic;
 import server.logic.task.listener.EventListener;
+import server.world.World;
 
 /**
  * A listener that executes actions when the walking queue is finished.
@@ -75,7 +75,7 @@ public class MovementQueueListener {
         });
 
         /** Schedule the listener. */
-        GameLogic.getSingleton().submit(this.getListener());
+        World.current().getEngine().submit(this.getListener());
     }
 
     /**
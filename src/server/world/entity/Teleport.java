@@ -1,9 +1,9 @@
 package server.world.entity;
 
-import server.logic.GameLogic;
 import server.logic.task.Task;
 import server.logic.task.Task.Time;
 import server.world.DynamicActionContainer;
+import server.world.World;
 
 /**
  * The current teleportation methods.
@@ -17,7 +17,7 @@ public enum Teleport {
         public void run(final Entity entity) {
             entity.animation(new Animation(714));
 
-            GameLogic.getSingleton().submit(new Task(1, false, Time.TICK) {
+            World.current().getEngine().submit(new Task(1, false, Time.TICK) {
                 @Override
                 public void logic() {
                     if (entity.isUnregistered()) {
@@ -46,7 +46,7 @@ public enum Teleport {
         public void run(final Entity entity) {
             entity.animation(new Animation(1979));
 
-            GameLogic.getSingleton().submit(new Task(1, false, Time.TICK) {
+            World.current().getEngine().submit(new Task(1, false, Time.TICK) {
                 @Override
                 public void logic() {
                     if (entity.isUnregistered()) {
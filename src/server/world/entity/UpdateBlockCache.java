@@ -0,0 +1,64 @@
+package server.world.entity;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Holds the update blocks of an entity that have already been encoded this
+ * cycle, so the block for an entity is only ever encoded once per cycle no
+ * matter how many players can see it. An entity can have a few variants of its
+ * block (for example with and without chat), each held separately. <br>
+ * <br>
+ *
+ * Blocks may be encoded by more than one thread at a time while the update
+ * packets are encoded in parallel. If two threads encode the same variant at
+ * once they will encode exactly the same bytes, so whichever block is stored
+ * last is as good as the other. This cache is cleared when the entity is reset
+ * after the cycle.
+ *
+ * @author lare96
+ */
+public class UpdateBlockCache {
+
+    /**
+     * The amount of variants that can be held.
+     */
+    public static final int VARIANTS = 4;
+
+    /**
+     * The encoded blocks for every variant.
+     */
+    private final AtomicReferenceArray<byte[]> blocks = new AtomicReferenceArray<byte[]>(VARIANTS);
+
+    /**
+     * Gets the encoded block for a variant.
+     *
+     * @param variant
+     *            the variant to get.
+     * @return the encoded block, or <code>null</code> if it has not been
+     *         encoded this cycle.
+     */
+    public byte[] get(int variant) {
+        return blocks.get(variant);
+    }
+
+    /**
+     * Stores the encoded block for a variant.
+     *
+     * @param variant
+     *            the variant to store.
+     * @param block
+     *            the encoded block.
+     */
+    public void set(int variant, byte[] block) {
+        blocks.set(variant, block);
+    }
+
+    /**
+     * Removes every encoded block from this cache.
+     */
+    public void clear() {
+        for (int i = 0; i < VARIANTS; i++) {
+            blocks.set(i, null);
+        }
+    }
+}
@@ -113,7 +113,7 @@ public class Mob extends Entity {
                         // XXX: The mob would drop items here! Example...
                         // new WorldItem(new Item(526), new
                         // Position(getPosition().getX(), getPosition().getY()),
-                        // World.getPlayer("lare96")).register();
+                        // World.current().getPlayer("lare96")).register();
 
                         move(new Position(1, 1));
 
@@ -161,10 +161,11 @@ public class Mob extends Entity {
 
     @Override
     public void register() {
-        for (int i = 1; i < World.getNpcs().length; i++) {
-            if (World.getNpcs()[i] == null) {
-                World.getNpcs()[i] = this;
+        for (int i = 1; i < World.current().getNpcs().length; i++) {
+            if (World.current().getNpcs()[i] == null) {
+                World.current().getNpcs()[i] = this;
                 this.setSlot(i);
+                World.current().getRegions().add(this);
                 return;
             }
         }
@@ -177,7 +178,8 @@ public class Mob extends Entity {
             return;
         }
 
-        World.getNpcs()[this.getSlot()] = null;
+        World.current().getNpcs()[this.getSlot()] = null;
+        World.current().getRegions().remove(this);
         this.setUnregistered(true);
     }
 
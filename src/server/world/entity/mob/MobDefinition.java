@@ -2,7 +2,10 @@ package server.world.entity.mob;
 
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
 
+import server.Server;
+import server.util.DefinitionCache;
 import server.util.Misc;
 
 import com.google.gson.Gson;
@@ -126,7 +129,9 @@ public class MobDefinition {
     private int defenceMage;
 
     /**
-     * Parse the mob definitions.
+     * Load the mob definitions. The definitions are loaded from the
+     * definition cache if it is up to date, otherwise they are parsed from the
+     * definition file and the cache is compiled again.
      * 
      * @throws JsonIOException
      *             if any i/o exceptions are thrown.
@@ -135,8 +140,39 @@ public class MobDefinition {
      * @throws FileNotFoundException
      *             if the file isn't found.
      */
-    @SuppressWarnings("unused")
     public static void load() throws JsonIOException, JsonSyntaxException, FileNotFoundException {
+        if (DefinitionCache.isFresh(Misc.MOB_DEFINITION_CACHE, Misc.MOB_DEFINITIONS)) {
+            try {
+                loadCache();
+                return;
+            } catch (Exception e) {
+                e.printStackTrace();
+                Server.print("Unable to read the mob definition cache, parsing the mob definitions instead!");
+            }
+        }
+
+        parse();
+
+        try {
+            compile();
+        } catch (IOException e) {
+            e.printStackTrace();
+            Server.print("Unable to write the mob definition cache!");
+        }
+    }
+
+    /**
+     * Parse the mob definitions from the definition file.
+     * 
+     * @throws JsonIOException
+     *             if any i/o exceptions are thrown.
+     * @throws JsonSyntaxException
+     *             if the syntax is wrong.
+     * @throws FileNotFoundException
+     *             if the file isn't found.
+     */
+    @SuppressWarnings("unused")
+    public static void parse() throws JsonIOException, JsonSyntaxException, FileNotFoundException {
         setMobDefinition(new MobDefinition[6102]);
 
         JsonParser parser = new JsonParser();
@@ -174,6 +210,152 @@ public class MobDefinition {
         }
     }
 
+    /**
+     * Writes the loaded mob definitions to the definition cache.
+     * 
+     * @throws IOException
+     *             if the cache can't be written.
+     */
+    public static void compile() throws IOException {
+        int length = mobDefinition.length;
+        boolean[] exists = new boolean[length];
+        String[] name = new String[length];
+        String[] examine = new String[length];
+        int[] combat = new int[length];
+        int[] size = new int[length];
+        boolean[] attackable = new boolean[length];
+        boolean[] aggressive = new boolean[length];
+        boolean[] retreats = new boolean[length];
+        boolean[] poisonous = new boolean[length];
+        int[] respawn = new int[length];
+        int[] maxHit = new int[length];
+        int[] hitpoints = new int[length];
+        int[] attackSpeed = new int[length];
+        int[] attackAnim = new int[length];
+        int[] defenceAnim = new int[length];
+        int[] deathAnim = new int[length];
+        int[] attackBonus = new int[length];
+        int[] defenceMelee = new int[length];
+        int[] defenceRange = new int[length];
+        int[] defenceMage = new int[length];
+
+        for (int i = 0; i < length; i++) {
+            MobDefinition def = mobDefinition[i];
+
+            if (def == null) {
+                continue;
+            }
+
+            exists[i] = true;
+            name[i] = def.getName();
+            examine[i] = def.getExamine();
+            combat[i] = def.getCombatLevel();
+            size[i] = def.getNpcSize();
+            attackable[i] = def.isAttackable();
+            aggressive[i] = def.isAggressive();
+            retreats[i] = def.isRetreats();
+            poisonous[i] = def.isPoisonous();
+            respawn[i] = def.getRespawnTime();
+            maxHit[i] = def.getMaxHit();
+            hitpoints[i] = def.getHitpoints();
+            attackSpeed[i] = def.getAttackSpeed();
+            attackAnim[i] = def.getAttackAnimation();
+            defenceAnim[i] = def.getDefenceAnimation();
+            deathAnim[i] = def.getDeathAnimation();
+            attackBonus[i] = def.getAttackBonus();
+            defenceMelee[i] = def.getDefenceMelee();
+            defenceRange[i] = def.getDefenceRange();
+            defenceMage[i] = def.getDefenceMage();
+        }
+
+        DefinitionCache.Writer writer = new DefinitionCache.Writer();
+        writer.writeInts(new int[] { length });
+        writer.writeBooleans(exists);
+        writer.writeStrings(name);
+        writer.writeStrings(examine);
+        writer.writeInts(combat);
+        writer.writeInts(size);
+        writer.writeBooleans(attackable);
+        writer.writeBooleans(aggressive);
+        writer.writeBooleans(retreats);
+        writer.writeBooleans(poisonous);
+        writer.writeInts(respawn);
+        writer.writeInts(maxHit);
+        writer.writeInts(hitpoints);
+        writer.writeInts(attackSpeed);
+        writer.writeInts(attackAnim);
+        writer.writeInts(defenceAnim);
+        writer.writeInts(deathAnim);
+        writer.writeInts(attackBonus);
+        writer.writeInts(defenceMelee);
+        writer.writeInts(defenceRange);
+        writer.writeInts(defenceMage);
+        writer.write(Misc.MOB_DEFINITION_CACHE, Misc.MOB_DEFINITIONS);
+    }
+
+    /**
+     * Load the mob definitions from the definition cache.
+     * 
+     * @throws IOException
+     *             if the cache can't be read.
+     */
+    private static void loadCache() throws IOException {
+        DefinitionCache.Reader reader = new DefinitionCache.Reader(Misc.MOB_DEFINITION_CACHE);
+        int length = reader.readInts(1)[0];
+        boolean[] exists = reader.readBooleans(length);
+        String[] name = reader.readStrings(length);
+        String[] examine = reader.readStrings(length);
+        int[] combat = reader.readInts(length);
+        int[] size = reader.readInts(length);
+        boolean[] attackable = reader.readBooleans(length);
+        boolean[] aggressive = reader.readBooleans(length);
+        boolean[] retreats = reader.readBooleans(length);
+        boolean[] poisonous = reader.readBooleans(length);
+        int[] respawn = reader.readInts(length);
+        int[] maxHit = reader.readInts(length);
+        int[] hitpoints = reader.readInts(length);
+        int[] attackSpeed = reader.readInts(length);
+        int[] attackAnim = reader.readInts(length);
+        int[] defenceAnim = reader.readInts(length);
+        int[] deathAnim = reader.readInts(length);
+        int[] attackBonus = reader.readInts(length);
+        int[] defenceMelee = reader.readInts(length);
+        int[] defenceRange = reader.readInts(length);
+        int[] defenceMage = reader.readInts(length);
+        MobDefinition[] loaded = new MobDefinition[length];
+
+        for (int i = 0; i < length; i++) {
+            if (!exists[i]) {
+                continue;
+            }
+
+            MobDefinition def = new MobDefinition();
+            def.setId(i);
+            def.setName(name[i]);
+            def.setExamine(examine[i]);
+            def.setCombatLevel(combat[i]);
+            def.setNpcSize(size[i]);
+            def.setAttackable(attackable[i]);
+            def.setAggressive(aggressive[i]);
+            def.setRetreats(retreats[i]);
+            def.setPoisonous(poisonous[i]);
+            def.setRespawnTime(respawn[i]);
+            def.setMaxHit(maxHit[i]);
+            def.setHitpoints(hitpoints[i]);
+            def.setAttackSpeed(attackSpeed[i]);
+            def.setAttackAnimation(attackAnim[i]);
+            def.setDefenceAnimation(defenceAnim[i]);
+            def.setDeathAnimation(deathAnim[i]);
+            def.setAttackBonus(attackBonus[i]);
+            def.setDefenceMelee(defenceMelee[i]);
+            def.setDefenceRange(defenceRange[i]);
+            def.setDefenceMage(defenceMage[i]);
+            loaded[i] = def;
+        }
+
+        setMobDefinition(loaded);
+    }
+
     /**
      * @return the mobDefinition.
      */
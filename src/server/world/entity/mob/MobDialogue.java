@@ -1,9 +1,7 @@
 package server.world.entity.mob;
 
-import java.io.File;
-import java.util.HashMap;
-import java.util.Map;
-
+import server.world.entity.mob.dialogue.ManDialogue;
+import server.world.entity.mob.dialogue.RunecraftingDialogue;
 import server.world.entity.player.Player;
 
 /**
@@ -21,9 +19,9 @@ public abstract class MobDialogue {
     // dialogue. I didn't have the time :( most likely in the next release :)
 
     /**
-     * The dialogue id's mapped to the conversation instances.
+     * The conversation instances, indexed by their dialogue id's.
      */
-    private static Map<Integer, MobDialogue> dialogues = new HashMap<Integer, MobDialogue>();
+    private static MobDialogue[] dialogues = new MobDialogue[0];
 
     /**
      * The expressions that an entity can take on during a dialogue.
@@ -136,44 +134,32 @@ public abstract class MobDialogue {
     protected abstract int dialogueId();
 
     /**
-     * Loads all dialogues automatically by creating a new instance of each
-     * class in the <code>server.world.entity.mob.dialogue</code> and mapping
-     * it's id to the instance of itself.
+     * Loads every dialogue and places it in the dialogue table at its id. New
+     * dialogues have to be added to the list here.
      */
-    @SuppressWarnings("unused")
     public static void load() {
-        int parsed = 0;
+        MobDialogue[] all = { new ManDialogue(), new RunecraftingDialogue() };
+        int length = 0;
+
+        for (MobDialogue dialogue : all) {
+            length = Math.max(length, dialogue.dialogueId() + 1);
+        }
 
-        File[] files = new File("./src/server/world/entity/mob/dialogue/").listFiles();
+        MobDialogue[] table = new MobDialogue[length];
 
-        for (File f : files) {
-            if (f == null) {
-                continue;
+        for (MobDialogue dialogue : all) {
+            if (dialogue.dialogueId() < 1) {
+                throw new IllegalStateException("Invalid dialogue id " + dialogue.dialogueId() + " for " + dialogue.getClass().getSimpleName());
             }
 
-            try {
-                try {
-                    try {
-                        Object o = Class.forName("server.world.entity.mob.dialogue." + f.getName().replace(".java", "")).newInstance();
-
-                        if (o instanceof MobDialogue) {
-                            MobDialogue dialogue = (MobDialogue) o;
-
-                            dialogues.put(dialogue.dialogueId(), dialogue);
-                            parsed++;
-                        }
-                    } catch (IllegalAccessException e) {
-                        e.printStackTrace();
-                    }
-                } catch (ClassNotFoundException e) {
-                    e.printStackTrace();
-                }
-            } catch (InstantiationException e) {
-                e.printStackTrace();
+            if (table[dialogue.dialogueId()] != null) {
+                throw new IllegalStateException("Duplicate dialogue id " + dialogue.dialogueId() + " for " + dialogue.getClass().getSimpleName());
             }
+
+            table[dialogue.dialogueId()] = dialogue;
         }
 
-        // Server.print("Instantiated " + parsed + " new dialogues!");
+        dialogues = table;
     }
 
     /**
@@ -479,9 +465,14 @@ public abstract class MobDialogue {
     }
 
     /**
-     * @return the dialogues.
+     * Gets the dialogue with an id.
+     * 
+     * @param id
+     *            the id of the dialogue.
+     * @return the dialogue, or <code>null</code> if there is no dialogue with
+     *         this id.
      */
-    public static Map<Integer, MobDialogue> getDialogues() {
-        return dialogues;
+    public static MobDialogue getDialogue(int id) {
+        return id < 0 || id >= dialogues.length ? null : dialogues[id];
     }
 }
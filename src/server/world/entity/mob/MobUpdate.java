@@ -2,7 +2,6 @@ package server.world.entity.mob;
 
 import java.util.Iterator;
 
-import server.logic.GameLogic;
 import server.net.buffer.PacketBuffer;
 import server.net.buffer.PacketBuffer.ByteOrder;
 import server.net.buffer.PacketBuffer.ValueType;
@@ -11,6 +10,7 @@ import server.world.World;
 import server.world.entity.UpdateFlags.Flag;
 import server.world.entity.player.Player;
 import server.world.map.Position;
+import server.world.map.RegionIndex;
 
 /**
  * Provides static utility methods for updating NPCs.
@@ -27,6 +27,19 @@ public class MobUpdate {
      *            the argued player.
      */
     public static void update(Player player) {
+        player.getNetwork().send(encode(player).getBuffer());
+    }
+
+    /**
+     * Encodes the NPC update packet for the argued Player without sending it.
+     * Encoding only modifies the player's own local list and encryptor, so the
+     * packets of different players can safely be encoded at the same time.
+     * 
+     * @param player
+     *            the argued player.
+     * @return the encoded packet.
+     */
+    public static PacketBuffer.OutBuffer encode(Player player) {
         // XXX: The buffer sizes may need to be tuned.
         PacketBuffer.OutBuffer out = PacketBuffer.newOutBuffer(2048);
         PacketBuffer.OutBuffer block = PacketBuffer.newOutBuffer(1024);
@@ -39,7 +52,7 @@ public class MobUpdate {
         out.writeBits(8, player.getNpcs().size());
         for (Iterator<Mob> i = player.getNpcs().iterator(); i.hasNext();) {
             Mob npc = i.next();
-            if (npc.getPosition().isViewableFrom(player.getPosition()) && npc.isVisible()) {
+            if (World.current().getNpcs()[npc.getSlot()] == npc && npc.getPosition().isViewableFrom(player.getPosition()) && npc.isVisible()) {
                 MobUpdate.updateNpcMovement(out, npc);
                 if (npc.getFlags().isUpdateRequired()) {
                     MobUpdate.updateState(block, npc);
@@ -52,25 +65,21 @@ public class MobUpdate {
             }
         }
 
-        /** Update the local NPC list itself. */
-        for (int i = 0; i < World.getNpcs().length; i++) {
-            Mob npc = World.getNpcs()[i];
-
-            if (npc == null || player.getNpcs().contains(npc) || !npc.isVisible()) {
+        /** Update the local NPC list itself from the surrounding regions. */
+        for (Mob npc : World.current().getRegions().getNpcs(player.getPosition(), RegionIndex.VIEW_DISTANCE)) {
+            if (player.getNpcs().contains(npc) || !npc.isVisible()) {
                 continue;
             }
 
             if (npc.getPosition().isViewableFrom(player.getPosition())) {
-                /** Runesource npc updating fix here! - lare96 */
-                npc.getFlags().flag(Flag.APPEARANCE);
+                /**
+                 * Runesource npc updating fix here! - lare96. Newly added NPCs
+                 * always have an update block appended, this is done without
+                 * flagging the NPC so other players aren't affected.
+                 */
                 player.getNpcs().add(npc);
-                /** Runesource npc updating fix here! - lare96 */
-
                 addNpc(out, player, npc);
-
-                if (npc.getFlags().isUpdateRequired()) {
-                    MobUpdate.updateState(block, npc);
-                }
+                MobUpdate.updateState(block, npc);
             }
         }
 
@@ -82,10 +91,42 @@ public class MobUpdate {
         } else {
             out.setAccessType(PacketBuffer.AccessType.BYTE_ACCESS);
         }
+        block.release();
 
-        /** Ship the packet out to the client. */
+        /** Finish the packet. */
         out.finishVariableShortPacketHeader();
-        player.getNetwork().send(out.getBuffer());
+        return out;
+    }
+
+    /**
+     * Applies the effects of the hits dealt to an NPC this cycle. This is done
+     * once before any update packets are encoded, so that writing the hits for
+     * any amount of viewers never modifies the NPC.
+     * 
+     * @param npc
+     *            the NPC to apply the hits for.
+     */
+    public static void applyHits(Mob npc) {
+        if (npc.getFlags().get(Flag.HIT_2)) {
+            npc.decreaseHealth(npc.getSecondaryHit().getDamage());
+        }
+
+        if (npc.getFlags().get(Flag.HIT)) {
+            npc.decreaseHealth(npc.getPrimaryHit().getDamage());
+        }
+
+        if ((npc.getFlags().get(Flag.HIT) || npc.getFlags().get(Flag.HIT_2)) && npc.getCurrentHealth() <= 0) {
+            npc.setCurrentHealth(0);
+
+            if (!npc.isHasDied()) {
+                try {
+                    npc.setHasDied(true);
+                    World.current().getEngine().submit(npc.onDeath());
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
     }
 
     /**
@@ -103,7 +144,7 @@ public class MobUpdate {
         Position delta = Misc.delta(player.getPosition(), npc.getPosition());
         out.writeBits(5, delta.getY());
         out.writeBits(5, delta.getX());
-        out.writeBit(npc.getFlags().isUpdateRequired());
+        out.writeBit(true);
         out.writeBits(12, npc.getMobId());
         out.writeBit(true);
     }
@@ -139,7 +180,9 @@ public class MobUpdate {
     }
 
     /**
-     * Updates the state of the NPC to the given update block.
+     * Updates the state of the NPC to the given update block. The state is only
+     * encoded the first time it is needed this cycle, after that the same bytes
+     * are copied for every other player that needs them.
      * 
      * @param block
      *            The update block to append to.
@@ -147,6 +190,28 @@ public class MobUpdate {
      *            The NPC to update.
      */
     private static void updateState(PacketBuffer.OutBuffer block, Mob npc) {
+        byte[] cached = npc.getUpdateBlocks().get(0);
+
+        if (cached == null) {
+            PacketBuffer.OutBuffer state = PacketBuffer.newOutBuffer(128);
+            encodeState(state, npc);
+            cached = state.toArray();
+            state.release();
+            npc.getUpdateBlocks().set(0, cached);
+        }
+
+        block.writeBytes(cached, cached.length);
+    }
+
+    /**
+     * Encodes the state of the NPC.
+     * 
+     * @param block
+     *            The buffer to encode the state into.
+     * @param npc
+     *            The NPC to encode the state for.
+     */
+    private static void encodeState(PacketBuffer.OutBuffer block, Mob npc) {
         int mask = 0x0;
 
         /** NPC update masks. */
@@ -226,19 +291,6 @@ public class MobUpdate {
      *            the npc to append this update for.
      */
     private static void appendSecondaryHit(PacketBuffer.OutBuffer out, Mob npc) {
-        npc.decreaseHealth(npc.getSecondaryHit().getDamage());
-
-        if (npc.getCurrentHealth() <= 0) {
-            npc.setCurrentHealth(0);
-
-            try {
-                npc.setHasDied(true);
-                GameLogic.getSingleton().submit(npc.onDeath());
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
-
         out.writeByte(npc.getSecondaryHit().getDamage(), ValueType.A);
         out.writeByte(npc.getSecondaryHit().getDamageType().ordinal(), ValueType.C);
         out.writeByte(npc.getCurrentHealth(), ValueType.A);
@@ -278,19 +330,6 @@ public class MobUpdate {
      *            the npc to append this update for.
      */
     private static void appendPrimaryHit(PacketBuffer.OutBuffer out, Mob npc) {
-        npc.decreaseHealth(npc.getPrimaryHit().getDamage());
-
-        if (npc.getCurrentHealth() <= 0) {
-            npc.setCurrentHealth(0);
-
-            try {
-                npc.setHasDied(true);
-                GameLogic.getSingleton().submit(npc.onDeath());
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
-
         out.writeByte(npc.getPrimaryHit().getDamage(), ValueType.C);
         out.writeByte(npc.getPrimaryHit().getDamageType().ordinal(), ValueType.S);
         out.writeByte(npc.getCurrentHealth(), ValueType.S);
@@ -0,0 +1,228 @@
+package server.world.entity.player;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import server.Server;
+import server.net.cluster.ClusterNode;
+import server.util.Misc;
+import server.world.World;
+import server.world.entity.player.PlayerNetwork.Stage;
+import server.world.entity.player.file.PlayerSaveService;
+import server.world.entity.player.file.ReadPlayerFileEvent;
+
+/**
+ * Finishes the logins of players in stages so that the game thread never
+ * waits on the disk. Once the login block has been decoded the player's
+ * character file is loaded on a separate pool of loader threads, and the
+ * player is then registered from the game thread on a later cycle. Only so
+ * many logins are finished every cycle, so a wave of players logging in at
+ * once (after a restart for example) is spread over a few cycles instead of
+ * stalling a single one. <br>
+ * <br>
+ *
+ * A player is not visible to anything else while its file is being loaded,
+ * so the loader threads are free to modify it. Nothing is sent to the player
+ * until the login is finished on the game thread. Every world has its own
+ * login service, but the loader threads are shared by all of them.
+ *
+ * @author lare96
+ */
+public final class LoginService {
+
+    /**
+     * The amount of threads used to load character files.
+     */
+    private static final int LOADER_THREADS = 2;
+
+    /**
+     * The amount of logins that can be finished in a single cycle.
+     */
+    private static final int MAXIMUM_LOGINS_PER_CYCLE = 50;
+
+    /**
+     * The threads used to load character files.
+     */
+    private static final ExecutorService loader = Executors.newFixedThreadPool(LOADER_THREADS, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "LoginLoader");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * The logins that have been loaded and are waiting to be finished on the
+     * game thread.
+     */
+    private final Queue<PendingLogin> loaded = new ConcurrentLinkedQueue<PendingLogin>();
+
+    /**
+     * The amount of logins submitted that have not been finished yet.
+     */
+    private final AtomicInteger queueDepth = new AtomicInteger();
+
+    /**
+     * Create a new {@link LoginService}.
+     */
+    public LoginService() {
+
+    }
+
+    /**
+     * Starts loading the character file of a player whose login block has
+     * been decoded. This should only be called from the game thread.
+     *
+     * @param player
+     *            the player logging in.
+     */
+    public void submit(final Player player) {
+        player.getNetwork().setStage(Stage.LOADING);
+        queueDepth.incrementAndGet();
+
+        /**
+         * Don't load a file for a player that is already online, or logging in,
+         * in any world.
+         */
+        if (!World.reserve(player)) {
+            loaded.add(new PendingLogin(player, Misc.LOGIN_RESPONSE_ACCOUNT_ONLINE));
+            return;
+        }
+
+        loader.execute(new Runnable() {
+            @Override
+            public void run() {
+                int response = Misc.LOGIN_RESPONSE_OK;
+
+                try {
+
+                    /** Make sure nobody is logged in on another node. */
+                    response = ClusterNode.getSingleton().claim(player.getUsername());
+
+                    /** The client gave up while the node was answering. */
+                    if (player.getNetwork().isDisconnected()) {
+                        ClusterNode.getSingleton().release(player);
+                    }
+
+                    if (response == Misc.LOGIN_RESPONSE_OK) {
+
+                        /** Make sure the last save has been written first. */
+                        PlayerSaveService.getSingleton().awaitSave(player.getUsername());
+
+                        ReadPlayerFileEvent read = new ReadPlayerFileEvent(player);
+                        read.run();
+                        response = read.getReturnCode();
+                    }
+                } catch (Throwable t) {
+                    t.printStackTrace();
+                    response = Misc.LOGIN_RESPONSE_COULD_NOT_COMPLETE_LOGIN;
+                }
+
+                loaded.add(new PendingLogin(player, response));
+            }
+        });
+    }
+
+    /**
+     * Finishes the logins that have been loaded, up to the limit for a single
+     * cycle. This should only be called from the game thread.
+     *
+     * @return the amount of logins finished.
+     */
+    public int process() {
+        int processed = 0;
+
+        for (; processed < MAXIMUM_LOGINS_PER_CYCLE; processed++) {
+            PendingLogin login = loaded.poll();
+
+            if (login == null) {
+                break;
+            }
+
+            Player player = login.getPlayer();
+            queueDepth.decrementAndGet();
+
+            /** The client gave up while the file was being loaded. */
+            if (player.getNetwork().isDisconnected()) {
+                continue;
+            }
+
+            int response = login.getResponse();
+
+            /** Make sure the name is still reserved by this player. */
+            if (response == Misc.LOGIN_RESPONSE_OK && World.getOnlinePlayer(Misc.nameToLong(player.getUsername())) != player) {
+                response = Misc.LOGIN_RESPONSE_ACCOUNT_ONLINE;
+            }
+
+            try {
+                player.login(response);
+            } catch (Exception e) {
+                e.printStackTrace();
+                Server.print("Error while finishing the login for " + player);
+                player.getNetwork().setPacketDisconnect(true);
+                player.getNetwork().disconnect();
+            }
+        }
+        return processed;
+    }
+
+    /**
+     * Gets the amount of logins that have been submitted but not finished
+     * yet, whether they are still being loaded or waiting for the game thread.
+     *
+     * @return the amount of logins waiting.
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * A login that has been loaded and is waiting to be finished.
+     *
+     * @author lare96
+     */
+    private static final class PendingLogin {
+
+        /**
+         * The player logging in.
+         */
+        private final Player player;
+
+        /**
+         * The response decided while loading.
+         */
+        private final int response;
+
+        /**
+         * Create a new {@link PendingLogin}.
+         *
+         * @param player
+         *            the player logging in.
+         * @param response
+         *            the response decided while loading.
+         */
+        public PendingLogin(Player player, int response) {
+            this.player = player;
+            this.response = response;
+        }
+
+        /**
+         * @return the player.
+         */
+        public Player getPlayer() {
+            return player;
+        }
+
+        /**
+         * @return the response.
+         */
+        public int getResponse() {
+            return response;
+        }
+    }
+}
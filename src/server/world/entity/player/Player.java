@@ -1,11 +1,9 @@
 package server.world.entity.player;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 
 import server.Server;
-import server.logic.GameLogic;
 import server.logic.task.Task;
 import server.logic.task.Task.Time;
 import server.net.buffer.PacketBuffer;
@@ -16,6 +14,7 @@ import server.util.Misc.Stopwatch;
 import server.world.World;
 import server.world.entity.Animation;
 import server.world.entity.Entity;
+import server.world.entity.LocalList;
 import server.world.entity.Teleport;
 import server.world.entity.UpdateFlags.Flag;
 import server.world.entity.combat.magic.TeleportSpell;
@@ -28,8 +27,7 @@ import server.world.entity.player.content.PrivateMessage;
 import server.world.entity.player.content.DynamicEnergyTask;
 import server.world.entity.player.content.Spellbook;
 import server.world.entity.player.content.Trade;
-import server.world.entity.player.file.ReadPlayerFileEvent;
-import server.world.entity.player.file.WritePlayerFileEvent;
+import server.world.entity.player.file.PlayerSaveService;
 import server.world.entity.player.minigame.Minigame;
 import server.world.entity.player.minigame.MinigameManager;
 import server.world.entity.player.skill.SkillContainer;
@@ -40,6 +38,7 @@ import server.world.entity.player.skill.impl.Cooking.Cook;
 import server.world.entity.player.skill.impl.Fishing.Fish;
 import server.world.entity.player.skill.impl.Smithing.Smelt;
 import server.world.item.Item;
+import server.world.item.ItemDefinition;
 import server.world.item.WorldItem;
 import server.world.map.Location;
 import server.world.map.Position;
@@ -203,15 +202,21 @@ public class Player extends Entity {
      */
     private boolean firstPacket;
 
+    /**
+     * The world this player is in, which is the world of the thread the
+     * connection was registered on.
+     */
+    private final World world = World.current();
+
     /**
      * A list of local players.
      */
-    private final List<Player> players = new LinkedList<Player>();
+    private final LocalList<Player> players = new LocalList<Player>(World.MAXIMUM_PLAYERS, 255);
 
     /**
      * A list of local npcs.
      */
-    private final List<Mob> npcs = new LinkedList<Mob>();
+    private final LocalList<Mob> npcs = new LocalList<Mob>(World.MAXIMUM_NPCS, 255);
 
     /**
      * The players rights.
@@ -243,6 +248,24 @@ public class Player extends Entity {
      */
     private int[] appearance = new int[7], colors = new int[5];
 
+    /**
+     * The version of this player's appearance, increased every time anything
+     * written in the appearance block changes.
+     */
+    private int appearanceVersion;
+
+    /**
+     * The encoded appearance block, or <code>null</code> if it has not been
+     * encoded yet.
+     */
+    private byte[] appearanceBlock;
+
+    /**
+     * The version of the appearance the encoded appearance block was encoded
+     * for.
+     */
+    private int appearanceBlockVersion = -1;
+
     /**
      * The player's bonuses.
      */
@@ -459,6 +482,7 @@ public class Player extends Entity {
         getMovementQueue().reset();
         getServerPacketBuilder().closeWindows();
         getPosition().setAs(position);
+        world.getRegions().update(this);
         setResetMovementQueue(true);
         setNeedsPlacement(true);
         getServerPacketBuilder().sendMapRegion();
@@ -471,10 +495,12 @@ public class Player extends Entity {
 
     @Override
     public void register() {
-        for (int i = 1; i < World.getPlayers().length; i++) {
-            if (World.getPlayers()[i] == null) {
-                World.getPlayers()[i] = this;
+        for (int i = 1; i < world.getPlayers().length; i++) {
+            if (world.getPlayers()[i] == null) {
+                world.getPlayers()[i] = this;
                 this.setSlot(i);
+                world.addPlayerName(this);
+                world.getRegions().add(this);
                 return;
             }
         }
@@ -487,7 +513,9 @@ public class Player extends Entity {
             return;
         }
 
-        World.getPlayers()[this.getSlot()] = null;
+        world.getPlayers()[this.getSlot()] = null;
+        world.removePlayerName(this);
+        world.getRegions().remove(this);
         this.setUnregistered(true);
     }
 
@@ -497,27 +525,13 @@ public class Player extends Entity {
     }
 
     /**
-     * Finishes the login for the player.
+     * Finishes the login for the player once the character file has been
+     * loaded by the {@link LoginService}.
+     * 
+     * @param response
+     *            the response decided while loading the character file.
      */
-    public void login() throws Exception {
-        int response = Misc.LOGIN_RESPONSE_OK;
-
-        /** Check if the player is already logged in. */
-        for (Player player : World.getPlayers()) {
-            if (player == null) {
-                continue;
-            }
-            if (player.getUsername().equals(getUsername())) {
-                response = Misc.LOGIN_RESPONSE_ACCOUNT_ONLINE;
-            }
-        }
-
-        /** Load saved data. */
-        if (response == 2) {
-            ReadPlayerFileEvent read = new ReadPlayerFileEvent(this);
-            read.run();
-            response = read.getReturnCode();
-        }
+    public void login(int response) throws Exception {
 
         if (isBanned()) {
             response = Misc.LOGIN_RESPONSE_ACCOUNT_DISABLED;
@@ -543,6 +557,8 @@ public class Player extends Entity {
 
         /** Register this player for processing. */
         World.register(this);
+        network.setStage(PlayerNetwork.Stage.LOGGED_IN);
+        network.getTimeoutStopwatch().reset();
 
         /** Update their appearance. */
         getServerPacketBuilder().sendMapRegion();
@@ -610,7 +626,7 @@ public class Player extends Entity {
         }
 
         /** Schedule a worker for run energy. */
-        GameLogic.getSingleton().submit(new DynamicEnergyTask(player));
+        World.current().getEngine().submit(new DynamicEnergyTask(player));
 
         /** Send welcome message. */
         if (Server.isInBetaMode()) {
@@ -636,8 +652,7 @@ public class Player extends Entity {
      * Logs the player out.
      */
     public void logout() throws Exception {
-        WritePlayerFileEvent write = new WritePlayerFileEvent(this);
-        write.run();
+        PlayerSaveService.getSingleton().save(this);
 
         World.unregister(this);
 
@@ -672,9 +687,11 @@ public class Player extends Entity {
      *            the dialogue to start.
      */
     public void dialogue(int id) {
-        if (MobDialogue.getDialogues().containsKey(id)) {
+        MobDialogue dialogue = MobDialogue.getDialogue(id);
+
+        if (dialogue != null) {
             this.setMobDialogue(id);
-            MobDialogue.getDialogues().get(this.getMobDialogue()).dialogue(this);
+            dialogue.dialogue(this);
         }
     }
 
@@ -692,7 +709,7 @@ public class Player extends Entity {
             }
 
             for (int i = 0; i < playerBonus.length; i++) {
-                playerBonus[i] += item.getDefinition().getBonus()[i];
+                playerBonus[i] += ItemDefinition.getBonus(item.getId(), i);
             }
         }
 
@@ -729,6 +746,7 @@ public class Player extends Entity {
      */
     public void setUsername(String username) {
         this.username = username;
+        appearanceChanged();
     }
 
     /**
@@ -759,16 +777,26 @@ public class Player extends Entity {
         return password;
     }
 
-    public List<Player> getPlayers() {
+    /**
+     * Gets the world this player is in.
+     * 
+     * @return the world.
+     */
+    public World getWorld() {
+        return world;
+    }
+
+    public LocalList<Player> getPlayers() {
         return players;
     }
 
-    public List<Mob> getNpcs() {
+    public LocalList<Mob> getNpcs() {
         return npcs;
     }
 
     public void setNpcAppearanceId(int npcAppearanceId) {
         this.npcAppearanceId = npcAppearanceId;
+        appearanceChanged();
     }
 
     public int getNpcAppearanceId() {
@@ -1113,6 +1141,7 @@ public class Player extends Entity {
      */
     public void setHeadIcon(int headIcon) {
         this.headIcon = headIcon;
+        appearanceChanged();
     }
 
     /**
@@ -1143,6 +1172,7 @@ public class Player extends Entity {
      */
     public void setSkullIcon(int skullIcon) {
         this.skullIcon = skullIcon;
+        appearanceChanged();
     }
 
     /**
@@ -1292,6 +1322,7 @@ public class Player extends Entity {
 
     public void setAppearance(int[] appearance) {
         this.appearance = appearance;
+        appearanceChanged();
     }
 
     public int[] getColors() {
@@ -1300,16 +1331,56 @@ public class Player extends Entity {
 
     public void setColors(int[] colors) {
         this.colors = colors;
+        appearanceChanged();
     }
 
     public void setGender(int gender) {
         this.gender = gender;
+        appearanceChanged();
     }
 
     public int getGender() {
         return gender;
     }
 
+    /**
+     * Invalidates the encoded appearance block. This must be called whenever
+     * anything written in the appearance block is changed, including the
+     * contents of the appearance and color arrays.
+     */
+    public void appearanceChanged() {
+        appearanceVersion++;
+    }
+
+    /**
+     * @return the appearanceVersion.
+     */
+    public int getAppearanceVersion() {
+        return appearanceVersion;
+    }
+
+    /**
+     * Gets the encoded appearance block.
+     * 
+     * @return the encoded appearance block, or <code>null</code> if it has not
+     *         been encoded for the current version of the appearance.
+     */
+    public byte[] getAppearanceBlock() {
+        return appearanceBlockVersion == appearanceVersion ? appearanceBlock : null;
+    }
+
+    /**
+     * Sets the encoded appearance block for the current version of the
+     * appearance.
+     * 
+     * @param appearanceBlock
+     *            the encoded appearance block.
+     */
+    public void setAppearanceBlock(byte[] appearanceBlock) {
+        this.appearanceBlock = appearanceBlock;
+        this.appearanceBlockVersion = appearanceVersion;
+    }
+
     /**
      * @param skills
      *            the skills to set
@@ -1,6 +1,14 @@
 package server.world.entity.player;
 
 import java.io.File;
+import java.io.IOException;
+
+import server.world.entity.player.file.BinaryPlayerCodec;
+import server.world.entity.player.file.DirectoryPlayerRepository;
+import server.world.entity.player.file.JsonPlayerCodec;
+import server.world.entity.player.file.LogPlayerRepository;
+import server.world.entity.player.file.PlayerCodec;
+import server.world.entity.player.file.PlayerRepository;
 
 /**
  * Used for reading and writing operations to character files.
@@ -9,6 +17,33 @@ import java.io.File;
  */
 public abstract class PlayerFileEvent {
 
+    /**
+     * The format character files are written in.
+     */
+    public static final PlayerCodec CODEC = new BinaryPlayerCodec();
+
+    /**
+     * The format character files used to be written in, which can still be
+     * read.
+     */
+    public static final PlayerCodec LEGACY_CODEC = new JsonPlayerCodec();
+
+    /**
+     * The directory character files are kept in.
+     */
+    public static final String DIRECTORY = "./data/players/";
+
+    /**
+     * The store all character files are kept in.
+     */
+    public static final String STORE = "./data/players.db";
+
+    /**
+     * Where character files are loaded from and saved to, which is opened on
+     * startup.
+     */
+    private static PlayerRepository repository;
+
     /**
      * The player taking part in this operation.
      */
@@ -30,9 +65,30 @@ public abstract class PlayerFileEvent {
     public abstract void run();
 
     /**
-     * The file to perform the operation on.
+     * Opens the repository character files are kept in. The files are kept in
+     * a single store, and players that haven't been saved since the store was
+     * introduced are loaded from their old file in the character file
+     * directory. To keep using a file for every player, use a
+     * {@link DirectoryPlayerRepository} here instead. <br>
+     * <br>
+     *
+     * If the store can't be opened the server must not start: players saved
+     * in it would be treated as new players and have their files overwritten.
+     * 
+     * @throws IOException
+     *             if the store can't be opened.
      */
-    public abstract File file();
+    public static void openRepository() throws IOException {
+        PlayerRepository directory = new DirectoryPlayerRepository(new File(DIRECTORY), CODEC, LEGACY_CODEC);
+        repository = new LogPlayerRepository(new File(STORE), CODEC, directory);
+    }
+
+    /**
+     * @return the repository, or <code>null</code> if it hasn't been opened.
+     */
+    public static PlayerRepository getRepository() {
+        return repository;
+    }
 
     /**
      * @return the player.
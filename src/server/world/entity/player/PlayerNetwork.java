@@ -1,16 +1,31 @@
 package server.world.entity.player;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import server.Server;
+import server.logic.task.Task;
 import server.net.HostGateway;
 import server.net.ISAACCipher;
+import server.net.buffer.BufferPool;
+import server.net.cluster.ClusterNode;
 import server.net.buffer.PacketBuffer;
+import server.net.buffer.RingBuffer;
+import server.net.event.SelectorThread;
+import server.net.packet.IncomingPacket;
+import server.net.packet.PacketBudget;
 import server.net.packet.ServerPacketBuilder;
 import server.util.Misc;
+import server.world.World;
 import server.world.entity.player.minigame.Minigame;
 import server.world.entity.player.minigame.MinigameManager;
 
@@ -28,9 +43,15 @@ public class PlayerNetwork {
     private final SelectionKey key;
 
     /**
-     * If the player has disconnected.
+     * The selector thread reading from this client.
      */
-    private boolean disconnected;
+    private final SelectorThread selectorThread;
+
+    /**
+     * If the player has disconnected. This is also read from the login loader
+     * threads.
+     */
+    private volatile boolean disconnected;
 
     /**
      * If the player has disconnected from a packet issue.
@@ -38,20 +59,86 @@ public class PlayerNetwork {
     private boolean packetDisconnect;
 
     /**
-     * The buffer for reading.
+     * The ring the data sent by the client is read into. This is filled by
+     * the selector thread, and packets are read straight out of it by the
+     * world.
+     */
+    private final RingBuffer inData = new RingBuffer(512, 32768);
+
+    /**
+     * Packets that have been read and are waiting to be handled by the world
+     * of this client, in the order they were read.
+     */
+    private final Queue<IncomingPacket> inbound = new ConcurrentLinkedQueue<IncomingPacket>();
+
+    /**
+     * If this network has been queued to have its packets handled.
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * The amount of packets waiting in the inbound queue.
+     */
+    private final AtomicInteger backlog = new AtomicInteger();
+
+    /**
+     * How many more packets the client can send before going over its limits.
      */
-    private final ByteBuffer inData;
+    private final PacketBudget budget = new PacketBudget();
 
     /**
-     * The buffer for writing.
+     * What the selector thread expects to read next.
      */
-    private final ByteBuffer outData;
+    private Framing framing = Framing.HANDSHAKE;
+
+    /**
+     * The opcode of the packet being read by the selector thread.
+     */
+    private int frameOpcode = -1;
+
+    /**
+     * The length of the packet being read by the selector thread.
+     */
+    private int frameLength = -1;
+
+    /**
+     * The largest amount of bytes that can be waiting to be written before the
+     * client is considered too slow and is disconnected.
+     */
+    private static final int MAXIMUM_BACKLOG = 262144;
+
+    /**
+     * Packets waiting to be written to the socket, in the order they were
+     * sent.
+     */
+    private final Deque<ByteBuffer> outgoing = new ArrayDeque<ByteBuffer>();
+
+    /**
+     * The amount of bytes waiting to be written to the socket.
+     */
+    private int outgoingBytes;
+
+    /**
+     * If this network is waiting to be flushed at the end of the cycle.
+     */
+    private boolean flushQueued;
+
+    /**
+     * If the socket could not take all of the data last time it was flushed,
+     * and we are waiting for it to become writable.
+     */
+    private boolean backlogged;
 
     /**
      * Packet timeout stopwatch.
      */
     private final Misc.Stopwatch timeoutStopwatch = new Misc.Stopwatch();
 
+    /**
+     * The task that disconnects this client if it times out.
+     */
+    private Task timeout;
+
     /**
      * The socket channel.
      */
@@ -63,12 +150,12 @@ public class PlayerNetwork {
     private Stage stage;
 
     /**
-     * The packet opcode.
+     * The opcode of the packet being handled.
      */
     private int packetOpcode = -1;
 
     /**
-     * The packet length.
+     * The length of the packet being handled.
      */
     private int packetLength = -1;
 
@@ -78,9 +165,10 @@ public class PlayerNetwork {
     private ISAACCipher encryptor;
 
     /**
-     * The packet decryptor.
+     * The packet decryptor. This is created by the world when the login block
+     * is read, and only used by the selector thread after that.
      */
-    private ISAACCipher decryptor;
+    private volatile ISAACCipher decryptor;
 
     /**
      * The player.
@@ -103,7 +191,18 @@ public class PlayerNetwork {
      * @author blakeman8192
      */
     public enum Stage {
-        CONNECTED, LOGGING_IN, LOGGED_IN, LOGGED_OUT
+        CONNECTED, LOGGING_IN, LOADING, LOGGED_IN, LOGGED_OUT
+    }
+
+    /**
+     * What the selector thread expects to read next from the client. The
+     * client waits for an answer before moving on to the next part of the
+     * login, so this is moved on as soon as a part has been read.
+     *
+     * @author lare96
+     */
+    public enum Framing {
+        HANDSHAKE, LOGIN_BLOCK, GAME
     }
 
     /**
@@ -111,12 +210,13 @@ public class PlayerNetwork {
      * 
      * @param key
      *            the SelectionKey of the client.
+     * @param selectorThread
+     *            the selector thread reading from the client.
      */
-    public PlayerNetwork(SelectionKey key) {
+    public PlayerNetwork(SelectionKey key, SelectorThread selectorThread) {
         this.key = key;
+        this.selectorThread = selectorThread;
         setStage(Stage.CONNECTED);
-        inData = ByteBuffer.allocateDirect(512);
-        outData = ByteBuffer.allocateDirect(8192);
         if (key != null) {
             socketChannel = (SocketChannel) key.channel();
             host = socketChannel.socket().getInetAddress().getHostAddress();
@@ -129,55 +229,190 @@ public class PlayerNetwork {
      * Disconnects the player from this io network.
      */
     public void disconnect() {
-        player.getTrading().resetTrade(false);
+        if (isDisconnected()) {
+            return;
+        }
 
-        Minigame minigame = MinigameManager.inAnyMinigame(player);
+        /**
+         * Only players that finished logging in have anything to clean up
+         * or save.
+         */
+        boolean loggedIn = getStage() == Stage.LOGGED_IN;
 
-        if (minigame != null) {
-            minigame.logout(player);
-        }
+        if (loggedIn) {
+            player.getTrading().resetTrade(false);
 
-        player.getPrivateMessage().sendPrivateMessageOnLogout();
+            Minigame minigame = MinigameManager.inAnyMinigame(player);
+
+            if (minigame != null) {
+                minigame.logout(player);
+            }
+        }
         key.attach(null);
         key.cancel();
+
+        /** Stop watching for a timeout. */
+        if (timeout != null && timeout.isRunning()) {
+            timeout.cancel();
+        }
         setStage(Stage.LOGGED_OUT);
         setDisconnected(true);
         try {
-            if (player != null) {
+            if (loggedIn) {
                 player.logout();
             }
+
+            /** Make a last attempt to write anything still waiting. */
+            if (!outgoing.isEmpty()) {
+                try {
+                    socketChannel.write(outgoing.toArray(new ByteBuffer[outgoing.size()]));
+                } catch (IOException e) {
+
+                    /** The client closed the connection before we did. */
+                }
+            }
             socketChannel.close();
             HostGateway.exit(host);
         } catch (Exception ex) {
             ex.printStackTrace();
         }
+        releaseOutgoing();
+
+        /** Let the player log in again, in any world and on any node. */
+        World.release(player);
+        ClusterNode.getSingleton().release(player);
+        player.getWorld().getDispatcher().disconnected();
+    }
+
+    /**
+     * Queues a packet that has been read to be handled by the world of this
+     * client. This is called from the selector thread.
+     * 
+     * @param packet
+     *            the packet that has been read.
+     */
+    public void receive(IncomingPacket packet) {
+        backlog.incrementAndGet();
+        inbound.add(packet);
+        schedule();
+    }
+
+    /**
+     * Takes the next packet waiting to be handled. This should only be called
+     * from the world of this client.
+     * 
+     * @return the packet, or <code>null</code> if there are none waiting.
+     */
+    public IncomingPacket poll() {
+        IncomingPacket packet = inbound.poll();
+
+        if (packet != null) {
+            backlog.decrementAndGet();
+        }
+        return packet;
     }
 
     /**
-     * Sends the buffer to the socket.
+     * Queues this network to have its packets handled on the next cycle of
+     * its world, unless it has been queued already.
+     */
+    public void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            player.getWorld().getDispatcher().ready(this);
+        }
+    }
+
+    /**
+     * Sends the buffer to the socket. The buffer is only queued here, every
+     * packet queued during a cycle is written at once when the network is
+     * flushed at the end of the cycle. The buffer is given back to the
+     * {@link BufferPool} once it has been written, so it must not be used
+     * after being sent.
      * 
      * @param buffer
      *            the buffer to send.
      */
     public void send(ByteBuffer buffer) {
-        if (!socketChannel.isOpen())
+        if (!socketChannel.isOpen()) {
+            BufferPool.getSingleton().release(buffer);
             return;
+        }
 
         /** Prepare the buffer for writing. */
         buffer.flip();
 
+        if (!buffer.hasRemaining()) {
+            BufferPool.getSingleton().release(buffer);
+            return;
+        }
+
+        /** ...and queue it! */
+        outgoing.add(buffer);
+        outgoingBytes += buffer.remaining();
+
+        if (!flushQueued) {
+            flushQueued = true;
+            player.getWorld().getDispatcher().queueFlush(this);
+        }
+    }
+
+    /**
+     * Writes the packets waiting to be sent to the socket with a single
+     * gathering write. If the socket can't take all of the data the rest is
+     * kept, and the selector thread is asked to select the socket for writing
+     * so the rest can be written once the socket is ready for it.
+     * 
+     * @param writable
+     *            if the socket has been selected as writable.
+     */
+    public void flush(boolean writable) {
+        flushQueued = false;
+
+        if (outgoing.isEmpty() || isDisconnected() || !socketChannel.isOpen()) {
+            return;
+        }
+
+        /** Wait for the socket to become writable again. */
+        if (backlogged && !writable) {
+            return;
+        }
+
+        /** The client isn't reading fast enough. */
+        if (outgoingBytes > MAXIMUM_BACKLOG) {
+            Server.print("Outgoing backlog exceeded for " + host + ", disconnecting!");
+            releaseOutgoing();
+            this.setPacketDisconnect(true);
+            disconnect();
+            return;
+        }
+
         try {
-            /** ...and write it! */
-            socketChannel.write(buffer);
+            outgoingBytes -= socketChannel.write(outgoing.toArray(new ByteBuffer[outgoing.size()]));
 
-            /** If not all the data was sent. */
-            if (buffer.hasRemaining()) {
+            /** Give back the packets that were written completely. */
+            while (!outgoing.isEmpty() && !outgoing.peek().hasRemaining()) {
+                BufferPool.getSingleton().release(outgoing.poll());
+            }
 
-                /** Queue it. */
-                synchronized (outData) {
-                    outData.put(buffer);
-                }
+            /**
+             * Only wait for the socket to be writable if it is backlogged. The
+             * selector thread stops waiting every time the socket becomes
+             * writable, so it has to be asked again after every attempt.
+             */
+            boolean remaining = !outgoing.isEmpty();
+
+            if (remaining && (!backlogged || writable)) {
+                selectorThread.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (key.isValid() && key.interestOps() != 0) {
+                            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        }
+                    }
+                });
             }
+
+            backlogged = remaining;
         } catch (Exception ex) {
             ex.printStackTrace();
             this.setPacketDisconnect(true);
@@ -186,19 +421,33 @@ public class PlayerNetwork {
     }
 
     /**
-     * Handles the login process of the client.
+     * Gives every packet waiting to be written back to the {@link BufferPool}
+     * without writing them.
+     */
+    private void releaseOutgoing() {
+        for (ByteBuffer buffer : outgoing) {
+            BufferPool.getSingleton().release(buffer);
+        }
+
+        outgoing.clear();
+        outgoingBytes = 0;
+    }
+
+    /**
+     * Handles the login process of the client. The selector thread splits the
+     * login into its parts, so the buffer given here always holds a whole
+     * part.
+     * 
+     * @param in
+     *            the part of the login that has been read.
      */
-    public void handleLogin() throws Exception {
+    public void handleLogin(PacketBuffer.InBuffer in) throws Exception {
         switch (getStage()) {
             case CONNECTED:
-                if (inData.remaining() < 2) {
-                    inData.compact();
-                    return;
-                }
 
                 /** Validate the request. */
-                int request = inData.get() & 0xff;
-                inData.get();
+                int request = in.readByte(false);
+                in.readByte();
 
                 if (request != 14) {
                     Server.print("Invalid login request: " + request);
@@ -216,13 +465,9 @@ public class PlayerNetwork {
                 setStage(Stage.LOGGING_IN);
                 break;
             case LOGGING_IN:
-                if (inData.remaining() < 2) {
-                    inData.compact();
-                    return;
-                }
 
                 /** Validate the login type. */
-                int loginType = inData.get();
+                int loginType = in.readByte();
 
                 if (loginType != 16 && loginType != 18) {
                     Server.print("Invalid login type: " + loginType);
@@ -230,17 +475,8 @@ public class PlayerNetwork {
                     return;
                 }
 
-                /** Ensure that we can read all of the login block. */
-                int blockLength = inData.get() & 0xff;
-
-                if (inData.remaining() < blockLength) {
-                    inData.flip();
-                    inData.compact();
-                    return;
-                }
-
-                /** Read the login block. */
-                PacketBuffer.InBuffer in = PacketBuffer.newInBuffer(inData);
+                /** Skip the block length, the whole block has been read. */
+                in.skip(1);
 
                 in.readByte(); // Skip the magic ID value 255.
 
@@ -255,9 +491,7 @@ public class PlayerNetwork {
 
                 in.readByte(); // Skip the high/low memory version.
 
-                for (int i = 0; i < 9; i++) { // Skip the CRC keys.
-                    in.readInt();
-                }
+                in.skip(36); // Skip the CRC keys.
 
                 in.readByte(); // Skip RSA block length. If we wanted to, we
                 // would decode RSA at this point.
@@ -293,8 +527,12 @@ public class PlayerNetwork {
                 player.setUsername(username);
                 player.setPassword(password);
 
-                player.login();
-                setStage(Stage.LOGGED_IN);
+                /** Load the character file and finish the login later. */
+                player.getWorld().getLoginService().submit(player);
+                break;
+            case LOADING:
+
+                /** Nothing should be sent until the login is finished. */
                 break;
             case LOGGED_OUT:
                 disconnect();
@@ -392,6 +630,14 @@ public class PlayerNetwork {
         return timeoutStopwatch;
     }
 
+    /**
+     * @param timeout
+     *            the timeout to set.
+     */
+    public void setTimeout(Task timeout) {
+        this.timeout = timeout;
+    }
+
     /**
      * @return the packetOpcode.
      */
@@ -422,18 +668,106 @@ public class PlayerNetwork {
         this.packetLength = packetLength;
     }
 
+    /**
+     * @return the key.
+     */
+    public SelectionKey getKey() {
+        return key;
+    }
+
+    /**
+     * @return the inbound.
+     */
+    public Queue<IncomingPacket> getInbound() {
+        return inbound;
+    }
+
+    /**
+     * @return the amount of packets waiting to be handled.
+     */
+    public int getBacklog() {
+        return backlog.get();
+    }
+
+    /**
+     * @param scheduled
+     *            the scheduled to set.
+     */
+    public void setScheduled(boolean scheduled) {
+        this.scheduled.set(scheduled);
+    }
+
+    /**
+     * @return the budget.
+     */
+    public PacketBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return the framing.
+     */
+    public Framing getFraming() {
+        return framing;
+    }
+
+    /**
+     * @param framing
+     *            the framing to set.
+     */
+    public void setFraming(Framing framing) {
+        this.framing = framing;
+    }
+
+    /**
+     * @return the frameOpcode.
+     */
+    public int getFrameOpcode() {
+        return frameOpcode;
+    }
+
+    /**
+     * @param frameOpcode
+     *            the frameOpcode to set.
+     */
+    public void setFrameOpcode(int frameOpcode) {
+        this.frameOpcode = frameOpcode;
+    }
+
+    /**
+     * @return the frameLength.
+     */
+    public int getFrameLength() {
+        return frameLength;
+    }
+
+    /**
+     * @param frameLength
+     *            the frameLength to set.
+     */
+    public void setFrameLength(int frameLength) {
+        this.frameLength = frameLength;
+    }
+
     /**
      * @return the inData.
      */
-    public ByteBuffer getInData() {
+    public RingBuffer getInData() {
         return inData;
     }
 
     /**
-     * @return the outData.
+     * @return the backlogged.
+     */
+    public boolean isBacklogged() {
+        return backlogged;
+    }
+
+    /**
+     * @return the amount of bytes waiting to be written.
      */
-    public ByteBuffer getOutData() {
-        return outData;
+    public int getOutgoingBytes() {
+        return outgoingBytes;
     }
 
     /**
@@ -2,7 +2,6 @@ package server.world.entity.player;
 
 import java.util.Iterator;
 
-import server.logic.GameLogic;
 import server.net.buffer.PacketBuffer;
 import server.net.buffer.PacketBuffer.ByteOrder;
 import server.net.buffer.PacketBuffer.ValueType;
@@ -12,6 +11,7 @@ import server.world.entity.UpdateFlags.Flag;
 import server.world.entity.player.skill.SkillManager;
 import server.world.entity.player.skill.SkillManager.Skill;
 import server.world.map.Position;
+import server.world.map.RegionIndex;
 
 /**
  * Provides static utility methods for updating Players.
@@ -28,6 +28,19 @@ public final class PlayerUpdate {
      *            the player to update.
      */
     public static void update(Player player) {
+        player.getNetwork().send(encode(player).getBuffer());
+    }
+
+    /**
+     * Encodes the update packet for a player without sending it. Encoding
+     * only modifies the player's own local list and encryptor, so the packets
+     * of different players can safely be encoded at the same time.
+     * 
+     * @param player
+     *            the player to encode the update packet for.
+     * @return the encoded packet.
+     */
+    public static PacketBuffer.OutBuffer encode(Player player) {
         // XXX: The buffer sizes may need to be tuned.
         PacketBuffer.OutBuffer out = PacketBuffer.newOutBuffer(16384); // 8192
         PacketBuffer.OutBuffer block = PacketBuffer.newOutBuffer(8192); // 4096
@@ -47,7 +60,7 @@ public final class PlayerUpdate {
         out.writeBits(8, player.getPlayers().size());
         for (Iterator<Player> i = player.getPlayers().iterator(); i.hasNext();) {
             Player other = i.next();
-            if (other.getPosition().isViewableFrom(player.getPosition()) && other.getNetwork().getStage() == PlayerNetwork.Stage.LOGGED_IN && !other.isNeedsPlacement() && other.isVisible()) {
+            if (World.current().getPlayers()[other.getSlot()] == other && other.getPosition().isViewableFrom(player.getPosition()) && other.getNetwork().getStage() == PlayerNetwork.Stage.LOGGED_IN && !other.isNeedsPlacement() && other.isVisible()) {
                 PlayerUpdate.updateOtherPlayerMovement(other, out);
                 if (other.getFlags().isUpdateRequired()) {
                     PlayerUpdate.updateState(other, block, false, false);
@@ -61,15 +74,14 @@ public final class PlayerUpdate {
 
         int added = 0;
 
-        /** Update the local player list. */
-        for (int i = 0; i < World.getPlayers().length; i++) {
+        /** Update the local player list from the surrounding regions. */
+        for (Player other : World.current().getRegions().getPlayers(player.getPosition(), RegionIndex.VIEW_DISTANCE)) {
             if (added == 15 || player.getPlayers().size() >= 220) {
 
                 /** Player limit has been reached. */
                 break;
             }
-            Player other = World.getPlayers()[i];
-            if (other == null || other == player || other.getNetwork().getStage() != PlayerNetwork.Stage.LOGGED_IN) {
+            if (other == player || other.getNetwork().getStage() != PlayerNetwork.Stage.LOGGED_IN) {
                 continue;
             }
             if (!player.getPlayers().contains(other) && other.getPosition().isViewableFrom(player.getPosition())) {
@@ -88,10 +100,41 @@ public final class PlayerUpdate {
         } else {
             out.setAccessType(PacketBuffer.AccessType.BYTE_ACCESS);
         }
+        block.release();
 
-        /** Finish the packet and send it. */
+        /** Finish the packet. */
         out.finishVariableShortPacketHeader();
-        player.getNetwork().send(out.getBuffer());
+        return out;
+    }
+
+    /**
+     * Applies the effects of the hits dealt to a player this cycle. This is
+     * done once before any update packets are encoded, so that writing the
+     * hits for any amount of viewers never modifies the player.
+     * 
+     * @param player
+     *            the player to apply the hits for.
+     */
+    public static void applyHits(Player player) {
+        if (player.getFlags().get(Flag.HIT_2)) {
+            player.getSkills().getTrainable()[Skill.HITPOINTS.ordinal()].decreaseLevel(player.getSecondaryHit().getDamage());
+            SkillManager.getSingleton().refresh(player, Skill.HITPOINTS);
+        }
+
+        if (player.getFlags().get(Flag.HIT) || player.getFlags().get(Flag.HIT_2)) {
+            if (player.getSkills().getTrainable()[Skill.HITPOINTS.ordinal()].getLevel() <= 0) {
+                player.getSkills().getTrainable()[Skill.HITPOINTS.ordinal()].setLevel(0);
+
+                if (!player.isHasDied()) {
+                    try {
+                        player.setHasDied(true);
+                        World.current().getEngine().submit(player.onDeath());
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
     }
 
     /**
@@ -118,7 +161,45 @@ public final class PlayerUpdate {
      *            the buffer.
      */
     public static void appendAppearance(Player player, PacketBuffer.OutBuffer out) {
-        PacketBuffer.OutBuffer block = PacketBuffer.newOutBuffer(128);
+        byte[] appearance = updateAppearance(player);
+
+        /** Append the block length and the block to the packet. */
+        out.writeByte(appearance.length, PacketBuffer.ValueType.C);
+        out.writeBytes(appearance, appearance.length);
+    }
+
+    /**
+     * Gets the encoded appearance block of a player, encoding it again only if
+     * the appearance has changed since it was last encoded. This is done for
+     * every player before the update packets are encoded so the block is never
+     * encoded while encoding in parallel.
+     * 
+     * @param player
+     *            the player.
+     * @return the encoded appearance block.
+     */
+    public static byte[] updateAppearance(Player player) {
+        byte[] appearance = player.getAppearanceBlock();
+
+        if (appearance == null) {
+            PacketBuffer.OutBuffer block = PacketBuffer.newOutBuffer(128);
+            encodeAppearance(player, block);
+            appearance = block.toArray();
+            block.release();
+            player.setAppearanceBlock(appearance);
+        }
+        return appearance;
+    }
+
+    /**
+     * Encodes the appearance of a player.
+     * 
+     * @param player
+     *            the player.
+     * @param block
+     *            the buffer to encode the appearance into.
+     */
+    private static void encodeAppearance(Player player, PacketBuffer.OutBuffer block) {
 
         /** Gender. */
         block.writeByte(player.getGender()); // Gender
@@ -246,10 +327,6 @@ public final class PlayerUpdate {
         block.writeLong(Misc.nameToLong(player.getUsername()));
         block.writeByte(player.getSkills().getCombatLevel());
         block.writeShort(0);
-
-        /** Append the block length and the block to the packet. */
-        out.writeByte(block.getBuffer().position(), PacketBuffer.ValueType.C);
-        out.writeBytes(block.getBuffer());
     }
 
     /**
@@ -292,7 +369,6 @@ public final class PlayerUpdate {
             int posX = player.getPosition().getLocalX(player.getCurrentRegion());
             int posY = player.getPosition().getLocalY(player.getCurrentRegion());
             appendPlacement(out, posX, posY, player.getPosition().getZ(), player.isResetMovementQueue(), updateRequired);
-            player.setNeedsPlacement(false);
         } else { // No placement update, check for movement.
             int pDir = player.getPrimaryDirection();
             int sDir = player.getSecondaryDirection();
@@ -345,14 +421,53 @@ public final class PlayerUpdate {
     }
 
     /**
-     * Updates the state of a player.
+     * Updates the state of a player. The state is only encoded the first time
+     * it is needed this cycle, after that the same bytes are copied for every
+     * other player that needs them.
      * 
      * @param player
      *            the player to update state for.
      * @param block
      *            the update block.
+     * @param forceAppearance
+     *            if the appearance should be written even if it was not
+     *            flagged.
+     * @param noChat
+     *            if chat should not be written even if it was flagged.
      */
     public static void updateState(Player player, PacketBuffer.OutBuffer block, boolean forceAppearance, boolean noChat) {
+
+        /** Variants that write the same bytes share a cached block. */
+        forceAppearance = forceAppearance && !player.getFlags().get(Flag.APPEARANCE);
+        noChat = noChat && player.getFlags().get(Flag.CHAT);
+        int variant = (forceAppearance ? 2 : 0) | (noChat ? 1 : 0);
+        byte[] cached = player.getUpdateBlocks().get(variant);
+
+        if (cached == null) {
+            PacketBuffer.OutBuffer state = PacketBuffer.newOutBuffer(512);
+            encodeState(player, state, forceAppearance, noChat);
+            cached = state.toArray();
+            state.release();
+            player.getUpdateBlocks().set(variant, cached);
+        }
+
+        block.writeBytes(cached, cached.length);
+    }
+
+    /**
+     * Encodes the state of a player.
+     * 
+     * @param player
+     *            the player to encode the state for.
+     * @param block
+     *            the buffer to encode the state into.
+     * @param forceAppearance
+     *            if the appearance should be written even if it was not
+     *            flagged.
+     * @param noChat
+     *            if chat should not be written even if it was flagged.
+     */
+    private static void encodeState(Player player, PacketBuffer.OutBuffer block, boolean forceAppearance, boolean noChat) {
         /** First we must prepare the mask. */
         int mask = 0x0;
 
@@ -492,18 +607,6 @@ public final class PlayerUpdate {
     private static void appendPrimaryHit(Player player, PacketBuffer.OutBuffer out) {
         out.writeByte(player.getPrimaryHit().getDamage());
         out.writeByte(player.getPrimaryHit().getDamageType().ordinal(), ValueType.A);
-
-        if (player.getSkills().getTrainable()[Skill.HITPOINTS.ordinal()].getLevel() <= 0) {
-            player.getSkills().getTrainable()[Skill.HITPOINTS.ordinal()].setLevel(0);
-
-            try {
-                player.setHasDied(true);
-                GameLogic.getSingleton().submit(player.onDeath());
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
-
         out.writeByte(player.getSkills().getTrainable()[Skill.HITPOINTS.ordinal()].getLevel(), ValueType.C);
         out.writeByte(player.getSkills().getTrainable()[Skill.HITPOINTS.ordinal()].getLevelForExperience());
     }
@@ -517,25 +620,10 @@ public final class PlayerUpdate {
      *            the packet to write to.
      */
     private static void appendSecondaryHit(Player player, PacketBuffer.OutBuffer out) {
-        player.getSkills().getTrainable()[Skill.HITPOINTS.ordinal()].decreaseLevel(player.getSecondaryHit().getDamage());
-
         out.writeByte(player.getSecondaryHit().getDamage());
         out.writeByte(player.getSecondaryHit().getDamageType().ordinal(), ValueType.S);
-
-        if (player.getSkills().getTrainable()[Skill.HITPOINTS.ordinal()].getLevel() <= 0) {
-            player.getSkills().getTrainable()[Skill.HITPOINTS.ordinal()].setLevel(0);
-
-            try {
-                player.setHasDied(true);
-                GameLogic.getSingleton().submit(player.onDeath());
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
-
         out.writeByte(player.getSkills().getTrainable()[Skill.HITPOINTS.ordinal()].getLevel());
         out.writeByte(player.getSkills().getTrainable()[Skill.HITPOINTS.ordinal()].getLevelForExperience(), ValueType.C);
-        SkillManager.getSingleton().refresh(player, Skill.HITPOINTS);
     }
 
     /**
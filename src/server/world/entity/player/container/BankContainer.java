@@ -79,7 +79,7 @@ public class BankContainer {
     public void depositItem(int bankSlot, int bankItem, int bankAmount) {
         Item inventoryItem = getPlayer().getInventory().getItemContainer().getItem(bankSlot);
         int inventoryItemAmount = getPlayer().getInventory().getItemContainer().getCount(bankItem);
-        boolean isInventoryItemNoted = inventoryItem.getDefinition().isNoted();
+        boolean isInventoryItemNoted = ItemDefinition.isNoted(inventoryItem.getId());
         int freeBankingSlots = getPlayer().getBank().getContainer().freeSlot();
         if (freeBankingSlots == -1) {
             getPlayer().getServerPacketBuilder().sendMessage("You don't have the remaining bank space to deposit this item.");
@@ -90,7 +90,7 @@ public class BankContainer {
         }
         getPlayer().getInventory().removeItemSlot(new Item(bankItem, inventoryItemAmount), bankSlot);
         int bankCount = getPlayer().getBank().getContainer().getCount(bankItem);
-        int transferIdentity = isInventoryItemNoted ? ItemDefinition.getDefinitions()[inventoryItem.getId()].getUnNotedId() : ItemDefinition.getDefinitions()[inventoryItem.getId()].getItemId();
+        int transferIdentity = isInventoryItemNoted ? ItemDefinition.getUnNotedId(inventoryItem.getId()) : inventoryItem.getId();
         if (bankCount == 0) {
             getPlayer().getBank().getContainer().add(new Item(transferIdentity, inventoryItemAmount));
         } else {
@@ -113,10 +113,10 @@ public class BankContainer {
      */
     public void withdrawItem(int bankSlot, int bankItem, int bankAmount) {
         Item requestedItem = new Item(bankItem + 1, 1);
-        boolean isRequestedItemNoted = ItemDefinition.getDefinitions()[requestedItem.getId()].isNoted();
+        boolean isRequestedItemNoted = ItemDefinition.isNoted(requestedItem.getId());
         int containedBankAmount = getPlayer().getBank().getContainer().getCount(bankItem);
 
-        if (!requestedItem.getDefinition().isStackable()) {
+        if (!ItemDefinition.isStackable(requestedItem.getId())) {
             if (player.getInventory().getItemContainer().freeSlots() < bankAmount) {
                 player.getServerPacketBuilder().sendMessage("You do not have enough space in your inventory!");
                 return;
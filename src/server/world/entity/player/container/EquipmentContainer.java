@@ -59,8 +59,8 @@ public class EquipmentContainer {
         if (item == null) {
             return;
         }
-        if (ItemDefinition.getDefinitions()[item.getId()].isStackable()) {
-            int slotType = item.getDefinition().getEquipmentSlot();
+        if (ItemDefinition.isStackable(item.getId())) {
+            int slotType = ItemDefinition.getEquipmentSlot(item.getId());
             Item equipItem = itemContainer.getItem(slotType);
             if (itemContainer.getItem(slotType) != null) {
                 if (item.getId() == equipItem.getId()) {
@@ -74,7 +74,7 @@ public class EquipmentContainer {
             }
             player.getInventory().removeItemSlot(item, slot);
         } else {
-            int slotType = item.getDefinition().getEquipmentSlot();
+            int slotType = ItemDefinition.getEquipmentSlot(item.getId());
             if (slotType == 3) {
                 if (ItemDefinition.getDefinitions()[item.getId()].isTwoHanded()) {
                     removeItem(5);
@@ -101,6 +101,7 @@ public class EquipmentContainer {
         }
         player.writeBonus();
         refresh();
+        player.appearanceChanged();
         player.getFlags().flag(Flag.APPEARANCE);
     }
 
@@ -125,6 +126,7 @@ public class EquipmentContainer {
         player.writeBonus();
         refresh();
         player.getInventory().refresh(InventoryContainer.DEFAULT_INVENTORY_INTERFACE);
+        player.appearanceChanged();
         player.getFlags().flag(Flag.APPEARANCE);
     }
 
@@ -3,6 +3,7 @@ package server.world.entity.player.container;
 import server.world.entity.player.Player;
 import server.world.item.Container;
 import server.world.item.Item;
+import server.world.item.ItemDefinition;
 import server.world.item.Container.Type;
 
 /**
@@ -71,14 +72,14 @@ public class InventoryContainer {
         if (item == null) {
             return;
         }
-        if (!itemContainer.contains(item.getId()) && !item.getDefinition().isStackable()) {
+        if (!itemContainer.contains(item.getId()) && !ItemDefinition.isStackable(item.getId())) {
             if (itemContainer.freeSlot() == -1) {
                 player.getServerPacketBuilder().sendMessage("You don't have enough free space in your inventory.");
                 return;
             }
         }
         int amount = item.getAmount();
-        if (amount > itemContainer.freeSlots() && !item.getDefinition().isStackable()) {
+        if (amount > itemContainer.freeSlots() && !ItemDefinition.isStackable(item.getId())) {
             amount = itemContainer.freeSlots();
         }
         itemContainer.add(new Item(item.getId(), amount));
@@ -115,7 +116,7 @@ public class InventoryContainer {
             return;
         }
 
-        if (item.getDefinition().isStackable()) {
+        if (ItemDefinition.isStackable(item.getId())) {
             itemContainer.remove(item, item.getAmount());
         } else {
             itemContainer.remove(item, 1);
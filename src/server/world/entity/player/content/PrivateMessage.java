@@ -1,7 +1,7 @@
 package server.world.entity.player.content;
 
+import server.net.cluster.ClusterNode;
 import server.util.Misc;
-import server.world.World;
 import server.world.entity.player.Player;
 
 /**
@@ -33,7 +33,7 @@ public class PrivateMessage {
 
     /**
      * Refreshes the friends list on login for yourself and players you have
-     * added.
+     * added, on every node of the cluster.
      */
     public void sendPrivateMessageOnLogin() {
 
@@ -46,44 +46,11 @@ public class PrivateMessage {
                 continue;
             }
 
-            Player load = World.getPlayer(Misc.longToName(l));
-
-            if (load != null) {
-                player.getServerPacketBuilder().loadPrivateMessage(l, 1);
-            } else {
-                player.getServerPacketBuilder().loadPrivateMessage(l, 0);
-            }
+            player.getServerPacketBuilder().loadPrivateMessage(l, ClusterNode.getSingleton().getNode(l));
         }
 
         /** Updates the list for all your friends. */
-        long name = Misc.nameToLong(player.getUsername());
-
-        for (Player players : World.getPlayers()) {
-            if (players == null)
-                continue;
-
-            if (players.getFriends().contains(name)) {
-                players.getServerPacketBuilder().loadPrivateMessage(name, 1);
-            }
-        }
-    }
-
-    /**
-     * Refreshes the friends list on logout for players you have added.
-     */
-    public void sendPrivateMessageOnLogout() {
-
-        /** Updates the list for all your friends. */
-        long name = Misc.nameToLong(player.getUsername());
-
-        for (Player players : World.getPlayers()) {
-            if (players == null)
-                continue;
-
-            if (players.getFriends().contains(name)) {
-                players.getServerPacketBuilder().loadPrivateMessage(name, 0);
-            }
-        }
+        ClusterNode.getSingleton().online(player);
     }
 
     /**
@@ -111,18 +78,7 @@ public class PrivateMessage {
 
         /** Add the name to your friends list. */
         player.getFriends().add(name);
-        player.getServerPacketBuilder().loadPrivateMessage(name, 1);
-
-        long playerName = Misc.nameToLong(player.getUsername());
-
-        for (Player players : World.getPlayers()) {
-            if (players == null)
-                continue;
-
-            if (players.getFriends().contains(playerName)) {
-                players.getServerPacketBuilder().loadPrivateMessage(playerName, 1);
-            }
-        }
+        player.getServerPacketBuilder().loadPrivateMessage(name, ClusterNode.getSingleton().getNode(name));
     }
 
     /**
@@ -181,7 +137,7 @@ public class PrivateMessage {
     }
 
     /**
-     * Sends a private message to another player.
+     * Sends a private message to another player, on any node of the cluster.
      * 
      * @param from
      *            the player sending the message.
@@ -193,13 +149,7 @@ public class PrivateMessage {
      *            the size of the message.
      */
     public void sendPrivateMessage(Player from, long to, byte[] message, int messageSize) {
-        for (Player p : player.getPlayers()) {
-            if (p != null) {
-                if (Misc.nameToLong(p.getUsername()) == to) {
-                    p.getServerPacketBuilder().sendPrivateMessage(Misc.nameToLong(from.getUsername()), from.getStaffRights(), message, messageSize);
-                }
-            }
-        }
+        ClusterNode.getSingleton().sendPrivateMessage(from, to, message, messageSize);
     }
 
     /**
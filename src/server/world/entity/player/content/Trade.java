@@ -6,6 +6,7 @@ import server.world.entity.player.Player;
 import server.world.entity.player.container.InventoryContainer;
 import server.world.item.Container;
 import server.world.item.Item;
+import server.world.item.ItemDefinition;
 import server.world.item.Container.Type;
 
 /**
@@ -149,7 +150,7 @@ public class Trade {
                 tradeItems = tradeItems + "\\n" + item.getDefinition().getItemName();
             }
 
-            if (item.getDefinition().isStackable()) {
+            if (ItemDefinition.isStackable(item.getId())) {
                 tradeItems = tradeItems + " x " + tradeAmount;
             }
 
@@ -182,7 +183,7 @@ public class Trade {
                 tradeItems = tradeItems + "\\n" + item.getDefinition().getItemName();
             }
 
-            if (item.getDefinition().isStackable()) {
+            if (ItemDefinition.isStackable(item.getId())) {
                 tradeItems = tradeItems + " x " + tradeAmount;
             }
 
@@ -272,9 +273,9 @@ public class Trade {
             }
         }
 
-        if (item.getAmount() > player.getInventory().getItemContainer().getCount(item.getId()) && !item.getDefinition().isStackable()) {
+        if (item.getAmount() > player.getInventory().getItemContainer().getCount(item.getId()) && !ItemDefinition.isStackable(item.getId())) {
             item.setAmount(player.getInventory().getItemContainer().getCount(item.getId()));
-        } else if (item.getAmount() > player.getInventory().getItemContainer().getItem(slot).getAmount() && item.getDefinition().isStackable()) {
+        } else if (item.getAmount() > player.getInventory().getItemContainer().getItem(slot).getAmount() && ItemDefinition.isStackable(item.getId())) {
             item.setAmount(player.getInventory().getItemContainer().getItem(slot).getAmount());
         }
 
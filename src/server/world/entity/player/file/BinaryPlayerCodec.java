@@ -0,0 +1,241 @@
+package server.world.entity.player.file;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import server.world.entity.player.skill.Trainable;
+import server.world.item.Item;
+
+/**
+ * Reads and writes character files in a compact binary format. Every file
+ * starts with a magic number and the version of the format it was written
+ * with, so the format can be changed later while old files can still be read.
+ * <br>
+ * <br>
+ *
+ * Containers are written as their size followed by the id of the item in every
+ * slot plus one (so an empty slot is zero) and the amount of every item that
+ * isn't empty. Skills are written as a level and experience pair, and friends
+ * and ignores as plain longs.
+ *
+ * @author lare96
+ */
+public class BinaryPlayerCodec implements PlayerCodec {
+
+    /**
+     * The number every binary character file starts with.
+     */
+    public static final int MAGIC = 0x41535046;
+
+    /**
+     * The version of the format files are written with.
+     */
+    public static final int VERSION = 1;
+
+    @Override
+    public void encode(PlayerSnapshot snapshot, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+
+        data.writeInt(MAGIC);
+        data.writeShort(VERSION);
+        data.writeUTF(snapshot.getUsername().trim());
+        data.writeUTF(snapshot.getPassword().trim());
+        data.writeShort(snapshot.getX());
+        data.writeShort(snapshot.getY());
+        data.writeByte(snapshot.getZ());
+        data.writeByte(snapshot.getStaffRights());
+        data.writeByte(snapshot.getGender());
+        writeShorts(data, snapshot.getAppearance());
+        writeShorts(data, snapshot.getColors());
+        data.writeBoolean(snapshot.isRunToggled());
+        data.writeBoolean(snapshot.isNewPlayer());
+        writeItems(data, snapshot.getInventory());
+        writeItems(data, snapshot.getBank());
+        writeItems(data, snapshot.getEquipment());
+
+        data.writeByte(snapshot.getSkills().length);
+        for (Trainable skill : snapshot.getSkills()) {
+            data.writeByte(skill.getLevel());
+            data.writeInt(skill.getExperience());
+        }
+
+        writeLongs(data, snapshot.getFriends());
+        writeLongs(data, snapshot.getIgnores());
+        data.writeByte(snapshot.getRunEnergy());
+        data.writeUTF(snapshot.getSpellbook());
+        data.writeBoolean(snapshot.isBanned());
+        data.writeBoolean(snapshot.isAutoRetaliate());
+        data.flush();
+    }
+
+    @Override
+    public PlayerSnapshot decode(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a binary character file");
+        }
+
+        int version = data.readUnsignedShort();
+
+        if (version != VERSION) {
+            throw new IOException("Unsupported character file version " + version);
+        }
+
+        String username = data.readUTF();
+        String password = data.readUTF();
+        int x = data.readUnsignedShort();
+        int y = data.readUnsignedShort();
+        int z = data.readUnsignedByte();
+        int staffRights = data.readUnsignedByte();
+        int gender = data.readUnsignedByte();
+        int[] appearance = readShorts(data);
+        int[] colors = readShorts(data);
+        boolean runToggled = data.readBoolean();
+        boolean newPlayer = data.readBoolean();
+        Item[] inventory = readItems(data);
+        Item[] bank = readItems(data);
+        Item[] equipment = readItems(data);
+
+        Trainable[] skills = new Trainable[data.readUnsignedByte()];
+        for (int i = 0; i < skills.length; i++) {
+            skills[i] = new Trainable();
+            skills[i].setLevel(data.readUnsignedByte());
+            skills[i].setExperience(data.readInt());
+        }
+
+        Long[] friends = readLongs(data);
+        Long[] ignores = readLongs(data);
+        int runEnergy = data.readUnsignedByte();
+        String spellbook = data.readUTF();
+        boolean banned = data.readBoolean();
+        boolean autoRetaliate = data.readBoolean();
+
+        return new PlayerSnapshot(username, password, x, y, z, staffRights, gender, appearance, colors, runToggled, newPlayer, inventory, bank, equipment, skills, friends, ignores, runEnergy, spellbook, banned, autoRetaliate);
+    }
+
+    @Override
+    public String getExtension() {
+        return "dat";
+    }
+
+    /**
+     * Writes the items in a container.
+     *
+     * @param data
+     *            the stream to write to.
+     * @param items
+     *            the items to write.
+     * @throws IOException
+     *             if the items can't be written.
+     */
+    private static void writeItems(DataOutputStream data, Item[] items) throws IOException {
+        data.writeShort(items.length);
+
+        for (Item item : items) {
+            if (item == null) {
+                data.writeShort(0);
+            } else {
+                data.writeShort(item.getId() + 1);
+                data.writeInt(item.getAmount());
+            }
+        }
+    }
+
+    /**
+     * Reads the items in a container.
+     *
+     * @param data
+     *            the stream to read from.
+     * @return the items read.
+     * @throws IOException
+     *             if the items can't be read.
+     */
+    private static Item[] readItems(DataInputStream data) throws IOException {
+        Item[] items = new Item[data.readUnsignedShort()];
+
+        for (int i = 0; i < items.length; i++) {
+            int id = data.readUnsignedShort();
+
+            if (id != 0) {
+                items[i] = new Item(id - 1, data.readInt());
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Writes an array of values as shorts.
+     *
+     * @param data
+     *            the stream to write to.
+     * @param values
+     *            the values to write.
+     * @throws IOException
+     *             if the values can't be written.
+     */
+    private static void writeShorts(DataOutputStream data, int[] values) throws IOException {
+        data.writeByte(values.length);
+
+        for (int value : values) {
+            data.writeShort(value);
+        }
+    }
+
+    /**
+     * Reads an array of values written as shorts.
+     *
+     * @param data
+     *            the stream to read from.
+     * @return the values read.
+     * @throws IOException
+     *             if the values can't be read.
+     */
+    private static int[] readShorts(DataInputStream data) throws IOException {
+        int[] values = new int[data.readUnsignedByte()];
+
+        for (int i = 0; i < values.length; i++) {
+            values[i] = data.readShort();
+        }
+        return values;
+    }
+
+    /**
+     * Writes an array of longs.
+     *
+     * @param data
+     *            the stream to write to.
+     * @param values
+     *            the values to write.
+     * @throws IOException
+     *             if the values can't be written.
+     */
+    private static void writeLongs(DataOutputStream data, Long[] values) throws IOException {
+        data.writeShort(values.length);
+
+        for (Long value : values) {
+            data.writeLong(value);
+        }
+    }
+
+    /**
+     * Reads an array of longs.
+     *
+     * @param data
+     *            the stream to read from.
+     * @return the values read.
+     * @throws IOException
+     *             if the values can't be read.
+     */
+    private static Long[] readLongs(DataInputStream data) throws IOException {
+        Long[] values = new Long[data.readUnsignedShort()];
+
+        for (int i = 0; i < values.length; i++) {
+            values[i] = data.readLong();
+        }
+        return values;
+    }
+}
@@ -0,0 +1,174 @@
+package server.world.entity.player.file;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Stores every character file as a separate file in a directory, named after
+ * the player. Files in an older format can be read as well, and are replaced
+ * by a file in the current format the next time the player is saved.
+ *
+ * @author lare96
+ */
+public class DirectoryPlayerRepository implements PlayerRepository {
+
+    /**
+     * The directory character files are kept in.
+     */
+    private final File directory;
+
+    /**
+     * The format character files are written in.
+     */
+    private final PlayerCodec codec;
+
+    /**
+     * The format character files used to be written in, or <code>null</code>
+     * if there is none.
+     */
+    private final PlayerCodec legacy;
+
+    /**
+     * Create a new {@link DirectoryPlayerRepository}.
+     *
+     * @param directory
+     *            the directory character files are kept in.
+     * @param codec
+     *            the format character files are written in.
+     * @param legacy
+     *            the format character files used to be written in, or
+     *            <code>null</code> if there is none.
+     */
+    public DirectoryPlayerRepository(File directory, PlayerCodec codec, PlayerCodec legacy) {
+        this.directory = directory;
+        this.codec = codec;
+        this.legacy = legacy;
+    }
+
+    @Override
+    public PlayerSnapshot load(String username) throws IOException {
+        File file = file(username, codec);
+
+        if (file.exists()) {
+            return read(codec, file);
+        }
+
+        if (legacy != null && (file = file(username, legacy)).exists()) {
+            return read(legacy, file);
+        }
+        return null;
+    }
+
+    @Override
+    public void save(PlayerSnapshot snapshot) throws IOException {
+        write(snapshot, codec, file(snapshot.getUsername(), codec));
+    }
+
+    @Override
+    public boolean exists(String username) {
+        return file(username, codec).exists() || (legacy != null && file(username, legacy).exists());
+    }
+
+    @Override
+    public int size() {
+        String[] files = directory.list();
+        int amount = 0;
+
+        if (files == null) {
+            return 0;
+        }
+
+        for (String file : files) {
+            if (file.endsWith("." + codec.getExtension())) {
+                amount++;
+            } else if (legacy != null && file.endsWith("." + legacy.getExtension()) && !new File(directory, file.substring(0, file.length() - legacy.getExtension().length()) + codec.getExtension()).exists()) {
+                amount++;
+            }
+        }
+        return amount;
+    }
+
+    @Override
+    public void close() throws IOException {
+
+    }
+
+    /**
+     * Gets the character file of a player in a certain format.
+     *
+     * @param username
+     *            the username of the player.
+     * @param format
+     *            the format of the file.
+     * @return the file.
+     */
+    private File file(String username, PlayerCodec format) {
+        return new File(directory, username + "." + format.getExtension());
+    }
+
+    /**
+     * Reads the state of a player from a file.
+     *
+     * @param format
+     *            the format the file is written in.
+     * @param file
+     *            the file to read.
+     * @return the state of the player.
+     * @throws IOException
+     *             if the file can't be read.
+     */
+    public static PlayerSnapshot read(PlayerCodec format, File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+
+        try {
+            return format.decode(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the state of a player to a file. The state is written to a
+     * temporary file first, which is then moved over the old file so the old
+     * file is never left half written.
+     *
+     * @param snapshot
+     *            the state of the player.
+     * @param format
+     *            the format to write the file in.
+     * @param file
+     *            the file to write.
+     * @throws IOException
+     *             if the file can't be written.
+     */
+    public static void write(PlayerSnapshot snapshot, PlayerCodec format, File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(temp));
+
+        try {
+            format.encode(snapshot, out);
+        } finally {
+            out.close();
+        }
+
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "directory " + directory.getPath();
+    }
+}
@@ -0,0 +1,80 @@
+package server.world.entity.player.file;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import server.world.entity.player.skill.Trainable;
+import server.world.item.Item;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+/**
+ * Reads and writes character files as pretty printed JSON. This was the only
+ * format before the {@link BinaryPlayerCodec}, and is still used to read old
+ * character files and to export files so they can be read by hand.
+ *
+ * @author lare96
+ */
+public class JsonPlayerCodec implements PlayerCodec {
+
+    @Override
+    public void encode(PlayerSnapshot snapshot, OutputStream out) throws IOException {
+        final Gson builder = new GsonBuilder().setPrettyPrinting().create();
+        final JsonObject object = new JsonObject();
+
+        object.addProperty("username", snapshot.getUsername().trim());
+        object.addProperty("password", snapshot.getPassword().trim());
+        object.addProperty("x", new Integer(snapshot.getX()));
+        object.addProperty("y", new Integer(snapshot.getY()));
+        object.addProperty("z", new Integer(snapshot.getZ()));
+        object.addProperty("staff-rights", new Integer(snapshot.getStaffRights()));
+        object.addProperty("gender", new Integer(snapshot.getGender()));
+        object.add("appearance", builder.toJsonTree(snapshot.getAppearance()));
+        object.add("colors", builder.toJsonTree(snapshot.getColors()));
+        object.addProperty("run-toggled", new Boolean(snapshot.isRunToggled()));
+        object.addProperty("new-player", new Boolean(snapshot.isNewPlayer()));
+        object.add("inventory", builder.toJsonTree(snapshot.getInventory()));
+        object.add("bank", builder.toJsonTree(snapshot.getBank()));
+        object.add("equipment", builder.toJsonTree(snapshot.getEquipment()));
+        object.add("skills", builder.toJsonTree(snapshot.getSkills()));
+        object.add("friends", builder.toJsonTree(snapshot.getFriends()));
+        object.add("ignores", builder.toJsonTree(snapshot.getIgnores()));
+        object.addProperty("run-energy", new Integer(snapshot.getRunEnergy()));
+        object.addProperty("spell-book", snapshot.getSpellbook());
+        object.addProperty("is-banned", new Boolean(snapshot.isBanned()));
+        object.addProperty("auto-retaliate", new Boolean(snapshot.isAutoRetaliate()));
+
+        Writer writer = new OutputStreamWriter(out);
+        writer.write(builder.toJson(object));
+        writer.flush();
+    }
+
+    @Override
+    public PlayerSnapshot decode(InputStream in) throws IOException {
+        try {
+            final Gson builder = new GsonBuilder().create();
+            final JsonObject reader = (JsonObject) new JsonParser().parse(new InputStreamReader(in));
+
+            return new PlayerSnapshot(reader.get("username").getAsString(), reader.get("password").getAsString(), reader.get("x").getAsInt(), reader.get("y").getAsInt(), reader.get("z").getAsInt(), reader.get("staff-rights").getAsInt(), reader.get("gender").getAsInt(), builder.fromJson(reader.get("appearance").getAsJsonArray(), int[].class), builder.fromJson(reader.get("colors").getAsJsonArray(), int[].class), reader.get("run-toggled").getAsBoolean(), reader.get("new-player").getAsBoolean(), builder.fromJson(reader.get("inventory").getAsJsonArray(), Item[].class), builder.fromJson(reader.get("bank").getAsJsonArray(), Item[].class), builder.fromJson(reader.get("equipment").getAsJsonArray(), Item[].class), builder.fromJson(reader.get("skills").getAsJsonArray(), Trainable[].class), builder.fromJson(reader.get("friends").getAsJsonArray(), Long[].class), builder.fromJson(reader.get("ignores").getAsJsonArray(), Long[].class), reader.get("run-energy").getAsInt(), reader.get("spell-book").getAsString(), reader.get("is-banned").getAsBoolean(), reader.get("auto-retaliate").getAsBoolean());
+        } catch (JsonParseException e) {
+            throw new IOException("Malformed character file", e);
+        } catch (ClassCastException e) {
+            throw new IOException("Malformed character file", e);
+        } catch (NullPointerException e) {
+            throw new IOException("Character file is missing a field", e);
+        }
+    }
+
+    @Override
+    public String getExtension() {
+        return "json";
+    }
+}
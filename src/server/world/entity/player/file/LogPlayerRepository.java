@@ -0,0 +1,522 @@
+package server.world.entity.player.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import server.Server;
+import server.util.Misc;
+
+/**
+ * Stores every character file in a single memory mapped file. Saves are
+ * appended to the end of the file as records, and an index of where the
+ * newest record of every player is kept in memory, so loading a player never
+ * touches the directory and saving a player never rewrites anything. <br>
+ * <br>
+ *
+ * Every record is made up of its length, a checksum, the username of the
+ * player as a long (see {@link Misc#nameToLong(String)}, so names that are
+ * the same there are the same account just like on the friends list) and the
+ * character file itself. When the store is opened the records are replayed
+ * from the start to build the index, and the replay stops at the first
+ * record that was only partly written, which happens if the server crashes
+ * during a save. Everything from that record onwards is thrown away. <br>
+ * <br>
+ *
+ * Records that have been replaced by a newer record are dead space. Once
+ * there is more dead space than live records the store is compacted by
+ * copying the live records to a new file that is moved over the old one.
+ *
+ * @author lare96
+ */
+public class LogPlayerRepository implements PlayerRepository {
+
+    /**
+     * The number every store starts with.
+     */
+    private static final int MAGIC = 0x4153504C;
+
+    /**
+     * The version of the store format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The size of the header at the start of the store.
+     */
+    private static final int FILE_HEADER = 8;
+
+    /**
+     * The size of the header in front of every record.
+     */
+    private static final int RECORD_HEADER = 16;
+
+    /**
+     * The smallest size the store is mapped with.
+     */
+    private static final int INITIAL_CAPACITY = 1 << 20;
+
+    /**
+     * The size the store has to reach before it is ever compacted.
+     */
+    private static final int COMPACT_THRESHOLD = 4 << 20;
+
+    /**
+     * The store.
+     */
+    private final File file;
+
+    /**
+     * The format character files are written in.
+     */
+    private final PlayerCodec codec;
+
+    /**
+     * The repository to look in for players that aren't in the store yet, or
+     * <code>null</code> if there is none.
+     */
+    private final PlayerRepository fallback;
+
+    /**
+     * The newest record of every player, by username.
+     */
+    private Map<Long, Record> index = new HashMap<Long, Record>();
+
+    /**
+     * The channel of the store.
+     */
+    private FileChannel channel;
+
+    /**
+     * The store mapped into memory.
+     */
+    private MappedByteBuffer buffer;
+
+    /**
+     * The position the next record is written at.
+     */
+    private int position;
+
+    /**
+     * The amount of bytes taken up by the newest record of every player.
+     */
+    private long live;
+
+    /**
+     * Opens a store, creating it if it doesn't exist yet.
+     *
+     * @param file
+     *            the store.
+     * @param codec
+     *            the format character files are written in.
+     * @param fallback
+     *            the repository to look in for players that aren't in the
+     *            store yet, or <code>null</code> if there is none. Players
+     *            loaded from here are moved into the store the next time they
+     *            are saved.
+     * @throws IOException
+     *             if the store can't be opened.
+     */
+    public LogPlayerRepository(File file, PlayerCodec codec, PlayerRepository fallback) throws IOException {
+        this.file = file;
+        this.codec = codec;
+        this.fallback = fallback;
+
+        /** Throw away what a compaction that never finished left behind. */
+        Files.deleteIfExists(compactFile().toPath());
+        open();
+    }
+
+    @Override
+    public PlayerSnapshot load(String username) throws IOException {
+        byte[] bytes = null;
+
+        synchronized (this) {
+            Record record = index.get(Misc.nameToLong(username));
+
+            if (record != null) {
+                ByteBuffer read = buffer.duplicate();
+                read.position(record.getOffset() + RECORD_HEADER);
+                bytes = new byte[record.getLength()];
+                read.get(bytes);
+            }
+        }
+
+        if (bytes == null) {
+            return fallback == null ? null : fallback.load(username);
+        }
+        return codec.decode(new ByteArrayInputStream(bytes));
+    }
+
+    @Override
+    public void save(PlayerSnapshot snapshot) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        codec.encode(snapshot, out);
+        byte[] bytes = out.toByteArray();
+        long name = Misc.nameToLong(snapshot.getUsername());
+        int checksum = checksum(name, bytes, 0, bytes.length);
+
+        synchronized (this) {
+            int size = RECORD_HEADER + bytes.length;
+            ensureCapacity((long) position + size);
+
+            ByteBuffer write = buffer.duplicate();
+            write.position(position);
+            write.putInt(bytes.length);
+            write.putInt(checksum);
+            write.putLong(name);
+            write.put(bytes);
+            buffer.force();
+
+            Record old = index.put(name, new Record(position, bytes.length));
+
+            if (old != null) {
+                live -= RECORD_HEADER + old.getLength();
+            }
+
+            live += size;
+            position += size;
+
+            if (position > COMPACT_THRESHOLD && position - FILE_HEADER - live > live) {
+
+                /** The record has been written, the store just stays as big. */
+                try {
+                    compact();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    Server.print("Unable to compact " + this + ", it will be tried again on the next save.");
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean exists(String username) {
+        return index.containsKey(Misc.nameToLong(username)) || (fallback != null && fallback.exists(username));
+    }
+
+    @Override
+    public synchronized int size() {
+        return index.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    /**
+     * Copies the newest record of every player to a new store, which then
+     * replaces this one.
+     *
+     * @throws IOException
+     *             if the store can't be compacted.
+     */
+    public synchronized void compact() throws IOException {
+        List<Map.Entry<Long, Record>> records = new ArrayList<Map.Entry<Long, Record>>(index.entrySet());
+        Map<Long, Record> compacted = new HashMap<Long, Record>(index.size() * 2);
+        File temp = compactFile();
+        int before = position;
+        int offset = FILE_HEADER;
+
+        /** Keep the records in the order they were written in. */
+        Collections.sort(records, new Comparator<Map.Entry<Long, Record>>() {
+            @Override
+            public int compare(Map.Entry<Long, Record> o1, Map.Entry<Long, Record> o2) {
+                return Integer.compare(o1.getValue().getOffset(), o2.getValue().getOffset());
+            }
+        });
+
+        /**
+         * The new store is written and mapped on its own channel, and this
+         * store is only replaced once that has worked. If anything fails this
+         * store is left as it was and carries on being used.
+         */
+        FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer mapped;
+
+        try {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            writeFully(out, header);
+
+            for (Map.Entry<Long, Record> entry : records) {
+                Record record = entry.getValue();
+                ByteBuffer read = buffer.duplicate();
+                read.position(record.getOffset());
+                read.limit(record.getOffset() + RECORD_HEADER + record.getLength());
+                writeFully(out, read);
+
+                compacted.put(entry.getKey(), new Record(offset, record.getLength()));
+                offset += RECORD_HEADER + record.getLength();
+            }
+
+            out.force(true);
+            mapped = out.map(MapMode.READ_WRITE, 0, Math.max(INITIAL_CAPACITY, (long) offset * 2));
+
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            out.close();
+            Files.deleteIfExists(temp.toPath());
+            throw e;
+        }
+
+        FileChannel old = channel;
+        channel = out;
+        buffer = mapped;
+        index = compacted;
+        position = offset;
+
+        try {
+            old.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        Server.print("Compacted " + this + " from " + before + " to " + offset + " bytes.");
+    }
+
+    /**
+     * Opens the store and replays its records to build the index.
+     *
+     * @throws IOException
+     *             if the store can't be opened.
+     */
+    private void open() throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        int end = FILE_HEADER;
+
+        if (size >= FILE_HEADER) {
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+            header.limit(FILE_HEADER);
+
+            if (!readFully(header, 0) || header.getInt(0) != MAGIC) {
+                channel.close();
+                throw new IOException(file + " is not a character file store");
+            }
+
+            if (header.getInt(4) != VERSION) {
+                channel.close();
+                throw new IOException("Unsupported character file store version " + header.getInt(4));
+            }
+
+            while (true) {
+                header.clear();
+
+                if (!readFully(header, end)) {
+                    break;
+                }
+
+                int length = header.getInt(0);
+                int checksum = header.getInt(4);
+                long name = header.getLong(8);
+
+                if (length <= 0 || end + RECORD_HEADER + (long) length > size) {
+                    if (length != 0) {
+                        Server.print("Discarding a partly written record at " + end + " in " + this);
+                    }
+                    break;
+                }
+
+                ByteBuffer record = ByteBuffer.allocate(length);
+
+                if (!readFully(record, end + RECORD_HEADER) || checksum(name, record.array(), 0, length) != checksum) {
+                    Server.print("Discarding a corrupt record at " + end + " in " + this);
+                    break;
+                }
+
+                Record old = index.put(name, new Record(end, length));
+
+                if (old != null) {
+                    live -= RECORD_HEADER + old.getLength();
+                }
+
+                live += RECORD_HEADER + length;
+                end += RECORD_HEADER + length;
+            }
+
+            /**
+             * Cut off anything after the last complete record, so it can't be
+             * mistaken for a record later on.
+             */
+            channel.truncate(end);
+        } else {
+            channel.truncate(0);
+        }
+
+        buffer = channel.map(MapMode.READ_WRITE, 0, Math.max(INITIAL_CAPACITY, (long) end * 2));
+        position = end;
+
+        if (size < FILE_HEADER) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.force();
+        }
+    }
+
+    /**
+     * Maps more of the store if there isn't enough room for a record.
+     *
+     * @param required
+     *            the size the store needs to be.
+     * @throws IOException
+     *             if the store can't be made larger.
+     */
+    private void ensureCapacity(long required) throws IOException {
+        if (required <= buffer.capacity()) {
+            return;
+        }
+
+        if (required > Integer.MAX_VALUE) {
+            throw new IOException(this + " is full");
+        }
+
+        long capacity = Math.min(Integer.MAX_VALUE, Math.max(required, (long) buffer.capacity() * 2));
+        buffer = channel.map(MapMode.READ_WRITE, 0, capacity);
+    }
+
+    /**
+     * Reads from the store until a buffer is full.
+     *
+     * @param buf
+     *            the buffer to read into.
+     * @param offset
+     *            the position in the store to read from.
+     * @return false if the end of the store was reached first.
+     * @throws IOException
+     *             if the store can't be read.
+     */
+    private boolean readFully(ByteBuffer buf, long offset) throws IOException {
+        while (buf.hasRemaining()) {
+            int read = channel.read(buf, offset);
+
+            if (read < 0) {
+                return false;
+            }
+
+            offset += read;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the whole contents of a buffer to a channel.
+     *
+     * @param out
+     *            the channel to write to.
+     * @param buf
+     *            the buffer to write.
+     * @throws IOException
+     *             if the channel can't be written to.
+     */
+    private static void writeFully(FileChannel out, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+    }
+
+    /**
+     * Calculates the checksum of a record.
+     *
+     * @param name
+     *            the username of the player as a long.
+     * @param bytes
+     *            the character file.
+     * @param offset
+     *            the offset of the character file in the array.
+     * @param length
+     *            the length of the character file.
+     * @return the checksum.
+     */
+    private static int checksum(long name, byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+
+        for (int i = 56; i >= 0; i -= 8) {
+            crc.update((int) (name >>> i));
+        }
+
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Gets the file a compacted store is written to before it replaces this
+     * one.
+     *
+     * @return the file.
+     */
+    private File compactFile() {
+        return new File(file.getPath() + ".compact");
+    }
+
+    @Override
+    public String toString() {
+        return "store " + file.getPath();
+    }
+
+    /**
+     * Where the newest record of a player is in the store.
+     *
+     * @author lare96
+     */
+    private static final class Record {
+
+        /**
+         * The position of the record.
+         */
+        private final int offset;
+
+        /**
+         * The length of the character file in the record.
+         */
+        private final int length;
+
+        /**
+         * Create a new {@link Record}.
+         *
+         * @param offset
+         *            the position of the record.
+         * @param length
+         *            the length of the character file in the record.
+         */
+        public Record(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /**
+         * @return the offset.
+         */
+        public int getOffset() {
+            return offset;
+        }
+
+        /**
+         * @return the length.
+         */
+        public int getLength() {
+            return length;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package server.world.entity.player.file;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A format that character files can be written in.
+ *
+ * @author lare96
+ */
+public interface PlayerCodec {
+
+    /**
+     * Writes the state of a player.
+     *
+     * @param snapshot
+     *            the state of the player.
+     * @param out
+     *            the stream to write to.
+     * @throws IOException
+     *             if the state can't be written.
+     */
+    public void encode(PlayerSnapshot snapshot, OutputStream out) throws IOException;
+
+    /**
+     * Reads the state of a player.
+     *
+     * @param in
+     *            the stream to read from.
+     * @return the state of the player.
+     * @throws IOException
+     *             if the state can't be read.
+     */
+    public PlayerSnapshot decode(InputStream in) throws IOException;
+
+    /**
+     * Gets the extension of files written in this format.
+     *
+     * @return the extension, without the dot.
+     */
+    public String getExtension();
+}
@@ -0,0 +1,134 @@
+package server.world.entity.player.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import server.world.entity.player.skill.Trainable;
+import server.world.item.Item;
+
+/**
+ * A tool that compares how long it takes to write and read a character file
+ * in every format, and how many bytes a character file takes up. A well
+ * played character is used, with a full inventory, bank, equipment and
+ * friends list. <br>
+ * <br>
+ *
+ * Usage: <code>PlayerFileBenchmark [iterations]</code>
+ *
+ * @author lare96
+ */
+public final class PlayerFileBenchmark {
+
+    /**
+     * The amount of times every format is written and read before timing.
+     */
+    private static final int WARMUP = 5000;
+
+    /**
+     * This class cannot be instantiated.
+     */
+    private PlayerFileBenchmark() {
+
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args
+     *            optionally the amount of times every format is written and
+     *            read.
+     * @throws IOException
+     *             if a file can't be written or read.
+     */
+    public static void main(String[] args) throws IOException {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        PlayerSnapshot snapshot = createSnapshot();
+
+        for (PlayerCodec codec : new PlayerCodec[] { new JsonPlayerCodec(), new BinaryPlayerCodec() }) {
+            byte[] bytes = encode(codec, snapshot);
+
+            /** Make sure nothing is lost on the way. */
+            if (!codec.decode(new ByteArrayInputStream(bytes)).equals(snapshot)) {
+                throw new IllegalStateException(codec.getExtension() + " did not read back what it wrote!");
+            }
+
+            for (int i = 0; i < WARMUP; i++) {
+                codec.decode(new ByteArrayInputStream(encode(codec, snapshot)));
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                encode(codec, snapshot);
+            }
+            long write = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                codec.decode(new ByteArrayInputStream(bytes));
+            }
+            long read = System.nanoTime() - start;
+
+            System.out.println(codec.getExtension() + ": " + bytes.length + " bytes, write " + (write / iterations / 1000.0) + " us, read " + (read / iterations / 1000.0) + " us");
+        }
+    }
+
+    /**
+     * Writes a character file to an array of bytes.
+     *
+     * @param codec
+     *            the format to write in.
+     * @param snapshot
+     *            the character to write.
+     * @return the bytes written.
+     * @throws IOException
+     *             if the file can't be written.
+     */
+    private static byte[] encode(PlayerCodec codec, PlayerSnapshot snapshot) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        codec.encode(snapshot, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Creates the character used in the benchmark.
+     *
+     * @return the character.
+     */
+    private static PlayerSnapshot createSnapshot() {
+        Item[] inventory = new Item[28];
+        Item[] bank = new Item[250];
+        Item[] equipment = new Item[14];
+        Trainable[] skills = new Trainable[21];
+        Long[] friends = new Long[200];
+        Long[] ignores = new Long[100];
+
+        for (int i = 0; i < inventory.length; i++) {
+            inventory[i] = new Item(995 + i, i + 1);
+        }
+
+        for (int i = 0; i < bank.length; i++) {
+            bank[i] = new Item(1 + (i * 7), 1000 + i * 31);
+        }
+
+        for (int i = 0; i < equipment.length; i += 2) {
+            equipment[i] = new Item(1050 + i, 1);
+        }
+
+        for (int i = 0; i < skills.length; i++) {
+            skills[i] = new Trainable();
+            skills[i].setLevel(90 + (i % 9));
+            skills[i].setExperience(5346332 + i * 1000);
+        }
+
+        for (int i = 0; i < friends.length; i++) {
+            friends[i] = 37231846L * (i + 1);
+        }
+
+        for (int i = 0; i < ignores.length; i++) {
+            ignores[i] = 91245343L * (i + 1);
+        }
+
+        return new PlayerSnapshot("benchmark", "password", 3222, 3222, 0, 0, 0, new int[] { 18, 26, 36, 0, 33, 42, 10 }, new int[] { 7, 8, 9, 5, 0 }, true, false, inventory, bank, equipment, skills, friends, ignores, 100, "NORMAL", false, true);
+    }
+}
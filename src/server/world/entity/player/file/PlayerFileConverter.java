@@ -0,0 +1,154 @@
+package server.world.entity.player.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import server.world.entity.player.PlayerFileEvent;
+
+/**
+ * A tool that converts every character file in a directory from one format to
+ * another, or copies them all into a single store. The files being converted
+ * are left where they are, so they can be used as a backup. <br>
+ * <br>
+ *
+ * Usage: <code>PlayerFileConverter json-to-binary|binary-to-json [directory]</code>
+ * <br>
+ * or: <code>PlayerFileConverter directory-to-store [directory] [store]</code>
+ *
+ * @author lare96
+ */
+public final class PlayerFileConverter {
+
+    /**
+     * This class cannot be instantiated.
+     */
+    private PlayerFileConverter() {
+
+    }
+
+    /**
+     * Runs the converter.
+     *
+     * @param args
+     *            the direction of the conversion, and optionally the
+     *            directory to convert.
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: PlayerFileConverter json-to-binary|binary-to-json|directory-to-store [directory] [store]");
+            return;
+        }
+
+        if (args[0].equals("directory-to-store")) {
+            importDirectory(new File(args.length > 1 ? args[1] : PlayerFileEvent.DIRECTORY), new File(args.length > 2 ? args[2] : PlayerFileEvent.STORE));
+            return;
+        }
+
+        PlayerCodec from;
+        PlayerCodec to;
+
+        if (args[0].equals("json-to-binary")) {
+            from = new JsonPlayerCodec();
+            to = new BinaryPlayerCodec();
+        } else if (args[0].equals("binary-to-json")) {
+            from = new BinaryPlayerCodec();
+            to = new JsonPlayerCodec();
+        } else {
+            System.out.println("Unknown conversion: " + args[0]);
+            return;
+        }
+
+        File directory = new File(args.length > 1 ? args[1] : PlayerFileEvent.DIRECTORY);
+        File[] files = directory.listFiles();
+
+        if (files == null) {
+            System.out.println("Not a directory: " + directory);
+            return;
+        }
+
+        int converted = 0;
+        int failed = 0;
+        long bytesFrom = 0;
+        long bytesTo = 0;
+
+        for (File file : files) {
+            if (!file.getName().endsWith("." + from.getExtension())) {
+                continue;
+            }
+
+            try {
+                PlayerSnapshot snapshot = DirectoryPlayerRepository.read(from, file);
+                String name = file.getName().substring(0, file.getName().length() - from.getExtension().length());
+                File output = new File(directory, name + to.getExtension());
+                DirectoryPlayerRepository.write(snapshot, to, output);
+
+                bytesFrom += file.length();
+                bytesTo += output.length();
+                converted++;
+            } catch (Exception e) {
+                e.printStackTrace();
+                System.out.println("Could not convert " + file.getName());
+                failed++;
+            }
+        }
+
+        System.out.println("Converted " + converted + " character files, " + failed + " failed.");
+
+        if (converted > 0) {
+            System.out.println("Size: " + bytesFrom + " bytes -> " + bytesTo + " bytes (" + (bytesFrom / converted) + " -> " + (bytesTo / converted) + " per file).");
+        }
+    }
+
+    /**
+     * Copies every character file in a directory into a store. Players that
+     * have both a binary and a JSON file are copied from the binary file.
+     *
+     * @param directory
+     *            the directory to copy from.
+     * @param store
+     *            the store to copy into.
+     */
+    private static void importDirectory(File directory, File store) {
+        PlayerCodec codec = new BinaryPlayerCodec();
+        PlayerCodec legacy = new JsonPlayerCodec();
+        PlayerRepository from = new DirectoryPlayerRepository(directory, codec, legacy);
+        String[] files = directory.list();
+        Set<String> usernames = new HashSet<String>();
+        int failed = 0;
+
+        if (files == null) {
+            System.out.println("Not a directory: " + directory);
+            return;
+        }
+
+        for (String file : files) {
+            if (file.endsWith("." + codec.getExtension()) || file.endsWith("." + legacy.getExtension())) {
+                usernames.add(file.substring(0, file.lastIndexOf('.')));
+            }
+        }
+
+        try {
+            PlayerRepository to = new LogPlayerRepository(store, codec, null);
+
+            try {
+                for (String username : usernames) {
+                    try {
+                        to.save(from.load(username));
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        System.out.println("Could not import " + username);
+                        failed++;
+                    }
+                }
+
+                System.out.println("Imported " + (usernames.size() - failed) + " character files, " + failed + " failed. The " + to + " now holds " + to.size() + " character files.");
+            } finally {
+                to.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package server.world.entity.player.file;
+
+import java.io.IOException;
+
+/**
+ * A place character files are stored in. Implementations must be safe to use
+ * from several threads at once, since character files are loaded by the login
+ * loader threads and saved by the saver thread.
+ *
+ * @author lare96
+ */
+public interface PlayerRepository {
+
+    /**
+     * Loads the state of a player.
+     *
+     * @param username
+     *            the username of the player.
+     * @return the state of the player, or <code>null</code> if there is no
+     *         character file for this player.
+     * @throws IOException
+     *             if the character file can't be read.
+     */
+    public PlayerSnapshot load(String username) throws IOException;
+
+    /**
+     * Saves the state of a player, replacing the old state if there is one.
+     *
+     * @param snapshot
+     *            the state of the player.
+     * @throws IOException
+     *             if the character file can't be written.
+     */
+    public void save(PlayerSnapshot snapshot) throws IOException;
+
+    /**
+     * Checks if there is a character file for a player.
+     *
+     * @param username
+     *            the username of the player.
+     * @return true if the player has a character file.
+     */
+    public boolean exists(String username);
+
+    /**
+     * Gets the amount of character files stored.
+     *
+     * @return the amount of character files.
+     */
+    public int size();
+
+    /**
+     * Writes everything still buffered and releases any resources held.
+     *
+     * @throws IOException
+     *             if the repository can't be closed.
+     */
+    public void close() throws IOException;
+}
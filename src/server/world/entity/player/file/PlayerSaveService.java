@@ -0,0 +1,244 @@
+package server.world.entity.player.file;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import server.Server;
+import server.util.Misc;
+import server.world.World;
+import server.world.entity.player.Player;
+import server.world.entity.player.PlayerFileEvent;
+
+/**
+ * Saves character files in the background. A snapshot of the player is taken
+ * on the game thread when a save is requested, and the file is written later
+ * by a single saver thread, so the game thread never waits on the disk. If a
+ * player is saved again before the last save was written, only the newest
+ * snapshot is written. <br>
+ * <br>
+ *
+ * Players are also saved automatically every few minutes, but only if
+ * anything saved in their file has changed since they were last saved. Before
+ * a character file is loaded, {@link #awaitSave(String)} should be used to
+ * wait for any save still waiting to be written for that player.
+ *
+ * @author lare96
+ */
+public final class PlayerSaveService {
+
+    /**
+     * The singleton instance, created up front because it is used from the
+     * login loader threads as well.
+     */
+    private static final PlayerSaveService singleton = new PlayerSaveService();
+
+    /**
+     * The amount of minutes between every automatic save.
+     */
+    public static final int AUTOSAVE_MINUTES = 5;
+
+    /**
+     * The longest amount of seconds to wait for the waiting saves to be
+     * written when shutting down.
+     */
+    private static final int SHUTDOWN_TIMEOUT = 30;
+
+    /**
+     * The thread files are written on. A single thread is used so saves of
+     * the same player are always written in order.
+     */
+    private final ExecutorService saver = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, "PlayerSaver");
+        }
+    });
+
+    /**
+     * The newest save waiting to be written for every player, by name (see
+     * {@link Misc#nameToLong(String)}), so every spelling of a name finds the
+     * same save. This is also used as the lock for the saves being written.
+     */
+    private final Map<Long, WritePlayerFileEvent> waiting = new HashMap<Long, WritePlayerFileEvent>();
+
+    /**
+     * The names of the players whose saves are being written.
+     */
+    private final Set<Long> writing = new HashSet<Long>();
+
+    /**
+     * The state every online player was last written with, by name. This is
+     * read from the threads of the worlds the players are in and updated by
+     * the saver thread once a save has been written.
+     */
+    private final Map<Long, PlayerSnapshot> saved = new ConcurrentHashMap<Long, PlayerSnapshot>();
+
+    /**
+     * Create a new {@link PlayerSaveService}.
+     */
+    private PlayerSaveService() {
+
+    }
+
+    /**
+     * Takes a snapshot of a player and queues it to be written. This should
+     * only be called from the game thread.
+     *
+     * @param player
+     *            the player to save.
+     */
+    public void save(Player player) {
+        queue(new WritePlayerFileEvent(player));
+    }
+
+    /**
+     * Saves every player in the current world whose saved state has changed
+     * since they were last saved. This should only be called from the thread
+     * of that world.
+     *
+     * @return the amount of players saved.
+     */
+    public int autosave() {
+        int amount = 0;
+
+        for (Player player : World.current().getPlayers()) {
+            if (player == null) {
+                continue;
+            }
+
+            WritePlayerFileEvent write = new WritePlayerFileEvent(player);
+
+            if (!write.getSnapshot().equals(saved.get(Misc.nameToLong(player.getUsername())))) {
+                queue(write);
+                amount++;
+            }
+        }
+
+        /** Forget the players that have logged out of every world. */
+        for (Iterator<Long> i = saved.keySet().iterator(); i.hasNext();) {
+            if (World.getOnlinePlayer(i.next()) == null) {
+                i.remove();
+            }
+        }
+        return amount;
+    }
+
+    /**
+     * Queues a save to be written, replacing the save waiting for the same
+     * player if there is one.
+     *
+     * @param write
+     *            the save to queue.
+     */
+    private void queue(WritePlayerFileEvent write) {
+        final long name = Misc.nameToLong(write.getSnapshot().getUsername());
+        boolean queued;
+
+        synchronized (waiting) {
+            queued = waiting.put(name, write) != null;
+        }
+
+        /** The save already waiting will write this snapshot instead. */
+        if (queued) {
+            return;
+        }
+
+        saver.execute(new Runnable() {
+            @Override
+            public void run() {
+                WritePlayerFileEvent newest;
+
+                synchronized (waiting) {
+                    newest = waiting.remove(name);
+
+                    if (newest == null) {
+                        return;
+                    }
+
+                    writing.add(name);
+                }
+
+                try {
+                    newest.run();
+
+                    /**
+                     * Only a save that was written counts, so a failed save
+                     * is tried again on the next autosave.
+                     */
+                    if (newest.isWritten()) {
+                        saved.put(name, newest.getSnapshot());
+                    }
+                } finally {
+                    synchronized (waiting) {
+                        writing.remove(name);
+                        waiting.notifyAll();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits until no save is waiting to be written for a player. This is
+     * used before loading a character file, so the file loaded is never older
+     * than the last save.
+     *
+     * @param username
+     *            the username of the player.
+     * @throws InterruptedException
+     *             if the thread is interrupted while waiting.
+     */
+    public void awaitSave(String username) throws InterruptedException {
+        long name = Misc.nameToLong(username);
+
+        synchronized (waiting) {
+            while (waiting.containsKey(name) || writing.contains(name)) {
+                waiting.wait();
+            }
+        }
+    }
+
+    /**
+     * Writes every save still waiting and stops the saver thread, waiting for
+     * the saves to be written, then closes the repository.
+     */
+    public void shutdown() {
+        saver.shutdown();
+
+        try {
+            if (!saver.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                Server.print("Timed out while waiting for players to be saved!");
+            }
+
+            if (PlayerFileEvent.getRepository() != null) {
+                PlayerFileEvent.getRepository().close();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return the amount of players with a save waiting to be written.
+     */
+    public int getWaiting() {
+        synchronized (waiting) {
+            return waiting.size();
+        }
+    }
+
+    /**
+     * @return the singleton.
+     */
+    public static PlayerSaveService getSingleton() {
+        return singleton;
+    }
+}
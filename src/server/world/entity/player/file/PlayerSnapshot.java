@@ -0,0 +1,477 @@
+package server.world.entity.player.file;
+
+import java.util.Arrays;
+
+import server.world.entity.player.Player;
+import server.world.entity.player.content.Spellbook;
+import server.world.entity.player.skill.Trainable;
+import server.world.item.Item;
+import server.world.map.Position;
+
+/**
+ * A copy of everything saved in a player's character file, taken on the game
+ * thread so it can be written from another thread while the player keeps
+ * playing. The containers and skills are copied item by item, so nothing the
+ * player does after the snapshot is taken can change it. Two snapshots are
+ * equal if they would write exactly the same file.
+ *
+ * @author lare96
+ */
+public final class PlayerSnapshot {
+
+    /** The username of the player. */
+    private final String username;
+
+    /** The password of the player. */
+    private final String password;
+
+    /** The x coordinate of the player. */
+    private final int x;
+
+    /** The y coordinate of the player. */
+    private final int y;
+
+    /** The height level of the player. */
+    private final int z;
+
+    /** The staff rights of the player. */
+    private final int staffRights;
+
+    /** The gender of the player. */
+    private final int gender;
+
+    /** The appearance of the player. */
+    private final int[] appearance;
+
+    /** The colors of the player. */
+    private final int[] colors;
+
+    /** If the player has running toggled. */
+    private final boolean runToggled;
+
+    /** If the player is new. */
+    private final boolean newPlayer;
+
+    /** The items in the player's inventory. */
+    private final Item[] inventory;
+
+    /** The items in the player's bank. */
+    private final Item[] bank;
+
+    /** The items the player has equipped. */
+    private final Item[] equipment;
+
+    /** The skills of the player. */
+    private final Trainable[] skills;
+
+    /** The friends of the player. */
+    private final Long[] friends;
+
+    /** The players this player is ignoring. */
+    private final Long[] ignores;
+
+    /** The run energy of the player. */
+    private final int runEnergy;
+
+    /** The name of the player's spellbook. */
+    private final String spellbook;
+
+    /** If the player is banned. */
+    private final boolean banned;
+
+    /** If the player has auto retaliate turned on. */
+    private final boolean autoRetaliate;
+
+    /**
+     * Takes a snapshot of a player. This should only be done from the game
+     * thread.
+     *
+     * @param player
+     *            the player to take a snapshot of.
+     */
+    public PlayerSnapshot(Player player) {
+        this.username = player.getUsername();
+        this.password = player.getPassword();
+        this.x = player.getPosition().getX();
+        this.y = player.getPosition().getY();
+        this.z = player.getPosition().getZ();
+        this.staffRights = player.getStaffRights();
+        this.gender = player.getGender();
+        this.appearance = player.getAppearance().clone();
+        this.colors = player.getColors().clone();
+        this.runToggled = player.getMovementQueue().isRunToggled();
+        this.newPlayer = player.isNewPlayer();
+        this.inventory = copy(player.getInventory().getItemContainer().toArray());
+        this.bank = copy(player.getBank().getContainer().toArray());
+        this.equipment = copy(player.getEquipment().getItemContainer().toArray());
+        this.skills = copy(player.getSkills().getTrainable());
+        this.friends = player.getFriends().toArray(new Long[player.getFriends().size()]);
+        this.ignores = player.getIgnores().toArray(new Long[player.getIgnores().size()]);
+        this.runEnergy = player.getRunEnergy();
+        this.spellbook = player.getSpellbook().name();
+        this.banned = player.isBanned();
+        this.autoRetaliate = player.isAutoRetaliate();
+    }
+
+    /**
+     * Creates a snapshot from state decoded from a character file. The arrays
+     * are used as they are and not copied.
+     *
+     * @param username
+     *            the username.
+     * @param password
+     *            the password.
+     * @param x
+     *            the x coordinate.
+     * @param y
+     *            the y coordinate.
+     * @param z
+     *            the height level.
+     * @param staffRights
+     *            the staff rights.
+     * @param gender
+     *            the gender.
+     * @param appearance
+     *            the appearance.
+     * @param colors
+     *            the colors.
+     * @param runToggled
+     *            if running is toggled.
+     * @param newPlayer
+     *            if the player is new.
+     * @param inventory
+     *            the items in the inventory.
+     * @param bank
+     *            the items in the bank.
+     * @param equipment
+     *            the items equipped.
+     * @param skills
+     *            the skills.
+     * @param friends
+     *            the friends.
+     * @param ignores
+     *            the players being ignored.
+     * @param runEnergy
+     *            the run energy.
+     * @param spellbook
+     *            the name of the spellbook.
+     * @param banned
+     *            if the player is banned.
+     * @param autoRetaliate
+     *            if auto retaliate is turned on.
+     */
+    public PlayerSnapshot(String username, String password, int x, int y, int z, int staffRights, int gender, int[] appearance, int[] colors, boolean runToggled, boolean newPlayer, Item[] inventory, Item[] bank, Item[] equipment, Trainable[] skills, Long[] friends, Long[] ignores, int runEnergy, String spellbook, boolean banned, boolean autoRetaliate) {
+        this.username = username;
+        this.password = password;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.staffRights = staffRights;
+        this.gender = gender;
+        this.appearance = appearance;
+        this.colors = colors;
+        this.runToggled = runToggled;
+        this.newPlayer = newPlayer;
+        this.inventory = inventory;
+        this.bank = bank;
+        this.equipment = equipment;
+        this.skills = skills;
+        this.friends = friends;
+        this.ignores = ignores;
+        this.runEnergy = runEnergy;
+        this.spellbook = spellbook;
+        this.banned = banned;
+        this.autoRetaliate = autoRetaliate;
+    }
+
+    /**
+     * Gives a player the state held in this snapshot, apart from the username
+     * and password. The arrays are handed to the player, so this snapshot
+     * must not be used afterwards.
+     *
+     * @param player
+     *            the player to give the state to.
+     */
+    public void apply(Player player) {
+        player.getPosition().setAs(new Position(x, y, z));
+        player.setStaffRights(staffRights);
+        player.setGender(gender);
+        player.setAppearance(appearance);
+        player.setColors(colors);
+        player.getMovementQueue().setRunToggled(runToggled);
+        player.setNewPlayer(newPlayer);
+        player.getInventory().getItemContainer().setItems(inventory);
+        player.getBank().getContainer().setItems(bank);
+        player.getEquipment().getItemContainer().setItems(equipment);
+        player.getSkills().setTrainable(skills);
+        player.setRunEnergy(runEnergy);
+        player.setBanned(banned);
+        player.setAutoRetaliate(autoRetaliate);
+
+        try {
+            player.setSpellbook(Spellbook.valueOf(spellbook));
+        } catch (IllegalArgumentException e) {
+            player.setSpellbook(Spellbook.NORMAL);
+        }
+
+        for (Long l : friends) {
+            player.getFriends().add(l);
+        }
+
+        for (Long l : ignores) {
+            player.getIgnores().add(l);
+        }
+    }
+
+    /**
+     * Copies an array of items.
+     *
+     * @param items
+     *            the items to copy.
+     * @return the copied items.
+     */
+    private static Item[] copy(Item[] items) {
+        Item[] copy = new Item[items.length];
+
+        for (int i = 0; i < items.length; i++) {
+            if (items[i] != null) {
+                copy[i] = new Item(items[i].getId(), items[i].getAmount());
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Copies an array of skills.
+     *
+     * @param skills
+     *            the skills to copy.
+     * @return the copied skills.
+     */
+    private static Trainable[] copy(Trainable[] skills) {
+        Trainable[] copy = new Trainable[skills.length];
+
+        for (int i = 0; i < skills.length; i++) {
+            if (skills[i] != null) {
+                copy[i] = new Trainable();
+                copy[i].setLevel(skills[i].getLevel());
+                copy[i].setExperience(skills[i].getExperience());
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Checks if two arrays of items hold the same items.
+     *
+     * @param a
+     *            the first array.
+     * @param b
+     *            the second array.
+     * @return true if the items are the same.
+     */
+    private static boolean equals(Item[] a, Item[] b) {
+        if (a.length != b.length) {
+            return false;
+        }
+
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == null || b[i] == null) {
+                if (a[i] != b[i]) {
+                    return false;
+                }
+            } else if (a[i].getId() != b[i].getId() || a[i].getAmount() != b[i].getAmount()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if two arrays of skills hold the same levels and experience.
+     *
+     * @param a
+     *            the first array.
+     * @param b
+     *            the second array.
+     * @return true if the skills are the same.
+     */
+    private static boolean equals(Trainable[] a, Trainable[] b) {
+        if (a.length != b.length) {
+            return false;
+        }
+
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == null || b[i] == null) {
+                if (a[i] != b[i]) {
+                    return false;
+                }
+            } else if (a[i].getLevel() != b[i].getLevel() || a[i].getExperience() != b[i].getExperience()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof PlayerSnapshot)) {
+            return false;
+        }
+
+        PlayerSnapshot other = (PlayerSnapshot) o;
+        return username.equals(other.username) && password.equals(other.password) && x == other.x && y == other.y && z == other.z && staffRights == other.staffRights && gender == other.gender && Arrays.equals(appearance, other.appearance) && Arrays.equals(colors, other.colors) && runToggled == other.runToggled && newPlayer == other.newPlayer && equals(inventory, other.inventory) && equals(bank, other.bank) && equals(equipment, other.equipment) && equals(skills, other.skills) && Arrays.equals(friends, other.friends) && Arrays.equals(ignores, other.ignores) && runEnergy == other.runEnergy && spellbook.equals(other.spellbook) && banned == other.banned && autoRetaliate == other.autoRetaliate;
+    }
+
+    @Override
+    public int hashCode() {
+        return username.hashCode();
+    }
+
+    /**
+     * @return the username.
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * @return the password.
+     */
+    public String getPassword() {
+        return password;
+    }
+
+    /**
+     * @return the x coordinate.
+     */
+    public int getX() {
+        return x;
+    }
+
+    /**
+     * @return the y coordinate.
+     */
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * @return the height level.
+     */
+    public int getZ() {
+        return z;
+    }
+
+    /**
+     * @return the staffRights.
+     */
+    public int getStaffRights() {
+        return staffRights;
+    }
+
+    /**
+     * @return the gender.
+     */
+    public int getGender() {
+        return gender;
+    }
+
+    /**
+     * @return the appearance.
+     */
+    public int[] getAppearance() {
+        return appearance;
+    }
+
+    /**
+     * @return the colors.
+     */
+    public int[] getColors() {
+        return colors;
+    }
+
+    /**
+     * @return the runToggled.
+     */
+    public boolean isRunToggled() {
+        return runToggled;
+    }
+
+    /**
+     * @return the newPlayer.
+     */
+    public boolean isNewPlayer() {
+        return newPlayer;
+    }
+
+    /**
+     * @return the inventory.
+     */
+    public Item[] getInventory() {
+        return inventory;
+    }
+
+    /**
+     * @return the bank.
+     */
+    public Item[] getBank() {
+        return bank;
+    }
+
+    /**
+     * @return the equipment.
+     */
+    public Item[] getEquipment() {
+        return equipment;
+    }
+
+    /**
+     * @return the skills.
+     */
+    public Trainable[] getSkills() {
+        return skills;
+    }
+
+    /**
+     * @return the friends.
+     */
+    public Long[] getFriends() {
+        return friends;
+    }
+
+    /**
+     * @return the ignores.
+     */
+    public Long[] getIgnores() {
+        return ignores;
+    }
+
+    /**
+     * @return the runEnergy.
+     */
+    public int getRunEnergy() {
+        return runEnergy;
+    }
+
+    /**
+     * @return the spellbook.
+     */
+    public String getSpellbook() {
+        return spellbook;
+    }
+
+    /**
+     * @return the banned.
+     */
+    public boolean isBanned() {
+        return banned;
+    }
+
+    /**
+     * @return the autoRetaliate.
+     */
+    public boolean isAutoRetaliate() {
+        return autoRetaliate;
+    }
+}
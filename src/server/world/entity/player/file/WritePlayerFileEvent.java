@@ -1,84 +1,72 @@
 package server.world.entity.player.file;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-
 import server.Server;
 import server.world.entity.player.Player;
 import server.world.entity.player.PlayerFileEvent;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonObject;
-
 /**
- * A writing implementation of a player file operation.
- * 
+ * A writing implementation of a player file operation. A
+ * {@link PlayerSnapshot} of the player is taken when this is created, so the
+ * file can be written to the {@link PlayerFileEvent#getRepository()} from any
+ * thread afterwards.
+ *
  * @author lare96
  */
 public class WritePlayerFileEvent extends PlayerFileEvent {
 
     /**
-     * Create a new class used for writing to character files.
-     * 
+     * The state of the player to write.
+     */
+    private final PlayerSnapshot snapshot;
+
+    /**
+     * If the player entered the wrong password, in which case nothing is
+     * written.
+     */
+    private final boolean incorrectPassword;
+
+    /**
+     * If the snapshot has been written.
+     */
+    private volatile boolean written;
+
+    /**
+     * Create a new class used for writing to character files. This should
+     * only be created from the game thread.
+     *
      * @param player
      *            the player taking part in this operation.
      */
     public WritePlayerFileEvent(Player player) {
         super(player);
-
-        if (!file().exists()) {
-            try {
-                file().createNewFile();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
+        this.snapshot = new PlayerSnapshot(player);
+        this.incorrectPassword = player.isIncorrectPassword();
     }
 
     @Override
     public void run() {
-        if (file().exists() && !this.getPlayer().isIncorrectPassword()) {
+        if (!incorrectPassword) {
             try {
-                final Gson builder = new GsonBuilder().setPrettyPrinting().create();
-                final JsonObject object = new JsonObject();
-
-                object.addProperty("username", this.getPlayer().getUsername().trim());
-                object.addProperty("password", this.getPlayer().getPassword().trim());
-                object.addProperty("x", new Integer(this.getPlayer().getPosition().getX()));
-                object.addProperty("y", new Integer(this.getPlayer().getPosition().getY()));
-                object.addProperty("z", new Integer(this.getPlayer().getPosition().getZ()));
-                object.addProperty("staff-rights", new Integer(this.getPlayer().getStaffRights()));
-                object.addProperty("gender", new Integer(this.getPlayer().getGender()));
-                object.add("appearance", builder.toJsonTree(getPlayer().getAppearance()));
-                object.add("colors", builder.toJsonTree(getPlayer().getColors()));
-                object.addProperty("run-toggled", new Boolean(this.getPlayer().getMovementQueue().isRunToggled()));
-                object.addProperty("new-player", new Boolean(this.getPlayer().isNewPlayer()));
-                object.add("inventory", builder.toJsonTree(getPlayer().getInventory().getItemContainer().toArray()));
-                object.add("bank", builder.toJsonTree(getPlayer().getBank().getContainer().toArray()));
-                object.add("equipment", builder.toJsonTree(getPlayer().getEquipment().getItemContainer().toArray()));
-                object.add("skills", builder.toJsonTree(getPlayer().getSkills().getTrainable()));
-                object.add("friends", builder.toJsonTree(getPlayer().getFriends().toArray()));
-                object.add("ignores", builder.toJsonTree(getPlayer().getIgnores().toArray()));
-                object.addProperty("run-energy", new Integer(this.getPlayer().getRunEnergy()));
-                object.addProperty("spell-book", this.getPlayer().getSpellbook().name());
-                object.addProperty("is-banned", new Boolean(this.getPlayer().isBanned()));
-                object.addProperty("auto-retaliate", new Boolean(this.getPlayer().isAutoRetaliate()));
-
-                FileWriter fileWriter = new FileWriter(file());
-                fileWriter.write(builder.toJson(object));
-                fileWriter.flush();
-                fileWriter.close();
+                getRepository().save(snapshot);
+                written = true;
             } catch (Exception e) {
                 e.printStackTrace();
-                Server.print("Error while writing data for " + this.getPlayer());
+                Server.print("Error while writing data for " + snapshot.getUsername());
             }
         }
     }
 
-    @Override
-    public File file() {
-        return new File("./data/players/" + getPlayer().getUsername() + ".json");
+    /**
+     * @return the written.
+     */
+    public boolean isWritten() {
+        return written;
+    }
+
+    /**
+     * @return the snapshot.
+     */
+    public PlayerSnapshot getSnapshot() {
+        return snapshot;
     }
 }
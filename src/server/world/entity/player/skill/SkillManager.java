@@ -1,6 +1,7 @@
 package server.world.entity.player.skill;
 
 import server.world.entity.Gfx;
+import server.world.entity.UpdateFlags.Flag;
 import server.world.entity.player.Player;
 
 /**
@@ -331,6 +332,7 @@ public class SkillManager {
             return;
         }
         int oldLevel = player.getSkills().getTrainable()[skill.ordinal()].getLevelForExperience();
+        int oldCombatLevel = player.getSkills().getCombatLevel();
         int experience = player.getSkills().getTrainable()[skill.ordinal()].getExperience();
 
         player.getSkills().getTrainable()[skill.ordinal()].setExperience(experience + amount);
@@ -344,6 +346,12 @@ public class SkillManager {
             }
             levelUp(player, skill);
             player.gfx(new Gfx(199));
+
+            /** The combat level is shown in the appearance block. */
+            if (oldCombatLevel != player.getSkills().getCombatLevel()) {
+                player.appearanceChanged();
+                player.getFlags().flag(Flag.APPEARANCE);
+            }
         }
 
         player.getServerPacketBuilder().sendSkill(skill.ordinal(), player.getSkills().getTrainable()[skill.ordinal()].getLevel(), player.getSkills().getTrainable()[skill.ordinal()].getExperience());
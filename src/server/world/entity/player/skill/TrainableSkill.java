@@ -1,11 +1,22 @@
 package server.world.entity.player.skill;
 
-import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import server.world.entity.player.Player;
 import server.world.entity.player.skill.SkillManager.Skill;
+import server.world.entity.player.skill.impl.Agility;
+import server.world.entity.player.skill.impl.Cooking;
+import server.world.entity.player.skill.impl.Firemaking;
+import server.world.entity.player.skill.impl.Fishing;
+import server.world.entity.player.skill.impl.Fletching;
+import server.world.entity.player.skill.impl.Mining;
+import server.world.entity.player.skill.impl.Prayer;
+import server.world.entity.player.skill.impl.Runecrafting;
+import server.world.entity.player.skill.impl.Smithing;
+import server.world.entity.player.skill.impl.Thieving;
+import server.world.entity.player.skill.impl.Woodcutting;
 
 /**
  * A parent class that handles the main functions of non-combat skills.
@@ -44,43 +55,11 @@ public abstract class TrainableSkill {
     public abstract Skill skill();
 
     /**
-     * Loads all skills automatically by creating a new instance of each class
-     * in the <code>server.world.entity.player.skill.impl</code> and adding it
-     * to a list.
+     * Loads every skill. New skills have to be added to the list here.
      */
     public static void load() {
-        // int parsed = 0;
-
-        File[] files = new File("./src/server/world/entity/player/skill/impl").listFiles();
-
-        for (File f : files) {
-            if (f == null) {
-                continue;
-            }
-
-            try {
-                try {
-                    try {
-                        Object o = Class.forName("server.world.entity.player.skill.impl." + f.getName().replace(".java", "")).newInstance();
-
-                        if (o instanceof TrainableSkill) {
-                            TrainableSkill skill = (TrainableSkill) o;
-
-                            skills.add(skill);
-                            // parsed++;
-                        }
-                    } catch (IllegalAccessException e) {
-                        e.printStackTrace();
-                    }
-                } catch (ClassNotFoundException e) {
-                    e.printStackTrace();
-                }
-            } catch (InstantiationException e) {
-                e.printStackTrace();
-            }
-        }
-
-        // Server.print("Instantiated " + parsed + " new dialogues!");
+        TrainableSkill[] all = { new Agility(), Cooking.getSingleton(), Firemaking.getSingleton(), Fishing.getSingleton(), new Fletching(), Mining.getSingleton(), Prayer.getSingleton(), Runecrafting.getSingleton(), Smithing.getSingleton(), Thieving.getSingleton(), Woodcutting.getSingleton() };
+        skills = Arrays.asList(all);
     }
 
     /**
@@ -2,9 +2,9 @@ package server.world.entity.player.skill.impl;
 
 import java.util.Random;
 
-import server.logic.GameLogic;
 import server.logic.task.Task;
 import server.logic.task.Task.Time;
+import server.world.World;
 import server.world.entity.Animation;
 import server.world.entity.player.Player;
 import server.world.entity.player.skill.SkillManager;
@@ -267,7 +267,7 @@ public class Cooking extends TrainableSkill {
         player.setCookAmount(0);
 
         /** And start the cooking task :) */
-        GameLogic.getSingleton().submit(new Task(4, true, Time.TICK) {
+        World.current().getEngine().submit(new Task(4, true, Time.TICK) {
             @Override
             public void logic() {
 
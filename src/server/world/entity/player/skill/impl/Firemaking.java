@@ -1,12 +1,9 @@
 package server.world.entity.player.skill.impl;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import server.logic.GameLogic;
 import server.logic.task.Task;
 import server.logic.task.Task.Time;
 import server.util.Misc;
+import server.world.World;
 import server.world.entity.Animation;
 import server.world.entity.player.Player;
 import server.world.entity.player.skill.SkillManager;
@@ -32,15 +29,6 @@ public class Firemaking extends TrainableSkill {
      */
     private static Firemaking singleton;
 
-    /**
-     * A list of the positions of all the fires lit. We need this so we can keep
-     * track of which positions have fires on them. This information is
-     * <b>extremely</b> useful because it enables us to prevent players from
-     * lighting fires on the same position, and makes it way easier to replace
-     * fires with ashes.
-     */
-    private static List<Position> fires = new ArrayList<Position>();
-
     /**
      * All of the data for logs we are able to light.
      * 
@@ -201,7 +189,7 @@ public class Firemaking extends TrainableSkill {
         }
 
         /** If an item or fire exists on the spot you are trying to light, block. */
-        if (WorldItem.itemExistsOnPosition(player.getPosition()) || getFires().contains(player.getPosition())) {
+        if (WorldItem.itemExistsOnPosition(player.getPosition()) || World.current().getFires().contains(player.getPosition())) {
             player.getServerPacketBuilder().sendMessage("You cannot light a fire here!");
             reset(player);
             return;
@@ -210,7 +198,7 @@ public class Firemaking extends TrainableSkill {
         player.getMovementQueue().reset();
         player.getSkillingAction()[index()] = true;
 
-        GameLogic.getSingleton().submit(new Task((Misc.getRandom().nextInt(getLightTime(player, log)) + 1), false, Time.SECOND) {
+        World.current().getEngine().submit(new Task((Misc.getRandom().nextInt(getLightTime(player, log)) + 1), false, Time.SECOND) {
             @Override
             public void logic() {
 
@@ -245,7 +233,7 @@ public class Firemaking extends TrainableSkill {
          * Task that handles the animation. This needs to be in a separate task
          * because the animation runs on a strict time of 3 ticks.
          */
-        GameLogic.getSingleton().submit(new Task(3, true, Time.TICK) {
+        World.current().getEngine().submit(new Task(3, true, Time.TICK) {
             @Override
             public void logic() {
                 if (player.getNetwork().isDisconnected()) {
@@ -277,14 +265,14 @@ public class Firemaking extends TrainableSkill {
         final Position logPosition = new Position(player.getPosition().getX(), player.getPosition().getY());
 
         /** Make and register the fire. */
-        getFires().add(logPosition);
+        World.current().getFires().add(logPosition);
         WorldObject.register(new WorldObject(2732, logPosition, Rotation.SOUTH, 10));
 
         /** Unregister the fire and replace it with ashes after the delay */
-        GameLogic.getSingleton().submit(new Task(log.getBurnTime(), false, Time.SECOND) {
+        World.current().getEngine().submit(new Task(log.getBurnTime(), false, Time.SECOND) {
             @Override
             public void logic() {
-                getFires().remove(logPosition);
+                World.current().getFires().remove(logPosition);
                 WorldObject.unregister(new WorldObject(2732, logPosition, Rotation.SOUTH, 10));
                 WorldItem.registerStaticItem(new WorldItem(new Item(592, 1), logPosition, null));
             }
@@ -313,13 +301,6 @@ public class Firemaking extends TrainableSkill {
         return log.getLightSpeed() * 3;
     }
 
-    /**
-     * @return the fires.
-     */
-    public List<Position> getFires() {
-        return fires;
-    }
-
     /**
      * @param singleton
      *            the singleton to set.
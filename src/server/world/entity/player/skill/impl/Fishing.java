@@ -1,10 +1,10 @@
 package server.world.entity.player.skill.impl;
 
-import server.logic.GameLogic;
 import server.logic.task.Task;
 import server.logic.task.Task.Time;
 import server.util.Misc;
 import server.util.Misc.Rarity;
+import server.world.World;
 import server.world.entity.Animation;
 import server.world.entity.player.Player;
 import server.world.entity.player.skill.SkillManager;
@@ -358,7 +358,7 @@ public class Fishing extends TrainableSkill {
         player.animation(new Animation(fishingWith.getAnimation()));
         player.getMovementQueue().reset();
 
-        GameLogic.getSingleton().submit(new Task(fishingWith.getSpeed() + playerFishingAddition(player), false, Time.TICK) {
+        World.current().getEngine().submit(new Task(fishingWith.getSpeed() + playerFishingAddition(player), false, Time.TICK) {
             @Override
             public void logic() {
                 /** If we are not online, block and stop the task. */
@@ -481,7 +481,7 @@ public class Fishing extends TrainableSkill {
          * Because the fishing animation is based on a strict cycle of 4 ticks,
          * we use a seperate task for the animation.
          */
-        GameLogic.getSingleton().submit(new Task(4, true, Time.TICK) {
+        World.current().getEngine().submit(new Task(4, true, Time.TICK) {
             @Override
             public void logic() {
                 if (player.getNetwork().isDisconnected()) {
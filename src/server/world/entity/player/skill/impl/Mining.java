@@ -1,12 +1,9 @@
 package server.world.entity.player.skill.impl;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import server.logic.GameLogic;
 import server.logic.task.Task;
 import server.logic.task.Task.Time;
 import server.util.Misc;
+import server.world.World;
 import server.world.entity.Animation;
 import server.world.entity.player.Player;
 import server.world.entity.player.skill.SkillManager;
@@ -30,11 +27,6 @@ public class Mining extends TrainableSkill {
      */
     private static Mining singleton;
 
-    /**
-     * The positions of all the empty rocks.
-     */
-    private static List<Position> rocks = new ArrayList<Position>();
-
     /**
      * Holds data for all of the ores able to be mined.
      * 
@@ -354,7 +346,7 @@ public class Mining extends TrainableSkill {
         player.animation(new Animation(pick.getAnimation()));
         player.getMovementQueue().reset();
 
-        GameLogic.getSingleton().submit(new Task((Misc.getRandom().nextInt(getMiningTime(player, ore, pick)) + 1), false, Time.TICK) {
+        World.current().getEngine().submit(new Task((Misc.getRandom().nextInt(getMiningTime(player, ore, pick)) + 1), false, Time.TICK) {
             @Override
             public void logic() {
 
@@ -418,7 +410,7 @@ public class Mining extends TrainableSkill {
          * Because the mining animation is based on a strict time of 4 seconds,
          * we use a separate task for the animation.
          */
-        GameLogic.getSingleton().submit(new Task(4, true, Time.SECOND) {
+        World.current().getEngine().submit(new Task(4, true, Time.SECOND) {
             @Override
             public void logic() {
 
@@ -457,14 +449,14 @@ public class Mining extends TrainableSkill {
 
         /** Register an empty rock. */
         WorldObject.register(new WorldObject(respawn.getEmpty(), position, Rotation.SOUTH, 10));
-        rocks.add(position);
+        World.current().getRocks().add(position);
 
         /** Schedule a task to respawn the proper ore in place of the empty rock. */
-        GameLogic.getSingleton().submit(new Task(ore.getRespawnTime(), false, Time.SECOND) {
+        World.current().getEngine().submit(new Task(ore.getRespawnTime(), false, Time.SECOND) {
             @Override
             public void logic() {
                 WorldObject.register(new WorldObject(respawn.getOre(), position, Rotation.SOUTH, 10));
-                rocks.remove(position);
+                World.current().getRocks().remove(position);
             }
         });
     }
@@ -511,7 +503,7 @@ public class Mining extends TrainableSkill {
      * @return true if there is an empty rock.
      */
     private boolean checkRock(Position position) {
-        for (Position p : rocks) {
+        for (Position p : World.current().getRocks()) {
             if (p == null) {
                 continue;
             }
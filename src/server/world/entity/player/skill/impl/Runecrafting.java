@@ -1,9 +1,9 @@
 package server.world.entity.player.skill.impl;
 
-import server.logic.GameLogic;
 import server.logic.task.Task;
 import server.logic.task.Task.Time;
 import server.util.Misc;
+import server.world.World;
 import server.world.entity.Animation;
 import server.world.entity.Gfx;
 import server.world.entity.mob.Mob;
@@ -287,7 +287,7 @@ public class Runecrafting extends TrainableSkill {
          */
         final String[] spell = { "Flipendo! scherriko, alast... Gah!", "Leto... Ona... Dupa... Gah!", "Genta... Gah!", "Megatele... Gah!" };
 
-        GameLogic.getSingleton().submit(new Task(1, false, Time.TICK) {
+        World.current().getEngine().submit(new Task(1, false, Time.TICK) {
             @Override
             public void logic() {
 
@@ -304,7 +304,7 @@ public class Runecrafting extends TrainableSkill {
             }
         });
 
-        GameLogic.getSingleton().submit(new Task(3, false, Time.TICK) {
+        World.current().getEngine().submit(new Task(3, false, Time.TICK) {
             @Override
             public void logic() {
 
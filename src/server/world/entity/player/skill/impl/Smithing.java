@@ -1,11 +1,11 @@
 package server.world.entity.player.skill.impl;
 
 import server.Server;
-import server.logic.GameLogic;
 import server.logic.task.Task;
 import server.logic.task.Task.Time;
 import server.util.Misc;
 import server.util.Misc.Rarity;
+import server.world.World;
 import server.world.entity.Animation;
 import server.world.entity.player.Player;
 import server.world.entity.player.skill.SkillManager;
@@ -349,7 +349,7 @@ public class Smithing extends TrainableSkill {
     // /** Reset the smithing amount. */
     // player.setSmeltAmount(0);
     //
-    // GameLogic.getSingleton().submit(new Task(4, true, Time.TICK) {
+    // World.current().getEngine().submit(new Task(4, true, Time.TICK) {
     // @Override
     // public void logic() {
     //
@@ -486,7 +486,7 @@ public class Smithing extends TrainableSkill {
         /** Reset the smelting amount. */
         player.setSmeltAmount(0);
 
-        GameLogic.getSingleton().submit(new Task(4, true, Time.TICK) {
+        World.current().getEngine().submit(new Task(4, true, Time.TICK) {
             @Override
             public void logic() {
 
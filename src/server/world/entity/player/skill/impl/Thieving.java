@@ -387,11 +387,7 @@ public class Thieving extends TrainableSkill {
      */
     private void checkSurroundingArea(Player player) {
         if (Misc.getRandom().nextInt(14) == 0) {
-            for (Mob mob : World.getNpcs()) {
-                if (mob == null) {
-                    continue;
-                }
-
+            for (Mob mob : World.current().getRegions().getNpcs(player.getPosition(), AREA_RADIUS_TO_CHECK)) {
                 if (mob.getPosition().withinDistance(player.getPosition(), AREA_RADIUS_TO_CHECK)) {
                     if (Mob.getDefinition(mob.getMobId()).getName().equals("Man") || Mob.getDefinition(mob.getMobId()).getName().equals("Woman")) {
                         /** Weak mobs will not attack. */
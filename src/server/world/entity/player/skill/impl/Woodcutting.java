@@ -1,12 +1,9 @@
 package server.world.entity.player.skill.impl;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import server.logic.GameLogic;
 import server.logic.task.Task;
 import server.logic.task.Task.Time;
 import server.util.Misc;
+import server.world.World;
 import server.world.entity.Animation;
 import server.world.entity.player.Player;
 import server.world.entity.player.skill.SkillManager;
@@ -32,12 +29,6 @@ public class Woodcutting extends TrainableSkill {
      */
     private static Woodcutting singleton;
 
-    /**
-     * A list of the positions of the stumps currently placed throughout the
-     * world.
-     */
-    private static List<Position> stumps = new ArrayList<Position>();
-
     /**
      * Holds data for all of the possible trees that can be cut.
      * 
@@ -383,7 +374,7 @@ public class Woodcutting extends TrainableSkill {
         player.setWoodcuttingLogAmount(getLogsInTree(tree));
         player.getMovementQueue().reset();
 
-        GameLogic.getSingleton().submit(new Task((Misc.getRandom().nextInt(getWoodcuttingTime(player, tree, axe)) + 1), false, Time.SECOND) {
+        World.current().getEngine().submit(new Task((Misc.getRandom().nextInt(getWoodcuttingTime(player, tree, axe)) + 1), false, Time.SECOND) {
             @Override
             public void logic() {
 
@@ -450,7 +441,7 @@ public class Woodcutting extends TrainableSkill {
          * Because the woodcutting animation is based on a strict time of 4
          * seconds, we use a separate task for the animation.
          */
-        GameLogic.getSingleton().submit(new Task(3, true, Time.SECOND) {
+        World.current().getEngine().submit(new Task(3, true, Time.SECOND) {
             @Override
             public void logic() {
 
@@ -490,14 +481,14 @@ public class Woodcutting extends TrainableSkill {
 
         /** Register a stump. */
         WorldObject.register(new WorldObject(respawn.getStump(), position, Rotation.SOUTH, 10));
-        stumps.add(position);
+        World.current().getStumps().add(position);
 
         /** Schedule a task to respawn the tree in place of the stump. */
-        GameLogic.getSingleton().submit(new Task(tree.getRespawnTime(), false, Time.SECOND) {
+        World.current().getEngine().submit(new Task(tree.getRespawnTime(), false, Time.SECOND) {
             @Override
             public void logic() {
                 WorldObject.register(new WorldObject(respawn.getTreeId(), position, Rotation.SOUTH, 10));
-                stumps.remove(position);
+                World.current().getStumps().remove(position);
             }
         });
     }
@@ -532,7 +523,7 @@ public class Woodcutting extends TrainableSkill {
      * @return true if there is on stump on the position.
      */
     private boolean checkStump(Position position) {
-        for (Position p : stumps) {
+        for (Position p : World.current().getStumps()) {
             if (p == null) {
                 continue;
             }
@@ -424,7 +424,7 @@ public class Container {
             return false;
         }
         int newSlot = (slot > -1) ? slot : freeSlot();
-        if ((item.getDefinition().isStackable() || containerType.equals(Type.ALWAYS_STACK)) && !containerType.equals(Type.NEVER_STACK)) {
+        if ((ItemDefinition.isStackable(item.getId()) || containerType.equals(Type.ALWAYS_STACK)) && !containerType.equals(Type.NEVER_STACK)) {
             if (getCount(item.getId()) > 0) {
                 newSlot = getSlotById(item.getId());
             }
@@ -435,7 +435,7 @@ public class Container {
         if (getItem(newSlot) != null) {
             newSlot = freeSlot();
         }
-        if ((item.getDefinition().isStackable() || containerType.equals(Type.ALWAYS_STACK)) && !containerType.equals(Type.NEVER_STACK)) {
+        if ((ItemDefinition.isStackable(item.getId()) || containerType.equals(Type.ALWAYS_STACK)) && !containerType.equals(Type.NEVER_STACK)) {
             for (int i = 0; i < items.length; i++) {
                 if (items[i] != null && items[i].getId() == item.getId()) {
                     set(i, new Item(items[i].getId(), items[i].getAmount() + item.getAmount()));
@@ -478,7 +478,7 @@ public class Container {
      * @return true if it has room for the item.
      */
     public boolean hasRoomFor(Item item) {
-        if ((item.getDefinition().isStackable() || containerType.equals(Type.ALWAYS_STACK)) && !containerType.equals(Type.NEVER_STACK)) {
+        if ((ItemDefinition.isStackable(item.getId()) || containerType.equals(Type.ALWAYS_STACK)) && !containerType.equals(Type.NEVER_STACK)) {
             for (int i = 0; i < items.length; i++) {
                 if (items[i] != null && items[i].getId() == item.getId()) {
                     int totalCount = item.getAmount() + items[i].getAmount();
@@ -556,7 +556,7 @@ public class Container {
         if (item == null)
             return -1;
         int removed = 0;
-        if ((item.getDefinition().isStackable() || containerType.equals(Type.ALWAYS_STACK)) && !containerType.equals(Type.NEVER_STACK)) {
+        if ((ItemDefinition.isStackable(item.getId()) || containerType.equals(Type.ALWAYS_STACK)) && !containerType.equals(Type.NEVER_STACK)) {
             int slot = getSlotById(item.getId());
             Item stack = getItem(slot);
             if (stack == null)
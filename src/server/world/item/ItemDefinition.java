@@ -2,7 +2,11 @@ package server.world.item;
 
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
 
+import server.Server;
+import server.util.DefinitionCache;
 import server.util.Misc;
 
 import com.google.gson.Gson;
@@ -14,100 +18,129 @@ import com.google.gson.JsonParser;
 import com.google.gson.JsonSyntaxException;
 
 /**
- * Represents a single item definition that was parsed.
- * 
+ * Represents a single item definition that was parsed. <br>
+ * <br>
+ *
+ * The definitions are stored a field at a time in arrays indexed by item id,
+ * and an {@link ItemDefinition} is only a view of the values at its id. Code
+ * that runs often (such as checking if an item is stackable every time it is
+ * added to a container) should use the static accessors that take an item id,
+ * which read straight from the arrays.
+ *
  * @author lare96
  */
 public class ItemDefinition {
 
+    /**
+     * The amount of bonuses every item has.
+     */
+    public static final int BONUSES = 12;
+
+    /**
+     * The amount of item definitions.
+     */
+    private static final int DEFINITIONS = 7956;
+
     /**
      * The item definitions.
      */
     private static ItemDefinition[] definitions;
 
     /**
-     * The item id.
+     * The item names.
      */
-    private int itemId;
+    private static String[] itemName;
 
     /**
-     * The item name.
+     * The item descriptions.
      */
-    private String itemName;
+    private static String[] itemDescription;
 
     /**
-     * The item description.
+     * The equipment slots.
      */
-    private String itemDescription;
+    private static int[] equipmentSlot;
 
     /**
-     * The equipment slot.
+     * If the items are noted.
      */
-    private int equipmentSlot;
+    private static boolean[] noted;
 
     /**
-     * If this item is noted.
+     * If the items are noteable.
      */
-    private boolean isNoted;
+    private static boolean[] noteable;
 
     /**
-     * If this item is noteable.
+     * If the items are stackable.
      */
-    private boolean isNoteable;
+    private static boolean[] stackable;
 
     /**
-     * If this item is stackable.
+     * The unnoted ids of the items.
      */
-    private boolean isStackable;
+    private static int[] unNotedId;
 
     /**
-     * The unnoted id of this item.
+     * The noted ids of the items.
      */
-    private int unNotedId;
+    private static int[] notedId;
 
     /**
-     * The noted id of this item.
+     * If the items are members only.
      */
-    private int notedId;
+    private static boolean[] membersItem;
 
     /**
-     * If this item is members only.
+     * The special store prices.
      */
-    private boolean membersItem;
+    private static int[] specialStorePrice;
 
     /**
-     * The special store price.
+     * The general store prices.
      */
-    private int specialStorePrice;
+    private static int[] generalStorePrice;
 
     /**
-     * The general store price.
+     * The low alch value prices.
      */
-    private int generalStorePrice;
+    private static int[] lowAlchValue;
 
     /**
-     * The low alch value price.
+     * The high alch value prices.
      */
-    private int lowAlchValue;
+    private static int[] highAlchValue;
 
     /**
-     * The high alch value price.
+     * The weights of the items.
      */
-    private int highAlchValue;
+    private static double[] weight;
 
     /**
-     * The weight of the item.
+     * The bonuses of every item, one after the other.
      */
-    private double weight;
+    private static int[] bonus;
 
     /**
-     * The item bonuses.
+     * The item id.
      */
-    private int[] bonus = new int[12];
+    private final int itemId;
+
+    /**
+     * Create a new view of an item definition.
+     *
+     * @param itemId
+     *            the item id.
+     */
+    private ItemDefinition(int itemId) {
+        this.itemId = itemId;
+    }
 
     /**
-     * Parse the item definitions.
-     * 
+     * Load the item definitions. The definitions are loaded from the
+     * definition cache if it is up to date, otherwise they are parsed from the
+     * definition file and the cache is compiled again.
+     *
      * @throws JsonIOException
      *             if any i/o exceptions are thrown.
      * @throws JsonSyntaxException
@@ -115,9 +148,41 @@ public class ItemDefinition {
      * @throws FileNotFoundException
      *             if the file isn't found.
      */
-    @SuppressWarnings("unused")
     public static void load() throws JsonIOException, JsonSyntaxException, FileNotFoundException {
-        setDefinitions(new ItemDefinition[7956]);
+        if (DefinitionCache.isFresh(Misc.ITEM_DEFINITION_CACHE, Misc.ITEM_DEFINITIONS)) {
+            try {
+                loadCache();
+                return;
+            } catch (Exception e) {
+                e.printStackTrace();
+                Server.print("Unable to read the item definition cache, parsing the item definitions instead!");
+            }
+        }
+
+        parse();
+
+        try {
+            compile();
+        } catch (IOException e) {
+            e.printStackTrace();
+            Server.print("Unable to write the item definition cache!");
+        }
+    }
+
+    /**
+     * Parse the item definitions from the definition file.
+     *
+     * @throws JsonIOException
+     *             if any i/o exceptions are thrown.
+     * @throws JsonSyntaxException
+     *             if the syntax is wrong.
+     * @throws FileNotFoundException
+     *             if the file isn't found.
+     */
+    @SuppressWarnings("unused")
+    public static void parse() throws JsonIOException, JsonSyntaxException, FileNotFoundException {
+        boolean[] exists = new boolean[DEFINITIONS];
+        allocate(DEFINITIONS);
 
         JsonParser parser = new JsonParser();
         JsonArray array = (JsonArray) parser.parse(new FileReader(Misc.ITEM_DEFINITIONS));
@@ -129,267 +194,351 @@ public class ItemDefinition {
 
             int index = reader.get("id").getAsInt();
 
-            definitions[index] = new ItemDefinition();
-            definitions[index].setItemId(index);
-            definitions[index].setItemName(reader.get("name").getAsString());
-            definitions[index].setItemDescription(reader.get("examine").getAsString());
-            definitions[index].setEquipmentSlot(reader.get("equipmentType").getAsInt());
-            definitions[index].setNoted(reader.get("noted").getAsBoolean());
-            definitions[index].setNoteable(reader.get("noteable").getAsBoolean());
-            definitions[index].setStackable(reader.get("stackable").getAsBoolean());
-            definitions[index].setUnNotedId(reader.get("parentId").getAsInt());
-            definitions[index].setNotedId(reader.get("notedId").getAsInt());
-            definitions[index].setMembersItem(reader.get("members").getAsBoolean());
-            definitions[index].setSpecialStorePrice(reader.get("specialStorePrice").getAsInt());
-            definitions[index].setGeneralStorePrice(reader.get("generalStorePrice").getAsInt());
-            definitions[index].setHighAlchValue(reader.get("highAlchValue").getAsInt());
-            definitions[index].setLowAlchValue(reader.get("lowAlchValue").getAsInt());
-            definitions[index].setWeight(reader.get("weight").getAsDouble());
-            definitions[index].setBonus(builder.fromJson(reader.get("bonuses").getAsJsonArray(), int[].class));
+            exists[index] = true;
+            itemName[index] = reader.get("name").getAsString();
+            itemDescription[index] = reader.get("examine").getAsString();
+            equipmentSlot[index] = reader.get("equipmentType").getAsInt();
+            noted[index] = reader.get("noted").getAsBoolean();
+            noteable[index] = reader.get("noteable").getAsBoolean();
+            stackable[index] = reader.get("stackable").getAsBoolean();
+            unNotedId[index] = reader.get("parentId").getAsInt();
+            notedId[index] = reader.get("notedId").getAsInt();
+            membersItem[index] = reader.get("members").getAsBoolean();
+            specialStorePrice[index] = reader.get("specialStorePrice").getAsInt();
+            generalStorePrice[index] = reader.get("generalStorePrice").getAsInt();
+            highAlchValue[index] = reader.get("highAlchValue").getAsInt();
+            lowAlchValue[index] = reader.get("lowAlchValue").getAsInt();
+            weight[index] = reader.get("weight").getAsDouble();
+            System.arraycopy(builder.fromJson(reader.get("bonuses").getAsJsonArray(), int[].class), 0, bonus, index * BONUSES, BONUSES);
             parsed++;
         }
 
+        createViews(exists);
+
         // System.out.println(parsed);
     }
 
     /**
-     * @return the itemId.
+     * Writes the loaded item definitions to the definition cache.
+     *
+     * @throws IOException
+     *             if the cache can't be written.
      */
-    public int getItemId() {
-        return itemId;
+    public static void compile() throws IOException {
+        int length = definitions.length;
+        boolean[] exists = new boolean[length];
+
+        for (int i = 0; i < length; i++) {
+            exists[i] = definitions[i] != null;
+        }
+
+        DefinitionCache.Writer writer = new DefinitionCache.Writer();
+        writer.writeInts(new int[] { length });
+        writer.writeBooleans(exists);
+        writer.writeStrings(itemName);
+        writer.writeStrings(itemDescription);
+        writer.writeInts(equipmentSlot);
+        writer.writeBooleans(noted);
+        writer.writeBooleans(noteable);
+        writer.writeBooleans(stackable);
+        writer.writeInts(unNotedId);
+        writer.writeInts(notedId);
+        writer.writeBooleans(membersItem);
+        writer.writeInts(specialStorePrice);
+        writer.writeInts(generalStorePrice);
+        writer.writeInts(lowAlchValue);
+        writer.writeInts(highAlchValue);
+        writer.writeDoubles(weight);
+        writer.writeInts(bonus);
+        writer.write(Misc.ITEM_DEFINITION_CACHE, Misc.ITEM_DEFINITIONS);
+    }
+
+    /**
+     * Load the item definitions from the definition cache. The cache is laid
+     * out the same way the definitions are, so every field is read straight
+     * into its array.
+     *
+     * @throws IOException
+     *             if the cache can't be read.
+     */
+    private static void loadCache() throws IOException {
+        DefinitionCache.Reader reader = new DefinitionCache.Reader(Misc.ITEM_DEFINITION_CACHE);
+        int length = reader.readInts(1)[0];
+        boolean[] exists = reader.readBooleans(length);
+        itemName = reader.readStrings(length);
+        itemDescription = reader.readStrings(length);
+        equipmentSlot = reader.readInts(length);
+        noted = reader.readBooleans(length);
+        noteable = reader.readBooleans(length);
+        stackable = reader.readBooleans(length);
+        unNotedId = reader.readInts(length);
+        notedId = reader.readInts(length);
+        membersItem = reader.readBooleans(length);
+        specialStorePrice = reader.readInts(length);
+        generalStorePrice = reader.readInts(length);
+        lowAlchValue = reader.readInts(length);
+        highAlchValue = reader.readInts(length);
+        weight = reader.readDoubles(length);
+        bonus = reader.readInts(length * BONUSES);
+        createViews(exists);
+    }
+
+    /**
+     * Creates empty arrays for every field.
+     *
+     * @param length
+     *            the amount of definitions.
+     */
+    private static void allocate(int length) {
+        itemName = new String[length];
+        itemDescription = new String[length];
+        equipmentSlot = new int[length];
+        noted = new boolean[length];
+        noteable = new boolean[length];
+        stackable = new boolean[length];
+        unNotedId = new int[length];
+        notedId = new int[length];
+        membersItem = new boolean[length];
+        specialStorePrice = new int[length];
+        generalStorePrice = new int[length];
+        lowAlchValue = new int[length];
+        highAlchValue = new int[length];
+        weight = new double[length];
+        bonus = new int[length * BONUSES];
+    }
+
+    /**
+     * Creates a view for every item that has a definition.
+     *
+     * @param exists
+     *            if every item has a definition.
+     */
+    private static void createViews(boolean[] exists) {
+        ItemDefinition[] views = new ItemDefinition[exists.length];
+
+        for (int i = 0; i < exists.length; i++) {
+            if (exists[i]) {
+                views[i] = new ItemDefinition(i);
+            }
+        }
+
+        definitions = views;
     }
 
     /**
-     * @param itemId
-     *            the itemId to set.
+     * Gets if an item is stackable.
+     *
+     * @param id
+     *            the item id.
+     * @return true if the item is stackable.
      */
-    public void setItemId(int itemId) {
-        this.itemId = itemId;
+    public static boolean isStackable(int id) {
+        return stackable[id];
     }
 
     /**
-     * @return the itemName.
+     * Gets if an item is noted.
+     *
+     * @param id
+     *            the item id.
+     * @return true if the item is noted.
      */
-    public String getItemName() {
-        return itemName;
+    public static boolean isNoted(int id) {
+        return noted[id];
     }
 
     /**
-     * @param itemName
-     *            the itemName to set.
+     * Gets the unnoted id of an item.
+     *
+     * @param id
+     *            the item id.
+     * @return the unnoted id.
      */
-    public void setItemName(String itemName) {
-        this.itemName = itemName;
+    public static int getUnNotedId(int id) {
+        return unNotedId[id];
     }
 
     /**
-     * @return the itemDescription.
+     * Gets the noted id of an item.
+     *
+     * @param id
+     *            the item id.
+     * @return the noted id.
      */
-    public String getItemDescription() {
-        return itemDescription;
+    public static int getNotedId(int id) {
+        return notedId[id];
     }
 
     /**
-     * @param itemDescription
-     *            the itemDescription to set.
+     * Gets the equipment slot of an item.
+     *
+     * @param id
+     *            the item id.
+     * @return the equipment slot.
      */
-    public void setItemDescription(String itemDescription) {
-        this.itemDescription = itemDescription;
+    public static int getEquipmentSlot(int id) {
+        return equipmentSlot[id];
     }
 
     /**
-     * @return the equipmentSlot.
+     * Gets the general store price of an item.
+     *
+     * @param id
+     *            the item id.
+     * @return the general store price.
      */
-    public int getEquipmentSlot() {
-        return equipmentSlot;
+    public static int getGeneralStorePrice(int id) {
+        return generalStorePrice[id];
     }
 
     /**
-     * @param equipmentSlot
-     *            the equipmentSlot to set.
+     * Gets the special store price of an item.
+     *
+     * @param id
+     *            the item id.
+     * @return the special store price.
      */
-    public void setEquipmentSlot(int equipmentSlot) {
-        this.equipmentSlot = equipmentSlot;
+    public static int getSpecialStorePrice(int id) {
+        return specialStorePrice[id];
     }
 
     /**
-     * @return the isNoted.
+     * Gets a single bonus of an item.
+     *
+     * @param id
+     *            the item id.
+     * @param index
+     *            the index of the bonus.
+     * @return the bonus.
      */
-    public boolean isNoted() {
-        return isNoted;
+    public static int getBonus(int id, int index) {
+        return bonus[id * BONUSES + index];
     }
 
     /**
-     * @param isNoted
-     *            the isNoted to set.
+     * Gets the name of an item.
+     *
+     * @param id
+     *            the item id.
+     * @return the name.
      */
-    public void setNoted(boolean isNoted) {
-        this.isNoted = isNoted;
+    public static String getItemName(int id) {
+        return itemName[id];
     }
 
     /**
-     * @return the isNoteable.
+     * @return the itemId.
      */
-    public boolean isNoteable() {
-        return isNoteable;
+    public int getItemId() {
+        return itemId;
     }
 
     /**
-     * @param isNoteable
-     *            the isNoteable to set.
+     * @return the itemName.
      */
-    public void setNoteable(boolean isNoteable) {
-        this.isNoteable = isNoteable;
+    public String getItemName() {
+        return itemName[itemId];
     }
 
     /**
-     * @return the isStackable.
+     * @return the itemDescription.
      */
-    public boolean isStackable() {
-        return isStackable;
+    public String getItemDescription() {
+        return itemDescription[itemId];
     }
 
     /**
-     * @param isStackable
-     *            the isStackable to set.
+     * @return the equipmentSlot.
      */
-    public void setStackable(boolean isStackable) {
-        this.isStackable = isStackable;
+    public int getEquipmentSlot() {
+        return equipmentSlot[itemId];
     }
 
     /**
-     * @return the unNotedId.
+     * @return the isNoted.
      */
-    public int getUnNotedId() {
-        return unNotedId;
+    public boolean isNoted() {
+        return noted[itemId];
     }
 
     /**
-     * @param unNotedId
-     *            the unNotedId to set.
+     * @return the isNoteable.
      */
-    public void setUnNotedId(int unNotedId) {
-        this.unNotedId = unNotedId;
+    public boolean isNoteable() {
+        return noteable[itemId];
     }
 
     /**
-     * @return the notedId.
+     * @return the isStackable.
      */
-    public int getNotedId() {
-        return notedId;
+    public boolean isStackable() {
+        return stackable[itemId];
     }
 
     /**
-     * @param notedId
-     *            the notedId to set.
+     * @return the unNotedId.
      */
-    public void setNotedId(int notedId) {
-        this.notedId = notedId;
+    public int getUnNotedId() {
+        return unNotedId[itemId];
     }
 
     /**
-     * @return the membersItem.
+     * @return the notedId.
      */
-    public boolean isMembersItem() {
-        return membersItem;
+    public int getNotedId() {
+        return notedId[itemId];
     }
 
     /**
-     * @param membersItem
-     *            the membersItem to set.
+     * @return the membersItem.
      */
-    public void setMembersItem(boolean membersItem) {
-        this.membersItem = membersItem;
+    public boolean isMembersItem() {
+        return membersItem[itemId];
     }
 
     /**
      * @return the specialStorePrice.
      */
     public int getSpecialStorePrice() {
-        return specialStorePrice;
-    }
-
-    /**
-     * @param specialStorePrice
-     *            the specialStorePrice to set.
-     */
-    public void setSpecialStorePrice(int specialStorePrice) {
-        this.specialStorePrice = specialStorePrice;
+        return specialStorePrice[itemId];
     }
 
     /**
      * @return the generalStorePrice.
      */
     public int getGeneralStorePrice() {
-        return generalStorePrice;
-    }
-
-    /**
-     * @param generalStorePrice
-     *            the generalStorePrice to set.
-     */
-    public void setGeneralStorePrice(int generalStorePrice) {
-        this.generalStorePrice = generalStorePrice;
+        return generalStorePrice[itemId];
     }
 
     /**
      * @return the lowAlchValue.
      */
     public int getLowAlchValue() {
-        return lowAlchValue;
-    }
-
-    /**
-     * @param lowAlchValue
-     *            the lowAlchValue to set.
-     */
-    public void setLowAlchValue(int lowAlchValue) {
-        this.lowAlchValue = lowAlchValue;
+        return lowAlchValue[itemId];
     }
 
     /**
      * @return the highAlchValue.
      */
     public int getHighAlchValue() {
-        return highAlchValue;
-    }
-
-    /**
-     * @param highAlchValue
-     *            the highAlchValue to set.
-     */
-    public void setHighAlchValue(int highAlchValue) {
-        this.highAlchValue = highAlchValue;
+        return highAlchValue[itemId];
     }
 
     /**
      * @return the weight.
      */
     public double getWeight() {
-        return weight;
-    }
-
-    /**
-     * @param weight
-     *            the weight to set.
-     */
-    public void setWeight(double weight) {
-        this.weight = weight;
+        return weight[itemId];
     }
 
     /**
+     * Gets a copy of the bonuses of this item. Use
+     * {@link #getBonus(int, int)} to read a single bonus without copying.
+     *
      * @return the bonus.
      */
     public int[] getBonus() {
-        return bonus;
-    }
-
-    /**
-     * @param bonus
-     *            the bonus to set.
-     */
-    public void setBonus(int[] bonus) {
-        this.bonus = bonus;
+        return Arrays.copyOfRange(bonus, itemId * BONUSES, (itemId + 1) * BONUSES);
     }
 
     /**
@@ -399,15 +548,7 @@ public class ItemDefinition {
         return definitions;
     }
 
-    /**
-     * @param definitions
-     *            the definitions to set.
-     */
-    public static void setDefinitions(ItemDefinition[] definitions) {
-        ItemDefinition.definitions = definitions;
-    }
-
     public boolean isTwoHanded() {
         return Misc.getIs2H()[itemId];
     }
-}
\ No newline at end of file
+}
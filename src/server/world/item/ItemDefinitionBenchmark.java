@@ -0,0 +1,253 @@
+package server.world.item;
+
+import java.util.Random;
+
+/**
+ * A tool that compares reading item definitions from the arrays in
+ * {@link ItemDefinition} against reading them from a separate object for
+ * every item, the way definitions used to be stored. The objects are created
+ * in a random order with garbage in between, like they end up on the heap
+ * after being parsed, and both layouts are read the way the hot paths read
+ * them: checking if items are stackable, and adding up the bonuses of worn
+ * equipment. This should be run from the same directory as the server. <br>
+ * <br>
+ *
+ * Usage: <code>ItemDefinitionBenchmark [rounds]</code>
+ *
+ * @author lare96
+ */
+public final class ItemDefinitionBenchmark {
+
+    /**
+     * The amount of item ids looked up every round.
+     */
+    private static final int LOOKUPS = 1 << 20;
+
+    /**
+     * The amount of items worn by every player.
+     */
+    private static final int EQUIPMENT = 14;
+
+    /**
+     * This class cannot be instantiated.
+     */
+    private ItemDefinitionBenchmark() {
+
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args
+     *            optionally the amount of rounds to time.
+     * @throws Exception
+     *             if the item definitions can't be loaded.
+     */
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        ItemDefinition.load();
+
+        ItemDefinition[] definitions = ItemDefinition.getDefinitions();
+        OldDefinition[] objects = new OldDefinition[definitions.length];
+        Random random = new Random(317);
+
+        /** Create the objects in a random order, with garbage in between. */
+        byte[][] garbage = new byte[definitions.length][];
+        long garbageBytes = 0;
+        int[] order = new int[definitions.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+        for (int id : order) {
+            if (definitions[id] != null) {
+                objects[id] = new OldDefinition(definitions[id]);
+                garbage[id] = new byte[64 + random.nextInt(256)];
+                garbageBytes += garbage[id].length;
+            }
+        }
+
+        int[] ids = new int[LOOKUPS];
+        for (int i = 0; i < ids.length; i++) {
+            do {
+                ids[i] = random.nextInt(definitions.length);
+            } while (definitions[ids[i]] == null);
+        }
+
+        long objectStackable = 0, arrayStackable = 0, objectBonus = 0, arrayBonus = 0;
+        int check = 0;
+
+        for (int round = -5; round < rounds; round++) {
+            long start = System.nanoTime();
+            check += objectStackable(objects, ids);
+            long middle = System.nanoTime();
+            check += arrayStackable(ids);
+            long end = System.nanoTime();
+
+            long bonusStart = System.nanoTime();
+            check += objectBonus(objects, ids);
+            long bonusMiddle = System.nanoTime();
+            check += arrayBonus(ids);
+            long bonusEnd = System.nanoTime();
+
+            /** The first few rounds are only for warming up. */
+            if (round >= 0) {
+                objectStackable += middle - start;
+                arrayStackable += end - middle;
+                objectBonus += bonusMiddle - bonusStart;
+                arrayBonus += bonusEnd - bonusMiddle;
+            }
+        }
+
+        System.out.println("stackable: objects " + (objectStackable / rounds / (double) LOOKUPS) + " ns, arrays " + (arrayStackable / rounds / (double) LOOKUPS) + " ns per lookup");
+        System.out.println("bonuses:   objects " + (objectBonus / rounds / (double) (LOOKUPS / EQUIPMENT)) + " ns, arrays " + (arrayBonus / rounds / (double) (LOOKUPS / EQUIPMENT)) + " ns per player");
+        System.out.println("(checksum " + check + ", " + garbageBytes + " bytes of garbage, " + garbage.length + ")");
+    }
+
+    /**
+     * Counts the stackable items by reading the objects.
+     *
+     * @param objects
+     *            the objects.
+     * @param ids
+     *            the items to look up.
+     * @return the amount of stackable items.
+     */
+    private static int objectStackable(OldDefinition[] objects, int[] ids) {
+        int stackable = 0;
+
+        for (int id : ids) {
+            if (objects[id].stackable) {
+                stackable++;
+            }
+        }
+        return stackable;
+    }
+
+    /**
+     * Counts the stackable items by reading the arrays.
+     *
+     * @param ids
+     *            the items to look up.
+     * @return the amount of stackable items.
+     */
+    private static int arrayStackable(int[] ids) {
+        int stackable = 0;
+
+        for (int id : ids) {
+            if (ItemDefinition.isStackable(id)) {
+                stackable++;
+            }
+        }
+        return stackable;
+    }
+
+    /**
+     * Adds up the bonuses of every group of worn items by reading the
+     * objects.
+     *
+     * @param objects
+     *            the objects.
+     * @param ids
+     *            the items to look up.
+     * @return the total of all the bonuses.
+     */
+    private static int objectBonus(OldDefinition[] objects, int[] ids) {
+        int[] bonus = new int[ItemDefinition.BONUSES];
+        int total = 0;
+
+        for (int player = 0; player + EQUIPMENT <= ids.length; player += EQUIPMENT) {
+            for (int i = 0; i < bonus.length; i++) {
+                bonus[i] = 0;
+            }
+
+            for (int slot = 0; slot < EQUIPMENT; slot++) {
+                for (int i = 0; i < bonus.length; i++) {
+                    bonus[i] += objects[ids[player + slot]].bonus[i];
+                }
+            }
+
+            total += bonus[player % bonus.length];
+        }
+        return total;
+    }
+
+    /**
+     * Adds up the bonuses of every group of worn items by reading the arrays.
+     *
+     * @param ids
+     *            the items to look up.
+     * @return the total of all the bonuses.
+     */
+    private static int arrayBonus(int[] ids) {
+        int[] bonus = new int[ItemDefinition.BONUSES];
+        int total = 0;
+
+        for (int player = 0; player + EQUIPMENT <= ids.length; player += EQUIPMENT) {
+            for (int i = 0; i < bonus.length; i++) {
+                bonus[i] = 0;
+            }
+
+            for (int slot = 0; slot < EQUIPMENT; slot++) {
+                for (int i = 0; i < bonus.length; i++) {
+                    bonus[i] += ItemDefinition.getBonus(ids[player + slot], i);
+                }
+            }
+
+            total += bonus[player % bonus.length];
+        }
+        return total;
+    }
+
+    /**
+     * An item definition stored the way definitions used to be stored.
+     *
+     * @author lare96
+     */
+    private static final class OldDefinition {
+
+        /**
+         * The item name.
+         */
+        private final String name;
+
+        /**
+         * If this item is stackable.
+         */
+        private final boolean stackable;
+
+        /**
+         * The noted id of this item.
+         */
+        private final int notedId;
+
+        /**
+         * The general store price.
+         */
+        private final int generalStorePrice;
+
+        /**
+         * The item bonuses.
+         */
+        private final int[] bonus;
+
+        /**
+         * Create a new {@link OldDefinition}.
+         *
+         * @param definition
+         *            the definition to copy.
+         */
+        public OldDefinition(ItemDefinition definition) {
+            this.name = definition.getItemName();
+            this.stackable = definition.isStackable();
+            this.notedId = definition.getNotedId();
+            this.generalStorePrice = definition.getGeneralStorePrice();
+            this.bonus = definition.getBonus();
+        }
+    }
+}
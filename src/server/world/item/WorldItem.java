@@ -2,16 +2,14 @@ package server.world.item;
 
 import java.io.FileNotFoundException;
 import java.io.FileReader;
-import java.util.ArrayList;
-import java.util.List;
 
-import server.logic.GameLogic;
 import server.logic.task.Task;
 import server.logic.task.Task.Time;
 import server.util.Misc;
 import server.world.World;
 import server.world.entity.player.Player;
 import server.world.map.Position;
+import server.world.map.RegionIndex;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -34,11 +32,6 @@ import com.google.gson.JsonSyntaxException;
  */
 public class WorldItem {
 
-    /**
-     * A list to keep track of all the world items.
-     */
-    private static List<WorldItem> items = new ArrayList<WorldItem>();
-
     /**
      * The item.
      */
@@ -96,8 +89,8 @@ public class WorldItem {
                         setState(State.SEEN_BY_EVERYONE);
                     case SEEN_BY_EVERYONE:
                         if (!isPickedUp()) {
-                            for (Player p : World.getPlayers()) {
-                                if (p == null || p.getUsername().equals(getPlayer().getUsername())) {
+                            for (Player p : World.current().getRegions().getPlayers(position, RegionIndex.MAP_DISTANCE)) {
+                                if (p.getUsername().equals(getPlayer().getUsername())) {
                                     continue;
                                 }
 
@@ -112,11 +105,7 @@ public class WorldItem {
                         break;
                     case SEEN_BY_NO_ONE:
                         if (!isPickedUp()) {
-                            for (Player p : World.getPlayers()) {
-                                if (p == null) {
-                                    continue;
-                                }
-
+                            for (Player p : World.current().getRegions().getPlayers(position, RegionIndex.MAP_DISTANCE)) {
                                 p.getServerPacketBuilder().removeGroundItem(new WorldItem(item, position, player));
                             }
 
@@ -127,11 +116,7 @@ public class WorldItem {
                         break;
                     case STATIC:
                         if (isPickedUp()) {
-                            for (Player p : World.getPlayers()) {
-                                if (p == null) {
-                                    continue;
-                                }
-
+                            for (Player p : World.current().getRegions().getPlayers(position, RegionIndex.MAP_DISTANCE)) {
                                 p.getServerPacketBuilder().sendGroundItem(new WorldItem(item, position, player));
                             }
 
@@ -175,8 +160,8 @@ public class WorldItem {
      */
     public void register() {
         getPlayer().getServerPacketBuilder().sendGroundItem(this);
-        GameLogic.getSingleton().submit(this.getTask());
-        items.add(this);
+        World.current().getEngine().submit(this.getTask());
+        World.current().getItems().add(this);
     }
 
     /**
@@ -184,7 +169,7 @@ public class WorldItem {
      */
     public void unregister() {
         this.getTask().cancel();
-        items.remove(this);
+        World.current().getItems().remove(this);
     }
 
     /**
@@ -206,8 +191,8 @@ public class WorldItem {
                         item.setState(State.SEEN_BY_EVERYONE);
                     case SEEN_BY_EVERYONE:
                         if (!item.isPickedUp()) {
-                            for (Player p : World.getPlayers()) {
-                                if (p == null || p.getUsername().equals(item.getPlayer().getUsername())) {
+                            for (Player p : World.current().getRegions().getPlayers(item.getPosition(), RegionIndex.MAP_DISTANCE)) {
+                                if (p.getUsername().equals(item.getPlayer().getUsername())) {
                                     continue;
                                 }
 
@@ -222,11 +207,7 @@ public class WorldItem {
                         break;
                     case SEEN_BY_NO_ONE:
                         if (!item.isPickedUp()) {
-                            for (Player p : World.getPlayers()) {
-                                if (p == null) {
-                                    continue;
-                                }
-
+                            for (Player p : World.current().getRegions().getPlayers(item.getPosition(), RegionIndex.MAP_DISTANCE)) {
                                 p.getServerPacketBuilder().removeGroundItem(new WorldItem(item.getItem(), item.getPosition(), item.getPlayer()));
                             }
 
@@ -237,17 +218,13 @@ public class WorldItem {
                         break;
                     case STATIC:
                         if (item.isPickedUp()) {
-                            for (Player p : World.getPlayers()) {
-                                if (p == null) {
-                                    continue;
-                                }
-
+                            for (Player p : World.current().getRegions().getPlayers(item.getPosition(), RegionIndex.MAP_DISTANCE)) {
                                 p.getServerPacketBuilder().sendGroundItem(new WorldItem(item.getItem(), item.getPosition(), item.getPlayer()));
                             }
 
                             item.setPlayer(null);
                             item.setPickedUp(false);
-                            items.add(item);
+                            World.current().getItems().add(item);
                             this.cancel();
                         }
                         break;
@@ -259,15 +236,11 @@ public class WorldItem {
             }
         });
 
-        for (Player p : World.getPlayers()) {
-            if (p == null) {
-                continue;
-            }
-
+        for (Player p : World.current().getRegions().getPlayers(item.getPosition(), RegionIndex.MAP_DISTANCE)) {
             p.getServerPacketBuilder().sendGroundItem(item);
         }
 
-        items.add(item);
+        World.current().getItems().add(item);
     }
 
     /**
@@ -277,7 +250,7 @@ public class WorldItem {
      *            the player to make the items reappear for.
      */
     public static void load(Player player) {
-        for (final WorldItem w : items) {
+        for (final WorldItem w : World.current().getItems()) {
             if (w == null) {
                 continue;
             }
@@ -303,7 +276,7 @@ public class WorldItem {
      *            the player to remove the items for.
      */
     public static void removeAllHeight(Player player) {
-        for (final WorldItem w : items) {
+        for (final WorldItem w : World.current().getItems()) {
             if (w == null) {
                 continue;
             }
@@ -326,11 +299,7 @@ public class WorldItem {
                 if (!this.isPickedUp()) {
                     this.setPickedUp(true);
 
-                    for (Player p : World.getPlayers()) {
-                        if (p == null) {
-                            continue;
-                        }
-
+                    for (Player p : World.current().getRegions().getPlayers(getPosition(), RegionIndex.MAP_DISTANCE)) {
                         p.getServerPacketBuilder().removeGroundItem(this);
                     }
 
@@ -350,19 +319,15 @@ public class WorldItem {
                 if (!this.isPickedUp()) {
                     this.setPickedUp(true);
 
-                    for (Player p : World.getPlayers()) {
-                        if (p == null) {
-                            continue;
-                        }
-
+                    for (Player p : World.current().getRegions().getPlayers(getPosition(), RegionIndex.MAP_DISTANCE)) {
                         p.getServerPacketBuilder().removeGroundItem(this);
                     }
 
-                    items.remove(this);
+                    World.current().getItems().remove(this);
                     pickup.getInventory().addItem(this.getItem());
 
                     if (this.isRespawns()) {
-                        GameLogic.getSingleton().submit(this.getTask());
+                        World.current().getEngine().submit(this.getTask());
                     }
                 } else {
                     pickup.getServerPacketBuilder().sendMessage("Too late!");
@@ -383,7 +348,7 @@ public class WorldItem {
      * @return the item (if it exists).
      */
     public static WorldItem itemExists(WorldItem item) {
-        for (WorldItem w : items) {
+        for (WorldItem w : World.current().getItems()) {
             if (w == null) {
                 continue;
             }
@@ -404,7 +369,7 @@ public class WorldItem {
      * @return if there are any items on this position.
      */
     public static boolean itemExistsOnPosition(Position position) {
-        for (WorldItem w : items) {
+        for (WorldItem w : World.current().getItems()) {
             if (w == null) {
                 continue;
             }
@@ -0,0 +1,243 @@
+package server.world.map;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import server.world.entity.Entity;
+import server.world.entity.mob.Mob;
+import server.world.entity.player.Player;
+
+/**
+ * A spatial index that keeps track of which 64x64 map region every registered
+ * entity is standing in, with a separate grid for every height level. Rather
+ * than scanning every slot in the world, anything looking for entities near a
+ * position only has to look through the few regions that overlap the area it
+ * cares about. <br>
+ * <br>
+ *
+ * Entities are added when registered, removed when unregistered and moved
+ * between regions whenever their position changes. The results returned are
+ * only candidates; the caller is still expected to check the exact distance
+ * and height of every entity returned. Every world has its own index, which
+ * should only ever be modified from the thread of that world.
+ *
+ * @author lare96
+ */
+public final class RegionIndex {
+
+    /**
+     * The distance that covers every position an entity can be seen from, as
+     * decided by {@link Position#isViewableFrom(Position)}.
+     */
+    public static final int VIEW_DISTANCE = 15;
+
+    /**
+     * The distance that covers the whole map area a client has loaded around
+     * itself. Anything further away than this is sent again when the client
+     * loads a new map area.
+     */
+    public static final int MAP_DISTANCE = 104;
+
+    /**
+     * The amount of bits used to turn a coordinate into a region coordinate.
+     */
+    private static final int REGION_BITS = 6;
+
+    /**
+     * The amount of regions along a single axis.
+     */
+    private static final int REGIONS = 256;
+
+    /**
+     * The amount of height levels with their own grid. Higher levels share the
+     * grid of the level they wrap around to.
+     */
+    private static final int HEIGHT_LEVELS = 4;
+
+    /**
+     * Every region on every height level, created the first time an entity is
+     * placed in them.
+     */
+    private final Region[] regions = new Region[HEIGHT_LEVELS * REGIONS * REGIONS];
+
+    /**
+     * Create a new {@link RegionIndex}.
+     */
+    public RegionIndex() {
+
+    }
+
+    /**
+     * Adds an entity to the region it is standing in.
+     *
+     * @param entity
+     *            the entity to add.
+     */
+    public void add(Entity entity) {
+        if (entity.getIndexedRegion() != -1) {
+            remove(entity);
+        }
+
+        int index = indexOf(entity.getPosition().getX(), entity.getPosition().getY(), entity.getPosition().getZ());
+        Region region = regions[index];
+
+        if (region == null) {
+            region = new Region();
+            regions[index] = region;
+        }
+
+        if (entity instanceof Player) {
+            region.players.add((Player) entity);
+        } else if (entity instanceof Mob) {
+            region.npcs.add((Mob) entity);
+        }
+
+        entity.setIndexedRegion(index);
+    }
+
+    /**
+     * Removes an entity from the region it was last placed in.
+     *
+     * @param entity
+     *            the entity to remove.
+     */
+    public void remove(Entity entity) {
+        if (entity.getIndexedRegion() == -1) {
+            return;
+        }
+
+        Region region = regions[entity.getIndexedRegion()];
+
+        if (entity instanceof Player) {
+            region.players.remove(entity);
+        } else if (entity instanceof Mob) {
+            region.npcs.remove(entity);
+        }
+
+        entity.setIndexedRegion(-1);
+    }
+
+    /**
+     * Moves an entity into the region it is now standing in, if it has left
+     * the region it was last placed in. Entities that aren't indexed are
+     * ignored.
+     *
+     * @param entity
+     *            the entity that has moved.
+     */
+    public void update(Entity entity) {
+        if (entity.getIndexedRegion() == -1) {
+            return;
+        }
+
+        if (entity.getIndexedRegion() != indexOf(entity.getPosition().getX(), entity.getPosition().getY(), entity.getPosition().getZ())) {
+            add(entity);
+        }
+    }
+
+    /**
+     * Gets every player standing in a region that overlaps the square of the
+     * argued distance around a position, on the same height level.
+     *
+     * @param position
+     *            the center of the square.
+     * @param distance
+     *            the distance from the center to the edges of the square.
+     * @return the players found.
+     */
+    public List<Player> getPlayers(Position position, int distance) {
+        List<Player> players = new ArrayList<Player>();
+
+        for (int x = (position.getX() - distance) >> REGION_BITS; x <= (position.getX() + distance) >> REGION_BITS; x++) {
+            for (int y = (position.getY() - distance) >> REGION_BITS; y <= (position.getY() + distance) >> REGION_BITS; y++) {
+                Region region = getRegion(x, y, position.getZ());
+
+                if (region != null) {
+                    players.addAll(region.players);
+                }
+            }
+        }
+        return players;
+    }
+
+    /**
+     * Gets every NPC standing in a region that overlaps the square of the
+     * argued distance around a position, on the same height level.
+     *
+     * @param position
+     *            the center of the square.
+     * @param distance
+     *            the distance from the center to the edges of the square.
+     * @return the NPCs found.
+     */
+    public List<Mob> getNpcs(Position position, int distance) {
+        List<Mob> npcs = new ArrayList<Mob>();
+
+        for (int x = (position.getX() - distance) >> REGION_BITS; x <= (position.getX() + distance) >> REGION_BITS; x++) {
+            for (int y = (position.getY() - distance) >> REGION_BITS; y <= (position.getY() + distance) >> REGION_BITS; y++) {
+                Region region = getRegion(x, y, position.getZ());
+
+                if (region != null) {
+                    npcs.addAll(region.npcs);
+                }
+            }
+        }
+        return npcs;
+    }
+
+    /**
+     * Gets a region by its region coordinates.
+     *
+     * @param regionX
+     *            the region x coordinate.
+     * @param regionY
+     *            the region y coordinate.
+     * @param z
+     *            the height level.
+     * @return the region, or <code>null</code> if it is out of bounds or
+     *         nothing has ever been placed in it.
+     */
+    private Region getRegion(int regionX, int regionY, int z) {
+        if (regionX < 0 || regionY < 0 || regionX >= REGIONS || regionY >= REGIONS) {
+            return null;
+        }
+
+        return regions[((z & (HEIGHT_LEVELS - 1)) * REGIONS + regionX) * REGIONS + regionY];
+    }
+
+    /**
+     * Gets the index of the region containing a position.
+     *
+     * @param x
+     *            the x coordinate.
+     * @param y
+     *            the y coordinate.
+     * @param z
+     *            the height level.
+     * @return the index of the region.
+     */
+    private static int indexOf(int x, int y, int z) {
+        int regionX = (x >> REGION_BITS) & (REGIONS - 1);
+        int regionY = (y >> REGION_BITS) & (REGIONS - 1);
+        return ((z & (HEIGHT_LEVELS - 1)) * REGIONS + regionX) * REGIONS + regionY;
+    }
+
+    /**
+     * A single region holding the entities standing in it, in the order they
+     * entered it.
+     *
+     * @author lare96
+     */
+    private static final class Region {
+
+        /**
+         * The players in this region.
+         */
+        private final List<Player> players = new ArrayList<Player>();
+
+        /**
+         * The NPCs in this region.
+         */
+        private final List<Mob> npcs = new ArrayList<Mob>();
+    }
+}
@@ -2,7 +2,6 @@ package server.world.object;
 
 import java.io.FileNotFoundException;
 import java.io.FileReader;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
 
@@ -10,6 +9,7 @@ import server.util.Misc;
 import server.world.World;
 import server.world.entity.player.Player;
 import server.world.map.Position;
+import server.world.map.RegionIndex;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -26,11 +26,6 @@ import com.google.gson.JsonSyntaxException;
  */
 public class WorldObject {
 
-    /**
-     * A set to keep track of the objects in the rs2 world.
-     */
-    private static Set<WorldObject> objects = new HashSet<WorldObject>();
-
     /**
      * The id of the object.
      */
@@ -141,7 +136,7 @@ public class WorldObject {
 
             int type = reader.get("type").getAsInt();
 
-            objects.add(new WorldObject(id, new Position(x, y, z), face, type));
+            World.current().getObjects().add(new WorldObject(id, new Position(x, y, z), face, type));
             parsed++;
         }
 
@@ -160,7 +155,7 @@ public class WorldObject {
          * Check if an object is already on this position, and if so it removes
          * the object from the database before spawning the new one over it.
          */
-        for (Iterator<WorldObject> iter = objects.iterator(); iter.hasNext();) {
+        for (Iterator<WorldObject> iter = World.current().getObjects().iterator(); iter.hasNext();) {
             WorldObject o = iter.next();
 
             if (o == null) {
@@ -173,14 +168,10 @@ public class WorldObject {
         }
 
         /** Register object for future players. */
-        objects.add(object);
+        World.current().getObjects().add(object);
 
         /** Add object for existing players (in the region) */
-        for (Player player : World.getPlayers()) {
-            if (player == null) {
-                continue;
-            }
-
+        for (Player player : World.current().getRegions().getPlayers(object.getPosition(), 60)) {
             if (player.getPosition().withinDistance(object.getPosition(), 60)) {
                 player.getServerPacketBuilder().sendObject(object);
             }
@@ -196,12 +187,12 @@ public class WorldObject {
      */
     public static void unregister(WorldObject object) {
         /** Can't remove an object that isn't there. */
-        if (!objects.contains(object)) {
+        if (!World.current().getObjects().contains(object)) {
             return;
         }
 
         /** Unregister object for future players. */
-        for (Iterator<WorldObject> iter = objects.iterator(); iter.hasNext();) {
+        for (Iterator<WorldObject> iter = World.current().getObjects().iterator(); iter.hasNext();) {
             WorldObject o = iter.next();
 
             if (o == null) {
@@ -214,11 +205,7 @@ public class WorldObject {
         }
 
         /** Remove object for all existing players. */
-        for (Player player : World.getPlayers()) {
-            if (player == null) {
-                continue;
-            }
-
+        for (Player player : World.current().getRegions().getPlayers(object.getPosition(), RegionIndex.MAP_DISTANCE)) {
             player.getServerPacketBuilder().removeObject(object);
         }
     }
@@ -233,11 +220,7 @@ public class WorldObject {
     public static void unregisterNoDatabase(WorldObject object) {
 
         /** Remove object for all existing players. */
-        for (Player player : World.getPlayers()) {
-            if (player == null) {
-                continue;
-            }
-
+        for (Player player : World.current().getRegions().getPlayers(object.getPosition(), RegionIndex.MAP_DISTANCE)) {
             player.getServerPacketBuilder().removeObject(object);
         }
     }
@@ -251,7 +234,7 @@ public class WorldObject {
     public static void load(Player player) {
 
         /** Update existing objects for player in region. */
-        for (WorldObject object : objects) {
+        for (WorldObject object : World.current().getObjects()) {
             if (object == null) {
                 continue;
             }
@@ -270,7 +253,7 @@ public class WorldObject {
      *            the player to remove the items for.
      */
     public static void removeAllHeight(Player player) {
-        for (final WorldObject w : objects) {
+        for (final WorldObject w : World.current().getObjects()) {
             if (w == null) {
                 continue;
             }
@@ -353,9 +336,9 @@ public class WorldObject {
     }
 
     /**
-     * @return the objects.
+     * @return the objects in the current world.
      */
     public static Set<WorldObject> getObjects() {
-        return objects;
+        return World.current().getObjects();
     }
 }
@@ -3,7 +3,6 @@ package server.world.shop;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 
-import server.logic.GameLogic;
 import server.logic.task.Task;
 import server.logic.task.Task.Time;
 import server.net.buffer.PacketBuffer;
@@ -12,6 +11,7 @@ import server.world.World;
 import server.world.entity.player.Player;
 import server.world.item.Container;
 import server.world.item.Item;
+import server.world.item.ItemDefinition;
 import server.world.item.Container.Type;
 
 import com.google.gson.Gson;
@@ -35,11 +35,6 @@ import com.google.gson.JsonSyntaxException;
  */
 public class Shop {
 
-    /**
-     * An array of active shops.
-     */
-    private static Shop[] shops = new Shop[10];
-
     /**
      * The shop id.
      */
@@ -167,12 +162,12 @@ public class Shop {
          * buy this item.
          */
         if (this.getCurrency() == Currency.COINS) {
-            if (!(player.getInventory().getItemContainer().getCount(this.getCurrency().getItemId()) >= (item.getDefinition().getGeneralStorePrice() * item.getAmount()))) {
+            if (!(player.getInventory().getItemContainer().getCount(this.getCurrency().getItemId()) >= (ItemDefinition.getGeneralStorePrice(item.getId()) * item.getAmount()))) {
                 player.getServerPacketBuilder().sendMessage("You do not have enough coins to buy this item.");
                 return;
             }
         } else {
-            if (!(player.getInventory().getItemContainer().getCount(this.getCurrency().getItemId()) >= (item.getDefinition().getSpecialStorePrice() * item.getAmount()))) {
+            if (!(player.getInventory().getItemContainer().getCount(this.getCurrency().getItemId()) >= (ItemDefinition.getSpecialStorePrice(item.getId()) * item.getAmount()))) {
                 player.getServerPacketBuilder().sendMessage("You do not have enough " + this.getCurrency().name().toLowerCase().replaceAll("_", " ") + " to buy this item.");
                 return;
             }
@@ -200,13 +195,13 @@ public class Shop {
         }
 
         /** Buy the item. */
-        if (player.getInventory().getItemContainer().freeSlots() >= item.getAmount() && !item.getDefinition().isStackable() || player.getInventory().getItemContainer().freeSlots() >= 1 && item.getDefinition().isStackable()) {
+        if (player.getInventory().getItemContainer().freeSlots() >= item.getAmount() && !ItemDefinition.isStackable(item.getId()) || player.getInventory().getItemContainer().freeSlots() >= 1 && ItemDefinition.isStackable(item.getId())) {
             this.getShop().getById(item.getId()).decrementAmountBy(item.getAmount());
 
             if (this.getCurrency() == Currency.COINS) {
-                player.getInventory().removeItem(new Item(this.getCurrency().getItemId(), item.getAmount() * item.getDefinition().getGeneralStorePrice()));
+                player.getInventory().removeItem(new Item(this.getCurrency().getItemId(), item.getAmount() * ItemDefinition.getGeneralStorePrice(item.getId())));
             } else {
-                player.getInventory().removeItem(new Item(this.getCurrency().getItemId(), item.getAmount() * item.getDefinition().getSpecialStorePrice()));
+                player.getInventory().removeItem(new Item(this.getCurrency().getItemId(), item.getAmount() * ItemDefinition.getSpecialStorePrice(item.getId())));
             }
 
             player.getInventory().addItem(item);
@@ -219,7 +214,7 @@ public class Shop {
         player.getServerPacketBuilder().sendUpdateItems(3823, player.getInventory().getItemContainer().toArray());
 
         /** Update the shop for anyone who has it open. */
-        for (Player p : World.getPlayers()) {
+        for (Player p : World.current().getPlayers()) {
             if (p == null) {
                 continue;
             }
@@ -294,9 +289,9 @@ public class Shop {
          * If you try and sell more then you have, it sets the amount to what
          * you have.
          */
-        if (item.getAmount() > player.getInventory().getItemContainer().getCount(item.getId()) && !item.getDefinition().isStackable()) {
+        if (item.getAmount() > player.getInventory().getItemContainer().getCount(item.getId()) && !ItemDefinition.isStackable(item.getId())) {
             item.setAmount(player.getInventory().getItemContainer().getCount(item.getId()));
-        } else if (item.getAmount() > player.getInventory().getItemContainer().getItem(fromSlot).getAmount() && item.getDefinition().isStackable()) {
+        } else if (item.getAmount() > player.getInventory().getItemContainer().getItem(fromSlot).getAmount() && ItemDefinition.isStackable(item.getId())) {
             item.setAmount(player.getInventory().getItemContainer().getItem(fromSlot).getAmount());
         }
 
@@ -309,7 +304,7 @@ public class Shop {
         player.getServerPacketBuilder().sendUpdateItems(3823, player.getInventory().getItemContainer().toArray());
 
         /** Update the shop for anyone who has it open. */
-        for (Player p : World.getPlayers()) {
+        for (Player p : World.current().getPlayers()) {
             if (p == null) {
                 continue;
             }
@@ -367,9 +362,9 @@ public class Shop {
 
         /** Send the value of the item based on the currency. */
         if (this.getCurrency() == Currency.COINS) {
-            player.getServerPacketBuilder().sendMessage(item.getDefinition().getItemName() + ": shop will sell for " + item.getDefinition().getGeneralStorePrice() + " " + this.getCurrency().name().toLowerCase().replaceAll("_", " ") + "" + Misc.formatPrice(item.getDefinition().getGeneralStorePrice()) + ".");
+            player.getServerPacketBuilder().sendMessage(item.getDefinition().getItemName() + ": shop will sell for " + ItemDefinition.getGeneralStorePrice(item.getId()) + " " + this.getCurrency().name().toLowerCase().replaceAll("_", " ") + "" + Misc.formatPrice(ItemDefinition.getGeneralStorePrice(item.getId())) + ".");
         } else {
-            player.getServerPacketBuilder().sendMessage(item.getDefinition().getItemName() + ": shop will sell for " + item.getDefinition().getSpecialStorePrice() + " " + this.getCurrency().name().toLowerCase().replaceAll("_", " ") + "" + Misc.formatPrice(item.getDefinition().getSpecialStorePrice()) + ".");
+            player.getServerPacketBuilder().sendMessage(item.getDefinition().getItemName() + ": shop will sell for " + ItemDefinition.getSpecialStorePrice(item.getId()) + " " + this.getCurrency().name().toLowerCase().replaceAll("_", " ") + "" + Misc.formatPrice(ItemDefinition.getSpecialStorePrice(item.getId())) + ".");
         }
     }
 
@@ -382,7 +377,7 @@ public class Shop {
      * @return the price.
      */
     private int getSellingPrice(Item item) {
-        return (int) (this.getCurrency() == Currency.COINS ? Math.floor((item.getDefinition().getGeneralStorePrice() / 2)) : Math.floor((item.getDefinition().getSpecialStorePrice() / 2)));
+        return (int) (this.getCurrency() == Currency.COINS ? Math.floor((ItemDefinition.getGeneralStorePrice(item.getId()) / 2)) : Math.floor((ItemDefinition.getSpecialStorePrice(item.getId()) / 2)));
     }
 
     /**
@@ -409,7 +404,7 @@ public class Shop {
                         if (item.getAmount() < getOriginalAmount(item.getId())) {
                             item.incrementAmount();
 
-                            for (Player player : World.getPlayers()) {
+                            for (Player player : World.current().getPlayers()) {
                                 if (player == null) {
                                     continue;
                                 }
@@ -423,7 +418,7 @@ public class Shop {
                 }
             };
 
-            GameLogic.getSingleton().submit(this.getTask());
+            World.current().getEngine().submit(this.getTask());
         }
     }
 
@@ -563,7 +558,7 @@ public class Shop {
      * @return the static instance of the shop.
      */
     public static Shop getShop(int id) {
-        return shops[id];
+        return World.current().getShops()[id];
     }
 
     /**
@@ -574,7 +569,7 @@ public class Shop {
      * @return the static instance of the shop.
      */
     public static Shop getShop(String name) {
-        for (Shop s : shops) {
+        for (Shop s : World.current().getShops()) {
             if (s == null) {
                 continue;
             }
@@ -620,7 +615,7 @@ public class Shop {
                 }
             }
 
-            shops[shop.getId()] = shop;
+            World.current().getShops()[shop.getId()] = shop;
             parsed++;
         }
     }